@@ -0,0 +1,197 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* CachedSonar class
+*
+* Access layer over the mast's sonar, where every call is an I2C transaction:
+*  - the sensor's mode is remembered, and only written when it changes;
+*  - in continuous mode the sensor measures every REFRESH_INTERVAL ms, so
+*    reads closer together than that get the last reading back instead of
+*    asking the sensor again;
+*  - in ping mode the reading only changes with a ping, so it is read once
+*    after each ping.
+* The cached reading is dropped whenever the mode changes or a ping is
+* sent, so a read never returns a measurement the sensor itself would
+* have replaced.
+*
+* The obstacle monitor and the sweeps may share the sensor from two
+* threads, so the methods are synchronized: a mode change and the read
+* that follows it are never split.
+*/
+public class CachedSonar implements Sonar {
+
+    // time between two measurements of the sensor in continuous mode, in ms
+    public static final int REFRESH_INTERVAL = 30;
+
+    // mode before the first setMode
+    private static final int UNKNOWN_MODE = 0;
+
+    private Sonar sensor;
+    private Clock clock;
+    private MissionMetrics metrics;
+    private int refreshInterval;
+
+    private int mode;
+    private boolean cached;
+    private int cachedDistance;
+    private long cachedTime;
+
+    private int readCount;
+    private int hitCount;
+    private int modeChangeCount;
+    private long statisticsStart;
+
+    /**
+    * Constructor
+    *
+    * @param Sonar headSonic the sensor
+    * @param Clock timeSource the clock used to date readings
+    * @param MissionMetrics missionMetrics where reads, cache hits and mode changes are counted
+    */
+    public CachedSonar(Sonar headSonic, Clock timeSource, MissionMetrics missionMetrics) {
+        this.sensor = headSonic;
+        this.clock = timeSource;
+        this.metrics = missionMetrics;
+        this.refreshInterval = REFRESH_INTERVAL;
+        this.mode = UNKNOWN_MODE;
+        this.cached = false;
+        this.statisticsStart = timeSource.currentTimeMillis();
+    }
+
+    /**
+    * Switches the sensor's measurement mode, if it isn't in that mode already
+    *
+    * @param int newMode MODE_PING or MODE_CONTINUOUS
+    * @return void
+    */
+    public synchronized void setMode(int newMode) {
+        if(newMode == this.mode) {
+            return;
+        }
+        this.sensor.setMode(newMode);
+        this.mode = newMode;
+        this.cached = false;
+        this.modeChangeCount++;
+        this.metrics.increment(MissionMetrics.SONAR_MODE_CHANGES);
+    }
+
+    /**
+    * Sends a ping, switching to ping mode first if needed
+    *
+    * @return void
+    */
+    public synchronized void ping() {
+        this.setMode(MODE_PING);
+        this.sensor.ping();
+        this.cached = false;
+    }
+
+    /**
+    * Returns the latest measurement, from the cache if the sensor can't have a newer one
+    *
+    * @return int the distance, in cm, 255 if nothing was detected
+    */
+    public synchronized int getDistance() {
+        long now = this.clock.currentTimeMillis();
+        if(this.cached && this.refreshInterval > 0
+                && (this.mode == MODE_PING || now - this.cachedTime < this.refreshInterval)) {
+            this.hitCount++;
+            this.metrics.increment(MissionMetrics.SONAR_CACHE_HITS);
+            return this.cachedDistance;
+        }
+        this.cachedDistance = this.sensor.getDistance();
+        // dated from the request, so the reading is never kept too long
+        this.cachedTime = now;
+        this.cached = true;
+        this.readCount++;
+        this.metrics.increment(MissionMetrics.SONAR_READS);
+        return this.cachedDistance;
+    }
+
+    /**
+    * Drops the cached reading, so the next read asks the sensor
+    * Called when the rover starts a new move: a reading taken before
+    * it may not hold any more
+    *
+    * @return void
+    */
+    public synchronized void invalidate() {
+        this.cached = false;
+    }
+
+    /**
+    * Sets how long a continuous reading is served from the cache
+    *
+    * @param int interval the time, in ms, 0 to read the sensor every time
+    * @return void
+    */
+    public synchronized void setRefreshInterval(int interval) {
+        this.refreshInterval = interval;
+        this.cached = false;
+    }
+
+    /**
+    * Restarts the statistics from zero, and the sample rate from now
+    *
+    * @return void
+    */
+    public synchronized void resetStatistics() {
+        this.readCount = 0;
+        this.hitCount = 0;
+        this.modeChangeCount = 0;
+        this.statisticsStart = this.clock.currentTimeMillis();
+    }
+
+    /*
+    #########################################################################
+    Accessor methods
+    #########################################################################
+    */
+
+    /**
+    * Returns the number of readings taken from the sensor
+    *
+    * @return int the read count
+    */
+    public int getReadCount() {
+        return this.readCount;
+    }
+
+    /**
+    * Returns the number of reads served from the cache
+    *
+    * @return int the hit count
+    */
+    public int getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+    * Returns the number of mode changes written to the sensor
+    *
+    * @return int the mode change count
+    */
+    public int getModeChangeCount() {
+        return this.modeChangeCount;
+    }
+
+    /**
+    * Returns the share of reads served from the cache
+    *
+    * @return float the hit ratio, 0 to 1
+    */
+    public float getHitRatio() {
+        int reads = this.readCount + this.hitCount;
+        return reads == 0 ? 0.0f : (float)this.hitCount / reads;
+    }
+
+    /**
+    * Returns the readings taken from the sensor per second, since the statistics were reset
+    *
+    * @return float the sample rate, in Hz
+    */
+    public float getSampleRate() {
+        long elapsed = this.clock.currentTimeMillis() - this.statisticsStart;
+        return elapsed <= 0 ? 0.0f : this.readCount * 1000.0f / elapsed;
+    }
+}
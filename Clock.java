@@ -0,0 +1,32 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* Clock interface
+*
+* Source of time for the whole rover. On the brick it is the system clock;
+* a simulation can use a virtual clock that only moves when asked to wait.
+*/
+public interface Clock {
+    
+    /**
+    * Returns the current time
+    *
+    * @return long the time, in ms
+    */
+    public long currentTimeMillis();
+    
+    /**
+    * Waits for the given time
+    *
+    * @param long period the time to wait, in ms
+    * @return void
+    */
+    public void msDelay(long period);
+    
+    /**
+    * Tells if time goes by on its own, so that other threads can rely on it
+    *
+    * @return boolean true for a wall clock, false for a virtual one
+    */
+    public boolean isRealTime();
+}
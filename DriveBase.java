@@ -0,0 +1,70 @@
+import lejos.robotics.navigation.MoveProvider;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* DriveBase interface
+*
+* The rover's wheels, seen as a leJOS MoveProvider so that a pose
+* provider can follow its moves. The methods mirror DifferentialPilot.
+*/
+public interface DriveBase extends MoveProvider {
+    
+    /**
+    * Moves straight and waits for the end of the move
+    *
+    * @param double distance the distance to travel, negative backwards
+    * @return void
+    */
+    public void travel(double distance);
+    
+    /**
+    * Moves straight
+    *
+    * @param double distance the distance to travel, negative backwards
+    * @param boolean immediateReturn true to return as soon as the move started
+    * @return void
+    */
+    public void travel(double distance, boolean immediateReturn);
+    
+    /**
+    * Turns on the spot
+    *
+    * @param double angle the angle to turn by, positive to the left
+    * @param boolean immediateReturn true to return as soon as the move started
+    * @return void
+    */
+    public void rotate(double angle, boolean immediateReturn);
+    
+    /**
+    * Drives forward along a circle until stopped or given another move
+    * Returns as soon as the move started; a new arc can be given while moving
+    *
+    * @param double radius the radius of the circle, positive to turn left,
+    *                      infinite to drive straight
+    * @return void
+    */
+    public void arcForward(double radius);
+    
+    /**
+    * Stops any move in progress, and waits for the wheels to stop
+    *
+    * @return void
+    */
+    public void stop();
+    
+    /**
+    * Tells if a move is in progress
+    *
+    * @return boolean true if the wheels are turning
+    */
+    public boolean isMoving();
+    
+    public void setTravelSpeed(double speed);
+    
+    public double getTravelSpeed();
+    
+    public void setRotateSpeed(double speed);
+    
+    public double getRotateSpeed();
+}
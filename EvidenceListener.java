@@ -0,0 +1,22 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* EvidenceListener interface
+*
+* Implemented by what needs every piece of evidence a MapKit takes in,
+* such as a link to a map shared between rovers
+*/
+public interface EvidenceListener {
+
+    /**
+    * Called each time evidence is added to a cell of the grid
+    * The increment is the one asked for, before the cell is clamped,
+    * so that evidence from several rovers can simply be added up
+    *
+    * @param int cx the cell's column
+    * @param int cy the cell's row
+    * @param int delta the log-odds added
+    * @return void
+    */
+    public void evidenceAdded(int cx, int cy, int delta);
+}
@@ -0,0 +1,18 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* ExplorationStrategy interface
+*
+* Decides where the rover goes while it explores. mainBehaviour calls
+* explore() over and over until the mission time is up.
+*/
+public interface ExplorationStrategy {
+    
+    /**
+    * Makes one exploration move: drive somewhere, sweep, and map the sweep
+    *
+    * @param Rover rover the rover exploring
+    * @return boolean false if there is nothing left to explore
+    */
+    public boolean explore(Rover rover);
+}
@@ -0,0 +1,355 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* FrontierExploration class
+*
+* Frontier-based exploration: the map is summed up in coarse cells, and
+* the rover drives to the free cell with the most unknown map cells around
+* it for the distance driven. There it faces the unknown and sweeps.
+*
+* Distances are measured along free cells from where the rover stands,
+* so a frontier behind a wall counts as far away. Places the rover swept
+* from, or couldn't reach, are not chosen again, and when no frontier is
+* left the rover looks around, then falls back on the random walk for a
+* few steps before stopping.
+*
+* All the work space is allocated once, in the constructor.
+*/
+public class FrontierExploration implements ExplorationStrategy {
+
+    // side of an exploration cell, in map cells
+    private static final int BLOCK = 4;
+    // a cell is free once this many of its map cells are seen free
+    private static final int MIN_FREE = 4;
+    // unknown map cells are counted this many cells around a frontier
+    private static final int GAIN_RADIUS = 2;
+    // frontiers with fewer unknown map cells around are not worth the trip
+    private static final int MIN_GAIN = BLOCK * BLOCK;
+    // a target is given up after this many trips
+    private static final int MAX_ATTEMPTS = 2;
+    // random walk steps without a frontier before exploration ends
+    private static final int MAX_IDLE_STEPS = 10;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte FREE = 1;
+    private static final byte BLOCKED = 2;
+
+    private MapKit map;
+    private PathPlanner planner;
+    // distance kept from known obstacles, the same as the planner's
+    private float clearance;
+    private RandomWalkExploration fallback;
+
+    private int columns;
+    private int rows;
+    private float size;
+    private float originX;
+    private float originY;
+
+    private byte[] state;
+    private byte[] unknown;
+    private byte[] attempts;
+    private int[] distance;
+    private int[] queue;
+    private int[] survey;
+
+    private int idleSteps;
+    private int tripCount;
+
+    // where the last target's unknown cells lie
+    private float lookX;
+    private float lookY;
+
+    /**
+    * Constructor
+    *
+    * @param MapKit mapObject the map being explored
+    */
+    public FrontierExploration(MapKit mapObject) {
+
+        this.map = mapObject;
+        this.clearance = RoverNavigator.LEG_CLEARANCE + mapObject.getCellSize();
+        this.planner = new PathPlanner(mapObject, BLOCK * mapObject.getCellSize(), this.clearance);
+        this.fallback = new RandomWalkExploration();
+
+        this.columns = mapObject.getWidth() / BLOCK;
+        this.rows = mapObject.getHeight() / BLOCK;
+        this.size = BLOCK * mapObject.getCellSize();
+        this.originX = -(mapObject.getWidth() / 2) * mapObject.getCellSize();
+        this.originY = -(mapObject.getHeight() / 2) * mapObject.getCellSize();
+
+        int cells = this.columns * this.rows;
+        this.state = new byte[cells];
+        this.unknown = new byte[cells];
+        this.attempts = new byte[cells];
+        this.distance = new int[cells];
+        this.queue = new int[cells];
+        this.survey = new int[3];
+    }
+
+    /**
+    * Drives to the best frontier, faces the unknown and sweeps
+    *
+    * @param Rover rover the rover exploring
+    * @return boolean false once no frontier has been found for a few steps
+    */
+    public boolean explore(Rover rover) {
+
+        this.updateCells();
+        int target = this.chooseTarget(rover.getX(), rover.getY());
+        if(target < 0) {
+            this.idleSteps++;
+            if(this.idleSteps > MAX_IDLE_STEPS) {
+                return false;
+            }
+            if(this.idleSteps == 1) {
+                // first look all around, then wander: the sweeps may open new frontiers
+                this.lookAround(rover);
+                return true;
+            }
+            return this.fallback.explore(rover);
+        }
+        this.idleSteps = 0;
+        this.attempts[target]++;
+        this.tripCount++;
+
+        this.planner.setGoal(this.centreX(target), this.centreY(target));
+        if(!this.planner.plan(rover.getX(), rover.getY())) {
+            if(this.state[this.cellAt(rover.getX(), rover.getY())] != FREE) {
+                // hemmed in by obstacles, no plan can leave from here: wander off first
+                this.attempts[target]--;
+                this.tripCount--;
+                return this.fallback.explore(rover);
+            }
+            // the map says there is no way there
+            this.attempts[target] = MAX_ATTEMPTS;
+            return true;
+        }
+        rover.navigationUnit.clearPath();
+        this.planner.loadPath(rover.navigationUnit, this.centreX(target), this.centreY(target));
+
+        if(!rover.navigationUnit.followPath()) {
+            // stopped on the way: map what stopped us and look around
+            rover.navigationUnit.clearPath();
+            rover.displayUnit.negativeFeedback();
+            rover.recordPosition();
+            if(rover.sensorUnit.lastBump != 0) {
+                rover.recordBump(rover.sensorUnit.lastBump);
+            }
+            rover.driveUnit.travel(-15);
+            rover.recordPosition();
+            rover.processScan(rover.sensorUnit.forwardSweepFrame());
+            return true;
+        }
+
+        // sweeping again from close by would show little new
+        this.markVisited(target);
+        rover.displayUnit.positiveFeedback();
+        rover.recordPosition();
+        double heading = Math.toDegrees(Math.atan2(this.lookY - rover.getY(), this.lookX - rover.getX()));
+        if(!rover.navigationUnit.rotateTo(heading)) {
+            rover.displayUnit.negativeFeedback();
+            // bump during turn
+            rover.recordBump(rover.sensorUnit.lastBump);
+            rover.driveUnit.travel(-20);
+            rover.recordPosition();
+            return true;
+        }
+        rover.processScan(rover.sensorUnit.forwardSweepFrame());
+        return true;
+    }
+
+    /**
+    * Sweeps ahead and behind without moving
+    *
+    * @param Rover rover the rover exploring
+    * @return void
+    */
+    private void lookAround(Rover rover) {
+        rover.processScan(rover.sensorUnit.forwardSweepFrame());
+        if(!rover.navigationUnit.rotateBy(180)) {
+            rover.recordBump(rover.sensorUnit.lastBump);
+            rover.driveUnit.travel(-20);
+            rover.recordPosition();
+            return;
+        }
+        rover.processScan(rover.sensorUnit.forwardSweepFrame());
+    }
+
+    /**
+    * Returns the number of trips to a frontier so far
+    *
+    * @return int the trip count
+    */
+    public int getTripCount() {
+        return this.tripCount;
+    }
+
+    /*
+    #########################################################################
+    Frontier search
+    #########################################################################
+    */
+
+    /**
+    * Sums the map up in coarse cells: unknown, free to drive through,
+    * or blocked by a known obstacle
+    */
+    private void updateCells() {
+        for(int cy = 0; cy < this.rows; cy++) {
+            for(int cx = 0; cx < this.columns; cx++) {
+                float minX = this.originX + cx * this.size;
+                float minY = this.originY + cy * this.size;
+                // keep the box inside this cell's map cells
+                float maxX = minX + this.size - 0.01f;
+                float maxY = minY + this.size - 0.01f;
+
+                int cell = cy * this.columns + cx;
+                this.map.surveyBox(minX, minY, maxX, maxY, this.survey);
+                this.unknown[cell] = (byte)this.survey[2];
+                if(this.map.countObstacles(minX - this.clearance, minY - this.clearance,
+                        maxX + this.clearance, maxY + this.clearance) > 0) {
+                    this.state[cell] = BLOCKED;
+                }
+                else {
+                    this.state[cell] = this.survey[0] >= MIN_FREE ? FREE : UNKNOWN;
+                }
+            }
+        }
+    }
+
+    /**
+    * Searches the free cells outwards from the rover, and scores each
+    * frontier by the unknown cells around it over the distance to it
+    *
+    * @return int the best frontier cell, -1 if there is none
+    */
+    private int chooseTarget(float x, float y) {
+
+        for(int i = 0; i < this.distance.length; i++) {
+            this.distance[i] = -1;
+        }
+        int start = this.cellAt(x, y);
+        if(start < 0) {
+            return -1;
+        }
+
+        int best = -1;
+        float bestScore = 0.0f;
+        int head = 0;
+        int tail = 0;
+        this.distance[start] = 0;
+        this.queue[tail++] = start;
+
+        while(head < tail) {
+            int cell = this.queue[head++];
+            int cx = cell % this.columns;
+            int cy = cell / this.columns;
+
+            if(cell != start && this.attempts[cell] < MAX_ATTEMPTS) {
+                int gain = this.countUnknown(cx, cy);
+                float score = (float)gain / (float)this.distance[cell];
+                if(gain >= MIN_GAIN && score > bestScore) {
+                    best = cell;
+                    bestScore = score;
+                }
+            }
+
+            // 4-connected, through free cells only
+            for(int k = 0; k < 4; k++) {
+                int nx = cx + (k == 0 ? 1 : k == 1 ? -1 : 0);
+                int ny = cy + (k == 2 ? 1 : k == 3 ? -1 : 0);
+                if(nx < 0 || ny < 0 || nx >= this.columns || ny >= this.rows) {
+                    continue;
+                }
+                int next = ny * this.columns + nx;
+                if(this.distance[next] < 0 && this.state[next] == FREE) {
+                    this.distance[next] = this.distance[cell] + 1;
+                    this.queue[tail++] = next;
+                }
+            }
+        }
+
+        if(best >= 0) {
+            this.aimAt(best % this.columns, best / this.columns);
+        }
+        return best;
+    }
+
+    private int countUnknown(int cx, int cy) {
+        int count = 0;
+        for(int dy = -GAIN_RADIUS; dy <= GAIN_RADIUS; dy++) {
+            for(int dx = -GAIN_RADIUS; dx <= GAIN_RADIUS; dx++) {
+                count += this.unknownAt(cx + dx, cy + dy);
+            }
+        }
+        return count;
+    }
+
+    private void markVisited(int cell) {
+        int cx = cell % this.columns;
+        int cy = cell / this.columns;
+        for(int dy = -1; dy <= 1; dy++) {
+            for(int dx = -1; dx <= 1; dx++) {
+                int x = cx + dx;
+                int y = cy + dy;
+                if(x >= 0 && y >= 0 && x < this.columns && y < this.rows) {
+                    this.attempts[y * this.columns + x] = MAX_ATTEMPTS;
+                }
+            }
+        }
+    }
+
+    /**
+    * Sets the point to face once at a frontier: the middle of the unknown cells around it
+    */
+    private void aimAt(int cx, int cy) {
+        float sumX = 0.0f;
+        float sumY = 0.0f;
+        int count = 0;
+        for(int dy = -GAIN_RADIUS; dy <= GAIN_RADIUS; dy++) {
+            for(int dx = -GAIN_RADIUS; dx <= GAIN_RADIUS; dx++) {
+                int cells = this.unknownAt(cx + dx, cy + dy);
+                sumX += dx * cells;
+                sumY += dy * cells;
+                count += cells;
+            }
+        }
+        int cell = cy * this.columns + cx;
+        this.lookX = this.centreX(cell) + sumX / count * this.size;
+        this.lookY = this.centreY(cell) + sumY / count * this.size;
+    }
+
+    /*
+    #########################################################################
+    Grid helpers
+    #########################################################################
+    */
+
+    /**
+    * Past the map's edge there is nothing to see
+    */
+    private int unknownAt(int cx, int cy) {
+        if(cx < 0 || cy < 0 || cx >= this.columns || cy >= this.rows) {
+            return 0;
+        }
+        return this.unknown[cy * this.columns + cx];
+    }
+
+    private int cellAt(float x, float y) {
+        int cx = (int)Math.floor((x - this.originX) / this.size);
+        int cy = (int)Math.floor((y - this.originY) / this.size);
+        if(cx < 0 || cy < 0 || cx >= this.columns || cy >= this.rows) {
+            return -1;
+        }
+        return cy * this.columns + cx;
+    }
+
+    private float centreX(int cell) {
+        return this.originX + ((cell % this.columns) + 0.5f) * this.size;
+    }
+
+    private float centreY(int cell) {
+        return this.originY + ((cell / this.columns) + 0.5f) * this.size;
+    }
+}
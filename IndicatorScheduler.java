@@ -0,0 +1,273 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* IndicatorScheduler class
+*
+* Plays light and sound patterns, and shows messages, on its own thread,
+* so that the control loop never waits for them.
+*
+* Requests go through a small bounded queue. A request equal to the last
+* one queued is merged into it, a feedback pattern replaces any feedback
+* still waiting, and requests arriving while the queue is full are dropped.
+*
+* On a virtual clock the thread is not started, and requests are played
+* at once without their pauses: nobody is there to see them.
+*/
+public class IndicatorScheduler extends Thread {
+    
+    // leave the floodlight as it is
+    public static final int KEEP_LIGHT = -2;
+    
+    // pattern steps: floodlight colour, tone frequency, tone duration, pause after the step
+    public static final int COLOUR = 0;
+    public static final int FREQUENCY = 1;
+    public static final int DURATION = 2;
+    public static final int PAUSE = 3;
+    
+    private static final int CAPACITY = 8;
+    
+    // silence between two patterns, so that their tones don't run into each other
+    private static final int PATTERN_GAP = 100;
+    
+    private Indicators indicators;
+    private Clock clock;
+    
+    // queued requests, as a ring
+    private int[][][] patterns;
+    private String[] messages;
+    private boolean[] feedback;
+    private int head;
+    private int depth;
+    private boolean playing;
+    
+    private int maxDepth;
+    private int playedCount;
+    private int coalescedCount;
+    private int droppedCount;
+    
+    /**
+    * Constructor
+    *
+    * @param Indicators output the light, speaker and screen
+    * @param Clock timeSource the clock used to pace patterns
+    */
+    public IndicatorScheduler(Indicators output, Clock timeSource) {
+        
+        this.indicators = output;
+        this.clock = timeSource;
+        
+        this.patterns = new int[CAPACITY][][];
+        this.messages = new String[CAPACITY];
+        this.feedback = new boolean[CAPACITY];
+        this.head = 0;
+        this.depth = 0;
+        
+        // don't keep the program alive once the mission is over
+        this.setDaemon(true);
+    }
+    
+    /**
+    * Queues a light and sound pattern
+    *
+    * @param int[][] pattern the steps of the pattern
+    * @param boolean isFeedback true if the pattern replaces any feedback still waiting
+    * @return boolean true if the pattern will be played
+    */
+    public boolean play(int[][] pattern, boolean isFeedback) {
+        return this.offer(pattern, null, isFeedback);
+    }
+    
+    /**
+    * Queues a message for the screen
+    *
+    * @param String message the message
+    * @return boolean true if the message will be shown
+    */
+    public boolean show(String message) {
+        return this.offer(null, message, false);
+    }
+    
+    /**
+    * Plays a pattern in the calling thread, once everything queued was played
+    *
+    * @param int[][] pattern the steps of the pattern
+    * @return void
+    */
+    public void playNow(int[][] pattern) {
+        this.awaitIdle(0);
+        this.perform(pattern, true);
+    }
+    
+    /**
+    * Waits until the queue is empty
+    *
+    * @param long timeout the longest wait, in ms, 0 to wait as long as needed
+    * @return boolean true if the queue is empty
+    */
+    public synchronized boolean awaitIdle(long timeout) {
+        long deadline = this.clock.currentTimeMillis() + timeout;
+        while(this.depth > 0 || this.playing) {
+            long left = timeout == 0 ? 0 : deadline - this.clock.currentTimeMillis();
+            if(timeout != 0 && left <= 0) {
+                return false;
+            }
+            try {
+                this.wait(left);
+            } catch(InterruptedException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+    * Returns the number of requests waiting
+    *
+    * @return int the queue depth
+    */
+    public synchronized int getQueueDepth() {
+        return this.depth;
+    }
+    
+    /**
+    * Returns the largest number of requests that were waiting at once
+    *
+    * @return int the highest queue depth
+    */
+    public int getMaxQueueDepth() {
+        return this.maxDepth;
+    }
+    
+    /**
+    * Returns the number of requests played or shown
+    *
+    * @return int the played count
+    */
+    public int getPlayedCount() {
+        return this.playedCount;
+    }
+    
+    /**
+    * Returns the number of requests merged into one already waiting
+    *
+    * @return int the coalesced count
+    */
+    public int getCoalescedCount() {
+        return this.coalescedCount;
+    }
+    
+    /**
+    * Returns the number of requests dropped because the queue was full
+    *
+    * @return int the dropped count
+    */
+    public int getDroppedCount() {
+        return this.droppedCount;
+    }
+    
+    /**
+    * Playing loop
+    *
+    * @return void
+    */
+    public void run() {
+        while(true) {
+            int[][] pattern;
+            String message;
+            synchronized(this) {
+                while(this.depth == 0) {
+                    try {
+                        this.wait();
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                }
+                pattern = this.patterns[this.head];
+                message = this.messages[this.head];
+                this.patterns[this.head] = null;
+                this.messages[this.head] = null;
+                this.head = (this.head + 1) % CAPACITY;
+                this.depth--;
+                this.playing = true;
+            }
+            
+            if(pattern != null) {
+                this.perform(pattern, true);
+                this.clock.msDelay(PATTERN_GAP);
+            }
+            else {
+                this.indicators.displayMessage(message);
+            }
+            
+            synchronized(this) {
+                this.playing = false;
+                this.playedCount++;
+                this.notifyAll();
+            }
+        }
+    }
+    
+    private synchronized boolean offer(int[][] pattern, String message, boolean isFeedback) {
+        if(!this.clock.isRealTime()) {
+            if(pattern != null) {
+                this.perform(pattern, false);
+            }
+            else {
+                this.indicators.displayMessage(message);
+            }
+            this.playedCount++;
+            return true;
+        }
+        
+        if(this.depth > 0) {
+            int last = (this.head + this.depth - 1) % CAPACITY;
+            if((pattern != null && pattern == this.patterns[last])
+                || (message != null && message.equals(this.messages[last]))) {
+                // the same request is already waiting
+                this.coalescedCount++;
+                return true;
+            }
+        }
+        if(isFeedback) {
+            for(int i = 0; i < this.depth; i++) {
+                int slot = (this.head + i) % CAPACITY;
+                if(this.feedback[slot]) {
+                    // only the latest feedback is worth giving
+                    this.patterns[slot] = pattern;
+                    this.coalescedCount++;
+                    return true;
+                }
+            }
+        }
+        if(this.depth == CAPACITY) {
+            this.droppedCount++;
+            return false;
+        }
+        
+        int tail = (this.head + this.depth) % CAPACITY;
+        this.patterns[tail] = pattern;
+        this.messages[tail] = message;
+        this.feedback[tail] = isFeedback;
+        this.depth++;
+        if(this.depth > this.maxDepth) {
+            this.maxDepth = this.depth;
+        }
+        this.notifyAll();
+        return true;
+    }
+    
+    private void perform(int[][] pattern, boolean pauses) {
+        for(int i = 0; i < pattern.length; i++) {
+            int[] step = pattern[i];
+            if(step[COLOUR] != KEEP_LIGHT) {
+                this.indicators.setFloodlight(step[COLOUR]);
+            }
+            if(step[FREQUENCY] > 0) {
+                this.indicators.playTone(step[FREQUENCY], step[DURATION]);
+            }
+            if(pauses && step[PAUSE] > 0) {
+                this.clock.msDelay(step[PAUSE]);
+            }
+        }
+    }
+}
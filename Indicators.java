@@ -0,0 +1,49 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* Indicators interface
+*
+* The ways the rover has of talking to the user: a coloured light,
+* sounds, the screen, and a button to wait on.
+*/
+public interface Indicators {
+    
+    /**
+    * Lights the floodlight
+    *
+    * @param int color a lejos.robotics.Color constant, Color.NONE to switch it off
+    * @return void
+    */
+    public void setFloodlight(int color);
+    
+    /**
+    * Plays a tone, without waiting for it to finish
+    *
+    * @param int frequency the frequency, in Hz
+    * @param int duration the duration, in ms
+    * @return void
+    */
+    public void playTone(int frequency, int duration);
+    
+    /**
+    * Waits for the user to press and release the confirmation button
+    *
+    * @return void
+    */
+    public void waitForButton();
+    
+    /**
+    * Clears the screen
+    *
+    * @return void
+    */
+    public void clearDisplay();
+    
+    /**
+    * Prints a message on the next line of the screen
+    *
+    * @param String message the message
+    * @return void
+    */
+    public void displayMessage(String message);
+}
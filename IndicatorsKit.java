@@ -1,78 +1,114 @@
-import lejos.nxt.*;
-import lejos.util.*;
 import lejos.robotics.*;
 
 public class IndicatorsKit {
 
+    // colour, tone frequency, tone duration, pause after, for each step
+    private static final int[][] WAITING = {
+        {Color.BLUE, 440, 100, 0},
+        {Color.GREEN, 540, 100, 0},
+        {Color.BLUE, 440, 100, 0}
+    };
+    private static final int[][] CONFIRMED = {
+        {Color.GREEN, 540, 100, 200},
+        {IndicatorScheduler.KEEP_LIGHT, 540, 100, 0},
+        {Color.NONE, 0, 0, 0}
+    };
+    private static final int[][] POSITIVE = {
+        {Color.GREEN, 240, 100, 200},
+        {IndicatorScheduler.KEEP_LIGHT, 540, 100, 0},
+        {Color.NONE, 0, 0, 0}
+    };
+    private static final int[][] NEUTRAL = {
+        {Color.BLUE, 440, 100, 200},
+        {IndicatorScheduler.KEEP_LIGHT, 440, 100, 0},
+        {Color.NONE, 0, 0, 0}
+    };
+    private static final int[][] NEGATIVE = {
+        {Color.RED, 540, 100, 200},
+        {IndicatorScheduler.KEEP_LIGHT, 240, 100, 0},
+        {Color.NONE, 0, 0, 0}
+    };
+    private static final int[][] GOING_BACK = {
+        {Color.BLUE, 440, 100, 200},
+        {Color.RED, 300, 100, 200},
+        {Color.BLUE, 440, 100, 200},
+        {Color.NONE, 0, 0, 0}
+    };
+
     private Rover rover;
-    private ColorSensor light; 
+    private Indicators light; 
+    private IndicatorScheduler scheduler;
     
     /**
     * Constructor
     * Initiates a User Indicators instance, passing messages through sound and Light
+    * Patterns and messages are played in the background, in the order they were asked for
     *
     */
-    public IndicatorsKit(ColorSensor colourIndicator, Rover roverInstance) {
+    public IndicatorsKit(Indicators indicators, Rover roverInstance) {
         this.rover = roverInstance;
-        this.light = colourIndicator;
+        this.light = indicators;
+        this.scheduler = new IndicatorScheduler(indicators, roverInstance.getClock());
+        if(roverInstance.getClock().isRealTime()) {
+            this.scheduler.start();
+        }
     }
     
     
     public void waitForUser() {
         // light and sound message
-        this.light.setFloodlight(Color.BLUE);
-        Sound.playTone(440, 100);
-        this.light.setFloodlight(Color.GREEN);
-        Sound.playTone(540, 100);
-        this.light.setFloodlight(Color.BLUE);
-        Sound.playTone(440, 100);
+        this.scheduler.playNow(WAITING);
         
         // wait for press
-        Button.ENTER.waitForPressAndRelease();
+        this.light.waitForButton();
         
         // confirm with light and sound
-        this.light.setFloodlight(Color.GREEN);
-        Sound.playTone(540, 100);
-        Delay.msDelay(200);
-        Sound.playTone(540, 100);
-        this.light.setFloodlight(Color.NONE);
+        this.scheduler.playNow(CONFIRMED);
     }
     
     public void positiveFeedback() {
-        this.light.setFloodlight(Color.GREEN);
-        Sound.playTone(240, 100);
-        Delay.msDelay(200);
-        Sound.playTone(540, 100);
-        this.light.setFloodlight(Color.NONE);
+        this.scheduler.play(POSITIVE, true);
     }
     
     public void neutralFeedback() {
-        this.light.setFloodlight(Color.BLUE);
-        Sound.playTone(440, 100);
-        Delay.msDelay(200);
-        Sound.playTone(440, 100);
-        this.light.setFloodlight(Color.NONE);
+        this.scheduler.play(NEUTRAL, true);
     }
     
     public void negativeFeedback() {
-        this.light.setFloodlight(Color.RED);
-        Sound.playTone(540, 100);
-        Delay.msDelay(200);
-        Sound.playTone(240, 100);
-        this.light.setFloodlight(Color.NONE);
+        this.scheduler.play(NEGATIVE, true);
     }
     
     public void goingBack() {
-        this.light.setFloodlight(Color.BLUE);
-        Sound.playTone(440, 100);
-        Delay.msDelay(200);
-        this.light.setFloodlight(Color.RED);
-        Sound.playTone(300, 100);
-        Delay.msDelay(200);
-        this.light.setFloodlight(Color.BLUE);
-        Sound.playTone(440, 100);
-        Delay.msDelay(200);
-        this.light.setFloodlight(Color.NONE);
+        this.scheduler.play(GOING_BACK, false);
+    }
+    
+    /**
+    * Shows a message on the screen, after the ones already waiting
+    *
+    * @param String message the message
+    * @return void
+    */
+    public void displayMessage(String message) {
+        this.scheduler.show(message);
+    }
+    
+    /**
+    * Waits for the patterns and messages still waiting to be played
+    *
+    * @param long timeout the longest wait, in ms
+    * @return void
+    */
+    public void flush(long timeout) {
+        this.scheduler.awaitIdle(timeout);
+    }
+    
+    /**
+    * Returns the background player, and its queue counters
+    *
+    * @return IndicatorScheduler the scheduler
+    */
+    public IndicatorScheduler getScheduler() {
+        return this.scheduler;
     }
     
-}
\ No newline at end of file
+}
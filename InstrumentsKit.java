@@ -1,40 +1,58 @@
-import lejos.nxt.*;
-import lejos.util.*;
+import lejos.robotics.Touch;
+import lejos.robotics.navigation.Pose;
 
 public class InstrumentsKit {
     
-    private UltrasonicSensor mastSonic;
-    private NXTRegulatedMotor mastMotor;
+    // mast speed for positioning and stepped sweeps, in degrees per second
+    private static final int MAST_SPEED = 90;
+    // time between two tachometer checks during a continuous sweep, in ms
+    private static final int SWEEP_POLL = 5;
+    // number of sweeps kept before their frames are reused
+    private static final int FRAME_POOL = 4;
     
-    private TouchSensor leftBumperSensor;
-    private TouchSensor rightBumperSensor;
+    private CachedSonar mastSonic;
+    private MastMotor mastMotor;
+    
+    private Touch leftBumperSensor;
+    private Touch rightBumperSensor;
     
     public int lastBump;
     private int safetyDistance;
     
+    private boolean continuousSweep;
+    private int sweepSpeed;
+    
+    private ScanFrame[] frames;
+    private int nextFrame;
+    
     private Rover rover;
+    private Clock clock;
+    private MissionMetrics metrics;
     
     /**
     * Constructor
     * Assigns the different sensors to their instance variables
     *
-    * @param NXTRegulatedMotor headMotor the motor controlling the sensors' rotation
-    * @param UltrasonicSensor headSonic the US Sensor mounted on the rotating head
-    * @param TouchSensor leftBumper the bumper located on the front left of the rover
-    * @param TouchSensor rightBumper the bumper located on the front right of the rover
+    * @param MastMotor headMotor the motor controlling the sensors' rotation
+    * @param Sonar headSonic the US Sensor mounted on the rotating head
+    * @param Touch leftBumper the bumper located on the front left of the rover
+    * @param Touch rightBumper the bumper located on the front right of the rover
     */
-    public InstrumentsKit(NXTRegulatedMotor headMotor, UltrasonicSensor headSonic, TouchSensor leftBumper, TouchSensor rightBumper, Rover roverObject) {
+    public InstrumentsKit(MastMotor headMotor, Sonar headSonic, Touch leftBumper, Touch rightBumper, Rover roverObject) {
+        
+        this.rover = roverObject;
+        this.clock = roverObject.getClock();
+        this.metrics = roverObject.getMetrics();
         
         this.mastMotor = headMotor;
-        this.mastSonic = headSonic;
+        // mode changes and reads go through the cache
+        this.mastSonic = new CachedSonar(headSonic, this.clock, this.metrics);
         
-        this.mastSonic.setMode(UltrasonicSensor.MODE_PING);
+        this.mastSonic.setMode(Sonar.MODE_PING);
         
         this.leftBumperSensor = leftBumper;
         this.rightBumperSensor = rightBumper;
         
-        this.rover = roverObject;
-        
         this.lastBump = 0;
         
         // mast motor initialisation
@@ -48,11 +66,19 @@ public class InstrumentsKit {
         // and makes sure it isn't nudged by the cables
         this.mastMotor.stop();
         this.mastMotor.resetTachoCount();
-        this.mastMotor.setSpeed(90);
+        this.mastMotor.setSpeed(MAST_SPEED);
         
-        Delay.msDelay(300);
+        this.clock.msDelay(300);
         
         this.safetyDistance = 20;
+        this.continuousSweep = true;
+        this.sweepSpeed = 150;
+        
+        this.frames = new ScanFrame[FRAME_POOL];
+        for(int i = 0; i < FRAME_POOL; i++) {
+            this.frames[i] = new ScanFrame();
+        }
+        this.nextFrame = 0;
     }
     
     /**
@@ -70,7 +96,8 @@ public class InstrumentsKit {
     * @return boolean true if there is an obstacle in safety range
     */
     public boolean obstacleInRange() {
-        this.mastSonic.setMode(UltrasonicSensor.MODE_CONTINUOUS);
+        this.metrics.increment(MissionMetrics.SONAR_CHECKS);
+        this.mastSonic.setMode(Sonar.MODE_CONTINUOUS);
         int distance = this.mastSonic.getDistance();
         return (distance < this.safetyDistance) ? true : false;
     }
@@ -81,6 +108,7 @@ public class InstrumentsKit {
     * @return boolean true if one of the bumpers was triggered
     */
     public boolean bumpersTriggered() {
+        this.metrics.increment(MissionMetrics.BUMPER_CHECKS);
         boolean leftBump = this.leftBumperSensor.isPressed();
         boolean rightBump = this.rightBumperSensor.isPressed();
         
@@ -99,32 +127,161 @@ public class InstrumentsKit {
     }
     
     /**
-    * Returns the direction with the most free way in a 180degree arc
+    * Measures the free way every 10 degrees in a 180degree arc
     *
-    * @return int the relative angle between the current and desired direction (clockwise)
+    * @return int[][] the array of [bearing],[distance], from left to right
     */
     public int[][] forwardSweep() {
+        return this.sweep(90, 10);
+    }
+    
+    /**
+    * Measures the free way every 15 degrees in a 90degree arc
+    *
+    * @return int[][] the array of [bearing],[distance], from left to right
+    */
+    public int[][] quickSweep() {
+        return this.sweep(45, 15);
+    }
+    
+    /**
+    * Measures the free way around the rover's heading
+    *
+    * @param int halfArc the largest bearing measured, on each side
+    * @param int step the angle between two readings
+    * @return int[][] the array of [bearing],[distance], from left to right
+    */
+    public int[][] sweep(int halfArc, int step) {
+        return this.sweepFrame(halfArc, step).toArray();
+    }
+    
+    /**
+    * Measures the free way every 10 degrees in a 180degree arc, into a reused frame
+    *
+    * @return ScanFrame the sweep, from left to right
+    */
+    public ScanFrame forwardSweepFrame() {
+        return this.sweepFrame(90, 10);
+    }
+    
+    /**
+    * Measures the free way around the rover's heading, into a reused frame
+    * The frame comes from a ring, and is reused FRAME_POOL sweeps later:
+    * copy it if it has to be kept longer
+    *
+    * @param int halfArc the largest bearing measured, on each side
+    * @param int step the angle between two readings
+    * @return ScanFrame the sweep, from left to right, at most MAX_READINGS long
+    */
+    public ScanFrame sweepFrame(int halfArc, int step) {
+        long sweepStart = this.metrics.now();
+        ScanFrame frame = this.frames[this.nextFrame];
+        this.nextFrame = (this.nextFrame + 1) % FRAME_POOL;
         
-        //Motor.A.flt();
-        //Motor.C.flt();
+        Pose pose = this.rover.navigationUnit.getPose();
+        frame.reset(pose.getX(), pose.getY(), pose.getHeading());
+        if(this.continuousSweep) {
+            this.continuousSweep(frame, halfArc, step);
+        }
+        else {
+            this.steppedSweep(frame, halfArc, step);
+        }
+        this.metrics.recordSince(MissionMetrics.SWEEP, sweepStart);
+        this.metrics.add(MissionMetrics.SWEEP_READINGS, frame.size());
+        return frame;
+    }
+    
+    /**
+    * Turns the mast in one continuous motion, taking a reading each time
+    * the tachometer passes the next bearing
+    * Each reading is stamped with the bearing actually measured
+    *
+    * @param ScanFrame frame where the readings are stored
+    * @param int halfArc the largest bearing measured, on each side
+    * @param int step the angle between two readings
+    * @return void
+    */
+    private void continuousSweep(ScanFrame frame, int halfArc, int step) {
         
-        int[][] distances = new int[19][2];
+        int readings = Math.min(2 * halfArc / step + 1, ScanFrame.MAX_READINGS);
         int j = 0;
         
-        for (int i=-90; i <= 90; i+=10) {
+        // in continuous mode the sensor measures on its own,
+        // so a reading never has to wait for a ping
+        this.mastSonic.setMode(Sonar.MODE_CONTINUOUS);
+        this.setMastAngle(-halfArc);
+        
+        this.mastMotor.setSpeed(this.sweepSpeed);
+        this.mastMotor.rotateTo(halfArc, true);
+        
+        while(j < readings) {
+            int position = this.mastMotor.getPosition();
+            if(position >= -halfArc + j * step || !this.mastMotor.isMoving()) {
+                // take the reading where the mast is, even if it stopped short
+                frame.add(-position, this.mastSonic.getDistance());
+                j++;
+            }
+            else {
+                this.clock.msDelay(SWEEP_POLL);
+            }
+        }
+        
+        this.mastMotor.setSpeed(MAST_SPEED);
+        this.setMastAngle(0);
+    }
+    
+    /**
+    * Stops the mast at each bearing and pings
+    *
+    * @param ScanFrame frame where the readings are stored
+    * @param int halfArc the largest bearing measured, on each side
+    * @param int step the angle between two readings
+    * @return void
+    */
+    private void steppedSweep(ScanFrame frame, int halfArc, int step) {
+        
+        // the obstacle checks leave the sensor in continuous mode
+        this.mastSonic.setMode(Sonar.MODE_PING);
+        for (int i=-halfArc; i <= halfArc && frame.size() < ScanFrame.MAX_READINGS; i+=step) {
             this.setMastAngle(i);
-            distances[j][0] = -this.mastMotor.getPosition();
+            int bearing = -this.mastMotor.getPosition();
             this.mastSonic.ping();
-            Delay.msDelay(100);
-            distances[j][1] = this.mastSonic.getDistance();
-            Delay.msDelay(100);
-            j++;
+            this.clock.msDelay(100);
+            frame.add(bearing, this.mastSonic.getDistance());
+            this.clock.msDelay(100);
         }
         
-        //Motor.A.stop();
-        //Motor.C.stop();
         this.setMastAngle(0);
-        return distances;
+    }
+    
+    /**
+    * Chooses how the mast sweeps
+    *
+    * @param boolean enabled true to sweep in one continuous motion,
+    *                        false to stop and ping at each bearing
+    * @return void
+    */
+    public void setContinuousSweep(boolean enabled) {
+        this.continuousSweep = enabled;
+    }
+    
+    /**
+    * Sets the mast speed during a continuous sweep
+    *
+    * @param int speed the mast speed, in degrees per second
+    * @return void
+    */
+    public void setSweepSpeed(int speed) {
+        this.sweepSpeed = speed;
+    }
+    
+    /**
+    * Returns the sonar, with its read statistics
+    *
+    * @return CachedSonar the sonar
+    */
+    public CachedSonar getSonar() {
+        return this.mastSonic;
     }
     
     /**
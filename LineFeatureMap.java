@@ -0,0 +1,515 @@
+import lejos.geom.Line;
+import lejos.geom.Rectangle;
+import lejos.robotics.mapping.LineMap;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* LineFeatureMap class
+*
+* Sums the walls the rover has seen up as line segments, in fixed
+* primitive arrays.
+*
+* Each sweep's echoes are turned into points, cut where two neighbours
+* are far apart, and fitted with split-and-merge: a run of points is
+* split at the point farthest from the chord between its ends until every
+* point is within the tolerance, then each piece is fitted with a total
+* least squares line. Pieces with too few points are dropped as noise.
+*
+* Each new segment is merged with a segment of the map that is nearly
+* parallel, close to its line and overlapping or nearly touching it, into
+* a segment spanning both; the result may in turn merge with another.
+* A wall seen from ten sweeps is one segment, not a hundred points.
+*
+* When the arrays are full, the segment backed by the fewest points makes
+* room for a better backed one.
+*/
+public class LineFeatureMap {
+
+    // neighbouring echoes further apart than this are on different walls
+    private static final float BREAK_DISTANCE = 20.0f;
+    // largest distance between a point and its segment, in cm
+    private static final float SPLIT_TOLERANCE = 4.0f;
+    // fewest points backing a segment
+    private static final int MIN_POINTS = 3;
+
+    // merging: largest angle, distance between lines and gap between ends
+    private static final float MERGE_ANGLE = 10.0f;
+    private static final float MERGE_DISTANCE = 6.0f;
+    private static final float MERGE_GAP = 15.0f;
+
+    // segments, as their two ends, and the number of points backing each
+    private float[] x1s;
+    private float[] y1s;
+    private float[] x2s;
+    private float[] y2s;
+    private int[] supports;
+    private int count;
+
+    private int maxRange;
+
+    // the points of the sweep being fitted, and the split-and-merge stack
+    private float[] pointXs;
+    private float[] pointYs;
+    private int[] stack;
+
+    private int scanCount;
+    private int pointCount;
+
+    /**
+    * Constructor
+    *
+    * @param int capacity the largest number of segments kept
+    * @param int range echoes at this distance or further are not walls, in cm
+    */
+    public LineFeatureMap(int capacity, int range) {
+        this.x1s = new float[capacity];
+        this.y1s = new float[capacity];
+        this.x2s = new float[capacity];
+        this.y2s = new float[capacity];
+        this.supports = new int[capacity];
+        this.count = 0;
+        this.maxRange = range;
+
+        this.pointXs = new float[ScanFrame.MAX_READINGS];
+        this.pointYs = new float[ScanFrame.MAX_READINGS];
+        this.stack = new int[2 * ScanFrame.MAX_READINGS];
+    }
+
+    /**
+    * Fits segments to a sweep's echoes, and merges them into the map
+    *
+    * @param ScanFrame scan the sweep, in bearing order
+    * @return int the number of segments fitted to the sweep
+    */
+    public int addScan(ScanFrame scan) {
+        this.scanCount++;
+        int fitted = 0;
+        int points = 0;
+        for(int i = 0; i < scan.size(); i++) {
+            int distance = scan.getDistance(i);
+            if(distance <= 0 || distance >= this.maxRange) {
+                // a gap in the wall, or no wall at all
+                fitted += this.fitRun(points);
+                points = 0;
+                continue;
+            }
+            double angle = Math.toRadians(scan.getHeading() + scan.getBearing(i));
+            float x = scan.getX() + distance * (float)Math.cos(angle);
+            float y = scan.getY() + distance * (float)Math.sin(angle);
+            if(points > 0 && distance(x, y, this.pointXs[points - 1], this.pointYs[points - 1]) > BREAK_DISTANCE) {
+                fitted += this.fitRun(points);
+                points = 0;
+            }
+            this.pointXs[points] = x;
+            this.pointYs[points] = y;
+            points++;
+            this.pointCount++;
+        }
+        fitted += this.fitRun(points);
+        return fitted;
+    }
+
+    /**
+    * Adds a segment to the map, merging it with the segments it continues
+    *
+    * @param float x1 the X coordinate of one end
+    * @param float y1 the Y coordinate of one end
+    * @param float x2 the X coordinate of the other end
+    * @param float y2 the Y coordinate of the other end
+    * @param int support the number of points backing the segment
+    * @return void
+    */
+    public void addSegment(float x1, float y1, float x2, float y2, int support) {
+        int index = this.store(x1, y1, x2, y2, support);
+        // a merged segment may now reach another one
+        while(index >= 0) {
+            int other = this.findMergeable(index);
+            if(other < 0) {
+                break;
+            }
+            index = this.merge(other, index);
+        }
+    }
+
+    /**
+    * Returns the distance from a point to the closest segment
+    *
+    * @param float x the X coordinate of the point
+    * @param float y the Y coordinate of the point
+    * @return float the distance, in cm, Float.MAX_VALUE if the map is empty
+    */
+    public float getClearance(float x, float y) {
+        float best = Float.MAX_VALUE;
+        for(int i = 0; i < this.count; i++) {
+            float d = segmentDistance(x, y, this.x1s[i], this.y1s[i], this.x2s[i], this.y2s[i]);
+            if(d < best) {
+                best = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+    * Returns the distance to the first segment along a ray, as LineMap.range does
+    *
+    * @param float x the X coordinate of the origin
+    * @param float y the Y coordinate of the origin
+    * @param float bearing the absolute direction of the ray, in degrees
+    * @param float maxRange the longest distance looked at
+    * @return float the distance, in cm, maxRange if no segment is in the way
+    */
+    public float range(float x, float y, float bearing, float maxRange) {
+        double angle = Math.toRadians(bearing);
+        float dx = (float)Math.cos(angle);
+        float dy = (float)Math.sin(angle);
+        float best = maxRange;
+        for(int i = 0; i < this.count; i++) {
+            float ex = this.x2s[i] - this.x1s[i];
+            float ey = this.y2s[i] - this.y1s[i];
+            float denominator = dx * ey - dy * ex;
+            if(denominator == 0.0f) {
+                continue;
+            }
+            float ox = this.x1s[i] - x;
+            float oy = this.y1s[i] - y;
+            float t = (ox * ey - oy * ex) / denominator;
+            float u = (ox * dy - oy * dx) / denominator;
+            if(t >= 0.0f && t < best && u >= 0.0f && u <= 1.0f) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /**
+    * Returns the map as a leJOS LineMap, bounded by its segments and the landing point
+    *
+    * @return LineMap the segments
+    */
+    public LineMap toLineMap() {
+        Line[] lines = new Line[this.count];
+        float minX = 0.0f;
+        float minY = 0.0f;
+        float maxX = 0.0f;
+        float maxY = 0.0f;
+        for(int i = 0; i < this.count; i++) {
+            lines[i] = new Line(this.x1s[i], this.y1s[i], this.x2s[i], this.y2s[i]);
+            minX = Math.min(minX, Math.min(this.x1s[i], this.x2s[i]));
+            minY = Math.min(minY, Math.min(this.y1s[i], this.y2s[i]));
+            maxX = Math.max(maxX, Math.max(this.x1s[i], this.x2s[i]));
+            maxY = Math.max(maxY, Math.max(this.y1s[i], this.y2s[i]));
+        }
+        return new LineMap(lines, new Rectangle(minX, minY, maxX - minX, maxY - minY));
+    }
+
+    /*
+    #########################################################################
+    Accessor methods
+    #########################################################################
+    */
+
+    public int getSegmentCount() {
+        return this.count;
+    }
+
+    public float getX1(int index) {
+        return this.x1s[index];
+    }
+
+    public float getY1(int index) {
+        return this.y1s[index];
+    }
+
+    public float getX2(int index) {
+        return this.x2s[index];
+    }
+
+    public float getY2(int index) {
+        return this.y2s[index];
+    }
+
+    /**
+    * Returns the number of echoes a segment was fitted to, merges included
+    *
+    * @param int index the segment
+    * @return int the support
+    */
+    public int getSupport(int index) {
+        return this.supports[index];
+    }
+
+    /**
+    * Returns the number of echoes turned into points so far
+    *
+    * @return int the point count
+    */
+    public int getPointCount() {
+        return this.pointCount;
+    }
+
+    public int getScanCount() {
+        return this.scanCount;
+    }
+
+    /**
+    * Returns the total length of the segments
+    *
+    * @return float the length, in cm
+    */
+    public float getLength() {
+        float length = 0.0f;
+        for(int i = 0; i < this.count; i++) {
+            length += distance(this.x1s[i], this.y1s[i], this.x2s[i], this.y2s[i]);
+        }
+        return length;
+    }
+
+    /*
+    #########################################################################
+    Split and merge
+    #########################################################################
+    */
+
+    /**
+    * Splits a run of neighbouring points into segments, and adds them to the map
+    *
+    * @param int points the number of points in the run
+    * @return int the number of segments added
+    */
+    private int fitRun(int points) {
+        if(points < MIN_POINTS) {
+            return 0;
+        }
+        int added = 0;
+        int top = 0;
+        this.stack[top++] = 0;
+        this.stack[top++] = points - 1;
+        while(top > 0) {
+            int last = this.stack[--top];
+            int first = this.stack[--top];
+            int farthest = -1;
+            float worst = SPLIT_TOLERANCE;
+            for(int i = first + 1; i < last; i++) {
+                float d = lineDistance(this.pointXs[i], this.pointYs[i], this.pointXs[first], this.pointYs[first],
+                    this.pointXs[last], this.pointYs[last]);
+                if(d > worst) {
+                    worst = d;
+                    farthest = i;
+                }
+            }
+            if(farthest >= 0) {
+                // the farthest point ends one piece and starts the other
+                this.stack[top++] = first;
+                this.stack[top++] = farthest;
+                this.stack[top++] = farthest;
+                this.stack[top++] = last;
+            }
+            else if(last - first + 1 >= MIN_POINTS) {
+                this.fitPoints(first, last);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+    * Fits a total least squares line to a run of points, from the first to the last
+    */
+    private void fitPoints(int first, int last) {
+        int n = last - first + 1;
+        float meanX = 0.0f;
+        float meanY = 0.0f;
+        for(int i = first; i <= last; i++) {
+            meanX += this.pointXs[i];
+            meanY += this.pointYs[i];
+        }
+        meanX /= n;
+        meanY /= n;
+        float sxx = 0.0f;
+        float syy = 0.0f;
+        float sxy = 0.0f;
+        for(int i = first; i <= last; i++) {
+            float dx = this.pointXs[i] - meanX;
+            float dy = this.pointYs[i] - meanY;
+            sxx += dx * dx;
+            syy += dy * dy;
+            sxy += dx * dy;
+        }
+        double angle = 0.5 * Math.atan2(2.0 * sxy, sxx - syy);
+        float ux = (float)Math.cos(angle);
+        float uy = (float)Math.sin(angle);
+        // the ends are the first and last points, projected on the line
+        float t1 = (this.pointXs[first] - meanX) * ux + (this.pointYs[first] - meanY) * uy;
+        float t2 = (this.pointXs[last] - meanX) * ux + (this.pointYs[last] - meanY) * uy;
+        this.addSegment(meanX + t1 * ux, meanY + t1 * uy, meanX + t2 * ux, meanY + t2 * uy, n);
+    }
+
+    /**
+    * Finds a segment the given one can merge with
+    *
+    * @param int index the segment
+    * @return int the other segment, or -1 if there is none
+    */
+    private int findMergeable(int index) {
+        for(int i = 0; i < this.count; i++) {
+            if(i != index && this.canMerge(i, index)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean canMerge(int a, int b) {
+        float ax = this.x2s[a] - this.x1s[a];
+        float ay = this.y2s[a] - this.y1s[a];
+        float bx = this.x2s[b] - this.x1s[b];
+        float by = this.y2s[b] - this.y1s[b];
+        float lengthA = (float)Math.sqrt(ax * ax + ay * ay);
+        float lengthB = (float)Math.sqrt(bx * bx + by * by);
+        if(lengthA == 0.0f || lengthB == 0.0f) {
+            return false;
+        }
+        // parallel either way
+        float sine = Math.abs(ax * by - ay * bx) / (lengthA * lengthB);
+        if(sine > (float)Math.sin(Math.toRadians(MERGE_ANGLE))) {
+            return false;
+        }
+        // the shorter segment's ends must lie close to the longer one's line
+        int longer = lengthA >= lengthB ? a : b;
+        int shorter = longer == a ? b : a;
+        if(lineDistance(this.x1s[shorter], this.y1s[shorter], this.x1s[longer], this.y1s[longer],
+                this.x2s[longer], this.y2s[longer]) > MERGE_DISTANCE
+            || lineDistance(this.x2s[shorter], this.y2s[shorter], this.x1s[longer], this.y1s[longer],
+                this.x2s[longer], this.y2s[longer]) > MERGE_DISTANCE) {
+            return false;
+        }
+        // and overlap it, or nearly
+        float ux = ax / lengthA;
+        float uy = ay / lengthA;
+        float b1 = (this.x1s[b] - this.x1s[a]) * ux + (this.y1s[b] - this.y1s[a]) * uy;
+        float b2 = (this.x2s[b] - this.x1s[a]) * ux + (this.y2s[b] - this.y1s[a]) * uy;
+        return Math.max(b1, b2) >= -MERGE_GAP && Math.min(b1, b2) <= lengthA + MERGE_GAP;
+    }
+
+    /**
+    * Replaces two segments by one spanning both, on their support-weighted line
+    *
+    * @param int a the segment kept
+    * @param int b the segment removed
+    * @return int the index of the merged segment
+    */
+    private int merge(int a, int b) {
+        float wa = (float)this.supports[a];
+        float wb = (float)this.supports[b];
+        float ax = this.x2s[a] - this.x1s[a];
+        float ay = this.y2s[a] - this.y1s[a];
+        float bx = this.x2s[b] - this.x1s[b];
+        float by = this.y2s[b] - this.y1s[b];
+        if(ax * bx + ay * by < 0.0f) {
+            // same direction before averaging
+            bx = -bx;
+            by = -by;
+        }
+        float lengthA = (float)Math.sqrt(ax * ax + ay * ay);
+        float lengthB = (float)Math.sqrt(bx * bx + by * by);
+        float ux = wa * ax / lengthA + wb * bx / lengthB;
+        float uy = wa * ay / lengthA + wb * by / lengthB;
+        float norm = (float)Math.sqrt(ux * ux + uy * uy);
+        ux /= norm;
+        uy /= norm;
+        float cx = (wa * (this.x1s[a] + this.x2s[a]) + wb * (this.x1s[b] + this.x2s[b])) / (2.0f * (wa + wb));
+        float cy = (wa * (this.y1s[a] + this.y2s[a]) + wb * (this.y1s[b] + this.y2s[b])) / (2.0f * (wa + wb));
+
+        // the merged segment spans the projections of all four ends
+        float ta1 = (this.x1s[a] - cx) * ux + (this.y1s[a] - cy) * uy;
+        float ta2 = (this.x2s[a] - cx) * ux + (this.y2s[a] - cy) * uy;
+        float tb1 = (this.x1s[b] - cx) * ux + (this.y1s[b] - cy) * uy;
+        float tb2 = (this.x2s[b] - cx) * ux + (this.y2s[b] - cy) * uy;
+        float low = Math.min(Math.min(ta1, ta2), Math.min(tb1, tb2));
+        float high = Math.max(Math.max(ta1, ta2), Math.max(tb1, tb2));
+        this.x1s[a] = cx + low * ux;
+        this.y1s[a] = cy + low * uy;
+        this.x2s[a] = cx + high * ux;
+        this.y2s[a] = cy + high * uy;
+        this.supports[a] += this.supports[b];
+        this.remove(b);
+        // removing moved the last segment into b's place
+        return a == this.count ? b : a;
+    }
+
+    /**
+    * Stores a segment, making room if the map is full
+    *
+    * @return int the index of the segment, or -1 if it was dropped
+    */
+    private int store(float x1, float y1, float x2, float y2, int support) {
+        int index = this.count;
+        if(index == this.x1s.length) {
+            index = 0;
+            for(int i = 1; i < this.count; i++) {
+                if(this.supports[i] < this.supports[index]) {
+                    index = i;
+                }
+            }
+            if(this.supports[index] >= support) {
+                return -1;
+            }
+        }
+        else {
+            this.count++;
+        }
+        this.x1s[index] = x1;
+        this.y1s[index] = y1;
+        this.x2s[index] = x2;
+        this.y2s[index] = y2;
+        this.supports[index] = support;
+        return index;
+    }
+
+    private void remove(int index) {
+        this.count--;
+        this.x1s[index] = this.x1s[this.count];
+        this.y1s[index] = this.y1s[this.count];
+        this.x2s[index] = this.x2s[this.count];
+        this.y2s[index] = this.y2s[this.count];
+        this.supports[index] = this.supports[this.count];
+    }
+
+    /*
+    #########################################################################
+    Geometry helpers
+    #########################################################################
+    */
+
+    private static float distance(float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        return (float)Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+    * Distance from a point to the infinite line through two points
+    */
+    private static float lineDistance(float x, float y, float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float length = (float)Math.sqrt(dx * dx + dy * dy);
+        if(length == 0.0f) {
+            return distance(x, y, x1, y1);
+        }
+        return Math.abs((x - x1) * dy - (y - y1) * dx) / length;
+    }
+
+    /**
+    * Distance from a point to the segment between two points
+    */
+    private static float segmentDistance(float x, float y, float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float squared = dx * dx + dy * dy;
+        float t = squared == 0.0f ? 0.0f : ((x - x1) * dx + (y - y1) * dy) / squared;
+        t = t < 0.0f ? 0.0f : (t > 1.0f ? 1.0f : t);
+        return distance(x, y, x1 + t * dx, y1 + t * dy);
+    }
+}
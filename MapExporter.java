@@ -0,0 +1,234 @@
+import java.io.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MapExporter class
+*
+* Writes a MapSnapshot to a stream in compact formats, one row at a time:
+* memory use is one row of the grid and the output buffer, whatever the
+* size of the map.
+*
+* PGM: a binary greymap (P5), north up, one byte per cell. Unknown cells
+* are grey, free cells lighter and occupied cells darker with evidence.
+*
+* RLE: the log-odds of every cell, run-length encoded. Layout: MAGIC (int),
+* VERSION (byte), width, height (ints), cell size (float), map version
+* (long), then groups covering the cells in row-major order, bottom row
+* first, going on from one row to the next. Each group starts with a
+* count n and a flag, as the varint n * 2 + flag:
+*   flag 0    a run: one log-odds (byte), repeated over n cells
+*   flag 1    literals: n log-odds (bytes), one per cell
+* Varints take 7 bits per byte, low bits first.
+*/
+public class MapExporter {
+
+    public static final int MAGIC = 0x52524C45;
+    public static final byte VERSION = 1;
+
+    private static final int DEFAULT_BUFFER_SIZE = 512;
+    // longest run: a 5 byte length and a value
+    private static final int MAX_RUN_SIZE = 6;
+    // shorter runs are cheaper as literals
+    private static final int MIN_RUN = 3;
+    private static final int MAX_LITERALS = 127;
+
+    // grey levels of unknown, most free and most occupied cells
+    private static final int GREY_UNKNOWN = 205;
+    private static final int GREY_FREE = 254;
+    private static final int GREY_OCCUPIED = 0;
+
+    private OutputStream out;
+    private byte[] buffer;
+    private int used;
+    private long byteCount;
+
+    // grey level of each log-odds, indexed by value + 128
+    private byte[] greyLevels;
+
+    // cells waiting to be written as literals
+    private byte[] literals;
+    private int literalCount;
+
+    /**
+    * Constructor
+    *
+    * @param OutputStream stream where the maps are written
+    * @param int bufferSize the size of the output buffer, in bytes
+    */
+    public MapExporter(OutputStream stream, int bufferSize) {
+        this.out = stream;
+        this.buffer = new byte[Math.max(bufferSize, MAX_RUN_SIZE)];
+        this.used = 0;
+        this.literals = new byte[MAX_LITERALS];
+        this.greyLevels = new byte[256];
+        for(int value = -128; value < 128; value++) {
+            int grey;
+            if(value < 0) {
+                grey = GREY_UNKNOWN + (GREY_FREE - GREY_UNKNOWN) * Math.max(value, MapKit.LOG_ODDS_MIN) / MapKit.LOG_ODDS_MIN;
+            }
+            else {
+                grey = GREY_UNKNOWN + (GREY_OCCUPIED - GREY_UNKNOWN) * Math.min(value, MapKit.LOG_ODDS_MAX) / MapKit.LOG_ODDS_MAX;
+            }
+            this.greyLevels[value + 128] = (byte)grey;
+        }
+    }
+
+    /**
+    * Creates an exporter with the default buffer size
+    *
+    * @param OutputStream stream where the maps are written
+    * @return MapExporter the exporter
+    */
+    public static MapExporter open(OutputStream stream) {
+        return new MapExporter(stream, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+    * Writes a snapshot as a PGM greymap
+    *
+    * @param MapSnapshot snapshot the map to write
+    * @return void
+    */
+    public void writePGM(MapSnapshot snapshot) throws IOException {
+        int width = snapshot.getWidth();
+        byte[] header = ("P5\n" + width + " " + snapshot.getHeight() + "\n255\n").getBytes();
+        this.write(header, header.length);
+        byte[] row = new byte[width];
+        // images start at the top, the grid at the bottom
+        for(int cy = snapshot.getHeight() - 1; cy >= 0; cy--) {
+            snapshot.readRow(cy, row);
+            for(int cx = 0; cx < width; cx++) {
+                row[cx] = this.greyLevels[row[cx] + 128];
+            }
+            this.write(row, width);
+        }
+        this.flush();
+    }
+
+    /**
+    * Writes a snapshot as a run-length encoded grid
+    *
+    * @param MapSnapshot snapshot the map to write
+    * @return void
+    */
+    public void writeRLE(MapSnapshot snapshot) throws IOException {
+        int width = snapshot.getWidth();
+        this.writeInt(MAGIC);
+        this.buffer[this.used++] = VERSION;
+        this.writeInt(width);
+        this.writeInt(snapshot.getHeight());
+        this.writeInt(Float.floatToIntBits(snapshot.getCellSize()));
+        this.writeInt((int)(snapshot.getVersion() >>> 32));
+        this.writeInt((int)snapshot.getVersion());
+
+        byte[] row = new byte[width];
+        byte value = 0;
+        int length = 0;
+        this.literalCount = 0;
+        for(int cy = 0; cy < snapshot.getHeight(); cy++) {
+            snapshot.readRow(cy, row);
+            for(int cx = 0; cx < width; cx++) {
+                if(row[cx] != value && length > 0) {
+                    this.endRun(length, value);
+                    length = 0;
+                }
+                value = row[cx];
+                length++;
+            }
+        }
+        if(length > 0) {
+            this.endRun(length, value);
+        }
+        this.writeLiterals();
+        this.flush();
+    }
+
+    /**
+    * Returns the number of bytes written so far
+    *
+    * @return long the byte count
+    */
+    public long getByteCount() {
+        return this.byteCount;
+    }
+
+    /*
+    #########################################################################
+    Encoding helpers
+    #########################################################################
+    */
+
+    /**
+    * Writes a run of cells, or keeps it for the next literals if it is short
+    */
+    private void endRun(int length, byte value) throws IOException {
+        if(length >= MIN_RUN) {
+            this.writeLiterals();
+            if(this.used + MAX_RUN_SIZE > this.buffer.length) {
+                this.flush();
+            }
+            this.writeVarint(length << 1);
+            this.buffer[this.used++] = value;
+            return;
+        }
+        for(int i = 0; i < length; i++) {
+            if(this.literalCount == MAX_LITERALS) {
+                this.writeLiterals();
+            }
+            this.literals[this.literalCount++] = value;
+        }
+    }
+
+    private void writeLiterals() throws IOException {
+        if(this.literalCount == 0) {
+            return;
+        }
+        if(this.used + MAX_RUN_SIZE > this.buffer.length) {
+            this.flush();
+        }
+        this.writeVarint((this.literalCount << 1) | 1);
+        this.write(this.literals, this.literalCount);
+        this.literalCount = 0;
+    }
+
+    private void writeVarint(int value) {
+        while((value & ~0x7F) != 0) {
+            this.buffer[this.used++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[this.used++] = (byte)value;
+    }
+
+    private void writeInt(int value) throws IOException {
+        if(this.used + 4 > this.buffer.length) {
+            this.flush();
+        }
+        this.buffer[this.used++] = (byte)(value >>> 24);
+        this.buffer[this.used++] = (byte)(value >>> 16);
+        this.buffer[this.used++] = (byte)(value >>> 8);
+        this.buffer[this.used++] = (byte)value;
+    }
+
+    private void write(byte[] data, int length) throws IOException {
+        int offset = 0;
+        while(offset < length) {
+            if(this.used == this.buffer.length) {
+                this.flush();
+            }
+            int count = Math.min(length - offset, this.buffer.length - this.used);
+            System.arraycopy(data, offset, this.buffer, this.used, count);
+            this.used += count;
+            offset += count;
+        }
+    }
+
+    private void flush() throws IOException {
+        if(this.used > 0) {
+            this.out.write(this.buffer, 0, this.used);
+            this.byteCount += this.used;
+            this.used = 0;
+        }
+        this.out.flush();
+    }
+}
@@ -1,10 +1,6 @@
-import java.util.*;
-
-import lejos.nxt.*;
 import lejos.geom.Point;
 import lejos.robotics.navigation.*;
-import lejos.robotics.localization.OdometryPoseProvider;
-import lejos.util.*;
+import java.io.*;
 
 /**
 * Abertay University - SET
@@ -12,43 +8,188 @@ import lejos.util.*;
 * MapKit class
 * 2014-03-27 Simon Stoll | Amy Parent
 *
-* MapKit: Provide mapping delegate functions 
-* 
-* Provide path following functions and waypoint management
+* MapKit: Provide mapping delegate functions
+*
+* The map is a fixed-size occupancy grid centred on the landing point.
+* Each cell holds a log-odds value in a single byte: negative is free,
+* positive is occupied, zero is unknown. Sonar rays add free evidence
+* along their length and occupied evidence where they hit something.
+*
+* With a MapStore, the grid starts from the evidence of earlier missions
+* and the tiles it changes are written back as the mission goes.
+*
+* Readers on other threads, or that keep the map for later, take a
+* MapSnapshot: it only copies the tiles changed since the last one.
 */
 
 public class MapKit {
-    
-    private ArrayList<Point> pointsMap;
+
+    // default grid: 100x100 cells of 5cm, a 5m square around the landing point
+    public static final int DEFAULT_SIZE = 100;
+    public static final float DEFAULT_CELL_SIZE = 5.0f;
+
+    // sonar returns beyond this range are not trusted as obstacles
+    public static final int MAX_RANGE = 150;
+
+    // log-odds increments and limits, scaled to fit in a byte
+    private static final int LOG_ODDS_OCCUPIED = 9;
+    private static final int LOG_ODDS_FREE = -3;
+    public static final int LOG_ODDS_MIN = -40;
+    public static final int LOG_ODDS_MAX = 60;
+    public static final int OCCUPIED_THRESHOLD = 4;
+
+    // side of a map store and snapshot tile, in cells
+    public static final int TILE_SIZE = 16;
+
+    private byte[] cells;
+    private int width;
+    private int height;
+    private float cellSize;
+
     private Rover rover;
-    
+    private MissionLog missionLog;
+    private TelemetryPublisher telemetry;
+    private EvidenceListener evidenceListener;
+
+    // tiles changed since they were last saved to the store
+    private MapStore store;
+    private int tilesAcross;
+    private boolean[] dirtyTiles;
+    private int[] dirtyList;
+    private int dirtyCount;
+    private byte[] tileCells;
+
+    // latest snapshot, and the tiles changed since it was taken
+    private long version;
+    private MapSnapshot snapshot;
+    private boolean[] changedTiles;
+    private int[] changedList;
+    private int changedCount;
+
     /**
     * Constructor
     *
     * @param Rover roverObjet the Rover isntance piloting the rover
     */
     public MapKit(Rover roverObject) {
-        
-        this.pointsMap = new ArrayList<Point>();
+        this(roverObject, DEFAULT_SIZE, DEFAULT_SIZE, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+    * Constructor
+    * The grid memory is allocated once and never grows
+    *
+    * @param Rover roverObjet the Rover isntance piloting the rover
+    * @param int gridWidth number of cells along the x axis
+    * @param int gridHeight number of cells along the y axis
+    * @param float cellSize side of a cell, in cm
+    */
+    public MapKit(Rover roverObject, int gridWidth, int gridHeight, float cellSize) {
+
+        this.width = gridWidth;
+        this.height = gridHeight;
+        this.cellSize = cellSize;
+        this.cells = new byte[gridWidth * gridHeight];
+        this.tilesAcross = (gridWidth + TILE_SIZE - 1) / TILE_SIZE;
         this.rover = roverObject;
     }
-    
+
     /**
     * Adds an obtacle, detected at bearing and distance by the rover
     *
     * @param int bearing the relative heading at which the obstacle was detected
     * @param float distance at which the obstacle was detected
-    * @return void
+    * @return boolean true if the obstacle was not already in the map
     */
-    public void addObstacle(int heading, float distance) {
+    public boolean addObstacle(int heading, float distance) {
         Pose currentPosition = this.rover.navigationUnit.getPose();
-        
+
         float bearing = (currentPosition.getHeading() + (float)heading) % 360;
-        
-        Point obstacle = currentPosition.pointAt(distance, bearing);
-        this.pointsMap.add(obstacle);
+
+        return this.integrateRay(currentPosition.getX(), currentPosition.getY(), bearing, distance, true);
+    }
+
+    /**
+    * Adds a single sonar reading taken from the given pose
+    * Readings closer than MAX_RANGE mark an obstacle at their end,
+    * others only clear the cells up to MAX_RANGE
+    *
+    * @param Pose pose the rover's pose when the reading was taken
+    * @param int heading the relative bearing of the reading
+    * @param int distance the measured distance
+    * @return boolean true if the reading added a new obstacle to the map
+    */
+    public boolean addReading(Pose pose, int heading, int distance) {
+        return this.addReading(pose.getX(), pose.getY(), pose.getHeading(), heading, distance);
     }
-    
+
+    /**
+    * Adds a single sonar reading taken from the given position
+    *
+    * @param float x the rover's x coordinate when the reading was taken
+    * @param float y the rover's y coordinate when the reading was taken
+    * @param float roverHeading the rover's heading when the reading was taken
+    * @param int heading the relative bearing of the reading
+    * @param int distance the measured distance
+    * @return boolean true if the reading added a new obstacle to the map
+    */
+    public boolean addReading(float x, float y, float roverHeading, int heading, int distance) {
+        if(distance <= 0) {
+            return false;
+        }
+
+        float bearing = (roverHeading + (float)heading) % 360;
+        boolean hit = distance < MAX_RANGE;
+        float range = hit ? (float)distance : (float)MAX_RANGE;
+
+        return this.integrateRay(x, y, bearing, range, hit);
+    }
+
+    /**
+    * Updates the cells crossed by a ray with free evidence,
+    * and the end cell with occupied evidence if the ray hit something
+    *
+    * @param float originX the x coordinate the ray starts from
+    * @param float originY the y coordinate the ray starts from
+    * @param float bearing the absolute direction of the ray
+    * @param float distance the length of the ray
+    * @param boolean hit true if an obstacle was detected at the end of the ray
+    * @return boolean true if the end cell just became occupied
+    */
+    public boolean integrateRay(float originX, float originY, float bearing, float distance, boolean hit) {
+        double angle = Math.toRadians(bearing);
+        float endX = originX + distance * (float)Math.cos(angle);
+        float endY = originY + distance * (float)Math.sin(angle);
+
+        int x0 = this.cellX(originX);
+        int y0 = this.cellY(originY);
+        int x1 = this.cellX(endX);
+        int y1 = this.cellY(endY);
+
+        // walk the ray with Bresenham's algorithm, leaving the end cell out
+        int dx = Math.abs(x1 - x0);
+        int dy = -Math.abs(y1 - y0);
+        int sx = x0 < x1 ? 1 : -1;
+        int sy = y0 < y1 ? 1 : -1;
+        int err = dx + dy;
+
+        while(x0 != x1 || y0 != y1) {
+            this.updateCell(x0, y0, LOG_ODDS_FREE);
+            int e2 = 2 * err;
+            if(e2 >= dy) {
+                err += dy;
+                x0 += sx;
+            }
+            if(e2 <= dx) {
+                err += dx;
+                y0 += sy;
+            }
+        }
+
+        // repeated hits on a known obstacle only reinforce its cell
+        return this.updateCell(x1, y1, hit ? LOG_ODDS_OCCUPIED : LOG_ODDS_FREE) && hit;
+    }
+
     /**
     * Register an obstacle, based on which bumper was touched
     *
@@ -65,14 +206,613 @@ public class MapKit {
             this.addObstacle(0, 3.0f);
         }
     }
-    
+
+    /**
+    * Tells if the cell containing a point is considered occupied
+    *
+    * @param float x the x coordinate of the point
+    * @param float y the y coordinate of the point
+    * @return boolean true if the point lies in an occupied cell
+    */
+    public boolean isOccupied(float x, float y) {
+        int cx = this.cellX(x);
+        int cy = this.cellY(y);
+        if(!this.inGrid(cx, cy)) {
+            return false;
+        }
+        return this.cells[cy * this.width + cx] > OCCUPIED_THRESHOLD;
+    }
+
+    /**
+    * Sets the log where obstacles appearing and disappearing are recorded
+    * The cells already occupied, such as those merged from a map store,
+    * are logged first, so that the log alone rebuilds the whole map
+    *
+    * @param MissionLog log the mission log, or null to stop logging
+    * @return void
+    */
+    public void setMissionLog(MissionLog log) {
+        this.missionLog = log;
+        if(log == null) {
+            return;
+        }
+        for(int i = 0; i < this.cells.length; i++) {
+            if(this.cells[i] > OCCUPIED_THRESHOLD) {
+                log.obstacle(true, this.centreX(i % this.width), this.centreY(i / this.width));
+            }
+        }
+    }
+
+    /**
+    * Sets the publisher told about cells becoming occupied or free
+    *
+    * @param TelemetryPublisher publisher the publisher, or null to stop telling
+    * @return void
+    */
+    public void setTelemetry(TelemetryPublisher publisher) {
+        this.telemetry = publisher;
+    }
+
+    /**
+    * Sets what is told about each piece of evidence added to the grid
+    *
+    * @param EvidenceListener listener the listener, or null to stop telling
+    * @return void
+    */
+    public void setEvidenceListener(EvidenceListener listener) {
+        this.evidenceListener = listener;
+    }
+
+    /*
+    #########################################################################
+    Map store
+    #########################################################################
+    */
+
+    /**
+    * Merges the map kept in a store into this one, then keeps the store up
+    * to date: saveChanges writes the tiles changed since the last save
+    * Evidence is merged by adding log-odds, so missions accumulate
+    *
+    * @param MapStore mapStore the store, made for this grid
+    * @return int the number of tiles read, -1 if the store could not be read
+    */
+    public int setStore(MapStore mapStore) {
+        int tileCount = this.tilesAcross * ((this.height + TILE_SIZE - 1) / TILE_SIZE);
+        this.dirtyTiles = new boolean[tileCount];
+        this.dirtyList = new int[tileCount];
+        this.dirtyCount = 0;
+        this.tileCells = new byte[TILE_SIZE * TILE_SIZE];
+
+        int loaded = 0;
+        try {
+            for(int tile = 0; tile < tileCount; tile++) {
+                if(mapStore.readTile(tile, this.tileCells)) {
+                    this.mergeTile(tile);
+                    loaded++;
+                }
+            }
+        } catch(IOException e) {
+            System.err.println("Failed to read map store");
+            return -1;
+        }
+        this.store = mapStore;
+        return loaded;
+    }
+
+    /**
+    * Writes the tiles changed since the last save to the store
+    *
+    * @return int the number of tiles written
+    */
+    public int saveChanges() {
+        if(this.store == null) {
+            return 0;
+        }
+        int written = this.dirtyCount;
+        try {
+            for(int i = 0; i < this.dirtyCount; i++) {
+                int tile = this.dirtyList[i];
+                this.copyTile(tile, this.tileCells);
+                this.store.writeTile(tile, this.tileCells);
+                this.dirtyTiles[tile] = false;
+            }
+        } catch(IOException e) {
+            // losing the store must not stop the mission
+            System.err.println("Failed to write map store");
+            this.store = null;
+        }
+        this.dirtyCount = 0;
+        return written;
+    }
+
+    /**
+    * Saves the last changes and closes the store
+    *
+    * @return void
+    */
+    public void closeStore() {
+        this.saveChanges();
+        if(this.store == null) {
+            return;
+        }
+        try {
+            this.store.close();
+        } catch(IOException e) {
+            System.err.println("Failed to close map store");
+        }
+        this.store = null;
+    }
+
+    /*
+    #########################################################################
+    Snapshots
+    #########################################################################
+    */
+
+    /**
+    * Returns a read-only view of the grid as it is now
+    * Tiles unchanged since the last snapshot are shared with it, and the
+    * same snapshot is returned until a cell changes. Must be called by the
+    * thread writing the map; the snapshot can then be read from any thread
+    *
+    * @return MapSnapshot the snapshot
+    */
+    public MapSnapshot snapshot() {
+        if(this.snapshot != null && this.snapshot.getVersion() == this.version) {
+            return this.snapshot;
+        }
+        int tileCount = this.tilesAcross * ((this.height + TILE_SIZE - 1) / TILE_SIZE);
+        byte[][] tiles = new byte[tileCount][];
+        if(this.snapshot == null) {
+            // changes are only tracked once there is a snapshot to compare with
+            this.changedTiles = new boolean[tileCount];
+            this.changedList = new int[tileCount];
+            for(int tile = 0; tile < tileCount; tile++) {
+                tiles[tile] = this.newTile(tile);
+            }
+        }
+        else {
+            for(int i = 0; i < this.changedCount; i++) {
+                int tile = this.changedList[i];
+                tiles[tile] = this.newTile(tile);
+                this.changedTiles[tile] = false;
+            }
+        }
+        this.changedCount = 0;
+        this.snapshot = new MapSnapshot(this.width, this.height, this.cellSize, this.version, tiles, this.snapshot);
+        return this.snapshot;
+    }
+
+    /**
+    * Returns the version of the map
+    * The version goes up each time a cell changes
+    *
+    * @return long the map version
+    */
+    public long getVersion() {
+        return this.version;
+    }
+
     /**
-    * Returns an 2-dimension array containing X and Y coordinates of detected objects.
+    * Returns the number of cells along the x axis
+    *
+    * @return int the grid's width
+    */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+    * Returns the number of cells along the y axis
+    *
+    * @return int the grid's height
+    */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+    * Returns the side of a cell
+    *
+    * @return float the cell size, in cm
+    */
+    public float getCellSize() {
+        return this.cellSize;
+    }
+
+    /*
+    #########################################################################
+    Spatial queries
+    #########################################################################
+    */
+    // the grid is its own spatial index: queries only visit the cells
+    // around the area of interest, whatever the number of obstacles
+
+    /**
+    * Finds the closest known obstacle to a point
+    *
+    * @param float x the x coordinate of the point
+    * @param float y the y coordinate of the point
+    * @param float maxRange the search radius
+    * @param float[] result receives the obstacle's x and y coordinates
+    * @return float the distance to the obstacle, -1 if none is within maxRange
+    */
+    public float nearestObstacle(float x, float y, float maxRange, float[] result) {
+        return this.nearestObstacles(x, y, 1, maxRange, result) > 0 ? this.distance(x, y, result, 0) : -1.0f;
+    }
+
+    /**
+    * Finds the k closest known obstacles to a point, searching rings of
+    * cells outwards until no closer obstacle can be found
+    *
+    * @param float x the x coordinate of the point
+    * @param float y the y coordinate of the point
+    * @param int k the number of obstacles wanted
+    * @param float maxRange the search radius
+    * @param float[] result receives x,y pairs, closest first (at least 2k long)
+    * @return int the number of obstacles found
+    */
+    public int nearestObstacles(float x, float y, int k, float maxRange, float[] result) {
+        int cx = this.cellX(x);
+        int cy = this.cellY(y);
+        int maxRing = (int)(maxRange / this.cellSize) + 1;
+        int found = 0;
+
+        for(int ring = 0; ring <= maxRing; ring++) {
+            // no cell in this ring can beat the k-th obstacle already found
+            if(found == k && this.distance(x, y, result, k - 1) <= ((float)ring - 0.5f) * this.cellSize) {
+                break;
+            }
+            for(int iy = cy - ring; iy <= cy + ring; iy++) {
+                // inside the ring only the first and last columns are visited
+                int step = (ring == 0 || iy == cy - ring || iy == cy + ring) ? 1 : 2 * ring;
+                for(int ix = cx - ring; ix <= cx + ring; ix += step) {
+                    if(!this.inGrid(ix, iy) || this.cells[iy * this.width + ix] <= OCCUPIED_THRESHOLD) {
+                        continue;
+                    }
+                    float ox = this.centreX(ix);
+                    float oy = this.centreY(iy);
+                    float d = (float)Math.sqrt((ox - x) * (ox - x) + (oy - y) * (oy - y));
+                    if(d > maxRange || (found == k && d >= this.distance(x, y, result, k - 1))) {
+                        continue;
+                    }
+                    // insertion sort into the result array
+                    int slot = found < k ? found++ : k - 1;
+                    while(slot > 0 && this.distance(x, y, result, slot - 1) > d) {
+                        result[2 * slot] = result[2 * slot - 2];
+                        result[2 * slot + 1] = result[2 * slot - 1];
+                        slot--;
+                    }
+                    result[2 * slot] = ox;
+                    result[2 * slot + 1] = oy;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+    * Counts the obstacles inside an axis-aligned box
+    *
+    * @param float minX the left edge of the box
+    * @param float minY the bottom edge of the box
+    * @param float maxX the right edge of the box
+    * @param float maxY the top edge of the box
+    * @return int the number of occupied cells in the box
+    */
+    public int countObstacles(float minX, float minY, float maxX, float maxY) {
+        int x0 = Math.max(0, this.cellX(minX));
+        int y0 = Math.max(0, this.cellY(minY));
+        int x1 = Math.min(this.width - 1, this.cellX(maxX));
+        int y1 = Math.min(this.height - 1, this.cellY(maxY));
+        int count = 0;
+        for(int iy = y0; iy <= y1; iy++) {
+            for(int ix = x0; ix <= x1; ix++) {
+                if(this.cells[iy * this.width + ix] > OCCUPIED_THRESHOLD) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+    * Sums up what is known inside an axis-aligned box
+    *
+    * @param float minX the left edge of the box
+    * @param float minY the bottom edge of the box
+    * @param float maxX the right edge of the box
+    * @param float maxY the top edge of the box
+    * @param int[] result receives the numbers of free, occupied and unknown cells in the box
+    * @return void
+    */
+    public void surveyBox(float minX, float minY, float maxX, float maxY, int[] result) {
+        int x0 = Math.max(0, this.cellX(minX));
+        int y0 = Math.max(0, this.cellY(minY));
+        int x1 = Math.min(this.width - 1, this.cellX(maxX));
+        int y1 = Math.min(this.height - 1, this.cellY(maxY));
+        int free = 0;
+        int occupied = 0;
+        int unknown = 0;
+        for(int iy = y0; iy <= y1; iy++) {
+            for(int ix = x0; ix <= x1; ix++) {
+                int value = this.cells[iy * this.width + ix];
+                if(value > OCCUPIED_THRESHOLD) {
+                    occupied++;
+                }
+                else if(value < 0) {
+                    free++;
+                }
+                else if(value == 0) {
+                    unknown++;
+                }
+            }
+        }
+        result[0] = free;
+        result[1] = occupied;
+        result[2] = unknown;
+    }
+
+    /**
+    * Measures the free distance along a ray
+    *
+    * @param float originX the x coordinate the ray starts from
+    * @param float originY the y coordinate the ray starts from
+    * @param float bearing the absolute direction of the ray
+    * @param float maxRange the length of the ray
+    * @return float the distance to the first obstacle, or maxRange if there is none
+    */
+    public float rayDistance(float originX, float originY, float bearing, float maxRange) {
+        double angle = Math.toRadians(bearing);
+        float dirX = (float)Math.cos(angle);
+        float dirY = (float)Math.sin(angle);
+        // sample the ray every half cell
+        float step = this.cellSize / 2.0f;
+        for(float d = 0.0f; d < maxRange; d += step) {
+            int cx = this.cellX(originX + d * dirX);
+            int cy = this.cellY(originY + d * dirY);
+            if(!this.inGrid(cx, cy)) {
+                break;
+            }
+            if(this.cells[cy * this.width + cx] > OCCUPIED_THRESHOLD) {
+                return d;
+            }
+        }
+        return maxRange;
+    }
+
+    /**
+    * Tells if a corridor along a segment is free of known obstacles
+    *
+    * @param float x0 the x coordinate of the start of the segment
+    * @param float y0 the y coordinate of the start of the segment
+    * @param float x1 the x coordinate of the end of the segment
+    * @param float y1 the y coordinate of the end of the segment
+    * @param float clearance the half-width of the corridor
+    * @return boolean true if no obstacle is closer than clearance to the segment
+    */
+    public boolean isCorridorClear(float x0, float y0, float x1, float y1, float clearance) {
+        int minX = Math.max(0, this.cellX(Math.min(x0, x1) - clearance));
+        int minY = Math.max(0, this.cellY(Math.min(y0, y1) - clearance));
+        int maxX = Math.min(this.width - 1, this.cellX(Math.max(x0, x1) + clearance));
+        int maxY = Math.min(this.height - 1, this.cellY(Math.max(y0, y1) + clearance));
+
+        float segX = x1 - x0;
+        float segY = y1 - y0;
+        float length2 = segX * segX + segY * segY;
+        // obstacles are cells, so allow for the distance from the centre to a corner
+        float limit = clearance + this.cellSize * 0.7071f;
+        float limit2 = limit * limit;
+
+        for(int iy = minY; iy <= maxY; iy++) {
+            for(int ix = minX; ix <= maxX; ix++) {
+                if(this.cells[iy * this.width + ix] <= OCCUPIED_THRESHOLD) {
+                    continue;
+                }
+                float px = this.centreX(ix) - x0;
+                float py = this.centreY(iy) - y0;
+                float t = length2 > 0.0f ? (px * segX + py * segY) / length2 : 0.0f;
+                t = t < 0.0f ? 0.0f : (t > 1.0f ? 1.0f : t);
+                float ex = px - t * segX;
+                float ey = py - t * segY;
+                if(ex * ex + ey * ey <= limit2) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+    * Returns the area the rover has seen, free or occupied
+    *
+    * @return float the area of the cells holding any evidence, in square cm
+    */
+    public float getExploredArea() {
+        int count = 0;
+        for(int i = 0; i < this.cells.length; i++) {
+            if(this.cells[i] != 0) {
+                count++;
+            }
+        }
+        return count * this.cellSize * this.cellSize;
+    }
+
+    /**
+    * Returns the X and Y coordinates of the centre of every occupied cell.
     *
     * @return Point[] array of obstacles
     */
     public Point[] getMap() {
-        Point[] map = this.pointsMap.toArray(new Point[this.pointsMap.size()]);
+        int count = 0;
+        for(int i = 0; i < this.cells.length; i++) {
+            if(this.cells[i] > OCCUPIED_THRESHOLD) {
+                count++;
+            }
+        }
+
+        Point[] map = new Point[count];
+        int j = 0;
+        for(int i = 0; i < this.cells.length && j < count; i++) {
+            if(this.cells[i] > OCCUPIED_THRESHOLD) {
+                map[j] = new Point(this.centreX(i % this.width), this.centreY(i / this.width));
+                j++;
+            }
+        }
         return map;
-    } 
-}
\ No newline at end of file
+    }
+
+    /*
+    #########################################################################
+    Grid helpers
+    #########################################################################
+    */
+
+    /**
+    * Adds evidence to a cell
+    *
+    * @return boolean true if the cell crossed the occupied threshold either way
+    */
+    private boolean updateCell(int cx, int cy, int delta) {
+        if(!this.inGrid(cx, cy)) {
+            return false;
+        }
+        if(this.evidenceListener != null) {
+            this.evidenceListener.evidenceAdded(cx, cy, delta);
+        }
+        int index = cy * this.width + cx;
+        int previous = this.cells[index];
+        int value = previous + delta;
+        if(value > LOG_ODDS_MAX) {
+            value = LOG_ODDS_MAX;
+        }
+        else if(value < LOG_ODDS_MIN) {
+            value = LOG_ODDS_MIN;
+        }
+        this.cells[index] = (byte)value;
+        if(value != previous) {
+            this.version++;
+            if(this.changedTiles != null) {
+                this.markChanged(cx, cy);
+            }
+            if(this.store != null) {
+                this.markDirty(cx, cy);
+            }
+        }
+
+        boolean changed = (previous > OCCUPIED_THRESHOLD) != (value > OCCUPIED_THRESHOLD);
+        if(changed && this.missionLog != null) {
+            this.missionLog.obstacle(value > OCCUPIED_THRESHOLD, this.centreX(cx), this.centreY(cy));
+        }
+        if(changed && this.telemetry != null) {
+            this.telemetry.cell(value > OCCUPIED_THRESHOLD, cx, cy);
+        }
+        return changed;
+    }
+
+    private void markDirty(int cx, int cy) {
+        int tile = (cy / TILE_SIZE) * this.tilesAcross + cx / TILE_SIZE;
+        if(!this.dirtyTiles[tile]) {
+            this.dirtyTiles[tile] = true;
+            this.dirtyList[this.dirtyCount++] = tile;
+        }
+    }
+
+    private void markChanged(int cx, int cy) {
+        int tile = (cy / TILE_SIZE) * this.tilesAcross + cx / TILE_SIZE;
+        if(!this.changedTiles[tile]) {
+            this.changedTiles[tile] = true;
+            this.changedList[this.changedCount++] = tile;
+        }
+    }
+
+    private byte[] newTile(int tile) {
+        byte[] copy = new byte[TILE_SIZE * TILE_SIZE];
+        this.copyTile(tile, copy);
+        return copy;
+    }
+
+    /**
+    * Copies a tile of the grid, padding past the grid's edge with unknown cells
+    */
+    private void copyTile(int tile, byte[] destination) {
+        int x0 = (tile % this.tilesAcross) * TILE_SIZE;
+        int y0 = (tile / this.tilesAcross) * TILE_SIZE;
+        int columns = Math.min(TILE_SIZE, this.width - x0);
+        int rows = Math.min(TILE_SIZE, this.height - y0);
+        if(columns < TILE_SIZE || rows < TILE_SIZE) {
+            for(int i = 0; i < destination.length; i++) {
+                destination[i] = 0;
+            }
+        }
+        for(int row = 0; row < rows; row++) {
+            System.arraycopy(this.cells, (y0 + row) * this.width + x0, destination, row * TILE_SIZE, columns);
+        }
+    }
+
+    /**
+    * Adds the evidence in tileCells to a tile of the grid
+    * The tile is saved again if the grid already held evidence there
+    */
+    private void mergeTile(int tile) {
+        int x0 = (tile % this.tilesAcross) * TILE_SIZE;
+        int y0 = (tile / this.tilesAcross) * TILE_SIZE;
+        int columns = Math.min(TILE_SIZE, this.width - x0);
+        int rows = Math.min(TILE_SIZE, this.height - y0);
+        boolean changed = false;
+        boolean modified = false;
+        for(int row = 0; row < rows; row++) {
+            int index = (y0 + row) * this.width + x0;
+            int source = row * TILE_SIZE;
+            for(int column = 0; column < columns; column++) {
+                int stored = this.tileCells[source + column];
+                int value = this.cells[index + column] + stored;
+                if(value > LOG_ODDS_MAX) {
+                    value = LOG_ODDS_MAX;
+                }
+                else if(value < LOG_ODDS_MIN) {
+                    value = LOG_ODDS_MIN;
+                }
+                modified |= value != this.cells[index + column];
+                this.cells[index + column] = (byte)value;
+                changed |= value != stored;
+            }
+        }
+        if(changed) {
+            this.markDirty(x0, y0);
+        }
+        if(modified) {
+            this.version++;
+            if(this.changedTiles != null) {
+                this.markChanged(x0, y0);
+            }
+        }
+    }
+
+    private float distance(float x, float y, float[] points, int index) {
+        float dx = points[2 * index] - x;
+        float dy = points[2 * index + 1] - y;
+        return (float)Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private boolean inGrid(int cx, int cy) {
+        return cx >= 0 && cy >= 0 && cx < this.width && cy < this.height;
+    }
+
+    private int cellX(float x) {
+        return (int)Math.floor(x / this.cellSize) + this.width / 2;
+    }
+
+    private int cellY(float y) {
+        return (int)Math.floor(y / this.cellSize) + this.height / 2;
+    }
+
+    private float centreX(int cx) {
+        return ((float)(cx - this.width / 2) + 0.5f) * this.cellSize;
+    }
+
+    private float centreY(int cy) {
+        return ((float)(cy - this.height / 2) + 0.5f) * this.cellSize;
+    }
+}
@@ -0,0 +1,232 @@
+import lejos.geom.Point;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MapSnapshot class
+*
+* Read-only view of a MapKit grid as it was at one version. Snapshots are
+* handed out by MapKit.snapshot and never change afterwards, so a planner,
+* a logger or an exporter can keep one as long as it likes, on any thread,
+* while the rover goes on mapping.
+*
+* The grid is split into tiles of MapKit.TILE_SIZE cells. A snapshot only
+* copies the tiles changed since the one before; the others are shared
+* with it, and tiles that hold no evidence are all the same empty tile.
+*/
+public class MapSnapshot {
+
+    // every tile without evidence
+    private static final byte[] EMPTY_TILE = new byte[MapKit.TILE_SIZE * MapKit.TILE_SIZE];
+
+    private final int width;
+    private final int height;
+    private final float cellSize;
+    private final int tilesAcross;
+    private final long version;
+    // row-major tiles of TILE_SIZE x TILE_SIZE cells, padded past the grid's edge
+    private final byte[][] tiles;
+
+    /**
+    * Constructor
+    * The tiles given are owned by the snapshot from now on, and must not be
+    * written to. Missing tiles are shared with the previous snapshot
+    *
+    * @param int gridWidth number of cells along the x axis
+    * @param int gridHeight number of cells along the y axis
+    * @param float cellSize side of a cell, in cm
+    * @param long mapVersion the version of the map this is a view of
+    * @param byte[][] gridTiles the grid's tiles, row by row, null where unchanged
+    * @param MapSnapshot previous the snapshot before this one, null for the first
+    */
+    public MapSnapshot(int gridWidth, int gridHeight, float cellSize, long mapVersion, byte[][] gridTiles,
+            MapSnapshot previous) {
+        this.width = gridWidth;
+        this.height = gridHeight;
+        this.cellSize = cellSize;
+        this.tilesAcross = (gridWidth + MapKit.TILE_SIZE - 1) / MapKit.TILE_SIZE;
+        this.version = mapVersion;
+        for(int i = 0; i < gridTiles.length; i++) {
+            if(gridTiles[i] == null) {
+                gridTiles[i] = previous.tiles[i];
+            }
+            else if(isEmpty(gridTiles[i])) {
+                gridTiles[i] = EMPTY_TILE;
+            }
+        }
+        this.tiles = gridTiles;
+    }
+
+    /**
+    * Returns the log-odds of a cell
+    *
+    * @param int cx the cell's column
+    * @param int cy the cell's row
+    * @return int the log-odds, negative if free, positive if occupied, 0 if unknown
+    */
+    public int getLogOdds(int cx, int cy) {
+        byte[] tile = this.tiles[(cy / MapKit.TILE_SIZE) * this.tilesAcross + cx / MapKit.TILE_SIZE];
+        return tile[(cy % MapKit.TILE_SIZE) * MapKit.TILE_SIZE + cx % MapKit.TILE_SIZE];
+    }
+
+    /**
+    * Copies one row of the grid
+    *
+    * @param int cy the row
+    * @param byte[] row receives the log-odds of the row's cells, at least getWidth() long
+    * @return void
+    */
+    public void readRow(int cy, byte[] row) {
+        int first = (cy / MapKit.TILE_SIZE) * this.tilesAcross;
+        int offset = (cy % MapKit.TILE_SIZE) * MapKit.TILE_SIZE;
+        for(int x0 = 0; x0 < this.width; x0 += MapKit.TILE_SIZE) {
+            System.arraycopy(this.tiles[first + x0 / MapKit.TILE_SIZE], offset, row, x0,
+                Math.min(MapKit.TILE_SIZE, this.width - x0));
+        }
+    }
+
+    /**
+    * Tells if the cell containing a point is considered occupied
+    *
+    * @param float x the x coordinate of the point
+    * @param float y the y coordinate of the point
+    * @return boolean true if the point lies in an occupied cell
+    */
+    public boolean isOccupied(float x, float y) {
+        int cx = (int)Math.floor(x / this.cellSize) + this.width / 2;
+        int cy = (int)Math.floor(y / this.cellSize) + this.height / 2;
+        if(cx < 0 || cy < 0 || cx >= this.width || cy >= this.height) {
+            return false;
+        }
+        return this.getLogOdds(cx, cy) > MapKit.OCCUPIED_THRESHOLD;
+    }
+
+    /**
+    * Returns the number of occupied cells
+    *
+    * @return int the obstacle count
+    */
+    public int countObstacles() {
+        int count = 0;
+        for(int i = 0; i < this.tiles.length; i++) {
+            byte[] tile = this.tiles[i];
+            if(tile == EMPTY_TILE) {
+                continue;
+            }
+            // cells past the grid's edge are unknown, they never count
+            for(int j = 0; j < tile.length; j++) {
+                if(tile[j] > MapKit.OCCUPIED_THRESHOLD) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+    * Returns the area the rover had seen, free or occupied
+    *
+    * @return float the area of the cells holding any evidence, in square cm
+    */
+    public float getExploredArea() {
+        int count = 0;
+        for(int i = 0; i < this.tiles.length; i++) {
+            byte[] tile = this.tiles[i];
+            if(tile == EMPTY_TILE) {
+                continue;
+            }
+            for(int j = 0; j < tile.length; j++) {
+                if(tile[j] != 0) {
+                    count++;
+                }
+            }
+        }
+        return count * this.cellSize * this.cellSize;
+    }
+
+    /**
+    * Returns the X and Y coordinates of the centre of every occupied cell,
+    * in the same order as MapKit.getMap
+    *
+    * @return Point[] array of obstacles
+    */
+    public Point[] getMap() {
+        Point[] map = new Point[this.countObstacles()];
+        int j = 0;
+        for(int cy = 0; cy < this.height; cy++) {
+            for(int cx = 0; cx < this.width; cx++) {
+                if(this.getLogOdds(cx, cy) > MapKit.OCCUPIED_THRESHOLD) {
+                    map[j++] = new Point(((float)(cx - this.width / 2) + 0.5f) * this.cellSize,
+                        ((float)(cy - this.height / 2) + 0.5f) * this.cellSize);
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+    * Returns the number of tiles shared with another snapshot of the same map
+    *
+    * @param MapSnapshot other the other snapshot
+    * @return int the number of tiles both hold, not counting empty ones
+    */
+    public int countSharedTiles(MapSnapshot other) {
+        int count = 0;
+        for(int i = 0; i < this.tiles.length && i < other.tiles.length; i++) {
+            if(this.tiles[i] == other.tiles[i] && this.tiles[i] != EMPTY_TILE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+    * Returns the number of tiles without any evidence, which take no memory
+    *
+    * @return int the empty tile count
+    */
+    public int countEmptyTiles() {
+        int count = 0;
+        for(int i = 0; i < this.tiles.length; i++) {
+            if(this.tiles[i] == EMPTY_TILE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+    * Returns the version of the map this snapshot shows
+    * The version goes up each time a cell of the map changes
+    *
+    * @return long the map version
+    */
+    public long getVersion() {
+        return this.version;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public float getCellSize() {
+        return this.cellSize;
+    }
+
+    public int getTileCount() {
+        return this.tiles.length;
+    }
+
+    private static boolean isEmpty(byte[] tile) {
+        for(int i = 0; i < tile.length; i++) {
+            if(tile[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
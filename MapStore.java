@@ -0,0 +1,48 @@
+import java.io.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MapStore interface
+*
+* Keeps a MapKit grid between missions, as square tiles of MapKit.TILE_SIZE
+* cells numbered row by row from the grid's bottom-left corner. A tile's
+* cells are its log-odds bytes, row by row; cells past the grid's edge are
+* padding and are never read back.
+*
+* A store is made for one grid size and cell size, and refuses others.
+*/
+public interface MapStore {
+
+    /**
+    * Copies a stored tile
+    *
+    * @param int tile the tile's number
+    * @param byte[] tileCells receives the tile's cells (TILE_SIZE x TILE_SIZE)
+    * @return boolean false if the tile was never written, leaving tileCells untouched
+    */
+    public boolean readTile(int tile, byte[] tileCells) throws IOException;
+
+    /**
+    * Stores a tile, replacing what was stored before
+    *
+    * @param int tile the tile's number
+    * @param byte[] tileCells the tile's cells (TILE_SIZE x TILE_SIZE)
+    * @return void
+    */
+    public void writeTile(int tile, byte[] tileCells) throws IOException;
+
+    /**
+    * Makes sure the tiles written so far survive the program stopping
+    *
+    * @return void
+    */
+    public void flush() throws IOException;
+
+    /**
+    * Flushes the store and releases it
+    *
+    * @return void
+    */
+    public void close() throws IOException;
+}
@@ -0,0 +1,43 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MastMotor interface
+*
+* The motor turning the sensor mast. The methods mirror NXTRegulatedMotor.
+*/
+public interface MastMotor {
+    
+    /**
+    * Rotates to an absolute position and waits for the end of the move
+    *
+    * @param int angle the target position, in degrees
+    * @return void
+    */
+    public void rotateTo(int angle);
+    
+    /**
+    * Rotates to an absolute position
+    *
+    * @param int angle the target position, in degrees
+    * @param boolean immediateReturn true to return as soon as the move started
+    * @return void
+    */
+    public void rotateTo(int angle, boolean immediateReturn);
+    
+    /**
+    * Returns the position of the motor
+    *
+    * @return int the tachometer position, in degrees
+    */
+    public int getPosition();
+    
+    public boolean isMoving();
+    
+    public void setSpeed(int speed);
+    
+    public void stop();
+    
+    public void flt(boolean immediateReturn);
+    
+    public void resetTachoCount();
+}
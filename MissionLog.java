@@ -0,0 +1,263 @@
+import java.io.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MissionLog class
+*
+* Append-only binary log of everything the rover does during a mission:
+* poses, sonar sweeps, bumps and changes to the map.
+*
+* Records are encoded into a fixed buffer and written out in batches.
+* Only whole records ever reach the file, so a log cut short by an
+* interruption can still be read up to its last batch. Logging, flushing
+* and closing hold the log's lock, so the thread handling the user's
+* interruption can close it while the control loop is logging.
+*
+* File layout: MAGIC (int), VERSION (byte), start time (int, s), then records.
+* Each record is a type (byte), a time since the start of the log (int, ms)
+* and a payload:
+*   POSE              x, y, heading (floats)
+*   SCAN              x, y, heading (floats), count (byte), count x [bearing, distance] (shorts)
+*   BUMP              side (byte), x, y, heading (floats)
+*   OBSTACLE_ADDED    x, y (floats)
+*   OBSTACLE_CLEARED  x, y (floats)
+*/
+public class MissionLog {
+
+    public static final int MAGIC = 0x524C4F47;
+    public static final byte VERSION = 1;
+
+    public static final byte POSE = 1;
+    public static final byte SCAN = 2;
+    public static final byte BUMP = 3;
+    public static final byte OBSTACLE_ADDED = 4;
+    public static final byte OBSTACLE_CLEARED = 5;
+
+    private static final int DEFAULT_BUFFER_SIZE = 512;
+    private static final int DEFAULT_BATCH = 16;
+
+    // type and time stamp
+    private static final int HEADER_SIZE = 5;
+
+    private OutputStream out;
+    private byte[] buffer;
+    private int used;
+
+    private int batch;
+    private int pendingRecords;
+
+    private Clock clock;
+    private long startTime;
+    private boolean failed;
+
+    private int recordCount;
+    private long byteCount;
+
+    /**
+    * Constructor
+    *
+    * @param OutputStream stream where the log is written
+    * @param Clock timeSource the clock used to time stamp records
+    * @param int startSeconds the mission start time, written in the header
+    * @param int bufferSize the size of the record buffer, in bytes
+    * @param int batchRecords the number of records written out together
+    */
+    public MissionLog(OutputStream stream, Clock timeSource, int startSeconds, int bufferSize, int batchRecords) {
+
+        this.out = stream;
+        this.buffer = new byte[bufferSize];
+        this.used = 0;
+        this.batch = batchRecords;
+        this.clock = timeSource;
+        this.startTime = timeSource.currentTimeMillis();
+        this.failed = false;
+
+        this.writeInt(MAGIC);
+        this.buffer[this.used++] = VERSION;
+        this.writeInt(startSeconds);
+        this.flush();
+    }
+
+    /**
+    * Creates a log with the default buffer and batch sizes
+    *
+    * @param OutputStream stream where the log is written
+    * @param Clock timeSource the clock used to time stamp records
+    * @param int startSeconds the mission start time
+    * @return MissionLog the log
+    */
+    public static MissionLog open(OutputStream stream, Clock timeSource, int startSeconds) {
+        return new MissionLog(stream, timeSource, startSeconds, DEFAULT_BUFFER_SIZE, DEFAULT_BATCH);
+    }
+
+    /**
+    * Records the rover's pose
+    *
+    * @param float x the rover's x coordinate
+    * @param float y the rover's y coordinate
+    * @param float heading the rover's heading
+    * @return void
+    */
+    public synchronized void pose(float x, float y, float heading) {
+        this.begin(POSE, 12);
+        this.writeFloat(x);
+        this.writeFloat(y);
+        this.writeFloat(heading);
+        this.end();
+    }
+
+    /**
+    * Records a sweep and the pose it was taken from
+    *
+    * @param ScanFrame frame the sweep
+    * @return void
+    */
+    public synchronized void scan(ScanFrame frame) {
+        int count = frame.size() > 255 ? 255 : frame.size();
+        this.begin(SCAN, 13 + 4 * count);
+        this.writeFloat(frame.getX());
+        this.writeFloat(frame.getY());
+        this.writeFloat(frame.getHeading());
+        this.buffer[this.used++] = (byte)count;
+        for(int i = 0; i < count; i++) {
+            this.writeShort(frame.getBearing(i));
+            this.writeShort(frame.getDistance(i));
+        }
+        this.end();
+    }
+
+    /**
+    * Records a bump and the pose it happened at
+    *
+    * @param int side the bump side (-1, 1, or 2)
+    * @param float x the rover's x coordinate
+    * @param float y the rover's y coordinate
+    * @param float heading the rover's heading
+    * @return void
+    */
+    public synchronized void bump(int side, float x, float y, float heading) {
+        this.begin(BUMP, 13);
+        this.buffer[this.used++] = (byte)side;
+        this.writeFloat(x);
+        this.writeFloat(y);
+        this.writeFloat(heading);
+        this.end();
+    }
+
+    /**
+    * Records an obstacle appearing on or disappearing from the map
+    *
+    * @param boolean added true if the obstacle was added, false if it was cleared
+    * @param float x the obstacle's x coordinate
+    * @param float y the obstacle's y coordinate
+    * @return void
+    */
+    public synchronized void obstacle(boolean added, float x, float y) {
+        this.begin(added ? OBSTACLE_ADDED : OBSTACLE_CLEARED, 8);
+        this.writeFloat(x);
+        this.writeFloat(y);
+        this.end();
+    }
+
+    /**
+    * Writes out the records still in the buffer
+    *
+    * @return void
+    */
+    public synchronized void flush() {
+        if(this.used == 0 || this.failed) {
+            this.used = 0;
+            this.pendingRecords = 0;
+            return;
+        }
+        try {
+            this.out.write(this.buffer, 0, this.used);
+            this.out.flush();
+            this.byteCount += this.used;
+        } catch(IOException e) {
+            // losing the log must not stop the mission
+            System.err.println("Failed to write mission log");
+            this.failed = true;
+        }
+        this.used = 0;
+        this.pendingRecords = 0;
+    }
+
+    /**
+    * Writes out the remaining records and closes the file
+    *
+    * @return void
+    */
+    public synchronized void close() {
+        if(this.out == null) {
+            return;
+        }
+        this.flush();
+        try {
+            this.out.close();
+        } catch(IOException e) {
+            System.err.println("Failed to close mission log");
+        }
+        // anything logged after this point is dropped
+        this.out = null;
+        this.failed = true;
+    }
+
+    /**
+    * Returns the number of records logged so far
+    *
+    * @return int the record count
+    */
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+    * Returns the number of bytes written to the stream so far
+    *
+    * @return long the byte count
+    */
+    public long getByteCount() {
+        return this.byteCount;
+    }
+
+    /*
+    #########################################################################
+    Encoding helpers
+    #########################################################################
+    */
+
+    private void begin(byte type, int payloadSize) {
+        // a record is never split across two writes
+        if(this.used + HEADER_SIZE + payloadSize > this.buffer.length) {
+            this.flush();
+        }
+        this.buffer[this.used++] = type;
+        this.writeInt((int)(this.clock.currentTimeMillis() - this.startTime));
+    }
+
+    private void end() {
+        this.recordCount++;
+        this.pendingRecords++;
+        if(this.pendingRecords >= this.batch) {
+            this.flush();
+        }
+    }
+
+    private void writeInt(int value) {
+        this.buffer[this.used++] = (byte)(value >>> 24);
+        this.buffer[this.used++] = (byte)(value >>> 16);
+        this.buffer[this.used++] = (byte)(value >>> 8);
+        this.buffer[this.used++] = (byte)value;
+    }
+
+    private void writeShort(int value) {
+        this.buffer[this.used++] = (byte)(value >>> 8);
+        this.buffer[this.used++] = (byte)value;
+    }
+
+    private void writeFloat(float value) {
+        this.writeInt(Float.floatToIntBits(value));
+    }
+}
@@ -0,0 +1,301 @@
+import java.io.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MissionMetrics class
+*
+* Counters and latency histograms for the control loop: how long sweeps,
+* moves, exploration steps and map updates take, how often the sensors
+* are checked for obstacles, and how long the rover takes to stop once
+* one is seen.
+*
+* The set of metrics is fixed, and every array is allocated in the
+* constructor, so recording never allocates. Each metric is recorded
+* from a single thread; a summary written while the rover runs may be
+* one sample behind.
+*
+* Histogram buckets are bounded by BOUNDS, in ms, and percentiles are
+* given as the upper bound of their bucket. Nested timings overlap:
+* sweeps and moves happen inside exploration steps.
+*/
+public class MissionMetrics {
+
+    // latencies
+    public static final int SWEEP = 0;
+    public static final int ROTATE = 1;
+    public static final int TRAVEL = 2;
+    public static final int STOP = 3;
+    public static final int OBSTACLE_POLL = 4;
+    public static final int MAP_UPDATE = 5;
+    public static final int EXPLORE_STEP = 6;
+    public static final int RETURN_HOME = 7;
+    public static final int FOLLOW_PATH = 8;
+
+    private static final String[] LATENCY_NAMES = {
+        "sweep", "rotate", "travel", "obstacle to stop", "obstacle poll",
+        "map update", "explore step", "return home", "follow path"
+    };
+
+    // counters
+    public static final int SONAR_CHECKS = 0;
+    public static final int BUMPER_CHECKS = 1;
+    public static final int SONAR_STOPS = 2;
+    public static final int BUMPER_STOPS = 3;
+    public static final int SWEEP_READINGS = 4;
+    public static final int SONAR_READS = 5;
+    public static final int SONAR_CACHE_HITS = 6;
+    public static final int SONAR_MODE_CHANGES = 7;
+
+    private static final String[] COUNTER_NAMES = {
+        "sonar checks", "bumper checks", "sonar stops", "bumper stops", "sweep readings",
+        "sonar reads", "sonar cache hits", "sonar mode changes"
+    };
+
+    // upper bounds of the histogram buckets, in ms; the last bucket holds everything above
+    private static final int[] BOUNDS = {0, 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private Clock clock;
+    private long startTime;
+
+    private int[][] buckets;
+    private int[] counts;
+    private long[] totals;
+    private long[] maxima;
+    private int[] counters;
+
+    /**
+    * Constructor
+    *
+    * @param Clock timeSource the clock used to time operations
+    */
+    public MissionMetrics(Clock timeSource) {
+        this.clock = timeSource;
+        this.buckets = new int[LATENCY_NAMES.length][BOUNDS.length + 1];
+        this.counts = new int[LATENCY_NAMES.length];
+        this.totals = new long[LATENCY_NAMES.length];
+        this.maxima = new long[LATENCY_NAMES.length];
+        this.counters = new int[COUNTER_NAMES.length];
+        this.startTime = timeSource.currentTimeMillis();
+    }
+
+    /**
+    * Returns the current time, to pass to recordSince once the operation is over
+    *
+    * @return long the time, in ms
+    */
+    public long now() {
+        return this.clock.currentTimeMillis();
+    }
+
+    /**
+    * Records the time taken by an operation started at the given time
+    *
+    * @param int latency the latency measured (SWEEP, ROTATE...)
+    * @param long startMillis the time the operation started, from now()
+    * @return void
+    */
+    public void recordSince(int latency, long startMillis) {
+        this.record(latency, this.clock.currentTimeMillis() - startMillis);
+    }
+
+    /**
+    * Records a latency
+    *
+    * @param int latency the latency measured (SWEEP, ROTATE...)
+    * @param long millis the time taken, in ms
+    * @return void
+    */
+    public void record(int latency, long millis) {
+        int bucket = 0;
+        while(bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+        this.buckets[latency][bucket]++;
+        this.counts[latency]++;
+        this.totals[latency] += millis;
+        if(millis > this.maxima[latency]) {
+            this.maxima[latency] = millis;
+        }
+    }
+
+    /**
+    * Adds one to a counter
+    *
+    * @param int counter the counter (SONAR_CHECKS, BUMPER_CHECKS...)
+    * @return void
+    */
+    public void increment(int counter) {
+        this.counters[counter]++;
+    }
+
+    /**
+    * Adds to a counter
+    *
+    * @param int counter the counter (SONAR_CHECKS, BUMPER_CHECKS...)
+    * @param int amount the amount added
+    * @return void
+    */
+    public void add(int counter, int amount) {
+        this.counters[counter] += amount;
+    }
+
+    /**
+    * Restarts every metric from zero, and the mission time from now
+    *
+    * @return void
+    */
+    public void reset() {
+        for(int i = 0; i < LATENCY_NAMES.length; i++) {
+            for(int j = 0; j <= BOUNDS.length; j++) {
+                this.buckets[i][j] = 0;
+            }
+            this.counts[i] = 0;
+            this.totals[i] = 0;
+            this.maxima[i] = 0;
+        }
+        for(int i = 0; i < COUNTER_NAMES.length; i++) {
+            this.counters[i] = 0;
+        }
+        this.startTime = this.clock.currentTimeMillis();
+    }
+
+    /*
+    #########################################################################
+    Accessor methods
+    #########################################################################
+    */
+
+    /**
+    * Returns the number of samples of a latency
+    *
+    * @param int latency the latency (SWEEP, ROTATE...)
+    * @return int the sample count
+    */
+    public int getCount(int latency) {
+        return this.counts[latency];
+    }
+
+    /**
+    * Returns the time spent in an operation, over all its samples
+    *
+    * @param int latency the latency (SWEEP, ROTATE...)
+    * @return long the total time, in ms
+    */
+    public long getTotal(int latency) {
+        return this.totals[latency];
+    }
+
+    /**
+    * Returns the longest sample of a latency
+    *
+    * @param int latency the latency (SWEEP, ROTATE...)
+    * @return long the longest time, in ms
+    */
+    public long getMax(int latency) {
+        return this.maxima[latency];
+    }
+
+    /**
+    * Returns a percentile of a latency, as the upper bound of its bucket
+    * In the last bucket, the longest sample is returned instead
+    *
+    * @param int latency the latency (SWEEP, ROTATE...)
+    * @param int percent the percentile, 0 to 100
+    * @return long the percentile, in ms, or 0 if there is no sample
+    */
+    public long getPercentile(int latency, int percent) {
+        int count = this.counts[latency];
+        if(count == 0) {
+            return 0;
+        }
+        // rank of the sample wanted, from 1
+        int rank = Math.max(1, (count * percent + 99) / 100);
+        int seen = 0;
+        for(int bucket = 0; bucket < BOUNDS.length; bucket++) {
+            seen += this.buckets[latency][bucket];
+            if(seen >= rank) {
+                return Math.min(BOUNDS[bucket], this.maxima[latency]);
+            }
+        }
+        return this.maxima[latency];
+    }
+
+    /**
+    * Returns a counter's value
+    *
+    * @param int counter the counter (SONAR_CHECKS, BUMPER_CHECKS...)
+    * @return int the value
+    */
+    public int getCounter(int counter) {
+        return this.counters[counter];
+    }
+
+    /**
+    * Returns the time since the metrics were created or reset
+    *
+    * @return long the elapsed time, in ms
+    */
+    public long getElapsed() {
+        return this.clock.currentTimeMillis() - this.startTime;
+    }
+
+    /*
+    #########################################################################
+    Summary
+    #########################################################################
+    */
+
+    /**
+    * Writes a table of every latency and counter
+    * Each latency's total is also given as a share of the mission time,
+    * and sensor checks as a rate over the time spent moving
+    *
+    * @param OutputStream stream where the summary is written
+    * @return void
+    */
+    public void writeSummary(OutputStream stream) throws IOException {
+        PrintStream out = new PrintStream(stream);
+        long elapsed = Math.max(1L, this.getElapsed());
+        out.println("mission time " + elapsed + " ms");
+        out.println(pad("latency (ms)", -18) + pad("count", 7) + pad("total", 9) + pad("share", 7)
+            + pad("mean", 7) + pad("p50", 7) + pad("p90", 7) + pad("p99", 7) + pad("max", 7));
+        for(int i = 0; i < LATENCY_NAMES.length; i++) {
+            int count = this.counts[i];
+            out.println(pad(LATENCY_NAMES[i], -18) + pad("" + count, 7) + pad("" + this.totals[i], 9)
+                + pad(this.totals[i] * 100 / elapsed + "%", 7)
+                + pad("" + (count == 0 ? 0 : this.totals[i] / count), 7)
+                + pad("" + this.getPercentile(i, 50), 7) + pad("" + this.getPercentile(i, 90), 7)
+                + pad("" + this.getPercentile(i, 99), 7) + pad("" + this.maxima[i], 7));
+        }
+
+        long moving = this.totals[ROTATE] + this.totals[TRAVEL];
+        out.println(pad("counter", -18) + pad("value", 7) + pad("per s moving", 14));
+        for(int i = 0; i < COUNTER_NAMES.length; i++) {
+            String rate = moving == 0 ? "-" : "" + (float)((int)(this.counters[i] * 10000L / moving)) / 10.0f;
+            out.println(pad(COUNTER_NAMES[i], -18) + pad("" + this.counters[i], 7) + pad(rate, 14));
+        }
+        out.flush();
+    }
+
+    /**
+    * Pads a cell of the summary table
+    *
+    * @param String text the cell's text
+    * @param int width the cell's width, negative to align left
+    * @return String the padded text
+    */
+    private static String pad(String text, int width) {
+        StringBuffer cell = new StringBuffer(Math.abs(width));
+        if(width < 0) {
+            cell.append(text);
+        }
+        for(int i = text.length(); i < Math.abs(width); i++) {
+            cell.append(' ');
+        }
+        if(width >= 0) {
+            cell.append(text);
+        }
+        return cell.toString();
+    }
+}
@@ -0,0 +1,305 @@
+import java.io.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MissionScheduler class
+*
+* Keeps a mission within its time budget, return home included. Before
+* each exploration step, it estimates how long the way home would take
+* from where the rover stands, over the map as it is known, and how long
+* the next step may take. Exploration stops as soon as one more step
+* would not leave enough time to get home.
+*
+* Mission time is counted from start() on the rover's clock, and never
+* goes backwards even if the clock does. How long a step takes is
+* estimated from the steps so far as a smoothed mean plus a couple of
+* smoothed deviations, so that a few long steps raise the estimate
+* quickly. The way home is planned again before every step, so a step
+* that leads the rover further away is paid for then, not reserved ahead.
+*/
+public class MissionScheduler {
+
+    // the way home is planned on this grid, in cm, as finishMission plans it
+    public static final float PLANNING_CELL = 20.0f;
+
+    // step time assumed before any step was timed, in ms
+    private static final float FIRST_STEP = 20000.0f;
+    // weights of a new sample in the smoothed mean and deviation
+    private static final float MEAN_GAIN = 0.125f;
+    private static final float DEVIATION_GAIN = 0.25f;
+    // deviation assumed from the first sample, as a share of it
+    private static final float FIRST_DEVIATION = 0.25f;
+    // deviations added to the mean step time
+    private static final float STEP_DEVIATIONS = 2.0f;
+
+    // the way home is longer than the plan: stops, sweeps and replans on the way
+    private static final float RETURN_FACTOR = 1.1f;
+    // turns to face the way home and to face north at the end, in degrees
+    private static final float RETURN_TURNS = 360.0f;
+    // straight line distance multiplied by this when no way home is known
+    private static final float DETOUR_FACTOR = 2.5f;
+
+    private Clock clock;
+    private PathPlanner planner;
+    private float travelSpeed;
+    private float rotateSpeed;
+    private boolean reserveReturn;
+
+    private long budget;
+    private long startTime;
+    private long elapsed;
+
+    // how long a step takes
+    private Estimate step;
+
+    private long returnEstimate;
+    private long returnStart;
+    private long finishTime;
+    private long returnEstimateAtStart;
+
+    /**
+    * Constructor
+    *
+    * @param Clock timeSource the rover's clock
+    * @param PathPlanner homePlanner the planner used to estimate the way home
+    * @param float roverTravelSpeed the rover's travel speed, in cm/s
+    * @param float roverRotateSpeed the rover's rotate speed, in degrees/s
+    */
+    public MissionScheduler(Clock timeSource, PathPlanner homePlanner, float roverTravelSpeed, float roverRotateSpeed) {
+        this.clock = timeSource;
+        this.planner = homePlanner;
+        this.travelSpeed = roverTravelSpeed;
+        this.rotateSpeed = roverRotateSpeed;
+        this.reserveReturn = true;
+        this.step = new Estimate(FIRST_STEP, STEP_DEVIATIONS);
+        this.returnEstimate = -1L;
+        this.returnStart = -1L;
+        this.finishTime = -1L;
+    }
+
+    /**
+    * Starts counting mission time from now, and forgets any earlier mission
+    *
+    * @param long missionBudget the time the whole mission may take, in ms
+    * @return void
+    */
+    public void start(long missionBudget) {
+        this.budget = missionBudget;
+        this.startTime = this.clock.currentTimeMillis();
+        this.elapsed = 0L;
+        this.step.reset();
+        this.returnEstimate = -1L;
+        this.returnStart = -1L;
+        this.finishTime = -1L;
+        this.returnEstimateAtStart = 0L;
+        this.planner.setGoal(0.0f, 0.0f);
+    }
+
+    /**
+    * Tells if there is time for one more exploration step from where the rover stands
+    *
+    * @param float x the rover's X coordinate
+    * @param float y the rover's Y coordinate
+    * @return boolean true if the rover can explore and still be home on budget
+    */
+    public boolean canExplore(float x, float y) {
+        long now = this.getElapsed();
+        this.returnEstimate = this.estimateReturn(x, y);
+        if(!this.reserveReturn) {
+            return now < this.budget;
+        }
+        return now + (long)this.getStepEstimate() + this.returnEstimate <= this.budget;
+    }
+
+    /**
+    * Adds the time an exploration step took to the step time estimate
+    *
+    * @param long millis the time the step took, in ms
+    * @return void
+    */
+    public void recordStep(long millis) {
+        this.step.add((float)millis);
+    }
+
+    /**
+    * Estimates how long the way home takes from a point, over the map as it is known
+    *
+    * @param float x the X coordinate of the point
+    * @param float y the Y coordinate of the point
+    * @return long the estimated time, in ms
+    */
+    public long estimateReturn(float x, float y) {
+        float distance;
+        if(this.planner.plan(x, y)) {
+            distance = this.planner.getPathLength();
+        }
+        else {
+            distance = (float)Math.sqrt(x * x + y * y) * DETOUR_FACTOR;
+        }
+        float seconds = distance / this.travelSpeed * RETURN_FACTOR + RETURN_TURNS / this.rotateSpeed;
+        return (long)(seconds * 1000.0f);
+    }
+
+    /**
+    * Marks the end of exploration and the start of the way home
+    *
+    * @return void
+    */
+    public void startReturn() {
+        this.returnStart = this.getElapsed();
+        this.returnEstimateAtStart = Math.max(0L, this.returnEstimate);
+    }
+
+    /**
+    * Marks the rover's arrival home
+    *
+    * @return void
+    */
+    public void finish() {
+        this.finishTime = this.getElapsed();
+    }
+
+    /**
+    * Chooses whether exploration leaves time to get home
+    *
+    * @param boolean enabled true to stop exploring in time to be home on budget,
+    *                        false to explore for the whole budget, then return
+    * @return void
+    */
+    public void setReturnReserve(boolean enabled) {
+        this.reserveReturn = enabled;
+    }
+
+    /*
+    #########################################################################
+    Accessor methods
+    #########################################################################
+    */
+
+    /**
+    * Returns the mission time, which never goes backwards
+    *
+    * @return long the time since start(), in ms
+    */
+    public long getElapsed() {
+        long now = this.clock.currentTimeMillis() - this.startTime;
+        if(now > this.elapsed) {
+            this.elapsed = now;
+        }
+        return this.elapsed;
+    }
+
+    /**
+    * Returns the time the next exploration step is expected to take, at most
+    *
+    * @return float the step time estimate, in ms
+    */
+    public float getStepEstimate() {
+        return this.step.getBound();
+    }
+
+    public long getBudget() {
+        return this.budget;
+    }
+
+    /**
+    * Returns the time spent exploring, up to now if the rover is still exploring
+    *
+    * @return long the exploration time, in ms
+    */
+    public long getExploreTime() {
+        return this.returnStart < 0 ? this.getElapsed() : this.returnStart;
+    }
+
+    /**
+    * Returns the time spent on the way home, up to now if the rover is not home yet
+    *
+    * @return long the return time, in ms, 0 if the return has not started
+    */
+    public long getReturnTime() {
+        if(this.returnStart < 0) {
+            return 0L;
+        }
+        return (this.finishTime < 0 ? this.getElapsed() : this.finishTime) - this.returnStart;
+    }
+
+    /**
+    * Returns the return time estimated when exploration stopped
+    *
+    * @return long the estimate, in ms, 0 if the return was never estimated
+    */
+    public long getReturnEstimate() {
+        return this.returnEstimateAtStart;
+    }
+
+    /**
+    * Returns how far over budget the mission went
+    *
+    * @return long the time past the budget, in ms, 0 if on budget
+    */
+    public long getOverrun() {
+        return Math.max(0L, this.getExploreTime() + this.getReturnTime() - this.budget);
+    }
+
+    /**
+    * Writes how the budget was spent
+    *
+    * @param OutputStream stream where the summary is written
+    * @return void
+    */
+    public void writeSummary(OutputStream stream) throws IOException {
+        PrintStream out = new PrintStream(stream);
+        long budgetShare = Math.max(1L, this.budget);
+        out.println("budget " + this.budget + " ms, explore " + this.getExploreTime() + " ms ("
+            + this.getExploreTime() * 100 / budgetShare + "%), return " + this.getReturnTime() + " ms ("
+            + this.getReturnTime() * 100 / budgetShare + "%, estimated " + this.returnEstimateAtStart
+            + " ms), overrun " + this.getOverrun() + " ms");
+        out.flush();
+    }
+
+    /**
+    * Smoothed mean and deviation of a series of samples
+    * The first sample replaces the initial guess
+    */
+    private static class Estimate {
+
+        private float guess;
+        private float deviations;
+        private float mean;
+        private float deviation;
+        private int count;
+
+        public Estimate(float initialGuess, float margin) {
+            this.guess = initialGuess;
+            this.deviations = margin;
+            this.reset();
+        }
+
+        public void reset() {
+            this.mean = this.guess;
+            this.deviation = this.guess * FIRST_DEVIATION;
+            this.count = 0;
+        }
+
+        public void add(float sample) {
+            if(this.count == 0) {
+                this.mean = sample;
+                this.deviation = sample * FIRST_DEVIATION;
+            }
+            else {
+                float error = sample - this.mean;
+                this.mean += MEAN_GAIN * error;
+                this.deviation += DEVIATION_GAIN * (Math.abs(error) - this.deviation);
+            }
+            this.count++;
+        }
+
+        /**
+        * Returns the value samples are unlikely to go over
+        */
+        public float getBound() {
+            return this.mean + this.deviations * this.deviation;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+import lejos.robotics.RegulatedMotor;
+import lejos.robotics.navigation.DifferentialPilot;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* NXTDriveBase class
+*
+* DifferentialPilot already provides everything DriveBase needs
+*/
+public class NXTDriveBase extends DifferentialPilot implements DriveBase {
+    
+    /**
+    * Constructor
+    *
+    * @param float wheelDiameter the diameter of the wheels, in cm
+    * @param float trackWidth the distance between the wheels, in cm
+    * @param RegulatedMotor leftMotor the motor driving the left wheel
+    * @param RegulatedMotor rightMotor the motor driving the right wheel
+    * @param boolean reverse true if the motors turn backwards to go forwards
+    */
+    public NXTDriveBase(float wheelDiameter, float trackWidth, RegulatedMotor leftMotor, RegulatedMotor rightMotor, boolean reverse) {
+        super(wheelDiameter, trackWidth, leftMotor, rightMotor, reverse);
+    }
+}
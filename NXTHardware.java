@@ -0,0 +1,120 @@
+import lejos.nxt.*;
+import lejos.robotics.Touch;
+import java.io.*;
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* NXTHardware class
+*
+* The rover as built: drive motors on A and C, mast motor on B,
+* bumpers on S1 and S2, colour sensor on S3 and sonar on S4
+*/
+public class NXTHardware implements RoverHardware, ButtonListener {
+    
+    private NXTDriveBase driveBase;
+    private NXTMastMotor mastMotor;
+    private NXTSonar sonar;
+    private TouchSensor leftBumper;
+    private TouchSensor rightBumper;
+    private NXTIndicators indicators;
+    private SystemClock clock;
+    
+    private Rover rover;
+    
+    /**
+    * Constructor
+    * Sets up the brick's sensors and motors
+    */
+    public NXTHardware() {
+        Sound.setVolume(30);
+        // instantiate sensor objects
+        this.sonar = new NXTSonar(SensorPort.S4);
+        this.leftBumper = new TouchSensor(SensorPort.S1);
+        this.rightBumper = new TouchSensor(SensorPort.S2);
+        this.indicators = new NXTIndicators(SensorPort.S3);
+        
+        Motor.A.resetTachoCount();
+        Motor.C.resetTachoCount();
+        
+        this.mastMotor = new NXTMastMotor(Motor.B);
+        this.driveBase = new NXTDriveBase(4.32f, 16.8f, Motor.A, Motor.C, true);
+        this.clock = new SystemClock();
+    }
+    
+    public DriveBase getDriveBase() {
+        return this.driveBase;
+    }
+    
+    public MastMotor getMastMotor() {
+        return this.mastMotor;
+    }
+    
+    public Sonar getSonar() {
+        return this.sonar;
+    }
+    
+    public Touch getLeftBumper() {
+        return this.leftBumper;
+    }
+    
+    public Touch getRightBumper() {
+        return this.rightBumper;
+    }
+    
+    public Indicators getIndicators() {
+        return this.indicators;
+    }
+    
+    public Clock getClock() {
+        return this.clock;
+    }
+    
+    public Random newRandom(long seed) {
+        return new Random(seed);
+    }
+    
+    public OutputStream openFile(String filename) throws IOException {
+        return new FileOutputStream(new File(filename));
+    }
+    
+    public MapStore openMapStore(MapKit map) throws IOException {
+        // the brick's files can't be written in place, so tiles can't be saved as they change
+        return null;
+    }
+    
+    public void setInterruptHandler(Rover roverObject) {
+        this.rover = roverObject;
+        Button.ESCAPE.addButtonListener(this);
+    }
+    
+    /*
+    #########################################################################
+    ButtonListener Interface methods
+    #########################################################################
+    */
+    
+    /**
+    * Button Press interface method
+    * Interupts any ongoing program
+    *
+    * @param Button b the pressed button
+    * @return void
+    */
+    public void buttonPressed(Button b) {
+        if(b == Button.ESCAPE && this.rover != null) {
+            this.rover.interruptMission();
+        }
+    }
+    
+    /**
+    * Button Release interface method
+    *
+    * @param Button b the pressed button
+    * @return void
+    */
+    public void buttonReleased(Button b) {
+        
+    }
+}
@@ -0,0 +1,38 @@
+import lejos.nxt.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* NXTIndicators class
+*
+* Indicators backed by the colour sensor's floodlight, the brick's
+* speaker, screen and ENTER button
+*/
+public class NXTIndicators implements Indicators {
+    
+    private ColorSensor light;
+    
+    public NXTIndicators(SensorPort lightPort) {
+        this.light = new ColorSensor(lightPort);
+    }
+    
+    public void setFloodlight(int color) {
+        this.light.setFloodlight(color);
+    }
+    
+    public void playTone(int frequency, int duration) {
+        Sound.playTone(frequency, duration);
+    }
+    
+    public void waitForButton() {
+        Button.ENTER.waitForPressAndRelease();
+    }
+    
+    public void clearDisplay() {
+        LCD.clear();
+    }
+    
+    public void displayMessage(String message) {
+        System.out.println(message);
+    }
+}
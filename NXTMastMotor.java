@@ -0,0 +1,49 @@
+import lejos.nxt.NXTRegulatedMotor;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* NXTMastMotor class
+*
+* MastMotor backed by one of the brick's motors
+*/
+public class NXTMastMotor implements MastMotor {
+    
+    private NXTRegulatedMotor motor;
+    
+    public NXTMastMotor(NXTRegulatedMotor mastMotor) {
+        this.motor = mastMotor;
+    }
+    
+    public void rotateTo(int angle) {
+        this.motor.rotateTo(angle);
+    }
+    
+    public void rotateTo(int angle, boolean immediateReturn) {
+        this.motor.rotateTo(angle, immediateReturn);
+    }
+    
+    public int getPosition() {
+        return this.motor.getPosition();
+    }
+    
+    public boolean isMoving() {
+        return this.motor.isMoving();
+    }
+    
+    public void setSpeed(int speed) {
+        this.motor.setSpeed(speed);
+    }
+    
+    public void stop() {
+        this.motor.stop();
+    }
+    
+    public void flt(boolean immediateReturn) {
+        this.motor.flt(immediateReturn);
+    }
+    
+    public void resetTachoCount() {
+        this.motor.resetTachoCount();
+    }
+}
@@ -0,0 +1,29 @@
+import lejos.nxt.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* NXTSonar class
+*
+* Sonar backed by the NXT ultrasonic sensor
+*/
+public class NXTSonar implements Sonar {
+    
+    private UltrasonicSensor sensor;
+    
+    public NXTSonar(SensorPort port) {
+        this.sensor = new UltrasonicSensor(port);
+    }
+    
+    public void setMode(int mode) {
+        this.sensor.setMode(mode == MODE_PING ? UltrasonicSensor.MODE_PING : UltrasonicSensor.MODE_CONTINUOUS);
+    }
+    
+    public void ping() {
+        this.sensor.ping();
+    }
+    
+    public int getDistance() {
+        return this.sensor.getDistance();
+    }
+}
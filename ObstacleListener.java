@@ -0,0 +1,19 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* ObstacleListener interface
+*
+* Implemented by the units that need to react when the ObstacleMonitor
+* detects an obstacle
+*/
+public interface ObstacleListener {
+    
+    /**
+    * Called from the monitor's thread when a watched sensor crosses its threshold
+    *
+    * @param int source the sensor that fired (ObstacleMonitor.SONAR or ObstacleMonitor.BUMPERS)
+    * @param long timestamp the time the reading was taken, in ms
+    * @return void
+    */
+    public void obstacleDetected(int source, long timestamp);
+}
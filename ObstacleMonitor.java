@@ -0,0 +1,203 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* ObstacleMonitor class
+*
+* Samples the sonar and the bumpers at a fixed rate on its own thread,
+* and tells its listeners as soon as one of them crosses its threshold.
+* The monitor only samples while it is armed, and sleeps otherwise.
+*
+* On a virtual clock time doesn't go by on its own, so the thread is not
+* started and the navigator calls poll() itself between two waits.
+*/
+public class ObstacleMonitor extends Thread {
+    
+    public static final int SONAR = 1;
+    public static final int BUMPERS = 2;
+    
+    private static final int MAX_LISTENERS = 4;
+    
+    private InstrumentsKit instrumentsUnit;
+    private Clock clock;
+    private int period;
+    
+    // sensors being watched, 0 when the monitor is idle
+    private int armedSensors;
+    
+    private ObstacleListener[] listeners;
+    private int listenerCount;
+    
+    private int sampleCount;
+    private int eventCount;
+    
+    private MissionMetrics metrics;
+    
+    /**
+    * Constructor
+    *
+    * @param InstrumentsKit instruments the sensors to sample
+    * @param Clock timeSource the clock used to pace and time stamp samples
+    * @param int samplingPeriod the time between two samples, in ms
+    */
+    public ObstacleMonitor(InstrumentsKit instruments, Clock timeSource, int samplingPeriod) {
+        
+        this.instrumentsUnit = instruments;
+        this.clock = timeSource;
+        this.period = samplingPeriod;
+        this.listeners = new ObstacleListener[MAX_LISTENERS];
+        this.listenerCount = 0;
+        this.armedSensors = 0;
+        
+        // don't keep the program alive once the mission is over
+        this.setDaemon(true);
+    }
+    
+    /**
+    * Registers a unit to be told about obstacles
+    *
+    * @param ObstacleListener listener the unit to notify
+    * @return void
+    */
+    public synchronized void addListener(ObstacleListener listener) {
+        if(this.listenerCount < MAX_LISTENERS) {
+            this.listeners[this.listenerCount] = listener;
+            this.listenerCount++;
+        }
+    }
+    
+    /**
+    * Starts watching the given sensors
+    * The monitor disarms itself after the first event
+    *
+    * @param int sensors SONAR, BUMPERS, or both
+    * @return void
+    */
+    public synchronized void arm(int sensors) {
+        // the first sample of a move never comes from an earlier one
+        this.instrumentsUnit.getSonar().invalidate();
+        this.armedSensors = sensors;
+        this.notifyAll();
+    }
+    
+    /**
+    * Stops watching the sensors
+    * Returns once any sample in progress is over, so that the sensors
+    * can safely be used by someone else
+    *
+    * @return void
+    */
+    public synchronized void disarm() {
+        this.armedSensors = 0;
+    }
+    
+    /**
+    * Changes the sampling period
+    *
+    * @param int samplingPeriod the time between two samples, in ms
+    * @return void
+    */
+    public void setPeriod(int samplingPeriod) {
+        this.period = samplingPeriod;
+    }
+    
+    /**
+    * Sets where the time taken by each sample is recorded
+    *
+    * @param MissionMetrics missionMetrics the metrics, null to not record samples
+    * @return void
+    */
+    public void setMetrics(MissionMetrics missionMetrics) {
+        this.metrics = missionMetrics;
+    }
+    
+    /**
+    * Returns the sampling period
+    *
+    * @return int the time between two samples, in ms
+    */
+    public int getPeriod() {
+        return this.period;
+    }
+    
+    /**
+    * Returns the number of samples taken so far
+    *
+    * @return int the sample count
+    */
+    public int getSampleCount() {
+        return this.sampleCount;
+    }
+    
+    /**
+    * Returns the number of obstacle events published so far
+    *
+    * @return int the event count
+    */
+    public int getEventCount() {
+        return this.eventCount;
+    }
+    
+    /**
+    * Sampling loop
+    *
+    * @return void
+    */
+    public void run() {
+        while(true) {
+            synchronized(this) {
+                while(this.armedSensors == 0) {
+                    try {
+                        this.wait();
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            this.poll();
+            this.clock.msDelay(this.period);
+        }
+    }
+    
+    /**
+    * Takes one sample, if the monitor is armed, and publishes the result
+    *
+    * @return boolean true if an obstacle was detected
+    */
+    public boolean poll() {
+        int source = 0;
+        long timestamp = 0;
+        
+        synchronized(this) {
+            if(this.armedSensors == 0) {
+                return false;
+            }
+            long pollStart = this.clock.currentTimeMillis();
+            
+            // bumpers first: they are cheap to read and the most urgent
+            if((this.armedSensors & BUMPERS) != 0 && this.instrumentsUnit.bumpersTriggered()) {
+                source = BUMPERS;
+            }
+            else if((this.armedSensors & SONAR) != 0 && this.instrumentsUnit.obstacleInRange()) {
+                source = SONAR;
+            }
+            timestamp = this.clock.currentTimeMillis();
+            this.sampleCount++;
+            if(this.metrics != null) {
+                this.metrics.record(MissionMetrics.OBSTACLE_POLL, timestamp - pollStart);
+            }
+            
+            if(source != 0) {
+                this.armedSensors = 0;
+                this.eventCount++;
+            }
+        }
+        
+        // listeners are called outside the lock, so they can disarm the monitor
+        if(source != 0) {
+            for(int i = 0; i < this.listenerCount; i++) {
+                this.listeners[i].obstacleDetected(source, timestamp);
+            }
+        }
+        return source != 0;
+    }
+}
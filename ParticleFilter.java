@@ -0,0 +1,422 @@
+import lejos.robotics.localization.PoseProvider;
+import lejos.robotics.navigation.Pose;
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* ParticleFilter class
+*
+* Monte Carlo localisation: a cloud of candidate poses is moved with
+* the odometry, plus noise, then weighted by how well a sweep fits the
+* map from each of them, and resampled.
+*
+* The weight uses a likelihood field: the end of each reading should lie
+* close to a known obstacle. Resampling is KLD-adaptive: it draws only as
+* many particles as needed to cover the occupied pose bins, so a confident
+* filter runs with few particles and a lost one with many.
+*
+* The particles are kept in primitive arrays. moveParticles and
+* weighParticles work on a range of particles, so that a subclass can
+* share the work between threads.
+*/
+public class ParticleFilter implements PoseProvider {
+    
+    // motion noise: rotation per degree turned and per cm travelled,
+    // travel per cm travelled and per degree turned
+    private static final float TURN_PER_TURN = 0.05f;
+    private static final float TURN_PER_TRAVEL = 0.02f;
+    private static final float TRAVEL_PER_TRAVEL = 0.05f;
+    private static final float TRAVEL_PER_TURN = 0.02f;
+    
+    // measurement model
+    private static final float HIT_SIGMA = 5.0f;
+    private static final float SEARCH_RADIUS = 15.0f;
+    private static final float RANDOM_READING = 0.2f;
+    // a sweep with fewer readings near known obstacles says nothing
+    private static final int MIN_MATCHES = 4;
+    
+    // KLD-sampling: error bound, normal quantile for 99%, bin sizes
+    private static final float KLD_EPSILON = 0.05f;
+    private static final float KLD_Z = 2.326f;
+    private static final float BIN_SIZE = 10.0f;
+    private static final float BIN_ANGLE = 10.0f;
+    
+    protected MapKit map;
+    protected Random random;
+    
+    private int minParticles;
+    private int maxParticles;
+    
+    protected float[] xs;
+    protected float[] ys;
+    protected float[] headings;
+    protected float[] logWeights;
+    protected int[] matches;
+    protected int count;
+    
+    // resampling work space
+    private float[] cumulative;
+    private float[] nextXs;
+    private float[] nextYs;
+    private float[] nextHeadings;
+    private int[] bins;
+    private float[] scratch;
+    
+    private float estimateX;
+    private float estimateY;
+    private float estimateHeading;
+    
+    private int updateCount;
+    
+    /**
+    * Constructor
+    *
+    * @param MapKit knownMap the map sweeps are compared to
+    * @param int fewestParticles the smallest particle count
+    * @param int mostParticles the largest particle count
+    * @param Random randomSource the source of motion noise and resampling draws
+    */
+    public ParticleFilter(MapKit knownMap, int fewestParticles, int mostParticles, Random randomSource) {
+        
+        this.map = knownMap;
+        this.random = randomSource;
+        this.minParticles = fewestParticles;
+        this.maxParticles = mostParticles;
+        
+        this.xs = new float[mostParticles];
+        this.ys = new float[mostParticles];
+        this.headings = new float[mostParticles];
+        this.logWeights = new float[mostParticles];
+        this.matches = new int[mostParticles];
+        
+        this.cumulative = new float[mostParticles];
+        this.nextXs = new float[mostParticles];
+        this.nextYs = new float[mostParticles];
+        this.nextHeadings = new float[mostParticles];
+        this.bins = new int[2 * mostParticles];
+        this.scratch = new float[2];
+        
+        this.setPose(new Pose(0.0f, 0.0f, 0.0f));
+    }
+    
+    /**
+    * Puts every particle on the given pose
+    *
+    * @param Pose pose the known pose
+    * @return void
+    */
+    public void setPose(Pose pose) {
+        this.count = this.minParticles;
+        for(int i = 0; i < this.count; i++) {
+            this.xs[i] = pose.getX();
+            this.ys[i] = pose.getY();
+            this.headings[i] = pose.getHeading();
+        }
+        this.estimateX = pose.getX();
+        this.estimateY = pose.getY();
+        this.estimateHeading = pose.getHeading();
+    }
+    
+    /**
+    * Returns the filter's estimate of the rover's pose
+    *
+    * @return Pose the weighted mean of the particles
+    */
+    public Pose getPose() {
+        return new Pose(this.estimateX, this.estimateY, this.estimateHeading);
+    }
+    
+    /**
+    * Moves the particles by the motion measured by odometry between two poses
+    *
+    * @param float fromX the odometry x coordinate before the motion
+    * @param float fromY the odometry y coordinate before the motion
+    * @param float fromHeading the odometry heading before the motion
+    * @param Pose to the odometry pose after the motion
+    * @return void
+    */
+    public void move(float fromX, float fromY, float fromHeading, Pose to) {
+        float dx = to.getX() - fromX;
+        float dy = to.getY() - fromY;
+        float travel = (float)Math.sqrt(dx * dx + dy * dy);
+        // turn towards the direction of travel, travel, then turn to the final heading
+        float firstTurn = travel < 0.5f ? 0.0f
+            : normalize((float)Math.toDegrees(Math.atan2(dy, dx)) - fromHeading);
+        // backing up is travelling backwards, not turning around
+        if(firstTurn > 90.0f || firstTurn < -90.0f) {
+            firstTurn = normalize(firstTurn + 180.0f);
+            travel = -travel;
+        }
+        float secondTurn = normalize(to.getHeading() - fromHeading - firstTurn);
+        
+        this.moveAll(firstTurn, travel, secondTurn);
+        this.estimateX += dx;
+        this.estimateY += dy;
+        this.estimateHeading = normalize(this.estimateHeading + to.getHeading() - fromHeading);
+    }
+    
+    /**
+    * Weighs the particles against a sweep, updates the estimate and resamples
+    *
+    * @param ScanFrame scan the sweep, its pose is ignored
+    * @return boolean false if the sweep doesn't match enough of the map to be used
+    */
+    public boolean correct(ScanFrame scan) {
+        this.weighAll(scan);
+        
+        int bestMatches = 0;
+        float best = -Float.MAX_VALUE;
+        for(int i = 0; i < this.count; i++) {
+            if(this.matches[i] > bestMatches) {
+                bestMatches = this.matches[i];
+            }
+            if(this.logWeights[i] > best) {
+                best = this.logWeights[i];
+            }
+        }
+        if(bestMatches < MIN_MATCHES) {
+            return false;
+        }
+        
+        // weights relative to the best particle, to stay within float range
+        float total = 0.0f;
+        for(int i = 0; i < this.count; i++) {
+            total += (float)Math.exp(this.logWeights[i] - best);
+            this.cumulative[i] = total;
+        }
+        this.estimate(total, best);
+        this.resample(total);
+        this.updateCount++;
+        return true;
+    }
+    
+    /**
+    * Returns the current number of particles
+    *
+    * @return int the particle count
+    */
+    public int getParticleCount() {
+        return this.count;
+    }
+    
+    /**
+    * Returns the number of sweeps used to correct the pose so far
+    *
+    * @return int the update count
+    */
+    public int getUpdateCount() {
+        return this.updateCount;
+    }
+    
+    /*
+    #########################################################################
+    Work shared between threads by subclasses
+    #########################################################################
+    */
+    
+    /**
+    * Moves every particle, here in the calling thread
+    *
+    * @return void
+    */
+    protected void moveAll(float firstTurn, float travel, float secondTurn) {
+        this.moveParticles(0, this.count, firstTurn, travel, secondTurn, this.random);
+    }
+    
+    /**
+    * Weighs every particle, here in the calling thread
+    *
+    * @return void
+    */
+    protected void weighAll(ScanFrame scan) {
+        this.weighParticles(0, this.count, scan, this.scratch);
+    }
+    
+    /**
+    * Moves a range of particles with noisy odometry
+    *
+    * @param int from the first particle
+    * @param int to the particle after the last one
+    * @param float firstTurn the turn before travelling, in degrees
+    * @param float travel the distance travelled, in cm
+    * @param float secondTurn the turn after travelling, in degrees
+    * @param Random noise the source of noise for this range
+    * @return void
+    */
+    protected void moveParticles(int from, int to, float firstTurn, float travel, float secondTurn, Random noise) {
+        float turned = Math.abs(firstTurn) + Math.abs(secondTurn);
+        float distance = Math.abs(travel);
+        for(int i = from; i < to; i++) {
+            float turn1 = firstTurn + (float)noise.nextGaussian()
+                * (TURN_PER_TURN * Math.abs(firstTurn) + TURN_PER_TRAVEL * distance);
+            float step = travel + (float)noise.nextGaussian()
+                * (TRAVEL_PER_TRAVEL * distance + TRAVEL_PER_TURN * turned);
+            float turn2 = secondTurn + (float)noise.nextGaussian()
+                * (TURN_PER_TURN * Math.abs(secondTurn) + TURN_PER_TRAVEL * distance);
+            
+            double heading = Math.toRadians(this.headings[i] + turn1);
+            this.xs[i] += step * (float)Math.cos(heading);
+            this.ys[i] += step * (float)Math.sin(heading);
+            this.headings[i] = normalize(this.headings[i] + turn1 + turn2);
+        }
+    }
+    
+    /**
+    * Computes the log weight of a range of particles
+    *
+    * @param int from the first particle
+    * @param int to the particle after the last one
+    * @param ScanFrame scan the sweep
+    * @param float[] scratch work space for map queries, at least 2 long
+    * @return void
+    */
+    protected void weighParticles(int from, int to, ScanFrame scan, float[] scratch) {
+        float hitScale = 1.0f - RANDOM_READING;
+        for(int i = from; i < to; i++) {
+            float logWeight = 0.0f;
+            int matched = 0;
+            for(int r = 0; r < scan.size(); r++) {
+                int distance = scan.getDistance(r);
+                if(distance <= 0 || distance >= MapKit.MAX_RANGE) {
+                    continue;
+                }
+                double bearing = Math.toRadians(this.headings[i] + scan.getBearing(r));
+                float endX = this.xs[i] + distance * (float)Math.cos(bearing);
+                float endY = this.ys[i] + distance * (float)Math.sin(bearing);
+                float miss = this.map.nearestObstacle(endX, endY, SEARCH_RADIUS, scratch);
+                if(miss < 0.0f) {
+                    miss = SEARCH_RADIUS;
+                }
+                else {
+                    matched++;
+                }
+                float hit = (float)Math.exp(-miss * miss / (2.0f * HIT_SIGMA * HIT_SIGMA));
+                logWeight += (float)Math.log(RANDOM_READING + hitScale * hit);
+            }
+            this.logWeights[i] = logWeight;
+            this.matches[i] = matched;
+        }
+    }
+    
+    /*
+    #########################################################################
+    Estimation and resampling
+    #########################################################################
+    */
+    
+    private void estimate(float total, float best) {
+        float x = 0.0f;
+        float y = 0.0f;
+        float sin = 0.0f;
+        float cos = 0.0f;
+        for(int i = 0; i < this.count; i++) {
+            float weight = (float)Math.exp(this.logWeights[i] - best) / total;
+            x += weight * this.xs[i];
+            y += weight * this.ys[i];
+            double heading = Math.toRadians(this.headings[i]);
+            sin += weight * (float)Math.sin(heading);
+            cos += weight * (float)Math.cos(heading);
+        }
+        this.estimateX = x;
+        this.estimateY = y;
+        this.estimateHeading = (float)Math.toDegrees(Math.atan2(sin, cos));
+    }
+    
+    /**
+    * Draws particles in proportion to their weight until the KLD bound
+    * for the number of occupied bins is met
+    */
+    private void resample(float total) {
+        for(int i = 0; i < this.bins.length; i++) {
+            this.bins[i] = -1;
+        }
+        int occupiedBins = 0;
+        int drawn = 0;
+        
+        while(drawn < this.maxParticles && (drawn < this.minParticles || drawn < kldBound(occupiedBins))) {
+            int picked = this.pick(this.random.nextFloat() * total);
+            this.nextXs[drawn] = this.xs[picked];
+            this.nextYs[drawn] = this.ys[picked];
+            this.nextHeadings[drawn] = this.headings[picked];
+            if(this.occupyBin(this.xs[picked], this.ys[picked], this.headings[picked])) {
+                occupiedBins++;
+            }
+            drawn++;
+        }
+        
+        float[] swap = this.xs;
+        this.xs = this.nextXs;
+        this.nextXs = swap;
+        swap = this.ys;
+        this.ys = this.nextYs;
+        this.nextYs = swap;
+        swap = this.headings;
+        this.headings = this.nextHeadings;
+        this.nextHeadings = swap;
+        this.count = drawn;
+    }
+    
+    /**
+    * Finds the particle whose cumulative weight range holds the value
+    */
+    private int pick(float value) {
+        int low = 0;
+        int high = this.count - 1;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(this.cumulative[middle] < value) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    /**
+    * Marks the bin of a pose as occupied
+    *
+    * @return boolean true if the bin was empty
+    */
+    private boolean occupyBin(float x, float y, float heading) {
+        int bx = (int)Math.floor(x / BIN_SIZE);
+        int by = (int)Math.floor(y / BIN_SIZE);
+        int bh = (int)Math.floor((heading + 180.0f) / BIN_ANGLE);
+        int key = (bx & 0x3FF) | ((by & 0x3FF) << 10) | ((bh & 0x3F) << 20);
+        
+        // open addressing, the table is twice as large as the particle count
+        int slot = ((key * 0x9E3779B1) >>> 1) % this.bins.length;
+        while(this.bins[slot] != -1) {
+            if(this.bins[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) % this.bins.length;
+        }
+        this.bins[slot] = key;
+        return true;
+    }
+    
+    /**
+    * Number of particles needed to bound the error with k occupied bins
+    */
+    private static int kldBound(int k) {
+        if(k < 2) {
+            return 0;
+        }
+        float a = 2.0f / (9.0f * (k - 1));
+        float b = 1.0f - a + (float)Math.sqrt(a) * KLD_Z;
+        return (int)Math.ceil((k - 1) / (2.0f * KLD_EPSILON) * b * b * b);
+    }
+    
+    private static float normalize(float angle) {
+        while(angle > 180.0f) {
+            angle -= 360.0f;
+        }
+        while(angle < -180.0f) {
+            angle += 360.0f;
+        }
+        return angle;
+    }
+}
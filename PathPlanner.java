@@ -0,0 +1,452 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* PathPlanner class
+*
+* Plans a collision-free path to a goal over a coarse grid built from the
+* MapKit occupancy grid, using D* Lite. The search runs from the goal
+* towards the rover, so when the rover moves or the map changes only the
+* affected part of the search is repaired instead of starting over.
+*
+* All the search state lives in arrays allocated once in the constructor.
+*/
+public class PathPlanner {
+
+    private static final float INFINITY = Float.MAX_VALUE;
+    private static final float DIAGONAL = 1.4142135f;
+    // keys are sums of floats added in different orders, so equal keys
+    // may differ in the last bits and must not lose their tie-break
+    private static final float KEY_TOLERANCE = 0.001f;
+
+    // neighbour offsets, orthogonal ones first
+    private static final int[] NEIGHBOUR_X = {1, 0, -1, 0, 1, -1, -1, 1};
+    private static final int[] NEIGHBOUR_Y = {0, 1, 0, -1, 1, 1, -1, -1};
+
+    private MapKit map;
+
+    private int columns;
+    private int rows;
+    private float cellSize;
+    private float margin;
+
+    private boolean[] blocked;
+    private float[] g;
+    private float[] rhs;
+
+    // binary heap of cell indices, ordered by [key, min(g, rhs)]
+    private int[] heap;
+    private int[] heapIndex;
+    private float[] key;
+    private int heapSize;
+
+    private int start;
+    private int lastStart;
+    private int goal;
+    private float km;
+
+    /**
+    * Constructor
+    *
+    * @param MapKit mapObject the map to plan over
+    * @param float planningCellSize side of a planning cell, in cm
+    * @param float clearance the distance to keep from any obstacle
+    */
+    public PathPlanner(MapKit mapObject, float planningCellSize, float clearance) {
+
+        this.map = mapObject;
+        this.cellSize = planningCellSize;
+        this.margin = clearance;
+
+        this.columns = (int)(mapObject.getWidth() * mapObject.getCellSize() / planningCellSize);
+        this.rows = (int)(mapObject.getHeight() * mapObject.getCellSize() / planningCellSize);
+
+        int size = this.columns * this.rows;
+        this.blocked = new boolean[size];
+        this.g = new float[size];
+        this.rhs = new float[size];
+        this.heap = new int[size];
+        this.heapIndex = new int[size];
+        this.key = new float[size];
+
+        this.goal = -1;
+    }
+
+    /**
+    * Sets the point to plan towards, and resets the search
+    *
+    * @param float x the X coordinate of the goal
+    * @param float y the Y coordinate of the goal
+    * @return void
+    */
+    public void setGoal(float x, float y) {
+
+        this.goal = this.cellAt(x, y);
+        this.start = this.goal;
+        this.lastStart = this.goal;
+        this.km = 0.0f;
+        this.heapSize = 0;
+
+        for(int i = 0; i < this.g.length; i++) {
+            this.g[i] = INFINITY;
+            this.rhs[i] = INFINITY;
+            this.heapIndex[i] = -1;
+            this.blocked[i] = this.isBlockedOnMap(i);
+        }
+
+        this.rhs[this.goal] = 0.0f;
+        this.heapInsert(this.goal, this.heuristic(this.start, this.goal));
+    }
+
+    /**
+    * Updates the plan for the rover's current position and the latest map
+    *
+    * @param float x the rover's X coordinate
+    * @param float y the rover's Y coordinate
+    * @return boolean true if a path to the goal exists
+    */
+    public boolean plan(float x, float y) {
+
+        if(this.goal < 0) {
+            return false;
+        }
+
+        int previousStart = this.lastStart;
+        this.start = this.cellAt(x, y);
+        this.km += this.heuristic(previousStart, this.start);
+        this.lastStart = this.start;
+
+        // the cells the rover stands on are never blocked, so moving
+        // changes the cost of the edges around the old and new positions
+        if(previousStart != this.start) {
+            if(this.blocked[previousStart]) {
+                this.updateVertex(previousStart);
+                this.updateNeighbours(previousStart);
+            }
+            if(this.blocked[this.start]) {
+                this.updateVertex(this.start);
+                this.updateNeighbours(this.start);
+            }
+        }
+
+        // repair the search around the cells the map changed
+        for(int i = 0; i < this.blocked.length; i++) {
+            boolean nowBlocked = this.isBlockedOnMap(i);
+            if(nowBlocked != this.blocked[i]) {
+                this.blocked[i] = nowBlocked;
+                this.updateVertex(i);
+                this.updateNeighbours(i);
+            }
+        }
+
+        this.computeShortestPath();
+        return this.g[this.start] < INFINITY;
+    }
+
+    /**
+    * Returns the length of the current plan, from the rover's cell to the goal's
+    * Paths are measured over the grid, so they are never shorter than the
+    * waypoints loadPath gives
+    *
+    * @return float the length of the path, in cm, or -1 if no path is known
+    */
+    public float getPathLength() {
+        if(this.goal < 0 || this.g[this.start] >= INFINITY) {
+            return -1.0f;
+        }
+        return this.g[this.start] * this.cellSize;
+    }
+
+    /**
+    * Appends the current plan to the navigator's path, as a list of waypoints
+    * Cells that can be skipped in a straight line are left out
+    *
+    * @param RoverNavigator navigator the navigator that will follow the path
+    * @param float goalX the exact X coordinate to finish at
+    * @param float goalY the exact Y coordinate to finish at
+    * @return int the number of waypoints added
+    */
+    public int loadPath(RoverNavigator navigator, float goalX, float goalY) {
+
+        if(this.goal < 0 || this.g[this.start] >= INFINITY) {
+            return 0;
+        }
+
+        int added = 0;
+        int anchor = this.start;
+        int current = this.start;
+        int steps = 0;
+
+        while(current != this.goal && steps < this.g.length) {
+            int next = this.bestSuccessor(current);
+            if(next < 0) {
+                break;
+            }
+            // keep going straight while the shortcut from the anchor stays clear
+            if(!this.map.isCorridorClear(this.centreX(anchor), this.centreY(anchor),
+                    this.centreX(next), this.centreY(next), this.margin)) {
+                navigator.addWaypoint(this.centreX(current), this.centreY(current));
+                added++;
+                anchor = current;
+            }
+            current = next;
+            steps++;
+        }
+
+        navigator.addWaypoint(goalX, goalY);
+        return added + 1;
+    }
+
+    /*
+    #########################################################################
+    D* Lite
+    #########################################################################
+    */
+
+    private void computeShortestPath() {
+
+        while(this.heapSize > 0
+                && (this.compareKeys(this.heap[0], this.calculateKey(this.start), this.minimum(this.start)) < 0
+                    || this.rhs[this.start] != this.g[this.start])) {
+
+            int u = this.heap[0];
+            float newKey = this.calculateKey(u);
+
+            if(this.key[u] < newKey - KEY_TOLERANCE) {
+                // the key went stale as the rover moved
+                this.heapRemove(u);
+                this.heapInsert(u, newKey);
+            }
+            else if(this.g[u] > this.rhs[u]) {
+                this.g[u] = this.rhs[u];
+                this.heapRemove(u);
+                this.updateNeighbours(u);
+            }
+            else {
+                this.g[u] = INFINITY;
+                this.updateVertex(u);
+                this.updateNeighbours(u);
+            }
+        }
+    }
+
+    private void updateVertex(int u) {
+
+        if(u != this.goal) {
+            float best = INFINITY;
+            int ux = u % this.columns;
+            int uy = u / this.columns;
+            for(int n = 0; n < 8; n++) {
+                int v = this.neighbour(ux, uy, n);
+                if(v >= 0 && this.g[v] < INFINITY) {
+                    float cost = this.cost(u, n);
+                    if(cost < INFINITY && cost + this.g[v] < best) {
+                        best = cost + this.g[v];
+                    }
+                }
+            }
+            this.rhs[u] = best;
+        }
+
+        if(this.heapIndex[u] >= 0) {
+            this.heapRemove(u);
+        }
+        if(this.g[u] != this.rhs[u]) {
+            this.heapInsert(u, this.calculateKey(u));
+        }
+    }
+
+    private void updateNeighbours(int u) {
+        int ux = u % this.columns;
+        int uy = u / this.columns;
+        for(int n = 0; n < 8; n++) {
+            int v = this.neighbour(ux, uy, n);
+            if(v >= 0) {
+                this.updateVertex(v);
+            }
+        }
+    }
+
+    private int bestSuccessor(int u) {
+        int best = -1;
+        float bestCost = INFINITY;
+        int ux = u % this.columns;
+        int uy = u / this.columns;
+        for(int n = 0; n < 8; n++) {
+            int v = this.neighbour(ux, uy, n);
+            if(v >= 0 && this.g[v] < INFINITY) {
+                float cost = this.cost(u, n);
+                if(cost < INFINITY && cost + this.g[v] < bestCost) {
+                    bestCost = cost + this.g[v];
+                    best = v;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+    * Cost of moving from cell u to its neighbour n
+    * Diagonal moves may not cut the corner of a blocked cell
+    */
+    private float cost(int u, int n) {
+        int ux = u % this.columns;
+        int uy = u / this.columns;
+        int v = this.neighbour(ux, uy, n);
+        if(this.isBlocked(u) || this.isBlocked(v)) {
+            return INFINITY;
+        }
+        if(n < 4) {
+            return 1.0f;
+        }
+        int sideA = (uy) * this.columns + ux + NEIGHBOUR_X[n];
+        int sideB = (uy + NEIGHBOUR_Y[n]) * this.columns + ux;
+        if(this.isBlocked(sideA) || this.isBlocked(sideB)) {
+            return INFINITY;
+        }
+        return DIAGONAL;
+    }
+
+    private boolean isBlocked(int cell) {
+        // the rover and its goal can always be stood on
+        return this.blocked[cell] && cell != this.start && cell != this.goal;
+    }
+
+    private boolean isBlockedOnMap(int cell) {
+        float x = this.centreX(cell);
+        float y = this.centreY(cell);
+        float half = this.cellSize / 2.0f + this.margin;
+        return this.map.countObstacles(x - half, y - half, x + half, y + half) > 0;
+    }
+
+    private float calculateKey(int u) {
+        return this.minimum(u) + this.heuristic(this.start, u) + this.km;
+    }
+
+    private float minimum(int u) {
+        return this.g[u] < this.rhs[u] ? this.g[u] : this.rhs[u];
+    }
+
+    /**
+    * Octile distance between two cells, in cells
+    */
+    private float heuristic(int a, int b) {
+        int dx = Math.abs(a % this.columns - b % this.columns);
+        int dy = Math.abs(a / this.columns - b / this.columns);
+        int low = dx < dy ? dx : dy;
+        int high = dx < dy ? dy : dx;
+        return (float)high + (DIAGONAL - 1.0f) * (float)low;
+    }
+
+    /*
+    #########################################################################
+    Priority queue
+    #########################################################################
+    */
+
+    private int compareKeys(int u, float otherKey, float otherMinimum) {
+        float difference = this.key[u] - otherKey;
+        if(difference > KEY_TOLERANCE || difference < -KEY_TOLERANCE) {
+            return difference < 0.0f ? -1 : 1;
+        }
+        float uMinimum = this.minimum(u);
+        if(uMinimum != otherMinimum) {
+            return uMinimum < otherMinimum ? -1 : 1;
+        }
+        return 0;
+    }
+
+    private void heapInsert(int u, float newKey) {
+        this.key[u] = newKey;
+        this.heap[this.heapSize] = u;
+        this.heapIndex[u] = this.heapSize;
+        this.heapSize++;
+        this.siftUp(this.heapIndex[u]);
+    }
+
+    private void heapRemove(int u) {
+        int position = this.heapIndex[u];
+        this.heapSize--;
+        int last = this.heap[this.heapSize];
+        this.heapIndex[u] = -1;
+        if(position == this.heapSize) {
+            return;
+        }
+        this.heap[position] = last;
+        this.heapIndex[last] = position;
+        this.siftUp(position);
+        this.siftDown(this.heapIndex[last]);
+    }
+
+    private void siftUp(int position) {
+        int u = this.heap[position];
+        while(position > 0) {
+            int parent = (position - 1) / 2;
+            int p = this.heap[parent];
+            if(this.compareKeys(u, this.key[p], this.minimum(p)) >= 0) {
+                break;
+            }
+            this.heap[position] = p;
+            this.heapIndex[p] = position;
+            position = parent;
+        }
+        this.heap[position] = u;
+        this.heapIndex[u] = position;
+    }
+
+    private void siftDown(int position) {
+        int u = this.heap[position];
+        while(true) {
+            int child = 2 * position + 1;
+            if(child >= this.heapSize) {
+                break;
+            }
+            int c = this.heap[child];
+            if(child + 1 < this.heapSize) {
+                int right = this.heap[child + 1];
+                if(this.compareKeys(right, this.key[c], this.minimum(c)) < 0) {
+                    child++;
+                    c = right;
+                }
+            }
+            if(this.compareKeys(c, this.key[u], this.minimum(u)) >= 0) {
+                break;
+            }
+            this.heap[position] = c;
+            this.heapIndex[c] = position;
+            position = child;
+        }
+        this.heap[position] = u;
+        this.heapIndex[u] = position;
+    }
+
+    /*
+    #########################################################################
+    Grid helpers
+    #########################################################################
+    */
+
+    private int neighbour(int x, int y, int n) {
+        int nx = x + NEIGHBOUR_X[n];
+        int ny = y + NEIGHBOUR_Y[n];
+        if(nx < 0 || ny < 0 || nx >= this.columns || ny >= this.rows) {
+            return -1;
+        }
+        return ny * this.columns + nx;
+    }
+
+    private int cellAt(float x, float y) {
+        int cx = (int)Math.floor(x / this.cellSize) + this.columns / 2;
+        int cy = (int)Math.floor(y / this.cellSize) + this.rows / 2;
+        cx = cx < 0 ? 0 : (cx >= this.columns ? this.columns - 1 : cx);
+        cy = cy < 0 ? 0 : (cy >= this.rows ? this.rows - 1 : cy);
+        return cy * this.columns + cx;
+    }
+
+    private float centreX(int cell) {
+        return ((float)(cell % this.columns - this.columns / 2) + 0.5f) * this.cellSize;
+    }
+
+    private float centreY(int cell) {
+        return ((float)(cell / this.columns - this.rows / 2) + 0.5f) * this.cellSize;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* RandomWalkExploration class
+*
+* The original exploration: drive 100cm, sweep, then turn at random if the
+* way ahead is clear, or towards the clearest direction if it isn't.
+*/
+public class RandomWalkExploration implements ExplorationStrategy {
+    
+    // clearance ahead above which the rover turns at random, and the largest random turn
+    public static final int CLEARANCE = 80;
+    public static final int RANGE = 130;
+    
+    // distance driven between two sweeps
+    private static final double LEG = 100.0;
+    
+    private int clearance;
+    private int range;
+    
+    /**
+    * Constructor
+    * Turns at random by up to 130 degrees when every reading is over 80cm
+    */
+    public RandomWalkExploration() {
+        this(CLEARANCE, RANGE);
+    }
+    
+    /**
+    * Constructor
+    *
+    * @param int turnClearance the shortest reading, in cm, above which the rover turns at random
+    * @param int turnRange the largest random turn either way, in degrees
+    */
+    public RandomWalkExploration(int turnClearance, int turnRange) {
+        this.clearance = turnClearance;
+        this.range = turnRange;
+    }
+    
+    /**
+    * Drives a leg, then sweeps and turns
+    *
+    * @param Rover rover the rover exploring
+    * @return boolean always true, there is always somewhere to go
+    */
+    public boolean explore(Rover rover) {
+        this.avoidObstacle(rover, rover.navigationUnit.travelDistance(LEG));
+        return true;
+    }
+    
+    /**
+    * Sweeps and chooses the next direction, once the rover stopped
+    *
+    * @param Rover rover the rover exploring
+    * @param boolean success false if the leg was cut short by an obstacle
+    * @return void
+    */
+    private void avoidObstacle(Rover rover, boolean success) {
+        
+        rover.recordPosition();
+        // potentially add bumper obstacle
+        double angle = 0;
+        
+        if(!success) {
+            rover.displayUnit.negativeFeedback();
+            rover.recordBump(rover.sensorUnit.lastBump);
+            rover.driveUnit.travel(-15);
+            rover.recordPosition();
+        }
+        else {
+            rover.displayUnit.neutralFeedback();
+        }
+        
+        ScanFrame scan = rover.sensorUnit.forwardSweepFrame();
+        rover.processScan(scan);
+        int worstDistance = rover.worstDistance(scan);
+        
+        
+        if(success && worstDistance > this.clearance) {
+            angle = (double)(rover.getRandom().nextInt(2 * this.range) - this.range);
+        }
+        else {
+            angle = (double)rover.bestAngle(scan);
+        }
+        // if the direction is obstructed, back, turn around
+        if(worstDistance < 20) {
+            rover.displayUnit.negativeFeedback();
+            rover.driveUnit.travel(-10);
+            rover.navigationUnit.rotateBy(180);
+            return;
+        }
+        else {
+            rover.displayUnit.positiveFeedback();
+        }
+        // turn towards the best direction
+        if(!rover.navigationUnit.rotateBy(angle)) {
+            rover.displayUnit.negativeFeedback();
+            // bump during turn
+            rover.recordBump(rover.sensorUnit.lastBump);
+            rover.driveUnit.travel(-20);
+            return;
+        }
+    }
+}
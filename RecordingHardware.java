@@ -0,0 +1,342 @@
+import lejos.robotics.Touch;
+import lejos.robotics.navigation.*;
+import java.io.*;
+import java.util.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* RecordingHardware class
+*
+* Wraps the rover's hardware, real or simulated, and records what the
+* rover reads from it with a SensorRecorder: clock, sonar, bumpers, mast
+* and wheel tachometers, the moves the drive reports, and the rover's
+* random draws. The rover doesn't see the difference.
+*
+* Only a rover on a virtual clock runs on a single thread, so only its
+* recordings can be replayed exactly; on a wall clock the obstacle monitor
+* and the indicators read the hardware at the same time as the mission.
+*/
+public class RecordingHardware implements RoverHardware {
+
+    private RoverHardware hardware;
+    private SensorRecorder recorder;
+
+    private RecordingClock clock;
+    private RecordingSonar sonar;
+    private RecordingTouch leftBumper;
+    private RecordingTouch rightBumper;
+    private RecordingMast mastMotor;
+    private RecordingDrive driveBase;
+
+    /**
+    * Constructor
+    *
+    * @param RoverHardware roverHardware the hardware to record
+    * @param OutputStream stream where the recording is written
+    */
+    public RecordingHardware(RoverHardware roverHardware, OutputStream stream) {
+        this.hardware = roverHardware;
+        this.recorder = SensorRecorder.open(stream, roverHardware.getClock());
+        this.clock = new RecordingClock(roverHardware.getClock());
+        this.sonar = new RecordingSonar(roverHardware.getSonar());
+        this.leftBumper = new RecordingTouch(roverHardware.getLeftBumper(), SensorRecorder.LEFT_BUMPER);
+        this.rightBumper = new RecordingTouch(roverHardware.getRightBumper(), SensorRecorder.RIGHT_BUMPER);
+        this.mastMotor = new RecordingMast(roverHardware.getMastMotor());
+        this.driveBase = new RecordingDrive(roverHardware.getDriveBase());
+    }
+
+    public DriveBase getDriveBase() {
+        return this.driveBase;
+    }
+
+    public MastMotor getMastMotor() {
+        return this.mastMotor;
+    }
+
+    public Sonar getSonar() {
+        return this.sonar;
+    }
+
+    public Touch getLeftBumper() {
+        return this.leftBumper;
+    }
+
+    public Touch getRightBumper() {
+        return this.rightBumper;
+    }
+
+    public Indicators getIndicators() {
+        // the rover only writes to the indicators, nothing to replay
+        return this.hardware.getIndicators();
+    }
+
+    public Clock getClock() {
+        return this.clock;
+    }
+
+    public Random newRandom(long seed) {
+        this.recorder.recordSeed(seed);
+        return new RecordingRandom(seed);
+    }
+
+    public OutputStream openFile(String filename) throws IOException {
+        return this.hardware.openFile(filename);
+    }
+
+    public MapStore openMapStore(MapKit map) throws IOException {
+        return this.hardware.openMapStore(map);
+    }
+
+    public void setInterruptHandler(Rover rover) {
+        this.hardware.setInterruptHandler(rover);
+    }
+
+    /**
+    * Writes out what is left of the recording and closes it
+    *
+    * @return void
+    */
+    public void close() {
+        this.recorder.close();
+    }
+
+    public SensorRecorder getRecorder() {
+        return this.recorder;
+    }
+
+    /*
+    #########################################################################
+    Recording wrappers
+    #########################################################################
+    */
+
+    private class RecordingClock implements Clock {
+
+        private Clock clock;
+
+        public RecordingClock(Clock inner) {
+            this.clock = inner;
+        }
+
+        public long currentTimeMillis() {
+            long time = this.clock.currentTimeMillis();
+            RecordingHardware.this.recorder.recordTime(time);
+            return time;
+        }
+
+        public void msDelay(long period) {
+            this.clock.msDelay(period);
+            RecordingHardware.this.recorder.record(SensorRecorder.CLOCK_DELAY);
+        }
+
+        public boolean isRealTime() {
+            // fixed for the whole mission, kept in the recording's header
+            return this.clock.isRealTime();
+        }
+    }
+
+    private class RecordingSonar implements Sonar {
+
+        private Sonar sonar;
+
+        public RecordingSonar(Sonar inner) {
+            this.sonar = inner;
+        }
+
+        public void setMode(int mode) {
+            this.sonar.setMode(mode);
+            RecordingHardware.this.recorder.record(SensorRecorder.SONAR_COMMAND);
+        }
+
+        public void ping() {
+            this.sonar.ping();
+            RecordingHardware.this.recorder.record(SensorRecorder.SONAR_COMMAND);
+        }
+
+        public int getDistance() {
+            int distance = this.sonar.getDistance();
+            RecordingHardware.this.recorder.record(SensorRecorder.SONAR_READ, distance);
+            return distance;
+        }
+    }
+
+    private class RecordingTouch implements Touch {
+
+        private Touch bumper;
+        private byte type;
+
+        public RecordingTouch(Touch inner, byte recordType) {
+            this.bumper = inner;
+            this.type = recordType;
+        }
+
+        public boolean isPressed() {
+            boolean pressed = this.bumper.isPressed();
+            RecordingHardware.this.recorder.record(this.type, pressed ? 1 : 0);
+            return pressed;
+        }
+    }
+
+    private class RecordingMast implements MastMotor {
+
+        private MastMotor motor;
+
+        public RecordingMast(MastMotor inner) {
+            this.motor = inner;
+        }
+
+        public void rotateTo(int angle) {
+            this.motor.rotateTo(angle);
+            RecordingHardware.this.recorder.record(SensorRecorder.MAST_COMMAND);
+        }
+
+        public void rotateTo(int angle, boolean immediateReturn) {
+            this.motor.rotateTo(angle, immediateReturn);
+            RecordingHardware.this.recorder.record(SensorRecorder.MAST_COMMAND);
+        }
+
+        public int getPosition() {
+            int position = this.motor.getPosition();
+            RecordingHardware.this.recorder.record(SensorRecorder.MAST_POSITION, position);
+            return position;
+        }
+
+        public boolean isMoving() {
+            boolean moving = this.motor.isMoving();
+            RecordingHardware.this.recorder.record(SensorRecorder.MAST_MOVING, moving ? 1 : 0);
+            return moving;
+        }
+
+        public void setSpeed(int speed) {
+            this.motor.setSpeed(speed);
+            RecordingHardware.this.recorder.record(SensorRecorder.MAST_COMMAND);
+        }
+
+        public void stop() {
+            this.motor.stop();
+            RecordingHardware.this.recorder.record(SensorRecorder.MAST_COMMAND);
+        }
+
+        public void flt(boolean immediateReturn) {
+            this.motor.flt(immediateReturn);
+            RecordingHardware.this.recorder.record(SensorRecorder.MAST_COMMAND);
+        }
+
+        public void resetTachoCount() {
+            this.motor.resetTachoCount();
+            RecordingHardware.this.recorder.record(SensorRecorder.MAST_COMMAND);
+        }
+    }
+
+    /**
+    * Records the moves the drive reports before passing them on, as coming
+    * from this drive, so that the pose provider reads its moves back here
+    */
+    private class RecordingDrive implements DriveBase, MoveListener {
+
+        private DriveBase drive;
+        private ArrayList<MoveListener> listeners;
+
+        public RecordingDrive(DriveBase inner) {
+            this.drive = inner;
+            this.listeners = new ArrayList<MoveListener>();
+            inner.addMoveListener(this);
+        }
+
+        public void travel(double distance) {
+            this.drive.travel(distance);
+            RecordingHardware.this.recorder.record(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public void travel(double distance, boolean immediateReturn) {
+            this.drive.travel(distance, immediateReturn);
+            RecordingHardware.this.recorder.record(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public void rotate(double angle, boolean immediateReturn) {
+            this.drive.rotate(angle, immediateReturn);
+            RecordingHardware.this.recorder.record(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public void arcForward(double radius) {
+            this.drive.arcForward(radius);
+            RecordingHardware.this.recorder.record(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public void stop() {
+            this.drive.stop();
+            RecordingHardware.this.recorder.record(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public boolean isMoving() {
+            boolean moving = this.drive.isMoving();
+            RecordingHardware.this.recorder.record(SensorRecorder.DRIVE_MOVING, moving ? 1 : 0);
+            return moving;
+        }
+
+        public void setTravelSpeed(double speed) {
+            this.drive.setTravelSpeed(speed);
+            RecordingHardware.this.recorder.record(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public double getTravelSpeed() {
+            double speed = this.drive.getTravelSpeed();
+            RecordingHardware.this.recorder.recordSpeed(speed);
+            return speed;
+        }
+
+        public void setRotateSpeed(double speed) {
+            this.drive.setRotateSpeed(speed);
+            RecordingHardware.this.recorder.record(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public double getRotateSpeed() {
+            double speed = this.drive.getRotateSpeed();
+            RecordingHardware.this.recorder.recordSpeed(speed);
+            return speed;
+        }
+
+        public Move getMovement() {
+            Move move = this.drive.getMovement();
+            RecordingHardware.this.recorder.record(SensorRecorder.DRIVE_MOVEMENT, move);
+            return move;
+        }
+
+        public void addMoveListener(MoveListener listener) {
+            this.listeners.add(listener);
+        }
+
+        public void moveStarted(Move event, MoveProvider mp) {
+            RecordingHardware.this.recorder.record(SensorRecorder.MOVE_STARTED, event);
+            for(int i = 0; i < this.listeners.size(); i++) {
+                this.listeners.get(i).moveStarted(event, this);
+            }
+        }
+
+        public void moveStopped(Move event, MoveProvider mp) {
+            RecordingHardware.this.recorder.record(SensorRecorder.MOVE_STOPPED, event);
+            for(int i = 0; i < this.listeners.size(); i++) {
+                this.listeners.get(i).moveStopped(event, this);
+            }
+        }
+    }
+
+    /**
+    * Records every bounded draw; the rover draws nothing else
+    */
+    private class RecordingRandom extends Random {
+
+        private static final long serialVersionUID = 1L;
+
+        public RecordingRandom(long seed) {
+            super(seed);
+        }
+
+        public int nextInt(int bound) {
+            int value = super.nextInt(bound);
+            RecordingHardware.this.recorder.recordDraw(bound, value);
+            return value;
+        }
+    }
+}
@@ -1,7 +1,5 @@
-import lejos.nxt.*;
 import lejos.robotics.navigation.*;
 import lejos.robotics.localization.*;
-import lejos.util.*;
 import lejos.geom.Point;
 import java.io.*;
 import java.util.*;
@@ -11,51 +9,103 @@ import java.util.*;
 * Main controller, keeps track of all the sensors and navigation arrays
 * 
 */
-public class Rover implements ButtonListener {
+public class Rover {
     
-    public DifferentialPilot driveUnit;
+    public DriveBase driveUnit;
     public RoverNavigator navigationUnit;
     public InstrumentsKit sensorUnit;
     public MapKit mappingUnit;
+    public LineFeatureMap featureMap;
     public IndicatorsKit displayUnit;
+    public MissionLog missionLog;
+    
+    private RoverHardware hardware;
+    private Clock clock;
     
     private int startTime;
     private int missionDuration;
     
-    private ArrayList<Point> followedPath;
+    // decides when exploration stops, so that the rover is home on time
+    private MissionScheduler scheduler;
+    // the way home, shared by the scheduler's estimates and finishMission
+    private PathPlanner homePlanner;
+    
+    // plan the way home over the map instead of feeling the way back
+    private boolean returnPlanning;
+    
+    // vertices kept, largest error and time between samples of the recorded path
+    private static final int TRAJECTORY_CAPACITY = 256;
+    private static final float TRAJECTORY_TOLERANCE = 2.0f;
+    private static final int TRAJECTORY_PERIOD = 250;
+    
+    private TrajectoryRecorder trajectory;
+    
+    // walls kept as line segments, next to the grid
+    private static final int FEATURE_CAPACITY = 256;
+    
+    // every random decision comes from here, so a mission can be replayed
+    private Random random;
+    
+    // how the rover chooses where to go next
+    private ExplorationStrategy exploration;
+    
+    private int bumpCount;
+    
+    // where mission time goes, written out at the end of the mission
+    private MissionMetrics metrics;
+    
+    // live stream of the mission, if someone is listening
+    private TelemetryPublisher telemetry;
     
     /**
     * Constructor
     * Creates the object, and sets up all units necessary for driving
     */
     public Rover(int time) {
-        Sound.setVolume(30);
-        // instantiate sensor objects
-        UltrasonicSensor sonic = new UltrasonicSensor(SensorPort.S4);
-        TouchSensor left = new TouchSensor(SensorPort.S1);
-        TouchSensor right = new TouchSensor(SensorPort.S2);
-        ColorSensor light = new ColorSensor(SensorPort.S3);
-        
-        Motor.A.resetTachoCount();
-        Motor.C.resetTachoCount();
+        this(time, new NXTHardware());
+    }
+    
+    /**
+    * Constructor
+    * Creates the rover on top of the given hardware, real or simulated
+    *
+    * @param int time the mission duration, in seconds
+    * @param RoverHardware roverHardware the motors and sensors to use
+    */
+    public Rover(int time, RoverHardware roverHardware) {
+        this.hardware = roverHardware;
+        this.clock = roverHardware.getClock();
+        this.metrics = new MissionMetrics(this.clock);
         
         // instantiate elementary rover units
-        this.displayUnit = new IndicatorsKit(light, this);
+        this.displayUnit = new IndicatorsKit(roverHardware.getIndicators(), this);
         
-        this.sensorUnit = new InstrumentsKit(Motor.B, sonic, left, right, this);
-        this.driveUnit = new DifferentialPilot(4.32f, 16.8f, Motor.A, Motor.C, true);
+        this.sensorUnit = new InstrumentsKit(roverHardware.getMastMotor(), roverHardware.getSonar(),
+            roverHardware.getLeftBumper(), roverHardware.getRightBumper(), this);
+        this.driveUnit = roverHardware.getDriveBase();
         this.navigationUnit = new RoverNavigator(this.driveUnit, this.sensorUnit, this);
         this.mappingUnit = new MapKit(this);
+        this.featureMap = new LineFeatureMap(FEATURE_CAPACITY, MapKit.MAX_RANGE);
+        // start from what earlier missions mapped
+        this.openMapStore();
         
-        this.followedPath = new ArrayList<Point>();
+        this.trajectory = new TrajectoryRecorder(TRAJECTORY_CAPACITY, TRAJECTORY_TOLERANCE, TRAJECTORY_PERIOD);
+        this.navigationUnit.setTrajectoryRecorder(this.trajectory);
         
         // drive unit settings
         this.driveUnit.setTravelSpeed(15);
         this.driveUnit.setRotateSpeed(45);
         
         this.missionDuration = time;
+        this.homePlanner = new PathPlanner(this.mappingUnit, MissionScheduler.PLANNING_CELL,
+            RoverNavigator.LEG_CLEARANCE + this.mappingUnit.getCellSize());
+        this.scheduler = new MissionScheduler(this.clock, this.homePlanner,
+            (float)this.driveUnit.getTravelSpeed(), (float)this.driveUnit.getRotateSpeed());
+        this.returnPlanning = true;
+        this.random = roverHardware.newRandom(this.clock.currentTimeMillis());
+        this.exploration = new RandomWalkExploration();
         
-        Button.ESCAPE.addButtonListener(this);
+        roverHardware.setInterruptHandler(this);
     }
     
     /**
@@ -64,23 +114,48 @@ public class Rover implements ButtonListener {
     * @return void
     */
     public void startMission() {
-        LCD.clear();
+        this.hardware.getIndicators().clearDisplay();
+        
+        // divided before the cast: the brick's clock is past int range in ms after 24 days
+        this.startTime = (int)(this.clock.currentTimeMillis() / 1000);
+        this.metrics.reset();
+        this.scheduler.start(this.missionDuration * 1000L);
+        
+        // record the mission as it goes, in case it doesn't finish
+        this.missionLog = this.openMissionLog("log-"+this.startTime+".dat");
+        this.mappingUnit.setMissionLog(this.missionLog);
+        // long trajectories are written out as they are recorded
+        this.openTrajectoryFile("traj-"+this.startTime+".csv");
+        if(this.telemetry != null) {
+            this.telemetry.hello(this.startTime, this.mappingUnit.getWidth(), this.mappingUnit.getHeight(),
+                this.mappingUnit.getCellSize());
+            this.telemetry.event(TelemetryPublisher.MISSION_START);
+        }
         
-        this.startTime = (int) System.currentTimeMillis() / 1000;
         this.navigationUnit.rotateTo(0);
-        this.followedPath.add(new Point(this.getX(), this.getY()));
+        this.recordPosition();
     }
     
     /**
     * Main Exploration and mapping method
+    * Explores until the scheduler says it is time to head home
     *
     * @return void
     */
     public void mainBehaviour() {
-        int missionElapsedTime = 0;
-        while(missionElapsedTime < this.missionDuration) {
-            this.avoidObstacle(this.navigationUnit.travelDistance(100.0));
-            missionElapsedTime = ((int) System.currentTimeMillis() / 1000) - this.startTime;
+        while(this.scheduler.canExplore(this.getX(), this.getY())) {
+            long stepStart = this.metrics.now();
+            boolean exploring = this.exploration.explore(this);
+            long stepTime = this.metrics.now() - stepStart;
+            this.metrics.record(MissionMetrics.EXPLORE_STEP, stepTime);
+            this.scheduler.recordStep(stepTime);
+            if(this.telemetry != null) {
+                this.telemetry.endTick();
+            }
+            if(!exploring) {
+                // nothing left to explore
+                break;
+            }
         } 
     }
     
@@ -91,86 +166,134 @@ public class Rover implements ButtonListener {
     */
     public void finishMission() {
         this.displayUnit.goingBack();
-        while (!this.navigationUnit.goTo(0.0f,0.0f)) {
+        this.scheduler.startReturn();
+        if(this.telemetry != null) {
+            this.telemetry.event(TelemetryPublisher.RETURN_START);
+            this.telemetry.endTick();
+        }
+        long returnStart = this.metrics.now();
+        if(this.returnPlanning) {
+            this.returnWithPlanner();
+        }
+        // fall back on trial and error if the planner didn't get us home
+        // the map is not checked: an obstacle mapped near home would refuse every leg
+        while (!this.navigationUnit.goTo(0.0f,0.0f,false)) {
             
-            this.followedPath.add(new Point(this.getX(), this.getY()));
+            this.recordPosition();
             this.driveUnit.travel(-15);
             
-            this.followedPath.add(new Point(this.getX(), this.getY()));
-            int[][] distances = this.sensorUnit.forwardSweep();
+            this.recordPosition();
+            ScanFrame scan = this.sensorUnit.forwardSweepFrame();
             
-            double angle = (double)this.bestAngle(distances);
+            double angle = (double)this.bestAngle(scan);
             if(!this.navigationUnit.rotateBy(angle)) {
                 // bump during turn
                 this.driveUnit.travel(-20);
-                this.followedPath.add(new Point(this.getX(), this.getY()));
+                this.recordPosition();
             }
             else {
                 this.navigationUnit.travelDistance(60);
-                this.followedPath.add(new Point(this.getX(), this.getY()));
+                this.recordPosition();
             }
         }
         this.navigationUnit.rotateTo(0);
+        this.metrics.recordSince(MissionMetrics.RETURN_HOME, returnStart);
+        this.scheduler.finish();
+        if(this.telemetry != null) {
+            this.telemetry.event(TelemetryPublisher.HOME);
+            this.telemetry.endTick();
+        }
         
-        Point[] map = this.mappingUnit.getMap();
-        Point[] traj = this.followedPath.toArray(new Point[this.followedPath.size()]);
+        MapSnapshot map = this.mappingUnit.snapshot();
         // write the map and trajectory to file
-        this.writePointsToFile("map-"+this.startTime+".csv", map);
-        this.writePointsToFile("traj-"+this.startTime+".csv", traj);
+        this.writePointsToFile("map-"+this.startTime+".csv", map.getMap());
+        this.writeMapGrid("map-"+this.startTime+".rle", map);
+        this.writeLineMap("lines-"+this.startTime+".dat");
+        this.mappingUnit.closeStore();
+        this.trajectory.close();
+        if(this.missionLog != null) {
+            this.missionLog.close();
+        }
+        // may wait for a slow client, so the files are written first
+        if(this.telemetry != null) {
+            this.telemetry.close();
+        }
+        this.writeMetrics("metrics-"+this.startTime+".txt");
         this.displayUnit.waitForUser();
     }
     
     /**
+    * Drives back to the landing point along paths planned over the map
+    * Each time the rover is stopped, the new obstacle is mapped and the
+    * plan is repaired from where the rover stands
     *
-    *
-    *
-    *
+    * @return boolean true if the rover reached the landing point
     */
-    private void avoidObstacle(boolean success) {
+    private boolean returnWithPlanner() {
         
-        this.followedPath.add(new Point(this.getX(), this.getY()));
-        // potentially add bumper obstacle
-        double angle = 0;
+        this.homePlanner.setGoal(0.0f, 0.0f);
         
-        if(!success) {
-            this.displayUnit.negativeFeedback();
-            this.mappingUnit.addBump(this.sensorUnit.lastBump);
+        for(int attempt = 0; attempt < 10; attempt++) {
+            if(!this.homePlanner.plan(this.getX(), this.getY())) {
+                // no known way home
+                return false;
+            }
+            
+            this.navigationUnit.clearPath();
+            this.homePlanner.loadPath(this.navigationUnit, 0.0f, 0.0f);
+            if(this.navigationUnit.followPath()) {
+                this.recordPosition();
+                return true;
+            }
+            
+            // stopped on the way: map what stopped us and look around
+            this.recordPosition();
+            if(this.sensorUnit.lastBump != 0) {
+                this.recordBump(this.sensorUnit.lastBump);
+            }
             this.driveUnit.travel(-15);
-            this.followedPath.add(new Point(this.getX(), this.getY()));
+            this.recordPosition();
+            this.processScan(this.sensorUnit.forwardSweepFrame());
         }
-        else {
-            this.displayUnit.neutralFeedback();
+        this.navigationUnit.clearPath();
+        return false;
+    }
+    
+    /**
+    * Adds the rover's current position to the trajectory, the mission log and the telemetry
+    *
+    * @return void
+    */
+    public void recordPosition() {
+        Pose pose = this.navigationUnit.getPose();
+        this.trajectory.record(pose.getX(), pose.getY());
+        if(this.missionLog != null) {
+            this.missionLog.pose(pose.getX(), pose.getY(), pose.getHeading());
         }
-        
-        int[][] distances = this.sensorUnit.forwardSweep();
-        this.processScan(distances);
-        int worstDistance = this.worstDistance(distances);
-        
-        
-        if(success && worstDistance > 80) {
-            Random rnd = new Random();
-            angle = (double)(rnd.nextInt(260) - 130);
-        }
-        else {
-            angle = (double)this.bestAngle(distances);
-        }
-        // if the direction is obstructed, back, turn around
-        if(worstDistance < 20) {
-            this.displayUnit.negativeFeedback();
-            this.driveUnit.travel(-10);
-            this.navigationUnit.rotateBy(180);
+        if(this.telemetry != null) {
+            this.telemetry.pose(pose.getX(), pose.getY(), pose.getHeading());
+            this.telemetry.endTick();
+        }
+    }
+    
+    /**
+    * Adds a bump to the map, the mission log and the telemetry
+    *
+    * @param int side the bump side (-1, 1, or 2), 0 for a stop that was not a bump
+    * @return void
+    */
+    public void recordBump(int side) {
+        if(side == 0) {
+            // stopped by the sonar or the monitor: nothing was hit
             return;
         }
-        else {
-            this.displayUnit.positiveFeedback();
+        this.bumpCount++;
+        this.mappingUnit.addBump(side);
+        if(this.missionLog != null) {
+            this.missionLog.bump(side, this.getX(), this.getY(), this.getHeading());
         }
-        // turn towards the best direction
-        if(!this.navigationUnit.rotateBy(angle)) {
-            this.displayUnit.negativeFeedback();
-            // bump during turn
-            this.mappingUnit.addBump(this.sensorUnit.lastBump);
-            this.driveUnit.travel(-20);
-            return;
+        if(this.telemetry != null) {
+            this.telemetry.bump(side);
         }
     }
     
@@ -181,15 +304,18 @@ public class Rover implements ButtonListener {
     */
     private void writePointsToFile(String filename, Point[] pointArray) {
         
-        FileOutputStream out = null;
-        File data = new File(filename);
+        OutputStream out = null;
         try {
-          out = new FileOutputStream(data);
+          out = this.hardware.openFile(filename);
         } catch(IOException e) {
            System.err.println("Failed to create output stream");
-           Button.ESCAPE.waitForPress();
+           this.hardware.getIndicators().waitForButton();
            System.exit(1);
         }
+        if(out == null) {
+            // the hardware discards this output
+            return;
+        }
         
         DataOutputStream dataOut = new DataOutputStream(out);
         
@@ -202,24 +328,217 @@ public class Rover implements ButtonListener {
             
         } catch(IOException e) {
            System.err.println("Failed to create output stream");
-           Button.ESCAPE.waitForPress();
+           this.hardware.getIndicators().waitForButton();
            System.exit(1);
         }
     }
     
+    /**
+    * Chooses how the rover gets back to the landing point
+    *
+    * @param boolean enabled true to plan the return over the map,
+    *                        false to only use the trial and error loop
+    * @return void
+    */
+    public void setReturnPlanning(boolean enabled) {
+        this.returnPlanning = enabled;
+    }
+    
+    /**
+    * Chooses whether the mission time includes the way home
+    *
+    * @param boolean enabled true to stop exploring in time to be home when the
+    *                        mission time is up, false to explore for the whole
+    *                        mission time, then return
+    * @return void
+    */
+    public void setReturnReserve(boolean enabled) {
+        this.scheduler.setReturnReserve(enabled);
+    }
+    
+    /**
+    * Streams the mission live, from startMission to the end of finishMission
+    * Nothing is streamed unless this is called before startMission
+    *
+    * @param TelemetryPublisher publisher the publisher, not started yet
+    * @return void
+    */
+    public void setTelemetry(TelemetryPublisher publisher) {
+        this.telemetry = publisher;
+        this.mappingUnit.setTelemetry(publisher);
+        this.navigationUnit.setTelemetry(publisher);
+    }
+    
+    /**
+    * Chooses how the rover explores during mainBehaviour
+    * By default it is a RandomWalkExploration
+    *
+    * @param ExplorationStrategy strategy the exploration strategy
+    * @return void
+    */
+    public void setExplorationStrategy(ExplorationStrategy strategy) {
+        this.exploration = strategy;
+    }
+    
+    /**
+    * Corrects the odometry with a particle filter on every sweep
+    * The filter starts from the rover's current pose
+    *
+    * @param ParticleFilter localiser a filter over this rover's map, null to only use odometry
+    * @return void
+    */
+    public void setLocaliser(ParticleFilter localiser) {
+        this.navigationUnit.setLocaliser(localiser);
+    }
+    
+    /**
+    * Restarts the rover's random decisions from the given seed
+    * By default the seed is the clock's time when the rover was created
+    *
+    * @param long seed the seed
+    * @return void
+    */
+    public void setRandomSeed(long seed) {
+        this.random = this.hardware.newRandom(seed);
+    }
+    
+    /**
+    * Creates the trajectory file, and hands it to the trajectory recorder
+    *
+    * @param String filename the name of the trajectory file
+    * @return void
+    */
+    private void openTrajectoryFile(String filename) {
+        try {
+            this.trajectory.setOutput(this.hardware.openFile(filename));
+        } catch(IOException e) {
+            System.err.println("Failed to create trajectory file");
+        }
+    }
+    
+    /**
+    * Writes the summary of the mission metrics
+    *
+    * @param String filename the name of the summary file
+    * @return void
+    */
+    private void writeMetrics(String filename) {
+        try {
+            OutputStream out = this.hardware.openFile(filename);
+            if(out != null) {
+                this.scheduler.writeSummary(out);
+                if(this.telemetry != null) {
+                    this.telemetry.writeSummary(out);
+                }
+                this.metrics.writeSummary(out);
+                out.close();
+            }
+        } catch(IOException e) {
+            System.err.println("Failed to write metrics");
+        }
+    }
+    
+    /**
+    * Writes the whole occupancy grid, free and unknown cells included
+    *
+    * @param String filename the name of the grid file
+    * @param MapSnapshot map the map to write
+    * @return void
+    */
+    private void writeMapGrid(String filename, MapSnapshot map) {
+        try {
+            OutputStream out = this.hardware.openFile(filename);
+            if(out != null) {
+                MapExporter.open(out).writeRLE(map);
+                out.close();
+            }
+        } catch(IOException e) {
+            System.err.println("Failed to write map grid");
+        }
+    }
+    
+    /**
+    * Writes the line segments fitted to the walls, as a leJOS LineMap
+    *
+    * @param String filename the name of the line map file
+    * @return void
+    */
+    private void writeLineMap(String filename) {
+        try {
+            OutputStream out = this.hardware.openFile(filename);
+            if(out != null) {
+                DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+                this.featureMap.toLineMap().dumpObject(dataOut);
+                dataOut.close();
+            }
+        } catch(IOException e) {
+            System.err.println("Failed to write line map");
+        }
+    }
+    
+    /**
+    * Opens the hardware's map store, and merges the map it keeps into the rover's
+    *
+    * @return void
+    */
+    private void openMapStore() {
+        try {
+            MapStore store = this.hardware.openMapStore(this.mappingUnit);
+            if(store != null && this.mappingUnit.setStore(store) < 0) {
+                store.close();
+            }
+        } catch(IOException e) {
+            System.err.println("Failed to open map store");
+        }
+    }
+    
+    /**
+    * Creates the mission log file
+    *
+    * @param String filename the name of the log file
+    * @return MissionLog the log, or null if there is nowhere to write it
+    */
+    private MissionLog openMissionLog(String filename) {
+        try {
+            OutputStream out = this.hardware.openFile(filename);
+            return out == null ? null : MissionLog.open(out, this.clock, this.startTime);
+        } catch(IOException e) {
+            System.err.println("Failed to create mission log");
+            return null;
+        }
+    }
+    
     /*
     #########################################################################
     Accessor methods
     #########################################################################
     */
     
+    /**
+    * Rover's clock accessor
+    *
+    * @return Clock the clock used by all the rover's units
+    */
+    public Clock getClock() {
+        return this.clock;
+    }
+    
+    /**
+    * Rover's trajectory accessor
+    *
+    * @return TrajectoryRecorder the path followed so far
+    */
+    public TrajectoryRecorder getTrajectory() {
+        return this.trajectory;
+    }
+    
     /**
     * Rover's x coordinate accessor
     *
     * @return float the rover's current x coordinate
     */
     public float getX() {
-        return (float)this.navigationUnit.getX();
+        return this.navigationUnit.getX();
     }
     
     /**
@@ -228,7 +547,7 @@ public class Rover implements ButtonListener {
     * @return float the rover's current y coordinate
     */
     public float getY() {
-        return (float)this.navigationUnit.getY();
+        return this.navigationUnit.getY();
     }
     
     /**
@@ -237,7 +556,52 @@ public class Rover implements ButtonListener {
     * @return float the rover's current heading
     */
     public float getHeading() {
-        return (float)this.navigationUnit.getHeading();
+        return this.navigationUnit.getHeading();
+    }
+    
+    /**
+    * Returns the counters and latency histograms of the mission
+    *
+    * @return MissionMetrics the rover's metrics
+    */
+    public MissionMetrics getMetrics() {
+        return this.metrics;
+    }
+    
+    /**
+    * Returns how the mission time is spent, and when exploration stops
+    *
+    * @return MissionScheduler the rover's scheduler
+    */
+    public MissionScheduler getScheduler() {
+        return this.scheduler;
+    }
+    
+    /**
+    * Returns the publisher streaming the mission
+    *
+    * @return TelemetryPublisher the publisher, or null if nothing is streamed
+    */
+    public TelemetryPublisher getTelemetry() {
+        return this.telemetry;
+    }
+    
+    /**
+    * Returns the source of the rover's random decisions
+    *
+    * @return Random the rover's random source
+    */
+    public Random getRandom() {
+        return this.random;
+    }
+    
+    /**
+    * Returns the number of bumps recorded since the rover was created
+    *
+    * @return int the bump count
+    */
+    public int getBumpCount() {
+        return this.bumpCount;
     }
     
     
@@ -248,8 +612,19 @@ public class Rover implements ButtonListener {
     */
     // those methods **must** be implemented for other classes to work properly.
     
+    /**
+    * Shows a message on the screen, without waiting for it
+    * Messages are queued, and one equal to the last queued is only shown once
+    *
+    * @param String message the message
+    * @return void
+    */
     public void displayUserMessage(String message) {
-        System.out.println(message);
+        this.displayUnit.displayMessage(message);
+        if(this.telemetry != null) {
+            this.telemetry.message(message);
+            this.telemetry.endTick();
+        }
     }
     
     /**
@@ -262,99 +637,115 @@ public class Rover implements ButtonListener {
     }
     
     /**
-    * Determines the best direction to take from an array of bearing and free headway
+    * Determines the best direction to take from a sweep
+    * Ties are broken at random, without allocating
     *
-    * @param int[][] distance the array of [bearing],[distance]
+    * @param ScanFrame scan the sweep
     * @return int the best angle to turn towards
     */
-    public int bestAngle(int[][] distances) {
+    public int bestAngle(ScanFrame scan) {
         
         int bestDistance = 0;
-
-        List<Integer> best = new ArrayList<Integer>();
+        int ties = 0;
         
-        Random rnd = new Random();
-        
-        for(int i = 0; i < distances.length; i++) {
-            if(distances[i][1] > bestDistance) {
-                // clear the list of angles
-                best.clear();
-                best.add(distances[i][0]);
-                bestDistance = distances[i][1];
+        for(int i = 0; i < scan.size(); i++) {
+            if(scan.getDistance(i) > bestDistance) {
+                bestDistance = scan.getDistance(i);
+                ties = 1;
             }
-            else if (distances[i][1] == bestDistance){
-                best.add(distances[i][0]);
+            else if (scan.getDistance(i) == bestDistance){
+                ties++;
             }
         }
+        if(ties == 0) {
+            return 0;
+        }
         // return one of the best values
-        int bestDir = best.get(rnd.nextInt(best.size()));
-        return bestDir;
+        int pick = this.random.nextInt(ties);
+        for(int i = 0; i < scan.size(); i++) {
+            if(scan.getDistance(i) == bestDistance) {
+                if(pick == 0) {
+                    return scan.getBearing(i);
+                }
+                pick--;
+            }
+        }
+        return 0;
     }
     
     /**
+    * Returns the shortest distance measured in a sweep
     *
-    *
-    *
-    *
-    *
+    * @param ScanFrame scan the sweep
+    * @return int the shortest distance
     */
-    public int worstDistance(int[][] distances) {
+    public int worstDistance(ScanFrame scan) {
         int worstDistance = 20000;
-        int worstAngle = 0;
-        for(int i = 0; i < distances.length; i++) {
-            if(distances[i][1] < worstDistance) {
-                worstDistance = distances[i][1];
-                worstAngle = distances[i][0];
+        for(int i = 0; i < scan.size(); i++) {
+            if(scan.getDistance(i) < worstDistance) {
+                worstDistance = scan.getDistance(i);
             }
         }
-        System.out.println("w: "+worstAngle+"/"+worstDistance);
         return worstDistance;
     }
     
     /**
-    * Process an array of distances and bearing to add obstacles to the map
+    * Process a sweep to update the map
+    * The sweep first corrects the rover's pose, if a localiser is set
+    * Every reading clears the cells it crosses, and close ones mark an obstacle
     *
-    * @param int[][] distance the array of [bearing],[distance]
+    * @param ScanFrame scan the sweep
     * @return void
     */
-    public void processScan(int[][] distances) {
-        for(int i = 0; i < distances.length; i++){
-            if(distances[i][1] < 150) {
-                float distance = (float)distances[i][1];
-                this.mappingUnit.addObstacle(distances[i][0], (float)distances[i][1]);
-            }
+    public void processScan(ScanFrame scan) {
+        long updateStart = this.metrics.now();
+        // fix the pose first, so that the readings land in the right cells
+        if(this.navigationUnit.localise(scan)) {
+            Pose pose = this.navigationUnit.getPose();
+            scan.setPose(pose.getX(), pose.getY(), pose.getHeading());
+        }
+        if(this.missionLog != null) {
+            this.missionLog.scan(scan);
+        }
+        if(this.telemetry != null) {
+            this.telemetry.scan(scan);
+        }
+        for(int i = 0; i < scan.size(); i++){
+            this.mappingUnit.addReading(scan.getX(), scan.getY(), scan.getHeading(),
+                scan.getBearing(i), scan.getDistance(i));
+        }
+        this.featureMap.addScan(scan);
+        // keep the map as it grows, in case the mission doesn't finish
+        this.mappingUnit.saveChanges();
+        this.metrics.recordSince(MissionMetrics.MAP_UPDATE, updateStart);
+        if(this.telemetry != null) {
+            // the sweep and the cells it changed go out together
+            this.telemetry.endTick();
         }
     }
     
-    /*
-    #########################################################################
-    ButtonListener Interface methods
-    #########################################################################
-    */
-    
     /**
-    * Button Press interface method
     * Interupts any ongoing program
+    * Called by the hardware when the user asks to stop
     *
-    * @param Button b the pressed button
     * @return void
     */
-    public void buttonPressed(Button b) {
-        if(b == Button.ESCAPE) {
-            // notice the user that everything stopped
-            this.driveUnit.stop();
-            this.displayUserMessage("Program Interrupted");
-            System.exit(0);
+    public void interruptMission() {
+        // notice the user that everything stopped
+        this.driveUnit.stop();
+        this.displayUserMessage("Program Interrupted");
+        this.displayUnit.flush(500);
+        // keep what was recorded so far
+        if(this.missionLog != null) {
+            this.missionLog.close();
         }
-    }
-    
-    /**
-    * Button Release interface method
-    *
-    * @param Button b the pressed button
-    * @return void
-    */
-    public void buttonReleased(Button b) {
-        
+        if(this.telemetry != null) {
+            this.telemetry.event(TelemetryPublisher.INTERRUPTED);
+            this.telemetry.close();
+        }
+        this.mappingUnit.closeStore();
+        this.trajectory.close();
+        this.writeMetrics("metrics-"+this.startTime+".txt");
+        System.exit(0);
     }
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+import lejos.robotics.Touch;
+import java.io.*;
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* RoverHardware interface
+*
+* Everything the rover needs from the outside world. NXTHardware talks to
+* the brick; a simulation can provide its own implementation.
+*/
+public interface RoverHardware {
+    
+    public DriveBase getDriveBase();
+    
+    public MastMotor getMastMotor();
+    
+    public Sonar getSonar();
+    
+    public Touch getLeftBumper();
+    
+    public Touch getRightBumper();
+    
+    public Indicators getIndicators();
+    
+    public Clock getClock();
+    
+    /**
+    * Creates the source of the rover's random decisions
+    *
+    * @param long seed the seed
+    * @return Random the random source
+    */
+    public Random newRandom(long seed);
+    
+    /**
+    * Creates an output file
+    *
+    * @param String filename the name of the file
+    * @return OutputStream the stream to write to, or null to discard the output
+    */
+    public OutputStream openFile(String filename) throws IOException;
+    
+    /**
+    * Opens the store keeping the map between missions
+    *
+    * @param MapKit map the map to keep, giving the store's grid
+    * @return MapStore the store, or null if maps are not kept
+    */
+    public MapStore openMapStore(MapKit map) throws IOException;
+    
+    /**
+    * Registers the rover to call when the user interrupts the mission
+    *
+    * @param Rover rover the rover to interrupt
+    * @return void
+    */
+    public void setInterruptHandler(Rover rover);
+}
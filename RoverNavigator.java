@@ -1,8 +1,6 @@
-import lejos.nxt.*;
 import lejos.geom.Point;
 import lejos.robotics.navigation.*;
 import lejos.robotics.localization.OdometryPoseProvider;
-import lejos.util.*;
 import java.util.*;
 
 /**
@@ -14,35 +12,103 @@ import java.util.*;
 * Provides abstraction layer for moving a rover along a simple coordinates system
 * 
 */
-public class RoverNavigator {
+public class RoverNavigator implements ObstacleListener, MoveListener {
+    
+    // half the width of the rover, plus a small margin
+    public static final float LEG_CLEARANCE = 10.0f;
+    
+    // default time between two obstacle samples, in ms
+    public static final int MONITOR_PERIOD = 20;
+    
+    // longest wait without news from the drive unit, in case an event is missed
+    private static final int MOTION_TIMEOUT = 100;
+    
+    // default distance ahead along the path the rover steers towards, in cm
+    public static final float LOOKAHEAD = 20.0f;
+    // a point further off the heading than this is faced on the spot first, in degrees
+    private static final float MAX_PURSUIT_BEARING = 60.0f;
+    // the end of the path is reached within this distance, in cm
+    private static final float GOAL_TOLERANCE = 2.0f;
+    // the arc is only changed when its curvature moves by more than this, in 1/cm
+    private static final float CURVATURE_STEP = 0.005f;
+    // a path taking this many times its length at travel speed is given up
+    private static final float PURSUIT_TIME_FACTOR = 4.0f;
     
     private LinkedList<Point> path;
     private Point nextPoint;
     
-    protected DifferentialPilot driveUnit;
+    protected DriveBase driveUnit;
     protected InstrumentsKit instrumentsUnit;
+    protected ObstacleMonitor obstacleMonitor;
     
     protected OdometryPoseProvider poseProvider;
+    protected TrajectoryRecorder trajectory;
+    private TelemetryPublisher telemetry;
+    protected ParticleFilter localiser;
+    
+    // odometry pose at the last localisation
+    private float odometryX;
+    private float odometryY;
+    private float odometryHeading;
     
     protected Rover rover;
+    protected Clock clock;
+    protected MissionMetrics metrics;
+    
+    // block on monitor events, or poll the sensors like before
+    private boolean eventDriven;
+    
+    // follow paths along arcs, or stop and turn at each waypoint like before
+    private boolean purePursuit;
+    private float lookahead;
+    // the path being pursued, from where the rover started; grows with the longest path
+    private float[] pursuitX;
+    private float[] pursuitY;
+    private float[] lookaheadTarget;
+    
+    // state shared with the monitor and drive unit threads
+    private Object motionLock;
+    private int pendingSource;
+    private long pendingTime;
+    
+    // time between an obstacle being detected and the rover stopping
+    private long lastStopLatency;
+    private long maxStopLatency;
+    private long totalStopLatency;
+    private int stopCount;
     
     /**
     * Constructor
     * Takes control of the Instruments Unit and the Drive Unit
     *
-    * @param DifferentialPilot pilot the Differential drive unit used to control the rover
+    * @param DriveBase pilot the Differential drive unit used to control the rover
     * @param InstrumentKit mast the rover's sensors array
     */
-    public RoverNavigator(DifferentialPilot pilot, InstrumentsKit mast, Rover roverObject) {
+    public RoverNavigator(DriveBase pilot, InstrumentsKit mast, Rover roverObject) {
         
         this.driveUnit = pilot;
         this.instrumentsUnit = mast;
         this.rover = roverObject;
+        this.clock = roverObject.getClock();
+        this.metrics = roverObject.getMetrics();
         
         this.poseProvider = new OdometryPoseProvider(this.driveUnit);
+        this.driveUnit.addMoveListener(this);
         
         path = new LinkedList<Point>();
         
+        this.motionLock = new Object();
+        this.eventDriven = true;
+        this.purePursuit = true;
+        this.lookahead = LOOKAHEAD;
+        this.lookaheadTarget = new float[2];
+        
+        this.obstacleMonitor = new ObstacleMonitor(this.instrumentsUnit, this.clock, MONITOR_PERIOD);
+        this.obstacleMonitor.addListener(this);
+        this.obstacleMonitor.setMetrics(this.metrics);
+        if(this.clock.isRealTime()) {
+            this.obstacleMonitor.start();
+        }
     }
     
     /**
@@ -53,6 +119,25 @@ public class RoverNavigator {
     * @return boolean true if the rover reached the points, false if it was stopped
     */
     public boolean goTo(float x, float y) {
+        return this.goTo(x, y, true);
+    }
+    
+    /**
+    * Moves the rover to a point, unless stopped on its way
+    * Without the map check, only the sensors can stop the rover, so that a
+    * target next to a mapped obstacle, such as home, can still be reached
+    *
+    * @param float x the X coordinate of the target point
+    * @param float y the Y coordinate of the target point
+    * @param boolean checkMap true to refuse a leg that crosses a mapped obstacle
+    * @return boolean true if the rover reached the points, false if it was stopped
+    */
+    public boolean goTo(float x, float y, boolean checkMap) {
+        
+        // don't drive into an obstacle that is already on the map
+        if(checkMap && !this.isLegClear(x, y)) {
+            return false;
+        }
         
         // get the relative bearing and distance to the target point
         Point targetPoint = new Point(x, y);
@@ -68,6 +153,35 @@ public class RoverNavigator {
         }
     }
     
+    /**
+    * Checks the straight line between the rover and a point against the map
+    * Obstacles within LEG_CLEARANCE of the rover itself are ignored,
+    * so that the obstacle that just stopped the rover doesn't block every leg
+    *
+    * @param float x the X coordinate of the target point
+    * @param float y the Y coordinate of the target point
+    * @return boolean true if no known obstacle lies along the leg
+    */
+    public boolean isLegClear(float x, float y) {
+        
+        if(this.rover.mappingUnit == null) {
+            return true;
+        }
+        
+        Pose pose = this.poseProvider.getPose();
+        float dx = x - pose.getX();
+        float dy = y - pose.getY();
+        float length = (float)Math.sqrt(dx * dx + dy * dy);
+        if(length <= LEG_CLEARANCE) {
+            return true;
+        }
+        
+        // start the corridor one clearance away from the rover
+        float startX = pose.getX() + dx * LEG_CLEARANCE / length;
+        float startY = pose.getY() + dy * LEG_CLEARANCE / length;
+        return this.rover.mappingUnit.isCorridorClear(startX, startY, x, y, LEG_CLEARANCE);
+    }
+    
     /**
     * moves the rover along its front/back axis by the given distance
     *
@@ -77,20 +191,50 @@ public class RoverNavigator {
     */
     public boolean travelDistance(double targetDistance) {
         
+        long moveStart = this.metrics.now();
+        boolean completed;
+        if(!this.eventDriven) {
+            completed = this.pollTravelDistance(targetDistance);
+        }
+        else {
+            // start moving, and let the monitor watch for obstacles
+            this.prepareMotion();
+            this.obstacleMonitor.arm(ObstacleMonitor.SONAR | ObstacleMonitor.BUMPERS);
+            this.driveUnit.travel(targetDistance, true);
+            completed = this.awaitMotion();
+        }
+        this.metrics.recordSince(MissionMetrics.TRAVEL, moveStart);
+        
+        // return true or false depending on the reason for stopping
+        return completed;
+    }
+    
+    /**
+    * Former travelDistance loop, polling the sensors as fast as it can
+    * Kept to compare stop latency with the event driven version
+    *
+    * @param float targetDistance the distance the rover has to move
+    * @return boolean true if the rover reached the distance, false if it was stopped
+    */
+    private boolean pollTravelDistance(double targetDistance) {
+        
         // start moving
         this.driveUnit.travel(targetDistance, true);
         
-        // check for obstacles every .1 second
         // stop checking when an obstacle is encountered
         // or when the driving unit has stopped moving
         boolean shouldStop = false;
         do {
+            this.sampleTrajectory();
+            long pollStart = this.metrics.now();
             shouldStop = this.instrumentsUnit.obstacleAhead();
+            this.metrics.recordSince(MissionMetrics.OBSTACLE_POLL, pollStart);
         } while(this.driveUnit.isMoving() && !shouldStop);
         
         // return true or false depending on the reason for stopping
         if(shouldStop) {
-            this.driveUnit.stop();
+            this.stopFor(this.instrumentsUnit.lastBump != 0 ? ObstacleMonitor.BUMPERS : ObstacleMonitor.SONAR,
+                this.clock.currentTimeMillis());
             return false;
         }
         else {
@@ -121,17 +265,46 @@ public class RoverNavigator {
     public boolean rotateBy(double offsetAngle) {
         // turn drift correction
         double realAngle = offsetAngle < 0.0 ? offsetAngle + 0 : offsetAngle - 0;
+        
+        long moveStart = this.metrics.now();
+        boolean completed;
+        if(!this.eventDriven) {
+            completed = this.pollRotateBy(realAngle);
+        }
+        else {
+            // the sonar is useless while turning, only watch the bumpers
+            this.prepareMotion();
+            this.obstacleMonitor.arm(ObstacleMonitor.BUMPERS);
+            this.driveUnit.rotate(realAngle, true);
+            completed = this.awaitMotion();
+        }
+        this.metrics.recordSince(MissionMetrics.ROTATE, moveStart);
+        
+        // return true or false depending on the reason for stopping
+        return completed;
+    }
+    
+    /**
+    * Former rotateBy loop, polling the bumpers every 10ms
+    * Kept to compare stop latency with the event driven version
+    *
+    * @param double realAngle the angle to turn by
+    * @return boolean true if the rotation was completed, false if the rover was stopped
+    */
+    private boolean pollRotateBy(double realAngle) {
         this.driveUnit.rotate(realAngle, true);
         // check for obstacles as we turn
         boolean shouldStop = false;
         do {
-            Delay.msDelay(10);
+            this.clock.msDelay(10);
+            long pollStart = this.metrics.now();
             shouldStop = this.instrumentsUnit.bumpersTriggered();
+            this.metrics.recordSince(MissionMetrics.OBSTACLE_POLL, pollStart);
         } while(this.driveUnit.isMoving() && !shouldStop);
         
         // return true or false depending on the reason for stopping
         if(shouldStop) {
-            this.driveUnit.stop();
+            this.stopFor(ObstacleMonitor.BUMPERS, this.clock.currentTimeMillis());
             return false;
         }
         else {
@@ -139,6 +312,279 @@ public class RoverNavigator {
         }
     }
     
+    /**
+    * Resets the motion state before a new move is started
+    *
+    * @return void
+    */
+    private void prepareMotion() {
+        synchronized(this.motionLock) {
+            this.pendingSource = 0;
+        }
+    }
+    
+    /**
+    * Blocks until the drive unit stops or the monitor reports an obstacle
+    *
+    * @return boolean true if the move was completed, false if an obstacle stopped it
+    */
+    private boolean awaitMotion() {
+        int source = 0;
+        long eventTime = 0;
+        
+        if(!this.clock.isRealTime()) {
+            // no monitor thread: sample in between two steps of the virtual clock
+            while(this.driveUnit.isMoving() && !this.obstacleMonitor.poll()) {
+                this.sampleTrajectory();
+                this.clock.msDelay(this.obstacleMonitor.getPeriod());
+            }
+        }
+        
+        synchronized(this.motionLock) {
+            while(this.pendingSource == 0 && this.driveUnit.isMoving()) {
+                this.sampleTrajectory();
+                try {
+                    this.motionLock.wait(MOTION_TIMEOUT);
+                } catch(InterruptedException e) {
+                    break;
+                }
+            }
+            source = this.pendingSource;
+            eventTime = this.pendingTime;
+        }
+        
+        // stop first: disarming on the way would add to the stop latency
+        if(source != 0) {
+            this.stopFor(source, eventTime);
+            this.obstacleMonitor.disarm();
+            return false;
+        }
+        this.obstacleMonitor.disarm();
+        return true;
+    }
+    
+    /**
+    * Adds the current position to the trajectory, if a sample is due
+    * Each call is one tick of the control loop for the telemetry, which
+    * is sent the samples too: reading the pose more often would slow the
+    * loop down for little
+    *
+    * @return void
+    */
+    private void sampleTrajectory() {
+        long now = this.clock.currentTimeMillis();
+        if(this.trajectory != null && this.trajectory.isSampleDue(now)) {
+            Pose pose = this.poseProvider.getPose();
+            this.trajectory.sample(now, pose.getX(), pose.getY());
+            if(this.telemetry != null) {
+                this.telemetry.pose(pose.getX(), pose.getY(), pose.getHeading());
+            }
+        }
+        if(this.telemetry != null) {
+            this.telemetry.endTick();
+        }
+    }
+    
+    /**
+    * Stops the drive unit and records how long it took since the obstacle was seen
+    *
+    * @param int source the sensor that saw the obstacle
+    * @param long eventTime the time the obstacle was detected, in ms
+    * @return void
+    */
+    private void stopFor(int source, long eventTime) {
+        this.driveUnit.stop();
+        long latency = this.clock.currentTimeMillis() - eventTime;
+        this.metrics.record(MissionMetrics.STOP, latency);
+        this.metrics.increment(source == ObstacleMonitor.BUMPERS ? MissionMetrics.BUMPER_STOPS : MissionMetrics.SONAR_STOPS);
+        
+        this.lastStopLatency = latency;
+        this.totalStopLatency += latency;
+        this.stopCount++;
+        if(latency > this.maxStopLatency) {
+            this.maxStopLatency = latency;
+        }
+    }
+    
+    /**
+    * Sets the recorder sampled while the rover moves
+    *
+    * @param TrajectoryRecorder recorder the trajectory, null to stop sampling
+    * @return void
+    */
+    public void setTrajectoryRecorder(TrajectoryRecorder recorder) {
+        this.trajectory = recorder;
+    }
+    
+    /**
+    * Sets the publisher sent the pose while the rover moves
+    *
+    * @param TelemetryPublisher publisher the publisher, null to stop sending
+    * @return void
+    */
+    public void setTelemetry(TelemetryPublisher publisher) {
+        this.telemetry = publisher;
+    }
+    
+    /**
+    * Sets the particle filter correcting odometry with sweeps
+    * The filter starts from the current pose
+    *
+    * @param ParticleFilter filter the localiser, null to only use odometry
+    * @return void
+    */
+    public void setLocaliser(ParticleFilter filter) {
+        this.localiser = filter;
+        Pose pose = this.poseProvider.getPose();
+        if(filter != null) {
+            filter.setPose(pose);
+        }
+        this.odometryX = pose.getX();
+        this.odometryY = pose.getY();
+        this.odometryHeading = pose.getHeading();
+    }
+    
+    /**
+    * Corrects the pose with a sweep taken from where the rover stands
+    * The particles follow the odometry since the last sweep, are weighed
+    * against the map, and odometry restarts from their estimate
+    *
+    * @param ScanFrame scan the sweep
+    * @return boolean true if the pose was corrected
+    */
+    public boolean localise(ScanFrame scan) {
+        if(this.localiser == null) {
+            return false;
+        }
+        Pose odometry = this.poseProvider.getPose();
+        this.localiser.move(this.odometryX, this.odometryY, this.odometryHeading, odometry);
+        
+        Pose pose = odometry;
+        if(this.localiser.correct(scan)) {
+            pose = this.localiser.getPose();
+            this.poseProvider.setPose(pose);
+        }
+        this.odometryX = pose.getX();
+        this.odometryY = pose.getY();
+        this.odometryHeading = pose.getHeading();
+        return pose != odometry;
+    }
+    
+    /**
+    * Chooses how obstacles are watched during moves
+    *
+    * @param boolean enabled true to block on monitor events,
+    *                        false to poll the sensors in the calling thread
+    * @return void
+    */
+    public void setEventDriven(boolean enabled) {
+        this.eventDriven = enabled;
+    }
+    
+    /**
+    * Chooses how paths are followed
+    *
+    * @param boolean enabled true to drive along arcs through the waypoints,
+    *                        false to stop and turn on the spot at each waypoint
+    * @return void
+    */
+    public void setPurePursuit(boolean enabled) {
+        this.purePursuit = enabled;
+    }
+    
+    /**
+    * Sets how far ahead along the path the rover steers when following it along arcs
+    * Shorter cuts corners less, longer drives smoother arcs
+    *
+    * @param float distance the lookahead distance, in cm
+    * @return void
+    */
+    public void setLookahead(float distance) {
+        this.lookahead = distance;
+    }
+    
+    /**
+    * Returns the monitor watching the sensors during moves
+    *
+    * @return ObstacleMonitor the navigator's obstacle monitor
+    */
+    public ObstacleMonitor getObstacleMonitor() {
+        return this.obstacleMonitor;
+    }
+    
+    /**
+    * Returns the time between the last obstacle detection and the rover stopping
+    *
+    * @return long the last stop latency, in ms
+    */
+    public long getLastStopLatency() {
+        return this.lastStopLatency;
+    }
+    
+    /**
+    * Returns the longest time between an obstacle detection and the rover stopping
+    *
+    * @return long the worst stop latency, in ms
+    */
+    public long getMaxStopLatency() {
+        return this.maxStopLatency;
+    }
+    
+    /**
+    * Returns the average time between an obstacle detection and the rover stopping
+    *
+    * @return float the mean stop latency, in ms
+    */
+    public float getMeanStopLatency() {
+        return this.stopCount == 0 ? 0.0f : (float)this.totalStopLatency / (float)this.stopCount;
+    }
+    
+    /*
+    ##############################
+    Event interface methods
+    */
+    
+    /**
+    * Obstacle listener interface method
+    * Wakes up the navigator waiting for the end of a move
+    *
+    * @param int source the sensor that fired
+    * @param long timestamp the time the reading was taken, in ms
+    * @return void
+    */
+    public void obstacleDetected(int source, long timestamp) {
+        synchronized(this.motionLock) {
+            this.pendingSource = source;
+            this.pendingTime = timestamp;
+            this.motionLock.notifyAll();
+        }
+    }
+    
+    /**
+    * Move listener interface method
+    *
+    * @param Move event the move that started
+    * @param MoveProvider mp the drive unit
+    * @return void
+    */
+    public void moveStarted(Move event, MoveProvider mp) {
+        
+    }
+    
+    /**
+    * Move listener interface method
+    * Wakes up the navigator waiting for the end of a move
+    *
+    * @param Move event the move that stopped
+    * @param MoveProvider mp the drive unit
+    * @return void
+    */
+    public void moveStopped(Move event, MoveProvider mp) {
+        synchronized(this.motionLock) {
+            this.motionLock.notifyAll();
+        }
+    }
+    
     /**
     * Returns the rover's current X coordinate
     *
@@ -219,22 +665,262 @@ public class RoverNavigator {
     * @return boolean true if the last point was reached, false otherwise
     */
     public boolean followPath() {
-        
-        // copy the list of waypoints to an array, and iterate over it
-        Point[] pathArray = this.path.toArray(new Point[this.path.size()]);
-        for(int i = 0; i < pathArray.length; i++) {
-            
-            Point target = pathArray[i];
+        long pathStart = this.metrics.now();
+        boolean reached = this.purePursuit ? this.pursuePath() : this.stepPath();
+        this.metrics.recordSince(MissionMetrics.FOLLOW_PATH, pathStart);
+        return reached;
+    }
+    
+    /**
+    * Former followPath: stops at each waypoint, turns to the next one and drives straight
+    *
+    * @return boolean true if the last point was reached, false otherwise
+    */
+    private boolean stepPath() {
+        while(!this.path.isEmpty()) {
+            Point target = this.path.getFirst();
             if(!this.goTo((float)target.getX(), (float)target.getY())) {
                 return false;
             }
-            else {
-                // the waypoint was reached, remove it from the list
-                this.rover.arrivedAtWaypoint();
-                this.path.remove(target);
-            }
+            // the waypoint was reached, remove it from the list
+            this.rover.arrivedAtWaypoint();
+            this.path.removeFirst();
         }
         // if the path was empty, return true
         return true;
     }
+    
+    /*
+    ##############################
+    Pure pursuit
+    */
+    
+    /**
+    * Drives along the path without stopping at the waypoints
+    * The rover steers along the arc that meets the path a lookahead distance
+    * ahead of where it is, and the arc is updated as it goes. Points too far
+    * off the heading are faced on the spot first. The sonar and bumpers are
+    * watched all along, and legs are checked against the map as they start.
+    *
+    * @return boolean true if the last point was reached, false otherwise
+    */
+    private boolean pursuePath() {
+        if(this.path.isEmpty()) {
+            return true;
+        }
+        int count = this.loadPursuit();
+        int segment = 0;
+        if(!this.isLegClear(this.pursuitX[1], this.pursuitY[1])) {
+            return false;
+        }
+        
+        long deadline = this.clock.currentTimeMillis() + (long)(1000.0f * PURSUIT_TIME_FACTOR
+            * this.pursuitLength(count) / (float)this.driveUnit.getTravelSpeed()) + 5000L;
+        boolean driving = false;
+        float curvature = 0.0f;
+        long arcStart = 0;
+        this.prepareMotion();
+        this.obstacleMonitor.arm(ObstacleMonitor.SONAR | ObstacleMonitor.BUMPERS);
+        
+        while(true) {
+            Pose pose = this.poseProvider.getPose();
+            float x = pose.getX();
+            float y = pose.getY();
+            
+            // move on once the rover is nearer the next leg than the current one
+            while(segment < count - 2 && (this.segmentParameter(x, y, segment) >= 1.0f
+                    || this.segmentDistance(x, y, segment + 1) <= this.segmentDistance(x, y, segment))) {
+                segment++;
+                this.rover.arrivedAtWaypoint();
+                this.path.removeFirst();
+                if(!this.isLegClear(this.pursuitX[segment + 1], this.pursuitY[segment + 1])) {
+                    this.endPursuit(driving, arcStart);
+                    return false;
+                }
+            }
+            
+            float endX = this.pursuitX[count - 1];
+            float endY = this.pursuitY[count - 1];
+            float toEnd = (float)Math.sqrt((endX - x) * (endX - x) + (endY - y) * (endY - y));
+            if(segment == count - 2 && (toEnd < GOAL_TOLERANCE || this.segmentParameter(x, y, segment) >= 1.0f)) {
+                this.endPursuit(driving, arcStart);
+                this.rover.arrivedAtWaypoint();
+                this.path.removeFirst();
+                return true;
+            }
+            if(this.clock.currentTimeMillis() > deadline) {
+                // going round in circles
+                this.endPursuit(driving, arcStart);
+                return false;
+            }
+            
+            // steer towards the point a lookahead distance further along the path
+            float[] target = this.lookaheadPoint(x, y, segment, count);
+            float dx = target[0] - x;
+            float dy = target[1] - y;
+            float bearing = (float)Math.toDegrees(Math.atan2(dy, dx)) - pose.getHeading();
+            while(bearing > 180.0f) {
+                bearing -= 360.0f;
+            }
+            while(bearing < -180.0f) {
+                bearing += 360.0f;
+            }
+            
+            if(Math.abs(bearing) > MAX_PURSUIT_BEARING) {
+                // too sharp for an arc: face the path first
+                this.endPursuit(driving, arcStart);
+                driving = false;
+                if(!this.rotateBy(bearing)) {
+                    return false;
+                }
+                this.prepareMotion();
+                this.obstacleMonitor.arm(ObstacleMonitor.SONAR | ObstacleMonitor.BUMPERS);
+                continue;
+            }
+            
+            // the arc through the target point, tangent to the heading
+            float chord = (float)Math.sqrt(dx * dx + dy * dy);
+            float newCurvature = chord > 0.0f ? 2.0f * (float)Math.sin(Math.toRadians(bearing)) / chord : 0.0f;
+            if(!driving || Math.abs(newCurvature - curvature) > CURVATURE_STEP) {
+                curvature = newCurvature;
+                this.driveUnit.arcForward(curvature == 0.0f ? Double.POSITIVE_INFINITY : 1.0 / curvature);
+                if(!driving) {
+                    arcStart = this.clock.currentTimeMillis();
+                    driving = true;
+                }
+            }
+            
+            if(this.awaitPursuitStep()) {
+                int source;
+                long eventTime;
+                synchronized(this.motionLock) {
+                    source = this.pendingSource;
+                    eventTime = this.pendingTime;
+                }
+                this.stopFor(source, eventTime);
+                this.metrics.recordSince(MissionMetrics.TRAVEL, arcStart);
+                return false;
+            }
+            this.sampleTrajectory();
+        }
+    }
+    
+    /**
+    * Waits one monitor period, or less if an obstacle is seen
+    *
+    * @return boolean true if an obstacle was seen
+    */
+    private boolean awaitPursuitStep() {
+        if(!this.clock.isRealTime()) {
+            // no monitor thread: sample in between two steps of the virtual clock
+            if(!this.obstacleMonitor.poll()) {
+                this.clock.msDelay(this.obstacleMonitor.getPeriod());
+            }
+        }
+        synchronized(this.motionLock) {
+            if(this.pendingSource == 0 && this.clock.isRealTime()) {
+                try {
+                    this.motionLock.wait(this.obstacleMonitor.getPeriod());
+                } catch(InterruptedException e) {
+                    // check again straight away
+                }
+            }
+            return this.pendingSource != 0;
+        }
+    }
+    
+    /**
+    * Stops the arc in progress, if any, and the obstacle monitor
+    */
+    private void endPursuit(boolean driving, long arcStart) {
+        this.obstacleMonitor.disarm();
+        if(driving) {
+            this.driveUnit.stop();
+            this.metrics.recordSince(MissionMetrics.TRAVEL, arcStart);
+        }
+    }
+    
+    /**
+    * Copies the path into the pursuit arrays, after the rover's position
+    *
+    * @return int the number of points, the rover's position included
+    */
+    private int loadPursuit() {
+        int count = this.path.size() + 1;
+        if(this.pursuitX == null || this.pursuitX.length < count) {
+            this.pursuitX = new float[2 * count];
+            this.pursuitY = new float[2 * count];
+        }
+        Pose pose = this.poseProvider.getPose();
+        this.pursuitX[0] = pose.getX();
+        this.pursuitY[0] = pose.getY();
+        int i = 1;
+        for(Point point : this.path) {
+            this.pursuitX[i] = (float)point.getX();
+            this.pursuitY[i] = (float)point.getY();
+            i++;
+        }
+        return count;
+    }
+    
+    private float pursuitLength(int count) {
+        float length = 0.0f;
+        for(int i = 0; i < count - 1; i++) {
+            float dx = this.pursuitX[i + 1] - this.pursuitX[i];
+            float dy = this.pursuitY[i + 1] - this.pursuitY[i];
+            length += (float)Math.sqrt(dx * dx + dy * dy);
+        }
+        return length;
+    }
+    
+    /**
+    * Returns where a point projects along a leg of the pursuit
+    *
+    * @return float 0 at the start of the leg, 1 at its end, beyond either side outside the leg
+    */
+    private float segmentParameter(float x, float y, int segment) {
+        float segX = this.pursuitX[segment + 1] - this.pursuitX[segment];
+        float segY = this.pursuitY[segment + 1] - this.pursuitY[segment];
+        float length2 = segX * segX + segY * segY;
+        if(length2 == 0.0f) {
+            return 1.0f;
+        }
+        return ((x - this.pursuitX[segment]) * segX + (y - this.pursuitY[segment]) * segY) / length2;
+    }
+    
+    private float segmentDistance(float x, float y, int segment) {
+        float t = Math.max(0.0f, Math.min(1.0f, this.segmentParameter(x, y, segment)));
+        float px = this.pursuitX[segment] + t * (this.pursuitX[segment + 1] - this.pursuitX[segment]) - x;
+        float py = this.pursuitY[segment] + t * (this.pursuitY[segment + 1] - this.pursuitY[segment]) - y;
+        return (float)Math.sqrt(px * px + py * py);
+    }
+    
+    /**
+    * Finds the point a lookahead distance along the path, from the rover's
+    * projection on its current leg
+    *
+    * @return float[] the point's x and y coordinates, in a reused array
+    */
+    private float[] lookaheadPoint(float x, float y, int segment, int count) {
+        float t = Math.max(0.0f, Math.min(1.0f, this.segmentParameter(x, y, segment)));
+        float fromX = this.pursuitX[segment] + t * (this.pursuitX[segment + 1] - this.pursuitX[segment]);
+        float fromY = this.pursuitY[segment] + t * (this.pursuitY[segment + 1] - this.pursuitY[segment]);
+        float remaining = this.lookahead;
+        for(int i = segment + 1; i < count; i++) {
+            float dx = this.pursuitX[i] - fromX;
+            float dy = this.pursuitY[i] - fromY;
+            float length = (float)Math.sqrt(dx * dx + dy * dy);
+            if(length >= remaining) {
+                this.lookaheadTarget[0] = fromX + dx * remaining / length;
+                this.lookaheadTarget[1] = fromY + dy * remaining / length;
+                return this.lookaheadTarget;
+            }
+            remaining -= length;
+            fromX = this.pursuitX[i];
+            fromY = this.pursuitY[i];
+        }
+        this.lookaheadTarget[0] = this.pursuitX[count - 1];
+        this.lookaheadTarget[1] = this.pursuitY[count - 1];
+        return this.lookaheadTarget;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* ScanFrame class
+*
+* One sonar sweep: the pose it was taken from and its readings, in
+* preallocated primitive arrays. InstrumentsKit keeps a small ring of
+* frames and reuses them, so sweeping and deciding don't allocate.
+*/
+public class ScanFrame {
+    
+    // enough for a 180 degree sweep every 5 degrees
+    public static final int MAX_READINGS = 37;
+    
+    private int[] bearings;
+    private int[] distances;
+    private int count;
+    
+    private float x;
+    private float y;
+    private float heading;
+    
+    /**
+    * Constructor
+    * Allocates an empty frame
+    */
+    public ScanFrame() {
+        this.bearings = new int[MAX_READINGS];
+        this.distances = new int[MAX_READINGS];
+        this.count = 0;
+    }
+    
+    /**
+    * Empties the frame before a new sweep
+    *
+    * @param float poseX the rover's x coordinate during the sweep
+    * @param float poseY the rover's y coordinate during the sweep
+    * @param float poseHeading the rover's heading during the sweep
+    * @return void
+    */
+    public void reset(float poseX, float poseY, float poseHeading) {
+        this.x = poseX;
+        this.y = poseY;
+        this.heading = poseHeading;
+        this.count = 0;
+    }
+    
+    /**
+    * Moves the frame to a better estimate of the pose it was taken from
+    *
+    * @param float poseX the rover's x coordinate during the sweep
+    * @param float poseY the rover's y coordinate during the sweep
+    * @param float poseHeading the rover's heading during the sweep
+    * @return void
+    */
+    public void setPose(float poseX, float poseY, float poseHeading) {
+        this.x = poseX;
+        this.y = poseY;
+        this.heading = poseHeading;
+    }
+    
+    /**
+    * Adds a reading, unless the frame is full
+    *
+    * @param int bearing the bearing of the reading, relative to the rover's heading
+    * @param int distance the distance measured
+    * @return boolean false if the frame was full
+    */
+    public boolean add(int bearing, int distance) {
+        if(this.count >= MAX_READINGS) {
+            return false;
+        }
+        this.bearings[this.count] = bearing;
+        this.distances[this.count] = distance;
+        this.count++;
+        return true;
+    }
+    
+    /**
+    * Returns the number of readings
+    *
+    * @return int the reading count
+    */
+    public int size() {
+        return this.count;
+    }
+    
+    public int getBearing(int index) {
+        return this.bearings[index];
+    }
+    
+    public int getDistance(int index) {
+        return this.distances[index];
+    }
+    
+    public float getX() {
+        return this.x;
+    }
+    
+    public float getY() {
+        return this.y;
+    }
+    
+    public float getHeading() {
+        return this.heading;
+    }
+    
+    /**
+    * Copies the readings to a new array
+    *
+    * @return int[][] the array of [bearing],[distance]
+    */
+    public int[][] toArray() {
+        int[][] readings = new int[this.count][2];
+        for(int i = 0; i < this.count; i++) {
+            readings[i][0] = this.bearings[i];
+            readings[i][1] = this.distances[i];
+        }
+        return readings;
+    }
+}
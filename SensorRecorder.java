@@ -0,0 +1,294 @@
+import lejos.robotics.navigation.Move;
+import java.io.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SensorRecorder class
+*
+* Compact binary recording of everything the rover gets from its hardware:
+* clock readings, sonar readings, bumper states, mast and wheel tachometer
+* readings, the moves reported by the drive, and random draws. With the
+* same inputs the rover's code makes the same decisions, so a recording
+* can be fed back to the rover (see RecordingHardware) to run the mission
+* again.
+*
+* Each call the rover makes to the hardware gives one record, written when
+* the call returns. Commands carry no payload, but keep the records in
+* step, so that a replay can tell when it no longer follows the recording.
+* Moves reported by the drive are recorded before they are passed on.
+*
+* File layout: MAGIC (int), VERSION (byte), real time (byte), start time
+* (long, ms), then records. Each record is a type (byte), the time since
+* the previous record (signed varint, ms) and a payload:
+*   CLOCK_READ, CLOCK_DELAY, SONAR_COMMAND, MAST_COMMAND, DRIVE_COMMAND   -
+*   SONAR_READ                    distance (varint)
+*   LEFT_BUMPER, RIGHT_BUMPER     pressed (byte)
+*   MAST_POSITION                 position (signed varint)
+*   MAST_MOVING, DRIVE_MOVING     moving (byte)
+*   DRIVE_MOVEMENT, MOVE_STARTED, MOVE_STOPPED
+*                                 move type (byte), moving (byte), distance, angle (floats)
+*   DRIVE_SPEED                   speed (double)
+*   RANDOM_SEED                   seed (long)
+*   RANDOM_INT                    bound, value (varints)
+* A clock reading's value is its time stamp. Varints take 7 bits per byte,
+* low bits first, and signed ones are zigzag encoded.
+*/
+public class SensorRecorder {
+
+    public static final int MAGIC = 0x52524543;
+    public static final byte VERSION = 1;
+
+    public static final byte CLOCK_READ = 1;
+    public static final byte CLOCK_DELAY = 2;
+    public static final byte SONAR_READ = 3;
+    public static final byte SONAR_COMMAND = 4;
+    public static final byte LEFT_BUMPER = 5;
+    public static final byte RIGHT_BUMPER = 6;
+    public static final byte MAST_POSITION = 7;
+    public static final byte MAST_MOVING = 8;
+    public static final byte MAST_COMMAND = 9;
+    public static final byte DRIVE_MOVING = 10;
+    public static final byte DRIVE_MOVEMENT = 11;
+    public static final byte DRIVE_COMMAND = 12;
+    public static final byte DRIVE_SPEED = 13;
+    public static final byte MOVE_STARTED = 14;
+    public static final byte MOVE_STOPPED = 15;
+    public static final byte RANDOM_SEED = 16;
+    public static final byte RANDOM_INT = 17;
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+    // longest record: type, time stamp and a move
+    private static final int MAX_RECORD_SIZE = 24;
+
+    private OutputStream out;
+    private byte[] buffer;
+    private int used;
+
+    private Clock clock;
+    private long lastTime;
+    private boolean failed;
+
+    private int recordCount;
+    private long byteCount;
+
+    /**
+    * Constructor
+    *
+    * @param OutputStream stream where the recording is written
+    * @param Clock timeSource the clock used to time stamp records, not recorded itself
+    * @param int bufferSize the size of the record buffer, in bytes
+    */
+    public SensorRecorder(OutputStream stream, Clock timeSource, int bufferSize) {
+        this.out = stream;
+        this.buffer = new byte[Math.max(bufferSize, MAX_RECORD_SIZE)];
+        this.used = 0;
+        this.clock = timeSource;
+        this.lastTime = timeSource.currentTimeMillis();
+        this.failed = false;
+
+        this.writeInt(MAGIC);
+        this.buffer[this.used++] = VERSION;
+        this.buffer[this.used++] = (byte)(timeSource.isRealTime() ? 1 : 0);
+        this.writeLong(this.lastTime);
+    }
+
+    /**
+    * Creates a recorder with the default buffer size
+    *
+    * @param OutputStream stream where the recording is written
+    * @param Clock timeSource the clock used to time stamp records
+    * @return SensorRecorder the recorder
+    */
+    public static SensorRecorder open(OutputStream stream, Clock timeSource) {
+        return new SensorRecorder(stream, timeSource, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+    * Records a call without payload
+    *
+    * @param byte type the record type
+    * @return void
+    */
+    public synchronized void record(byte type) {
+        this.begin(type, this.clock.currentTimeMillis());
+    }
+
+    /**
+    * Records a clock reading, time stamped with the time read
+    *
+    * @param long time the time returned to the rover
+    * @return void
+    */
+    public synchronized void recordTime(long time) {
+        this.begin(CLOCK_READ, time);
+    }
+
+    /**
+    * Records a call returning a small integer
+    *
+    * @param byte type the record type
+    * @param int value the value returned to the rover
+    * @return void
+    */
+    public synchronized void record(byte type, int value) {
+        this.begin(type, this.clock.currentTimeMillis());
+        if(type == MAST_POSITION) {
+            this.writeVarint((value << 1) ^ (value >> 31));
+        }
+        else if(type == SONAR_READ) {
+            this.writeVarint(value);
+        }
+        else {
+            this.buffer[this.used++] = (byte)value;
+        }
+    }
+
+    /**
+    * Records a move returned by the drive, or reported to its listeners
+    *
+    * @param byte type DRIVE_MOVEMENT, MOVE_STARTED or MOVE_STOPPED
+    * @param Move move the move
+    * @return void
+    */
+    public synchronized void record(byte type, Move move) {
+        this.begin(type, this.clock.currentTimeMillis());
+        this.buffer[this.used++] = (byte)move.getMoveType().ordinal();
+        this.buffer[this.used++] = (byte)(move.isMoving() ? 1 : 0);
+        this.writeInt(Float.floatToIntBits(move.getDistanceTraveled()));
+        this.writeInt(Float.floatToIntBits(move.getAngleTurned()));
+    }
+
+    /**
+    * Records a speed read from the drive
+    *
+    * @param double speed the speed returned to the rover
+    * @return void
+    */
+    public synchronized void recordSpeed(double speed) {
+        this.begin(DRIVE_SPEED, this.clock.currentTimeMillis());
+        this.writeLong(Double.doubleToLongBits(speed));
+    }
+
+    /**
+    * Records the seed of a new source of random draws
+    *
+    * @param long seed the seed
+    * @return void
+    */
+    public synchronized void recordSeed(long seed) {
+        this.begin(RANDOM_SEED, this.clock.currentTimeMillis());
+        this.writeLong(seed);
+    }
+
+    /**
+    * Records a random draw
+    *
+    * @param int bound the upper bound asked for
+    * @param int value the value drawn
+    * @return void
+    */
+    public synchronized void recordDraw(int bound, int value) {
+        this.begin(RANDOM_INT, this.clock.currentTimeMillis());
+        this.writeVarint(bound);
+        this.writeVarint(value);
+    }
+
+    /**
+    * Writes out the records still in the buffer
+    *
+    * @return void
+    */
+    public synchronized void flush() {
+        if(this.used == 0 || this.failed) {
+            this.used = 0;
+            return;
+        }
+        try {
+            this.out.write(this.buffer, 0, this.used);
+            this.out.flush();
+            this.byteCount += this.used;
+        } catch(IOException e) {
+            // losing the recording must not stop the mission
+            System.err.println("Failed to write sensor recording");
+            this.failed = true;
+        }
+        this.used = 0;
+    }
+
+    /**
+    * Writes out the remaining records and closes the file
+    *
+    * @return void
+    */
+    public synchronized void close() {
+        if(this.out == null) {
+            return;
+        }
+        this.flush();
+        try {
+            this.out.close();
+        } catch(IOException e) {
+            System.err.println("Failed to close sensor recording");
+        }
+        // anything recorded after this point is dropped
+        this.out = null;
+        this.failed = true;
+    }
+
+    /**
+    * Returns the number of records so far
+    *
+    * @return int the record count
+    */
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+    * Returns the number of bytes written to the stream so far
+    *
+    * @return long the byte count
+    */
+    public long getByteCount() {
+        return this.byteCount;
+    }
+
+    /*
+    #########################################################################
+    Encoding helpers
+    #########################################################################
+    */
+
+    private void begin(byte type, long time) {
+        // records are written out whole, so a recording cut short stays readable
+        if(this.used + MAX_RECORD_SIZE > this.buffer.length) {
+            this.flush();
+        }
+        this.buffer[this.used++] = type;
+        long delta = time - this.lastTime;
+        this.writeVarint((int)((delta << 1) ^ (delta >> 63)));
+        this.lastTime = time;
+        this.recordCount++;
+    }
+
+    private void writeVarint(int value) {
+        while((value & ~0x7F) != 0) {
+            this.buffer[this.used++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[this.used++] = (byte)value;
+    }
+
+    private void writeInt(int value) {
+        this.buffer[this.used++] = (byte)(value >>> 24);
+        this.buffer[this.used++] = (byte)(value >>> 16);
+        this.buffer[this.used++] = (byte)(value >>> 8);
+        this.buffer[this.used++] = (byte)value;
+    }
+
+    private void writeLong(long value) {
+        this.writeInt((int)(value >>> 32));
+        this.writeInt((int)value);
+    }
+}
@@ -0,0 +1,36 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* Sonar interface
+*
+* The ultrasonic sensor mounted on the mast. The methods mirror UltrasonicSensor.
+*/
+public interface Sonar {
+    
+    // a single measurement after each ping
+    public static final int MODE_PING = 1;
+    // the sensor measures on its own, getDistance returns the latest measurement
+    public static final int MODE_CONTINUOUS = 2;
+    
+    /**
+    * Switches the sensor's measurement mode
+    *
+    * @param int mode MODE_PING or MODE_CONTINUOUS
+    * @return void
+    */
+    public void setMode(int mode);
+    
+    /**
+    * Sends a ping, in ping mode
+    *
+    * @return void
+    */
+    public void ping();
+    
+    /**
+    * Returns the latest measurement
+    *
+    * @return int the distance, in cm, 255 if nothing was detected
+    */
+    public int getDistance();
+}
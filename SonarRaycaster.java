@@ -0,0 +1,280 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SonarRaycaster class
+*
+* Predicts what the sonar would read from a pose, over a snapshot of the
+* map. The beam is modelled as SimSonar models it: a cone of rays 5
+* degrees apart, 15 degrees either side of the bearing, and the echo
+* comes from the closest occupied cell any of them meets.
+*
+* Each ray walks the grid one cell boundary at a time (DDA), so its cost
+* grows with its length in cells, whatever the number of obstacles. The
+* occupied cells are copied into a bit set when the raycaster is created,
+* which is never written to afterwards: any number of threads may predict
+* from one raycaster, as long as each gives its own arrays.
+*
+* Batches are given as flat arrays: poses as x, y and heading arrays,
+* bearings relative to the heading, as in a ScanFrame, and distances
+* pose after pose, bearingCount per pose.
+*/
+public class SonarRaycaster {
+
+    // half angle of the beam, and angle between two of its rays
+    public static final float CONE = 15.0f;
+    public static final float RAY_STEP = 5.0f;
+
+    // nothing detected
+    public static final int NO_ECHO = 255;
+
+    private int width;
+    private int height;
+    private float cellSize;
+    private int wordsPerRow;
+    // one bit per cell, set if occupied, row after row
+    private int[] occupied;
+
+    private float maxRange;
+    // angles of the rays of the beam relative to its bearing, their cosines and sines
+    private float[] rayOffsets;
+    private float[] rayCos;
+    private float[] raySin;
+
+    /**
+    * Constructor
+    * Uses SimSonar's beam, and its range
+    *
+    * @param MapSnapshot map the map to cast rays over
+    */
+    public SonarRaycaster(MapSnapshot map) {
+        this(map, CONE, RAY_STEP, (float)NO_ECHO);
+    }
+
+    /**
+    * Constructor
+    *
+    * @param MapSnapshot map the map to cast rays over
+    * @param float coneHalfAngle the half angle of the beam, in degrees
+    * @param float rayStep the angle between two rays of the beam, in degrees
+    * @param float range the longest distance the sonar measures, in cm
+    */
+    public SonarRaycaster(MapSnapshot map, float coneHalfAngle, float rayStep, float range) {
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.cellSize = map.getCellSize();
+        this.maxRange = range;
+
+        this.wordsPerRow = (this.width + 31) >> 5;
+        this.occupied = new int[this.wordsPerRow * this.height];
+        byte[] row = new byte[this.width];
+        for(int cy = 0; cy < this.height; cy++) {
+            map.readRow(cy, row);
+            int first = cy * this.wordsPerRow;
+            for(int cx = 0; cx < this.width; cx++) {
+                if(row[cx] > MapKit.OCCUPIED_THRESHOLD) {
+                    this.occupied[first + (cx >> 5)] |= 1 << (cx & 31);
+                }
+            }
+        }
+
+        int rays = 1 + 2 * (int)(coneHalfAngle / rayStep);
+        this.rayOffsets = new float[rays];
+        this.rayCos = new float[rays];
+        this.raySin = new float[rays];
+        for(int i = 0; i < rays; i++) {
+            this.rayOffsets[i] = -coneHalfAngle + i * rayStep;
+            this.rayCos[i] = (float)Math.cos(Math.toRadians(this.rayOffsets[i]));
+            this.raySin[i] = (float)Math.sin(Math.toRadians(this.rayOffsets[i]));
+        }
+    }
+
+    /**
+    * Predicts a reading
+    *
+    * @param float x the X coordinate of the sonar
+    * @param float y the Y coordinate of the sonar
+    * @param float heading the rover's heading
+    * @param int bearing the bearing of the reading, relative to the heading
+    * @return int the distance the sonar would read, in cm, NO_ECHO if none
+    */
+    public int predict(float x, float y, float heading, int bearing) {
+        double angle = Math.toRadians(heading + bearing);
+        return this.predictBeam(x, y, (float)Math.cos(angle), (float)Math.sin(angle),
+            this.rayCos, this.raySin, 0);
+    }
+
+    /**
+    * Predicts a sweep, as InstrumentsKit.sweepFrame would measure it
+    *
+    * @param float x the X coordinate of the rover
+    * @param float y the Y coordinate of the rover
+    * @param float heading the rover's heading
+    * @param int halfArc the largest bearing either way
+    * @param int step the angle between two readings
+    * @param ScanFrame frame receives the sweep, from left to right
+    * @return void
+    */
+    public void predictSweep(float x, float y, float heading, int halfArc, int step, ScanFrame frame) {
+        frame.reset(x, y, heading);
+        for(int bearing = halfArc; bearing >= -halfArc; bearing -= step) {
+            frame.add(bearing, this.predict(x, y, heading, bearing));
+        }
+    }
+
+    /**
+    * Predicts the same readings from many poses
+    *
+    * @param float[] xs the X coordinates of the poses
+    * @param float[] ys the Y coordinates of the poses
+    * @param float[] headings the headings of the poses
+    * @param int poseCount the number of poses
+    * @param int[] bearings the bearings of the readings, relative to each heading
+    * @param int bearingCount the number of readings per pose
+    * @param int[] distances receives the readings, pose after pose, at least
+    *                        poseCount * bearingCount long
+    * @return void
+    */
+    public void predict(float[] xs, float[] ys, float[] headings, int poseCount,
+            int[] bearings, int bearingCount, int[] distances) {
+        float[] beamCos = new float[bearingCount * this.rayOffsets.length];
+        float[] beamSin = new float[beamCos.length];
+        this.prepareBeams(bearings, bearingCount, beamCos, beamSin);
+        this.predictPoses(0, poseCount, xs, ys, headings, bearingCount, beamCos, beamSin, distances);
+    }
+
+    /**
+    * Returns the number of rays cast for each reading
+    *
+    * @return int the rays per beam
+    */
+    public int getRaysPerBeam() {
+        return this.rayOffsets.length;
+    }
+
+    /*
+    #########################################################################
+    Raycasting
+    #########################################################################
+    */
+
+    /**
+    * Computes the directions of every ray of every beam, relative to the heading
+    *
+    * @param int[] bearings the bearings of the beams
+    * @param int bearingCount the number of beams
+    * @param float[] beamCos receives the cosines, beam after beam
+    * @param float[] beamSin receives the sines, beam after beam
+    * @return void
+    */
+    protected void prepareBeams(int[] bearings, int bearingCount, float[] beamCos, float[] beamSin) {
+        int rays = this.rayOffsets.length;
+        for(int b = 0; b < bearingCount; b++) {
+            for(int r = 0; r < rays; r++) {
+                double angle = Math.toRadians(bearings[b] + this.rayOffsets[r]);
+                beamCos[b * rays + r] = (float)Math.cos(angle);
+                beamSin[b * rays + r] = (float)Math.sin(angle);
+            }
+        }
+    }
+
+    /**
+    * Predicts the readings of a range of poses
+    * Each pose turns the prepared beams by its heading, so that there is
+    * only one sine and one cosine to compute per pose
+    *
+    * @param int from the first pose
+    * @param int to the pose after the last
+    * @return void
+    */
+    protected void predictPoses(int from, int to, float[] xs, float[] ys, float[] headings, int bearingCount,
+            float[] beamCos, float[] beamSin, int[] distances) {
+        int rays = this.rayOffsets.length;
+        for(int p = from; p < to; p++) {
+            double angle = Math.toRadians(headings[p]);
+            float cos = (float)Math.cos(angle);
+            float sin = (float)Math.sin(angle);
+            for(int b = 0; b < bearingCount; b++) {
+                distances[p * bearingCount + b] = this.predictBeam(xs[p], ys[p], cos, sin, beamCos, beamSin, b * rays);
+            }
+        }
+    }
+
+    /**
+    * Casts every ray of a beam, turned by an angle, and keeps the closest echo
+    */
+    private int predictBeam(float x, float y, float cos, float sin, float[] beamCos, float[] beamSin, int first) {
+        float closest = this.maxRange;
+        for(int r = first; r < first + this.rayOffsets.length; r++) {
+            float dx = cos * beamCos[r] - sin * beamSin[r];
+            float dy = sin * beamCos[r] + cos * beamSin[r];
+            float distance = this.castRay(x, y, dx, dy, closest);
+            if(distance < closest) {
+                closest = distance;
+            }
+        }
+        if(closest >= this.maxRange) {
+            return NO_ECHO;
+        }
+        return Math.min(NO_ECHO - 1, Math.round(closest));
+    }
+
+    /**
+    * Walks a ray through the grid until it enters an occupied cell
+    * The cell the ray starts from is the rover's, and never stops it.
+    * Walls fill the cells they cross, so rays passing within a cell of a
+    * corner may stop on it
+    *
+    * @param float x the X coordinate of the origin
+    * @param float y the Y coordinate of the origin
+    * @param float dx the X component of the ray's unit direction
+    * @param float dy the Y component of the ray's unit direction
+    * @param float range the longest distance looked at, in cm
+    * @return float the distance to the occupied cell, in cm, range if there is none
+    */
+    public float castRay(float x, float y, float dx, float dy, float range) {
+        // grid coordinates, in cells
+        float gx = x / this.cellSize + this.width / 2;
+        float gy = y / this.cellSize + this.height / 2;
+        int cx = (int)Math.floor(gx);
+        int cy = (int)Math.floor(gy);
+        if(cx < 0 || cy < 0 || cx >= this.width || cy >= this.height) {
+            return range;
+        }
+        float limit = range / this.cellSize;
+
+        int stepX = dx > 0.0f ? 1 : -1;
+        int stepY = dy > 0.0f ? 1 : -1;
+        float deltaX = dx == 0.0f ? Float.MAX_VALUE : Math.abs(1.0f / dx);
+        float deltaY = dy == 0.0f ? Float.MAX_VALUE : Math.abs(1.0f / dy);
+        // distance along the ray to the next vertical and horizontal cell boundaries
+        float nextX = dx == 0.0f ? Float.MAX_VALUE : (dx > 0.0f ? cx + 1 - gx : gx - cx) * deltaX;
+        float nextY = dy == 0.0f ? Float.MAX_VALUE : (dy > 0.0f ? cy + 1 - gy : gy - cy) * deltaY;
+
+        while(true) {
+            float t;
+            if(nextX < nextY) {
+                t = nextX;
+                cx += stepX;
+                nextX += deltaX;
+                if(cx < 0 || cx >= this.width) {
+                    return range;
+                }
+            }
+            else {
+                t = nextY;
+                cy += stepY;
+                nextY += deltaY;
+                if(cy < 0 || cy >= this.height) {
+                    return range;
+                }
+            }
+            if(t >= limit) {
+                return range;
+            }
+            if((this.occupied[cy * this.wordsPerRow + (cx >> 5)] & (1 << (cx & 31))) != 0) {
+                // the wall is somewhere in the cell: half a cell in, on average
+                return Math.min(range, (t + 0.5f) * this.cellSize);
+            }
+        }
+    }
+}
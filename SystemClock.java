@@ -0,0 +1,23 @@
+import lejos.util.Delay;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SystemClock class
+*
+* Clock backed by the system time
+*/
+public class SystemClock implements Clock {
+    
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+    
+    public void msDelay(long period) {
+        Delay.msDelay(period);
+    }
+    
+    public boolean isRealTime() {
+        return true;
+    }
+}
@@ -0,0 +1,501 @@
+import java.io.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* TelemetryPublisher class
+*
+* Streams what the rover does while it does it: poses, sweeps, cells of
+* the map changing state and mission events, over any byte stream, such
+* as a Bluetooth or TCP connection.
+*
+* Records are gathered into a frame until the end of the control tick,
+* then the frame is handed to a bounded ring of bytes, which this thread
+* writes out. The control loop never waits for the stream: a frame that
+* does not fit in the ring is dropped whole, and its sequence number is
+* skipped, so that a client can tell how many frames it missed.
+*
+* Records may be added from any thread, such as the one handling the
+* user's interruption: adding a record or ending a tick holds the
+* publisher's lock, which this thread only takes to copy frames out of
+* the ring, never while writing.
+*
+* Frame layout: length (unsigned short, bytes after it), sequence
+* (unsigned short), time since hello() (int, ms), then records. Each record
+* is a type (byte) and a payload:
+*   HELLO          version (byte), start time (int, s), grid width,
+*                  grid height (shorts), cell size (float)
+*   POSE           x, y (shorts, mm), heading (short, tenths of a degree)
+*   SCAN           pose as POSE, count (byte), count x [bearing (signed byte),
+*                  distance (unsigned byte, cm)]
+*   CELL_OCCUPIED  cell x, cell y (shorts)
+*   CELL_CLEARED   cell x, cell y (shorts)
+*   BUMP           side (byte)
+*   EVENT          code (byte)
+*   MESSAGE        length (byte), characters (bytes)
+*/
+public class TelemetryPublisher extends Thread {
+
+    public static final byte VERSION = 1;
+
+    public static final byte HELLO = 0;
+    public static final byte POSE = 1;
+    public static final byte SCAN = 2;
+    public static final byte CELL_OCCUPIED = 3;
+    public static final byte CELL_CLEARED = 4;
+    public static final byte BUMP = 5;
+    public static final byte EVENT = 6;
+    public static final byte MESSAGE = 7;
+
+    // event codes
+    public static final int MISSION_START = 1;
+    public static final int RETURN_START = 2;
+    public static final int HOME = 3;
+    public static final int INTERRUPTED = 4;
+
+    // length, sequence and time stamp
+    public static final int HEADER_SIZE = 8;
+    // largest frame, header included; a tick with more to say sends several
+    public static final int MAX_FRAME = 256;
+
+    private static final int DEFAULT_RING_SIZE = 4096;
+    private static final int SEND_CHUNK = 512;
+    private static final int MAX_MESSAGE = 64;
+    // longest wait for the ring to drain when closing, in ms
+    private static final int CLOSE_TIMEOUT = 2000;
+
+    private OutputStream out;
+    private Clock clock;
+    private long startTime;
+
+    // the frame being gathered
+    private byte[] frame;
+    private int used;
+    private int sequence;
+
+    // frames waiting to be written out, as a ring of bytes
+    private byte[] ring;
+    private int head;
+    private int depth;
+    private byte[] sendBuffer;
+    private boolean sending;
+    private boolean closing;
+    private boolean finished;
+    private boolean failed;
+
+    private int recordCount;
+    private int frameCount;
+    private int droppedFrames;
+    private long droppedBytes;
+    private long sentBytes;
+    private int maxDepth;
+
+    /**
+    * Constructor
+    *
+    * @param OutputStream stream where the frames are written
+    * @param Clock timeSource the clock used to time stamp frames
+    * @param int ringSize the largest number of bytes waiting to be written
+    */
+    public TelemetryPublisher(OutputStream stream, Clock timeSource, int ringSize) {
+
+        this.out = stream;
+        this.clock = timeSource;
+        this.frame = new byte[MAX_FRAME];
+        this.used = HEADER_SIZE;
+        this.ring = new byte[Math.max(ringSize, MAX_FRAME)];
+        this.sendBuffer = new byte[SEND_CHUNK];
+
+        // don't keep the program alive once the mission is over
+        this.setDaemon(true);
+    }
+
+    /**
+    * Creates a publisher with the default ring size
+    *
+    * @param OutputStream stream where the frames are written
+    * @param Clock timeSource the clock used to time stamp frames
+    * @return TelemetryPublisher the publisher
+    */
+    public static TelemetryPublisher open(OutputStream stream, Clock timeSource) {
+        return new TelemetryPublisher(stream, timeSource, DEFAULT_RING_SIZE);
+    }
+
+    /**
+    * Sends the HELLO frame, and starts writing frames out
+    *
+    * @param int startSeconds the mission start time
+    * @param int width the width of the map grid, in cells
+    * @param int height the height of the map grid, in cells
+    * @param float cellSize the size of a cell, in cm
+    * @return void
+    */
+    public synchronized void hello(int startSeconds, int width, int height, float cellSize) {
+        this.startTime = this.clock.currentTimeMillis();
+        this.begin(HELLO, 13);
+        this.frame[this.used++] = VERSION;
+        this.writeInt(startSeconds);
+        this.writeShort(width);
+        this.writeShort(height);
+        this.writeInt(Float.floatToIntBits(cellSize));
+        this.end();
+        this.endTick();
+        this.start();
+    }
+
+    /**
+    * Adds the rover's pose to the frame
+    *
+    * @param float x the rover's x coordinate
+    * @param float y the rover's y coordinate
+    * @param float heading the rover's heading
+    * @return void
+    */
+    public synchronized void pose(float x, float y, float heading) {
+        this.begin(POSE, 6);
+        this.writePose(x, y, heading);
+        this.end();
+    }
+
+    /**
+    * Adds a sweep and the pose it was taken from to the frame
+    *
+    * @param ScanFrame scan the sweep
+    * @return void
+    */
+    public synchronized void scan(ScanFrame scan) {
+        int count = Math.min(scan.size(), (MAX_FRAME - HEADER_SIZE - 8) / 2);
+        this.begin(SCAN, 7 + 2 * count);
+        this.writePose(scan.getX(), scan.getY(), scan.getHeading());
+        this.frame[this.used++] = (byte)count;
+        for(int i = 0; i < count; i++) {
+            this.frame[this.used++] = (byte)clamp(scan.getBearing(i), -128, 127);
+            this.frame[this.used++] = (byte)clamp(scan.getDistance(i), 0, 255);
+        }
+        this.end();
+    }
+
+    /**
+    * Adds a cell of the map becoming occupied or free to the frame
+    *
+    * @param boolean occupied true if the cell is now occupied
+    * @param int cx the cell's column
+    * @param int cy the cell's row
+    * @return void
+    */
+    public synchronized void cell(boolean occupied, int cx, int cy) {
+        this.begin(occupied ? CELL_OCCUPIED : CELL_CLEARED, 4);
+        this.writeShort(cx);
+        this.writeShort(cy);
+        this.end();
+    }
+
+    /**
+    * Adds a bump to the frame
+    *
+    * @param int side the bump side (-1, 1, or 2)
+    * @return void
+    */
+    public synchronized void bump(int side) {
+        this.begin(BUMP, 1);
+        this.frame[this.used++] = (byte)side;
+        this.end();
+    }
+
+    /**
+    * Adds a mission event to the frame
+    *
+    * @param int code the event, MISSION_START, RETURN_START, HOME or INTERRUPTED
+    * @return void
+    */
+    public synchronized void event(int code) {
+        this.begin(EVENT, 1);
+        this.frame[this.used++] = (byte)code;
+        this.end();
+    }
+
+    /**
+    * Adds a message shown to the user to the frame
+    * Only the first MAX_MESSAGE characters are sent, one byte each
+    *
+    * @param String message the message
+    * @return void
+    */
+    public synchronized void message(String message) {
+        int length = Math.min(message.length(), MAX_MESSAGE);
+        this.begin(MESSAGE, 1 + length);
+        this.frame[this.used++] = (byte)length;
+        for(int i = 0; i < length; i++) {
+            this.frame[this.used++] = (byte)message.charAt(i);
+        }
+        this.end();
+    }
+
+    /**
+    * Ends the control tick: the records gathered since the last tick are
+    * handed over as one frame, or dropped if the ring has no room for them
+    *
+    * @return void
+    */
+    public synchronized void endTick() {
+        if(this.used == HEADER_SIZE) {
+            // nothing to say
+            return;
+        }
+        int length = this.used;
+        int time = (int)(this.clock.currentTimeMillis() - this.startTime);
+        this.frame[0] = (byte)((length - 2) >>> 8);
+        this.frame[1] = (byte)(length - 2);
+        this.frame[2] = (byte)(this.sequence >>> 8);
+        this.frame[3] = (byte)this.sequence;
+        this.frame[4] = (byte)(time >>> 24);
+        this.frame[5] = (byte)(time >>> 16);
+        this.frame[6] = (byte)(time >>> 8);
+        this.frame[7] = (byte)time;
+        this.sequence = (this.sequence + 1) & 0xFFFF;
+        this.used = HEADER_SIZE;
+        this.offer(length);
+    }
+
+    /**
+    * Sends what is left, waits a little for it to be written out, and
+    * closes the stream
+    *
+    * @return void
+    */
+    public void close() {
+        this.endTick();
+        boolean drained;
+        synchronized(this) {
+            this.closing = true;
+            this.notifyAll();
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+            while(this.isAlive() && !this.finished) {
+                long left = deadline - System.currentTimeMillis();
+                if(left <= 0) {
+                    break;
+                }
+                try {
+                    this.wait(left);
+                } catch(InterruptedException e) {
+                    break;
+                }
+            }
+            drained = this.finished;
+        }
+        if(!drained) {
+            // not started, or stuck writing to a client that stopped reading
+            this.closeStream();
+        }
+    }
+
+    /**
+    * Writing loop
+    *
+    * @return void
+    */
+    public void run() {
+        while(true) {
+            int count;
+            boolean drained;
+            synchronized(this) {
+                while(this.depth == 0 && !this.closing && !this.failed) {
+                    try {
+                        this.wait();
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                }
+                if(this.failed || this.depth == 0) {
+                    break;
+                }
+                count = Math.min(this.depth, SEND_CHUNK);
+                for(int i = 0; i < count; i++) {
+                    this.sendBuffer[i] = this.ring[(this.head + i) % this.ring.length];
+                }
+                // the space is free for new frames as soon as it is copied
+                this.head = (this.head + count) % this.ring.length;
+                this.depth -= count;
+                drained = this.depth == 0;
+                this.sending = true;
+            }
+
+            boolean written = true;
+            try {
+                this.out.write(this.sendBuffer, 0, count);
+                if(drained) {
+                    this.out.flush();
+                }
+            } catch(IOException e) {
+                // the client went away: the mission carries on without it
+                written = false;
+            }
+
+            synchronized(this) {
+                this.sending = false;
+                if(written) {
+                    this.sentBytes += count;
+                }
+                else {
+                    this.failed = true;
+                }
+                this.notifyAll();
+            }
+        }
+        this.closeStream();
+        synchronized(this) {
+            this.finished = true;
+            this.notifyAll();
+        }
+    }
+
+    /**
+    * Writes how many frames were sent and dropped
+    *
+    * @param OutputStream stream where the summary is written
+    * @return void
+    */
+    public void writeSummary(OutputStream stream) throws IOException {
+        PrintStream summary = new PrintStream(stream);
+        summary.println("telemetry " + this.recordCount + " records, " + this.frameCount + " frames, "
+            + this.getSentByteCount() + " bytes sent, " + this.droppedFrames + " frames ("
+            + this.droppedBytes + " bytes) dropped, ring peak " + this.maxDepth + "/" + this.ring.length
+            + (this.failed ? ", stream lost" : ""));
+        summary.flush();
+    }
+
+    /*
+    #########################################################################
+    Accessor methods
+    #########################################################################
+    */
+
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+    * Returns the number of frames handed to the ring
+    *
+    * @return int the frame count, dropped frames not included
+    */
+    public int getFrameCount() {
+        return this.frameCount;
+    }
+
+    /**
+    * Returns the number of frames dropped because the ring was full
+    *
+    * @return int the dropped count
+    */
+    public int getDroppedFrameCount() {
+        return this.droppedFrames;
+    }
+
+    public long getDroppedByteCount() {
+        return this.droppedBytes;
+    }
+
+    /**
+    * Returns the number of bytes written to the stream so far
+    *
+    * @return long the byte count
+    */
+    public synchronized long getSentByteCount() {
+        return this.sentBytes;
+    }
+
+    /**
+    * Returns the largest number of bytes that were waiting at once
+    *
+    * @return int the highest ring depth
+    */
+    public int getMaxRingDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+    * Tells if the stream failed, so that nothing more is sent
+    *
+    * @return boolean true if the stream was lost
+    */
+    public synchronized boolean isFailed() {
+        return this.failed;
+    }
+
+    /*
+    #########################################################################
+    Encoding helpers
+    #########################################################################
+    */
+
+    private synchronized void offer(int length) {
+        if(this.failed || this.finished) {
+            return;
+        }
+        if(this.ring.length - this.depth < length) {
+            this.droppedFrames++;
+            this.droppedBytes += length;
+            return;
+        }
+        int tail = (this.head + this.depth) % this.ring.length;
+        for(int i = 0; i < length; i++) {
+            this.ring[(tail + i) % this.ring.length] = this.frame[i];
+        }
+        this.depth += length;
+        this.frameCount++;
+        if(this.depth > this.maxDepth) {
+            this.maxDepth = this.depth;
+        }
+        this.notifyAll();
+    }
+
+    private void begin(byte type, int payloadSize) {
+        // a record is never split across two frames
+        if(this.used + 1 + payloadSize > MAX_FRAME) {
+            this.endTick();
+        }
+        this.frame[this.used++] = type;
+    }
+
+    private void end() {
+        this.recordCount++;
+    }
+
+    private void closeStream() {
+        try {
+            this.out.close();
+        } catch(IOException e) {
+            System.err.println("Failed to close telemetry stream");
+        }
+    }
+
+    private void writePose(float x, float y, float heading) {
+        this.writeShort(clamp(Math.round(x * 10.0f), Short.MIN_VALUE, Short.MAX_VALUE));
+        this.writeShort(clamp(Math.round(y * 10.0f), Short.MIN_VALUE, Short.MAX_VALUE));
+        float angle = heading % 360.0f;
+        if(angle >= 180.0f) {
+            angle -= 360.0f;
+        }
+        else if(angle < -180.0f) {
+            angle += 360.0f;
+        }
+        this.writeShort(Math.round(angle * 10.0f));
+    }
+
+    private void writeInt(int value) {
+        this.frame[this.used++] = (byte)(value >>> 24);
+        this.frame[this.used++] = (byte)(value >>> 16);
+        this.frame[this.used++] = (byte)(value >>> 8);
+        this.frame[this.used++] = (byte)value;
+    }
+
+    private void writeShort(int value) {
+        this.frame[this.used++] = (byte)(value >>> 8);
+        this.frame[this.used++] = (byte)value;
+    }
+
+    private static int clamp(int value, int low, int high) {
+        return value < low ? low : (value > high ? high : value);
+    }
+}
@@ -0,0 +1,378 @@
+import lejos.geom.Point;
+import java.io.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* TrajectoryRecorder class
+*
+* Records the path followed by the rover in fixed primitive arrays,
+* simplifying it as it goes.
+*
+* Each new position extends the current segment as long as every position
+* since the last kept vertex stays within the tolerance of it; otherwise
+* the previous position becomes a vertex.
+*
+* When the vertices fill up, the oldest ones are written out to the
+* trajectory file, if there is one, in the same y,x format as
+* Rover.writePointsToFile. Otherwise they are thinned out with
+* Douglas-Peucker at twice the tolerance, then four times, and so on,
+* and the error bound grows accordingly.
+*
+* Recording and closing hold the recorder's lock, so that the thread
+* handling the user's interruption can close the file mid-mission.
+*/
+public class TrajectoryRecorder {
+    
+    // positions since the last vertex checked against each new segment
+    private static final int WINDOW = 32;
+    
+    // kept vertices
+    private float[] xs;
+    private float[] ys;
+    private int count;
+    
+    // positions covered by the segment from the last vertex to the end
+    private float[] windowX;
+    private float[] windowY;
+    private int windowCount;
+    
+    // latest position, not a vertex yet
+    private float endX;
+    private float endY;
+    private boolean hasEnd;
+    
+    private float tolerance;
+    private float errorBound;
+    
+    private DataOutputStream output;
+    private int writtenCount;
+    
+    private int period;
+    private long lastSample;
+    private int sampleCount;
+    
+    // Douglas-Peucker work space
+    private boolean[] keep;
+    private int[] stack;
+    
+    /**
+    * Constructor
+    *
+    * @param int capacity the largest number of vertices kept (at least 4)
+    * @param float maxError the largest distance between a position and the recorded path, in cm
+    * @param int samplingPeriod the shortest time between two samples taken while moving, in ms
+    */
+    public TrajectoryRecorder(int capacity, float maxError, int samplingPeriod) {
+        
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.count = 0;
+        
+        this.windowX = new float[WINDOW];
+        this.windowY = new float[WINDOW];
+        this.windowCount = 0;
+        this.hasEnd = false;
+        
+        this.tolerance = maxError;
+        this.errorBound = maxError;
+        this.period = samplingPeriod;
+        this.lastSample = Long.MIN_VALUE / 2;
+        
+        this.keep = new boolean[capacity];
+        this.stack = new int[2 * capacity];
+    }
+    
+    /**
+    * Records a position
+    *
+    * @param float x the rover's x coordinate
+    * @param float y the rover's y coordinate
+    * @return void
+    */
+    public synchronized void record(float x, float y) {
+        this.sampleCount++;
+        
+        if(this.count == 0) {
+            this.append(x, y);
+            return;
+        }
+        // turning on the spot doesn't move the rover
+        if(this.hasEnd ? (x == this.endX && y == this.endY)
+                : (x == this.xs[this.count - 1] && y == this.ys[this.count - 1])) {
+            return;
+        }
+        
+        if(this.hasEnd) {
+            if(this.windowCount < WINDOW && this.covers(x, y)) {
+                // the new segment still runs close to every position since the last vertex
+                this.windowX[this.windowCount] = this.endX;
+                this.windowY[this.windowCount] = this.endY;
+                this.windowCount++;
+            }
+            else {
+                this.append(this.endX, this.endY);
+                this.windowCount = 0;
+            }
+        }
+        this.endX = x;
+        this.endY = y;
+        this.hasEnd = true;
+    }
+    
+    /**
+    * Records a position, unless the last sample is too recent
+    *
+    * @param long now the current time, in ms
+    * @param float x the rover's x coordinate
+    * @param float y the rover's y coordinate
+    * @return boolean true if the position was recorded
+    */
+    public synchronized boolean sample(long now, float x, float y) {
+        if(now - this.lastSample < this.period) {
+            return false;
+        }
+        this.lastSample = now;
+        this.record(x, y);
+        return true;
+    }
+    
+    /**
+    * Tells if a sample is due
+    *
+    * @param long now the current time, in ms
+    * @return boolean true if sample() would record a position
+    */
+    public boolean isSampleDue(long now) {
+        return now - this.lastSample >= this.period;
+    }
+    
+    /**
+    * Sets the file the oldest vertices are written to when the arrays are full
+    *
+    * @param OutputStream stream the trajectory file
+    * @return void
+    */
+    public void setOutput(OutputStream stream) {
+        this.output = stream == null ? null : new DataOutputStream(stream);
+    }
+    
+    /**
+    * Writes out the whole path left in memory, and closes the trajectory file
+    *
+    * @return boolean true if the file was written
+    */
+    public synchronized boolean close() {
+        if(this.output == null) {
+            return false;
+        }
+        boolean written = this.writeVertices(this.count);
+        try {
+            if(written && this.hasEnd) {
+                this.writePoint(this.endX, this.endY);
+            }
+            if(this.output != null) {
+                this.output.close();
+            }
+        } catch(IOException e) {
+            System.err.println("Failed to write trajectory");
+            written = false;
+        }
+        this.output = null;
+        return written;
+    }
+    
+    /**
+    * Returns the recorded path still in memory
+    * Vertices already written out to the trajectory file are left out
+    *
+    * @return Point[] the vertices of the path, from the first position to the latest one
+    */
+    public Point[] getPoints() {
+        Point[] points = new Point[this.size()];
+        for(int i = 0; i < this.count; i++) {
+            points[i] = new Point(this.xs[i], this.ys[i]);
+        }
+        if(this.hasEnd) {
+            points[this.count] = new Point(this.endX, this.endY);
+        }
+        return points;
+    }
+    
+    /**
+    * Returns the number of vertices of the recorded path
+    *
+    * @return int the vertex count
+    */
+    public int size() {
+        return this.hasEnd ? this.count + 1 : this.count;
+    }
+    
+    /**
+    * Returns the number of vertices written out to the trajectory file
+    *
+    * @return int the written vertex count
+    */
+    public int getWrittenCount() {
+        return this.writtenCount;
+    }
+    
+    /**
+    * Returns the number of positions recorded
+    *
+    * @return int the sample count
+    */
+    public int getSampleCount() {
+        return this.sampleCount;
+    }
+    
+    /**
+    * Returns the largest distance between a recorded position and the path
+    * It is the tolerance given to the constructor, unless the path had to be thinned out
+    *
+    * @return float the error bound, in cm
+    */
+    public float getErrorBound() {
+        return this.errorBound;
+    }
+    
+    /*
+    #########################################################################
+    Simplification helpers
+    #########################################################################
+    */
+    
+    /**
+    * Checks the segment from the last vertex to x,y against the window
+    */
+    private boolean covers(float x, float y) {
+        float ax = this.xs[this.count - 1];
+        float ay = this.ys[this.count - 1];
+        if(distanceToSegment(this.endX, this.endY, ax, ay, x, y) > this.tolerance) {
+            return false;
+        }
+        for(int i = 0; i < this.windowCount; i++) {
+            if(distanceToSegment(this.windowX[i], this.windowY[i], ax, ay, x, y) > this.tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void append(float x, float y) {
+        if(this.count == this.xs.length) {
+            this.thinOut();
+        }
+        this.xs[this.count] = x;
+        this.ys[this.count] = y;
+        this.count++;
+    }
+    
+    /**
+    * Runs Douglas-Peucker over the vertices with growing tolerances
+    * until they fill at most half the arrays
+    */
+    private void thinOut() {
+        if(this.output != null && this.writeVertices(this.count - 1)) {
+            // the last vertex is still the start of the current segment
+            this.xs[0] = this.xs[this.count - 1];
+            this.ys[0] = this.ys[this.count - 1];
+            this.count = 1;
+            return;
+        }
+        
+        float thinning = this.tolerance;
+        while(this.count > this.xs.length / 2) {
+            thinning *= 2.0f;
+            this.simplify(thinning);
+            // each pass moves the path by at most its tolerance
+            this.errorBound += thinning;
+        }
+    }
+    
+    /**
+    * Writes out the oldest vertices
+    *
+    * @param int vertices the number of vertices to write
+    * @return boolean false if the file could not be written
+    */
+    private boolean writeVertices(int vertices) {
+        try {
+            for(int i = 0; i < vertices; i++) {
+                this.writePoint(this.xs[i], this.ys[i]);
+            }
+            this.output.flush();
+            this.writtenCount += vertices;
+            return true;
+        } catch(IOException e) {
+            // keep the rest of the path in memory
+            System.err.println("Failed to write trajectory");
+            this.output = null;
+            return false;
+        }
+    }
+    
+    private void simplify(float maxError) {
+        for(int i = 0; i < this.count; i++) {
+            this.keep[i] = false;
+        }
+        this.keep[0] = true;
+        this.keep[this.count - 1] = true;
+        
+        int top = 0;
+        this.stack[top++] = 0;
+        this.stack[top++] = this.count - 1;
+        while(top > 0) {
+            int last = this.stack[--top];
+            int first = this.stack[--top];
+            
+            int farthest = -1;
+            float farthestDistance = maxError;
+            for(int i = first + 1; i < last; i++) {
+                float distance = distanceToSegment(this.xs[i], this.ys[i],
+                    this.xs[first], this.ys[first], this.xs[last], this.ys[last]);
+                if(distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if(farthest >= 0) {
+                this.keep[farthest] = true;
+                this.stack[top++] = first;
+                this.stack[top++] = farthest;
+                this.stack[top++] = farthest;
+                this.stack[top++] = last;
+            }
+        }
+        
+        int kept = 0;
+        for(int i = 0; i < this.count; i++) {
+            if(this.keep[i]) {
+                this.xs[kept] = this.xs[i];
+                this.ys[kept] = this.ys[i];
+                kept++;
+            }
+        }
+        this.count = kept;
+    }
+    
+    private void writePoint(float x, float y) throws IOException {
+        this.output.writeBytes((double)y + "," + (double)x + "\n");
+    }
+    
+    private static float distanceToSegment(float px, float py, float ax, float ay, float bx, float by) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        float length = dx * dx + dy * dy;
+        float t = length == 0.0f ? 0.0f : ((px - ax) * dx + (py - ay) * dy) / length;
+        if(t < 0.0f) {
+            t = 0.0f;
+        }
+        else if(t > 1.0f) {
+            t = 1.0f;
+        }
+        float ex = ax + t * dx - px;
+        float ey = ay + t * dy - py;
+        return (float)Math.sqrt(ex * ex + ey * ey);
+    }
+}
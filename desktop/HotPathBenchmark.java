@@ -0,0 +1,121 @@
+import lejos.geom.Point;
+import lejos.robotics.navigation.Pose;
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* HotPathBenchmark class
+*
+* Measures the per-scan decision path (Rover.bestAngle, worstDistance,
+* processScan) on synthetic sweeps, and MapKit.addObstacle and getMap on
+* maps holding from 10k to 1M obstacles. Throughput and allocation are
+* reported for each, so that a regression shows up before a mission.
+*
+* The rover runs on the simulated hardware, standing at the landing point.
+*
+* Usage: java HotPathBenchmark [round ms] [obstacle counts...]
+*/
+public class HotPathBenchmark {
+
+    // number of different synthetic sweeps cycled through
+    private static final int SWEEPS = 64;
+
+    // share of the map's cells that are occupied
+    private static final float DENSITY = 0.25f;
+
+    public static void main(String[] args) {
+        long roundMillis = args.length > 0 ? Long.parseLong(args[0]) : 200L;
+        int[] obstacleCounts = {10000, 100000, 1000000};
+        if(args.length > 1) {
+            obstacleCounts = new int[args.length - 1];
+            for(int i = 1; i < args.length; i++) {
+                obstacleCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        Microbench bench = new Microbench(roundMillis);
+        final Rover rover = new Rover(0, new SimHardware(new SimWorld(), 1L, null));
+        final ScanFrame[] sweeps = syntheticSweeps(new Random(1L));
+
+        bench.printHeader();
+        bench.measure("bestAngle", "-", new Microbench.Operation() {
+            public int run(int i) {
+                return rover.bestAngle(sweeps[i & (SWEEPS - 1)]);
+            }
+        });
+
+        bench.measure("worstDistance", "-", new Microbench.Operation() {
+            public int run(int i) {
+                return rover.worstDistance(sweeps[i & (SWEEPS - 1)]);
+            }
+        });
+
+        bench.measure("processScan", "-", new Microbench.Operation() {
+            public int run(int i) {
+                rover.processScan(sweeps[i & (SWEEPS - 1)]);
+                return i;
+            }
+        });
+
+        for(int c = 0; c < obstacleCounts.length; c++) {
+            final MapKit map = filledMap(rover, obstacleCounts[c], new Random(c));
+            final int[] headings = new int[SWEEPS];
+            final float[] distances = new float[SWEEPS];
+            Random random = new Random(2L);
+            for(int i = 0; i < SWEEPS; i++) {
+                headings[i] = random.nextInt(181) - 90;
+                distances[i] = 10.0f + random.nextInt(MapKit.MAX_RANGE - 10);
+            }
+            String param = Integer.toString(obstacleCounts[c]);
+
+            bench.measure("addObstacle", param, new Microbench.Operation() {
+                public int run(int i) {
+                    return map.addObstacle(headings[i & (SWEEPS - 1)], distances[i & (SWEEPS - 1)]) ? 1 : 0;
+                }
+            });
+            bench.measure("getMap", param, new Microbench.Operation() {
+                public int run(int i) {
+                    Point[] points = map.getMap();
+                    return points.length;
+                }
+            });
+        }
+    }
+
+    /**
+    * Sweeps like forwardSweep's: 19 bearings from 90 to -90
+    */
+    private static ScanFrame[] syntheticSweeps(Random random) {
+        ScanFrame[] sweeps = new ScanFrame[SWEEPS];
+        for(int s = 0; s < SWEEPS; s++) {
+            sweeps[s] = new ScanFrame();
+            sweeps[s].reset(0.0f, 0.0f, 0.0f);
+            for(int j = 0; j < 19; j++) {
+                // mostly walls in range, some readings with no echo
+                sweeps[s].add(90 - 10 * j, random.nextInt(8) == 0 ? 255 : 5 + random.nextInt(140));
+            }
+        }
+        return sweeps;
+    }
+
+    /**
+    * Builds a map large enough to hold the given number of obstacles
+    * at DENSITY, and fills it at random
+    */
+    private static MapKit filledMap(Rover rover, int obstacles, Random random) {
+        int side = (int)Math.ceil(Math.sqrt(obstacles / DENSITY));
+        MapKit map = new MapKit(rover, side, side, MapKit.DEFAULT_CELL_SIZE);
+        float halfSize = side * MapKit.DEFAULT_CELL_SIZE / 2.0f;
+        int placed = 0;
+        while(placed < obstacles) {
+            float x = (random.nextFloat() * 2.0f - 1.0f) * halfSize;
+            float y = (random.nextFloat() * 2.0f - 1.0f) * halfSize;
+            // a zero length ray only marks its end cell
+            if(map.integrateRay(x, y, 0.0f, 0.0f, true)) {
+                placed++;
+            }
+        }
+        return map;
+    }
+}
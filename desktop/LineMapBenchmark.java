@@ -0,0 +1,346 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Random;
+import lejos.geom.Point;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* LineMapBenchmark class
+*
+* Runs simulated missions with an output directory, reads the sweeps back
+* from each mission log, and feeds them again, offline, to three maps:
+*  - a point per echo, as the map CSV used to keep them
+*  - the MapKit grid, as the rover keeps it
+*  - a LineFeatureMap, as the rover now keeps next to the grid
+*
+* For each mission time, reports the size of each map in memory and on
+* file (map-<time>.csv, map-<time>.rle and lines-<time>.dat, as written by
+* Rover.finishMission, and the echoes as they would be written to the
+* map CSV), the cost of the two queries the rover asks of its
+* map, the distance to the closest wall and the distance along a ray,
+* and how far the mapped walls are from the arena's true walls.
+*
+* Long missions are run without the return reserve, so that they explore
+* for the whole mission time.
+*
+* Usage: java LineMapBenchmark [missions] [mission times, s] [round ms]
+*   mission times is a comma-separated list, e.g. 300,1200
+*/
+public class LineMapBenchmark {
+
+    // same arena as SimMission
+    private static final float ARENA_HALF_SIZE = 200.0f;
+    private static final int ARENA_BOXES = 12;
+
+    // missions longer than this explore without keeping time to return
+    private static final int RESERVE_LIMIT = 600;
+    private static final int FEATURE_CAPACITY = 256;
+    private static final int QUERY_POINTS = 1024;
+
+    public static void main(String[] args) throws IOException {
+        int missions = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String[] durations = args.length > 1 ? args[1].split(",") : new String[] {"300", "1200"};
+        long roundMillis = args.length > 2 ? Long.parseLong(args[2]) : 200L;
+
+        for(int i = 0; i < durations.length; i++) {
+            int duration = Integer.parseInt(durations[i].trim());
+            report(duration, missions, roundMillis);
+        }
+    }
+
+    private static void report(int duration, int missions, long roundMillis) throws IOException {
+        System.out.println(duration + " s missions, return reserve " + (duration <= RESERVE_LIMIT ? "on" : "off"));
+        Microbench bench = new Microbench(roundMillis);
+        bench.printHeader();
+
+        double[] totals = new double[17];
+        int mapped = 0;
+        for(int seed = 1; seed <= missions; seed++) {
+            File directory = createDirectory(seed);
+            try {
+                SimMission mission = new SimMission(seed, duration);
+                mission.setReturnReserve(duration <= RESERVE_LIMIT);
+                mission.setOutputDirectory(directory);
+                mission.run();
+                File log = findFile(directory, "log-");
+                if(log == null) {
+                    continue;
+                }
+                Replay replay = new Replay();
+                replay.read(log);
+                if(replay.features.getSegmentCount() == 0) {
+                    continue;
+                }
+                SimWorld world = SimWorld.randomArena(seed, ARENA_HALF_SIZE, ARENA_BOXES);
+                double[] row = measure(bench, seed, world, replay, directory);
+                for(int j = 0; j < row.length; j++) {
+                    totals[j] += row[j];
+                }
+                mapped++;
+            } finally {
+                deleteDirectory(directory);
+            }
+        }
+        if(mapped == 0) {
+            System.out.println("no mission mapped anything");
+            return;
+        }
+        for(int j = 0; j < totals.length; j++) {
+            totals[j] /= mapped;
+        }
+
+        System.out.println();
+        System.out.println("means over " + mapped + " missions, "
+            + String.format("%.0f sweeps, %.1f segments per 100 echoes", totals[0], totals[3] * 100.0 / totals[1]));
+        System.out.println("map        items   memory B   csv B  binary B  clearance ns  range ns  wall error cm");
+        System.out.printf("%-8s %7.0f %10.0f %7.0f %9s %13.0f %9s %14.1f%n", "echoes",
+            totals[1], totals[1] * 8.0, totals[16], "-", totals[7], "-", totals[13]);
+        System.out.printf("%-8s %7.0f %10.0f %7.0f %9.0f %13.0f %9.0f %14.1f%n", "grid",
+            totals[2], totals[10], totals[4], totals[5], totals[8], totals[11], totals[14]);
+        System.out.printf("%-8s %7.0f %10.0f %7s %9.0f %13.0f %9.0f %14.1f%n", "segments",
+            totals[3], totals[3] * 20.0, "-", totals[6], totals[9], totals[12], totals[15]);
+        System.out.println();
+    }
+
+    /**
+    * Measures one mission's maps
+    *
+    * @return double[] sweeps, echoes, cells and segments; the CSV, grid and
+    *                  line map file sizes; the echo, grid and segment clearance
+    *                  times; the grid's memory; the grid and segment range
+    *                  times; the echo, cell and segment wall errors; the size
+    *                  of the echoes written as a map CSV
+    */
+    private static double[] measure(Microbench bench, long seed, SimWorld world, final Replay replay, File directory) {
+        final MapKit grid = replay.grid;
+        final LineFeatureMap features = replay.features;
+        final float[] echoes = replay.getEchoes();
+        final int echoCount = echoes.length / 2;
+
+        // query points and bearings, anywhere in the arena
+        final float[] xs = new float[QUERY_POINTS];
+        final float[] ys = new float[QUERY_POINTS];
+        final float[] bearings = new float[QUERY_POINTS];
+        Random random = new Random(seed);
+        for(int p = 0; p < QUERY_POINTS; p++) {
+            xs[p] = (random.nextFloat() * 2.0f - 1.0f) * ARENA_HALF_SIZE;
+            ys[p] = (random.nextFloat() * 2.0f - 1.0f) * ARENA_HALF_SIZE;
+            bearings[p] = random.nextFloat() * 360.0f;
+        }
+        final float[] result = new float[2];
+        final float range = (float)MapKit.MAX_RANGE;
+
+        String param = "seed " + seed;
+        double echoClearance = bench.measure("clearance, echoes", param, new Microbench.Operation() {
+            public int run(int iteration) {
+                int p = iteration % QUERY_POINTS;
+                float best = Float.MAX_VALUE;
+                for(int i = 0; i < echoCount; i++) {
+                    float dx = echoes[2 * i] - xs[p];
+                    float dy = echoes[2 * i + 1] - ys[p];
+                    best = Math.min(best, dx * dx + dy * dy);
+                }
+                return (int)best;
+            }
+        });
+        double gridClearance = bench.measure("clearance, grid", param, new Microbench.Operation() {
+            public int run(int iteration) {
+                int p = iteration % QUERY_POINTS;
+                return (int)grid.nearestObstacle(xs[p], ys[p], 2.0f * ARENA_HALF_SIZE, result);
+            }
+        });
+        double segmentClearance = bench.measure("clearance, segments", param, new Microbench.Operation() {
+            public int run(int iteration) {
+                int p = iteration % QUERY_POINTS;
+                return (int)features.getClearance(xs[p], ys[p]);
+            }
+        });
+        double gridRange = bench.measure("range, grid", param, new Microbench.Operation() {
+            public int run(int iteration) {
+                int p = iteration % QUERY_POINTS;
+                return (int)grid.rayDistance(xs[p], ys[p], bearings[p], range);
+            }
+        });
+        double segmentRange = bench.measure("range, segments", param, new Microbench.Operation() {
+            public int run(int iteration) {
+                int p = iteration % QUERY_POINTS;
+                return (int)features.range(xs[p], ys[p], bearings[p], range);
+            }
+        });
+
+        // how far the mapped walls are from the true ones, odometry drift included
+        Point[] cells = grid.getMap();
+        float echoError = 0.0f;
+        for(int i = 0; i < echoCount; i++) {
+            echoError += world.clearance(echoes[2 * i], echoes[2 * i + 1]);
+        }
+        float cellError = 0.0f;
+        for(int i = 0; i < cells.length; i++) {
+            cellError += world.clearance(cells[i].x, cells[i].y);
+        }
+        // segments are sampled every 5 cm, so that long walls weigh more
+        float segmentError = 0.0f;
+        int samples = 0;
+        for(int i = 0; i < features.getSegmentCount(); i++) {
+            float dx = features.getX2(i) - features.getX1(i);
+            float dy = features.getY2(i) - features.getY1(i);
+            int steps = 1 + (int)(Math.sqrt(dx * dx + dy * dy) / 5.0);
+            for(int s = 0; s <= steps; s++) {
+                float t = (float)s / steps;
+                segmentError += world.clearance(features.getX1(i) + t * dx, features.getY1(i) + t * dy);
+                samples++;
+            }
+        }
+
+        return new double[] {
+            replay.sweeps, echoCount, cells.length, features.getSegmentCount(),
+            fileSize(directory, "map-", ".csv"), fileSize(directory, "map-", ".rle"),
+            fileSize(directory, "lines-", ".dat"),
+            echoClearance, gridClearance, segmentClearance,
+            (double)grid.getWidth() * grid.getHeight(), gridRange, segmentRange,
+            echoError / Math.max(1, echoCount), cellError / Math.max(1, cells.length),
+            segmentError / Math.max(1, samples), csvSize(echoes)
+        };
+    }
+
+    /**
+    * The sweeps of a mission log, fed to the three maps
+    */
+    private static class Replay {
+
+        public MapKit grid;
+        public LineFeatureMap features;
+        public int sweeps;
+        private ArrayList<float[]> echoes;
+
+        public Replay() {
+            this.grid = new MapKit(null);
+            this.features = new LineFeatureMap(FEATURE_CAPACITY, MapKit.MAX_RANGE);
+            this.echoes = new ArrayList<float[]>();
+        }
+
+        /**
+        * Reads the sweeps of a log, as MissionLogConverter reads its records
+        */
+        public void read(File logFile) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+            ScanFrame scan = new ScanFrame();
+            try {
+                if(in.readInt() != MissionLog.MAGIC || in.readByte() != MissionLog.VERSION) {
+                    throw new IOException("Not a mission log: " + logFile);
+                }
+                in.readInt();
+                while(true) {
+                    int type = in.read();
+                    if(type < 0) {
+                        break;
+                    }
+                    in.readInt();
+                    switch(type) {
+                        case MissionLog.POSE:
+                            in.skipBytes(12);
+                            break;
+                        case MissionLog.SCAN:
+                            scan.reset(in.readFloat(), in.readFloat(), in.readFloat());
+                            int count = in.readUnsignedByte();
+                            for(int i = 0; i < count; i++) {
+                                scan.add(in.readShort(), in.readShort());
+                            }
+                            this.add(scan);
+                            break;
+                        case MissionLog.BUMP:
+                            in.skipBytes(13);
+                            break;
+                        case MissionLog.OBSTACLE_ADDED:
+                        case MissionLog.OBSTACLE_CLEARED:
+                            in.skipBytes(8);
+                            break;
+                        default:
+                            throw new IOException("Unknown record type " + type);
+                    }
+                }
+            } catch(EOFException e) {
+                // the mission was interrupted in the middle of a record
+            } finally {
+                in.close();
+            }
+        }
+
+        private void add(ScanFrame scan) {
+            this.sweeps++;
+            for(int i = 0; i < scan.size(); i++) {
+                int distance = scan.getDistance(i);
+                this.grid.addReading(scan.getX(), scan.getY(), scan.getHeading(), scan.getBearing(i), distance);
+                if(distance > 0 && distance < MapKit.MAX_RANGE) {
+                    double angle = Math.toRadians(scan.getHeading() + scan.getBearing(i));
+                    this.echoes.add(new float[] {scan.getX() + distance * (float)Math.cos(angle),
+                        scan.getY() + distance * (float)Math.sin(angle)});
+                }
+            }
+            this.features.addScan(scan);
+        }
+
+        public float[] getEchoes() {
+            float[] flat = new float[2 * this.echoes.size()];
+            for(int i = 0; i < this.echoes.size(); i++) {
+                flat[2 * i] = this.echoes.get(i)[0];
+                flat[2 * i + 1] = this.echoes.get(i)[1];
+            }
+            return flat;
+        }
+    }
+
+    /*
+    #########################################################################
+    File helpers
+    #########################################################################
+    */
+
+    private static File createDirectory(long seed) throws IOException {
+        File directory = File.createTempFile("linemap-" + seed + "-", "");
+        if(!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        return directory;
+    }
+
+    private static File findFile(File directory, String prefix) {
+        File[] files = directory.listFiles();
+        for(int i = 0; files != null && i < files.length; i++) {
+            if(files[i].getName().startsWith(prefix)) {
+                return files[i];
+            }
+        }
+        return null;
+    }
+
+    private static double fileSize(File directory, String prefix, String suffix) {
+        File[] files = directory.listFiles();
+        for(int i = 0; files != null && i < files.length; i++) {
+            if(files[i].getName().startsWith(prefix) && files[i].getName().endsWith(suffix)) {
+                return files[i].length();
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+    * Same format as Rover.writePointsToFile: y,x per line
+    */
+    private static double csvSize(float[] points) {
+        double size = 0.0;
+        for(int i = 0; i < points.length; i += 2) {
+            size += (points[i + 1] + "," + points[i] + "\n").length();
+        }
+        return size;
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        for(int i = 0; files != null && i < files.length; i++) {
+            files[i].delete();
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,167 @@
+import lejos.robotics.navigation.Pose;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* LocalisationBenchmark class
+*
+* Measures the ParticleFilter in two ways:
+*  - update rate: one motion and one sweep correction, for fixed particle
+*    counts, in the calling thread and on every core
+*  - pose error: simulated missions with odometry only, localising against
+*    the rover's own map, and localising against a survey of the arena.
+*    The error between the true and believed pose is averaged over every
+*    sweep, and measured again at the end of the return home.
+*
+* Usage: java LocalisationBenchmark [missions] [slip] [round ms]
+*/
+public class LocalisationBenchmark {
+
+    // same arena as SimMission
+    private static final float ARENA_HALF_SIZE = 200.0f;
+    private static final int ARENA_BOXES = 12;
+    private static final long TIME_LIMIT = 60L * 60L * 1000L;
+    private static final int MISSION_DURATION = 180;
+
+    private static final int FEWEST_PARTICLES = 200;
+    private static final int MOST_PARTICLES = 2000;
+
+    private static final int[] PARTICLE_COUNTS = {500, 2000, 10000, 50000};
+
+    private static final String[] MODES = {"odometry", "own map", "survey"};
+
+    public static void main(String[] args) {
+        int missions = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        float slip = args.length > 1 ? Float.parseFloat(args[1]) : 0.03f;
+        long roundMillis = args.length > 2 ? Long.parseLong(args[2]) : 200L;
+
+        measureUpdateRate(new Microbench(roundMillis));
+        System.out.println();
+        measurePoseError(missions, slip);
+    }
+
+    /*
+    #########################################################################
+    Update rate
+    #########################################################################
+    */
+
+    private static void measureUpdateRate(Microbench bench) {
+        SimWorld world = SimWorld.randomArena(1L, ARENA_HALF_SIZE, ARENA_BOXES);
+        Rover rover = new Rover(0, new SimHardware(world, 1L, null));
+        world.drawInto(rover.mappingUnit);
+
+        // a forward sweep from the landing point, without noise
+        final ScanFrame scan = new ScanFrame();
+        scan.reset(0.0f, 0.0f, 0.0f);
+        for(int bearing = 90; bearing >= -90; bearing -= 10) {
+            scan.add(bearing, Math.round(world.raycast(0.0f, 0.0f, bearing, 255.0f)));
+        }
+        final Pose start = new Pose(0.0f, 0.0f, 0.0f);
+        final Pose moved = new Pose(5.0f, 0.0f, 2.0f);
+
+        bench.printHeader();
+        for(int particles : PARTICLE_COUNTS) {
+            ParticleFilter sequential = new ParticleFilter(rover.mappingUnit, particles, particles, new Random(1L));
+            ParticleFilter parallel = new ParallelParticleFilter(rover.mappingUnit, particles, particles,
+                new Random(1L), ForkJoinPool.commonPool());
+            bench.measure("update sequential", Integer.toString(particles), update(sequential, start, moved, scan));
+            bench.measure("update parallel", Integer.toString(particles), update(parallel, start, moved, scan));
+        }
+        System.out.println("(" + ForkJoinPool.commonPool().getParallelism() + " worker threads)");
+    }
+
+    private static Microbench.Operation update(final ParticleFilter filter, final Pose start, final Pose moved,
+            final ScanFrame scan) {
+        return new Microbench.Operation() {
+            public int run(int i) {
+                // start from a known pose, so that every update does the same work
+                filter.setPose(start);
+                filter.move(start.getX(), start.getY(), start.getHeading(), moved);
+                return filter.correct(scan) ? filter.getParticleCount() : 0;
+            }
+        };
+    }
+
+    /*
+    #########################################################################
+    Pose error
+    #########################################################################
+    */
+
+    private static void measurePoseError(int missions, float slip) {
+        System.out.printf("%d missions of %d s, odometry slip %.2f%n", missions, MISSION_DURATION, slip);
+        System.out.println("localisation   completed   mean error (cm)   home error (cm)   updates   wall (s)");
+        for(int mode = 0; mode < MODES.length; mode++) {
+            int completed = 0;
+            double meanError = 0.0;
+            double homeError = 0.0;
+            int updates = 0;
+            long wallStart = System.currentTimeMillis();
+            for(long seed = 1; seed <= missions; seed++) {
+                float[] result = runMission(seed, slip, mode);
+                completed += result[0] > 0.0f ? 1 : 0;
+                meanError += result[1];
+                homeError += result[2];
+                updates += (int)result[3];
+            }
+            double wall = (System.currentTimeMillis() - wallStart) / 1000.0;
+            System.out.printf("%-14s %6d/%-4d %14.1f %17.1f %9d %10.1f%n", MODES[mode], completed, missions,
+                meanError / missions, homeError / missions, updates, wall);
+        }
+    }
+
+    /**
+    * Runs a mission
+    *
+    * @return float[] completed (1 or 0), mean pose error, home error, filter updates
+    */
+    private static float[] runMission(long seed, float slip, int mode) {
+        SimWorld world = SimWorld.randomArena(seed, ARENA_HALF_SIZE, ARENA_BOXES);
+        final SimHardware hardware = new SimHardware(world, seed, null, slip);
+        hardware.getVirtualClock().setDeadline(TIME_LIMIT);
+
+        final float[] error = new float[2];
+        Rover rover = new Rover(MISSION_DURATION, hardware) {
+            public void processScan(ScanFrame scan) {
+                super.processScan(scan);
+                Pose truth = hardware.getSimDriveBase().getTruePose();
+                error[0] += (float)Math.hypot(truth.getX() - this.getX(), truth.getY() - this.getY());
+                error[1]++;
+            }
+        };
+        rover.setRandomSeed(seed);
+
+        ParticleFilter localiser = null;
+        if(mode > 0) {
+            MapKit map = rover.mappingUnit;
+            if(mode == 2) {
+                map = new MapKit(rover);
+                world.drawInto(map);
+            }
+            localiser = new ParallelParticleFilter(map, FEWEST_PARTICLES, MOST_PARTICLES, new Random(seed),
+                ForkJoinPool.commonPool());
+            rover.setLocaliser(localiser);
+        }
+
+        boolean completed;
+        try {
+            rover.startMission();
+            rover.mainBehaviour();
+            rover.finishMission();
+            completed = true;
+        } catch(IllegalStateException e) {
+            // stuck until the time limit
+            completed = false;
+        }
+        Pose truth = hardware.getSimDriveBase().getTruePose();
+        return new float[] {
+            completed ? 1.0f : 0.0f,
+            error[1] > 0.0f ? error[0] / error[1] : 0.0f,
+            (float)Math.hypot(truth.getX(), truth.getY()),
+            localiser == null ? 0.0f : (float)localiser.getUpdateCount()
+        };
+    }
+}
@@ -0,0 +1,40 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* LoopbackMapLink class
+*
+* Stands in for the radio link between a rover and the shared map when
+* both run in the same program, such as simulated rovers: the evidence
+* the rover's MapKit takes in is added to the shared map straight away,
+* from the rover's own thread.
+*/
+public class LoopbackMapLink implements EvidenceListener {
+
+    private SharedMap sharedMap;
+    private int rover;
+    private long updateCount;
+
+    /**
+    * Constructor
+    * Registers one more rover with the shared map
+    *
+    * @param SharedMap map the map shared by the rovers
+    */
+    public LoopbackMapLink(SharedMap map) {
+        this.sharedMap = map;
+        this.rover = map.registerRover();
+    }
+
+    public void evidenceAdded(int cx, int cy, int delta) {
+        this.sharedMap.add(this.rover, cx, cy, delta);
+        this.updateCount++;
+    }
+
+    public int getRover() {
+        return this.rover;
+    }
+
+    public long getUpdateCount() {
+        return this.updateCount;
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MapGridConverter class
+*
+* Reads the run-length encoded grid written by Rover.finishMission
+* (map-<time>.rle) and writes it out as a PGM greymap.
+*
+* Usage: java MapGridConverter map-<time>.rle [output.pgm]
+*/
+public class MapGridConverter {
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.err.println("Usage: java MapGridConverter map-<time>.rle [output.pgm]");
+            System.exit(1);
+        }
+        File input = new File(args[0]);
+        String name = input.getName();
+        File output = new File(args.length > 1 ? args[1]
+            : (name.endsWith(".rle") ? name.substring(0, name.length() - 4) : name) + ".pgm");
+
+        InputStream in = new BufferedInputStream(new FileInputStream(input));
+        MapSnapshot map;
+        try {
+            map = read(in);
+        } finally {
+            in.close();
+        }
+        OutputStream out = new FileOutputStream(output);
+        try {
+            MapExporter.open(out).writePGM(map);
+        } finally {
+            out.close();
+        }
+        System.out.println(map.getWidth() + "x" + map.getHeight() + " cells, " + map.countObstacles()
+            + " obstacles, written to " + output);
+    }
+
+    /**
+    * Reads a run-length encoded grid
+    *
+    * @param InputStream stream the grid, as written by MapExporter.writeRLE
+    * @return MapSnapshot the map
+    */
+    public static MapSnapshot read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if(in.readInt() != MapExporter.MAGIC) {
+            throw new IOException("Not a map grid");
+        }
+        byte version = in.readByte();
+        if(version != MapExporter.VERSION) {
+            throw new IOException("Unsupported map grid version " + version);
+        }
+        int width = in.readInt();
+        int height = in.readInt();
+        float cellSize = in.readFloat();
+        long mapVersion = in.readLong();
+
+        int tilesAcross = (width + MapKit.TILE_SIZE - 1) / MapKit.TILE_SIZE;
+        int tilesDown = (height + MapKit.TILE_SIZE - 1) / MapKit.TILE_SIZE;
+        byte[][] tiles = new byte[tilesAcross * tilesDown][MapKit.TILE_SIZE * MapKit.TILE_SIZE];
+        long cells = (long)width * height;
+        long cell = 0;
+        while(cell < cells) {
+            long group = readVarint(in);
+            long length = group >>> 1;
+            boolean literals = (group & 1) != 0;
+            if(length == 0 || cell + length > cells) {
+                throw new IOException("Corrupt map grid at cell " + cell);
+            }
+            byte value = literals ? 0 : in.readByte();
+            for(long i = cell; i < cell + length; i++) {
+                if(literals) {
+                    value = in.readByte();
+                }
+                if(value != 0) {
+                    int cx = (int)(i % width);
+                    int cy = (int)(i / width);
+                    tiles[(cy / MapKit.TILE_SIZE) * tilesAcross + cx / MapKit.TILE_SIZE]
+                        [(cy % MapKit.TILE_SIZE) * MapKit.TILE_SIZE + cx % MapKit.TILE_SIZE] = value;
+                }
+            }
+            cell += length;
+        }
+        return new MapSnapshot(width, height, cellSize, mapVersion, tiles, null);
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+}
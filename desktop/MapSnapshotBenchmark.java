@@ -0,0 +1,247 @@
+import lejos.geom.Point;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MapSnapshotBenchmark class
+*
+* Measures what it costs to hand the map to readers, on grids of up to
+* 16M cells filled with synthetic evidence:
+*  - export: the CSV of obstacles written by Rover.finishMission, and the
+*    PGM and RLE written by MapExporter straight from a snapshot, to a
+*    stream that discards them. Output size, throughput and the bytes
+*    allocated by one export are reported, and the RLE is read back and
+*    checked cell by cell.
+*  - snapshots: MapKit.getMap, which copies every obstacle into new
+*    Points, against MapKit.snapshot taken after each sweep, which only
+*    copies the tiles the sweep changed, and snapshot with nothing changed.
+*    Then the memory held by a hundred snapshots taken one sweep apart,
+*    against a hundred copies of the grid.
+*
+* Usage: java MapSnapshotBenchmark [grid sides] [round ms]
+*   grid sides is a comma-separated list, e.g. 256,1024,4096
+*/
+public class MapSnapshotBenchmark {
+
+    private static final float CELL_SIZE = MapKit.DEFAULT_CELL_SIZE;
+    // one synthetic reading for this many cells
+    private static final int CELLS_PER_READING = 40;
+    // readings of one sweep
+    private static final int SWEEP_READINGS = 37;
+    // snapshots kept to measure what they hold
+    private static final int KEPT_SNAPSHOTS = 100;
+
+    private static final long SEED = 1L;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        String[] sides = args.length > 0 ? args[0].split(",") : new String[] {"256", "1024", "4096"};
+        long roundMillis = args.length > 1 ? Long.parseLong(args[1]) : 200L;
+
+        MapKit[] maps = new MapKit[sides.length];
+        for(int i = 0; i < sides.length; i++) {
+            int side = Integer.parseInt(sides[i].trim());
+            maps[i] = new MapKit(null, side, side, CELL_SIZE);
+            fillMap(maps[i], new Random(SEED));
+        }
+
+        // exported first: the sweeps below wear the synthetic maps down
+        System.out.println("cells      format  size (kB)  export (ms)  MB/s    Mcells/s  allocated (kB)  read back");
+        for(MapKit map : maps) {
+            measureExports(map);
+        }
+
+        System.out.println();
+        System.out.println("snapshots");
+        Microbench bench = new Microbench(roundMillis);
+        bench.printHeader();
+        for(MapKit map : maps) {
+            measureSnapshots(bench, map);
+        }
+
+        System.out.println();
+        System.out.println("cells      kept  tiles/snapshot  snapshots (MB)  grid copies (MB)");
+        for(MapKit map : maps) {
+            measureRetained(map);
+        }
+    }
+
+    /*
+    #########################################################################
+    Snapshots
+    #########################################################################
+    */
+
+    private static void measureSnapshots(Microbench bench, final MapKit map) {
+        String cells = Integer.toString(map.getWidth() * map.getHeight());
+        final Random random = new Random(SEED);
+        bench.measure("getMap", cells, new Microbench.Operation() {
+            public int run(int iteration) {
+                return map.getMap().length;
+            }
+        });
+        bench.measure("sweep", cells, new Microbench.Operation() {
+            public int run(int iteration) {
+                return sweep(map, random);
+            }
+        });
+        bench.measure("sweep, snapshot", cells, new Microbench.Operation() {
+            public int run(int iteration) {
+                return sweep(map, random) + map.snapshot().getWidth();
+            }
+        });
+        bench.measure("snapshot, same", cells, new Microbench.Operation() {
+            public int run(int iteration) {
+                return map.snapshot().getWidth();
+            }
+        });
+    }
+
+    private static void measureRetained(MapKit map) {
+        Random random = new Random(SEED + 1);
+        MapSnapshot previous = map.snapshot();
+        long copied = 0;
+        long tiles = 0;
+        for(int i = 0; i < KEPT_SNAPSHOTS; i++) {
+            sweep(map, random);
+            MapSnapshot snapshot = map.snapshot();
+            int changed = snapshot.getTileCount() - snapshot.countSharedTiles(previous) - snapshot.countEmptyTiles();
+            // the first one kept holds all its tiles, the others only those they copied
+            tiles += i == 0 ? snapshot.getTileCount() - snapshot.countEmptyTiles() : changed;
+            copied += changed;
+            previous = snapshot;
+        }
+        long cells = (long)map.getWidth() * map.getHeight();
+        // tile tables of 4 byte references, and tiles with a 16 byte array header
+        long bytes = KEPT_SNAPSHOTS * (16L + 4L * previous.getTileCount())
+            + tiles * (16L + MapKit.TILE_SIZE * MapKit.TILE_SIZE);
+        System.out.printf("%-9d %5d %15.1f %15.2f %17.1f%n", cells, KEPT_SNAPSHOTS, (float)copied / KEPT_SNAPSHOTS,
+            bytes / 1048576.0, KEPT_SNAPSHOTS * cells / 1048576.0);
+    }
+
+    /*
+    #########################################################################
+    Export
+    #########################################################################
+    */
+
+    private static void measureExports(MapKit map) throws IOException {
+        MapSnapshot snapshot = map.snapshot();
+        long cells = (long)map.getWidth() * map.getHeight();
+        for(int format = 0; format < 3; format++) {
+            // the first runs compile the exporters
+            for(int warmup = 0; warmup < 3; warmup++) {
+                export(snapshot, format, new CountingStream());
+            }
+            CountingStream out = new CountingStream();
+            long thread = Thread.currentThread().getId();
+            long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            export(snapshot, format, out);
+            long nanos = System.nanoTime() - start;
+            long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+            String check = "-";
+            if(format == 2) {
+                ByteArrayOutputStream grid = new ByteArrayOutputStream();
+                export(snapshot, format, grid);
+                check = sameCells(snapshot, MapGridConverter.read(new ByteArrayInputStream(grid.toByteArray())))
+                    ? "same" : "DIFFERENT";
+            }
+            System.out.printf("%-9d %7s %10.1f %12.2f %7.1f %10.1f %15.1f  %s%n", cells,
+                new String[] {"csv", "pgm", "rle"}[format], out.count / 1024.0, nanos / 1e6,
+                out.count / (nanos / 1e9) / 1048576.0, cells / (nanos / 1e3), allocated / 1024.0, check);
+        }
+    }
+
+    private static void export(MapSnapshot snapshot, int format, OutputStream out) throws IOException {
+        if(format == 0) {
+            // as Rover.writePointsToFile does it
+            Point[] points = snapshot.getMap();
+            DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+            for(int i = 0; i < points.length; i++) {
+                dataOut.writeBytes(points[i].getY() + "," + points[i].getX() + "\n");
+            }
+            dataOut.flush();
+        }
+        else if(format == 1) {
+            MapExporter.open(out).writePGM(snapshot);
+        }
+        else {
+            MapExporter.open(out).writeRLE(snapshot);
+        }
+    }
+
+    private static boolean sameCells(MapSnapshot a, MapSnapshot b) {
+        if(a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight() || a.getVersion() != b.getVersion()) {
+            return false;
+        }
+        for(int cy = 0; cy < a.getHeight(); cy++) {
+            for(int cx = 0; cx < a.getWidth(); cx++) {
+                if(a.getLogOdds(cx, cy) != b.getLogOdds(cx, cy)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+    * Discards what is written, counting the bytes
+    */
+    private static class CountingStream extends OutputStream {
+
+        private long count;
+
+        public void write(int b) {
+            this.count++;
+        }
+
+        public void write(byte[] data, int offset, int length) {
+            this.count += length;
+        }
+    }
+
+    /*
+    #########################################################################
+    Synthetic maps
+    #########################################################################
+    */
+
+    /**
+    * Scatters readings over the whole grid, from random points in random directions
+    */
+    private static void fillMap(MapKit map, Random random) {
+        float halfWidth = map.getWidth() * CELL_SIZE / 2.0f;
+        float halfHeight = map.getHeight() * CELL_SIZE / 2.0f;
+        int readings = map.getWidth() * map.getHeight() / CELLS_PER_READING;
+        for(int i = 0; i < readings; i++) {
+            float x = (random.nextFloat() * 2.0f - 1.0f) * halfWidth;
+            float y = (random.nextFloat() * 2.0f - 1.0f) * halfHeight;
+            map.addReading(x, y, random.nextFloat() * 360.0f, 0, 20 + random.nextInt(MapKit.MAX_RANGE + 50));
+        }
+    }
+
+    /**
+    * Adds a sweep of readings from a random point
+    */
+    private static int sweep(MapKit map, Random random) {
+        float halfWidth = map.getWidth() * CELL_SIZE / 2.0f;
+        float halfHeight = map.getHeight() * CELL_SIZE / 2.0f;
+        float x = (random.nextFloat() * 2.0f - 1.0f) * halfWidth;
+        float y = (random.nextFloat() * 2.0f - 1.0f) * halfHeight;
+        float heading = random.nextFloat() * 360.0f;
+        int hits = 0;
+        for(int i = 0; i < SWEEP_READINGS; i++) {
+            if(map.addReading(x, y, heading, i * 5 - 90, 20 + random.nextInt(MapKit.MAX_RANGE + 50))) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,227 @@
+import lejos.geom.Point;
+import java.io.*;
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MapStoreBenchmark class
+*
+* Measures what it costs to start a mission from an earlier map, for grids
+* of a few million cells:
+*  - startup: a new MapKit loaded from the CSV written by finishMission
+*    (parsed and added back as obstacles, free cells are lost), or from a
+*    MappedTileStore (every log-odds value kept). Time and heap are measured
+*    from creating the MapKit to the map being ready.
+*  - incremental saves: the time to write out the tiles changed by one
+*    sweep, as Rover.processScan does.
+* Then a few frontier missions are run in the same arena with one store,
+* to show what each mission starts from.
+*
+* The files are written just before they are read, so they are read from
+* the page cache: startup times are those of a warm file.
+*
+* Usage: java MapStoreBenchmark [grid sides] [missions]
+*   grid sides is a comma-separated list, e.g. 1024,2048,4096
+*/
+public class MapStoreBenchmark {
+
+    private static final float CELL_SIZE = MapKit.DEFAULT_CELL_SIZE;
+    // one synthetic reading for this many cells
+    private static final int CELLS_PER_READING = 40;
+    // readings of one sweep, and sweeps timed
+    private static final int SWEEP_READINGS = 37;
+    private static final int SWEEPS = 2000;
+
+    private static final long SEED = 1L;
+    private static final int MISSION_DURATION = 120;
+
+    public static void main(String[] args) throws IOException {
+        String[] sides = args.length > 0 ? args[0].split(",") : new String[] {"1024", "2048", "4096"};
+        int missions = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        File directory = createTempDirectory();
+        // the first round is what a mission sees, the second shows the cost once compiled
+        for(int round = 0; round < 2; round++) {
+            System.out.println(round == 0 ? "startup, fresh JVM" : "startup, warm JVM");
+            System.out.println("cells      source  startup (ms)  heap (MB)  mapped (MB)  stored tiles  obstacles");
+            for(String side : sides) {
+                measureStartup(Integer.parseInt(side.trim()), directory);
+            }
+            System.out.println();
+        }
+        System.out.println("cells      tiles/sweep  save (us/sweep)");
+        for(String side : sides) {
+            measureSaves(Integer.parseInt(side.trim()), directory);
+        }
+        System.out.println();
+        runMissions(missions, directory);
+    }
+
+    /*
+    #########################################################################
+    Startup
+    #########################################################################
+    */
+
+    private static void measureStartup(int side, File directory) throws IOException {
+        File storeFile = new File(directory, "bench-" + side + ".tiles");
+        File csvFile = new File(directory, "bench-" + side + ".csv");
+        storeFile.delete();
+
+        // map some synthetic evidence and save it both ways
+        MapKit source = new MapKit(null, side, side, CELL_SIZE);
+        MappedTileStore store = MappedTileStore.open(storeFile, source);
+        source.setStore(store);
+        fillMap(source, new Random(SEED));
+        source.closeStore();
+        writeCsv(csvFile, source.getMap());
+        int obstacles = source.getMap().length;
+        source = null;
+
+        // CSV: the old way, which only brings the obstacles back
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        MapKit fromCsv = new MapKit(null, side, side, CELL_SIZE);
+        readCsv(csvFile, fromCsv);
+        long csvTime = System.nanoTime() - start;
+        long csvHeap = usedHeap() - heapBefore;
+        print(side, "csv", csvTime, csvHeap, 0L, 0, fromCsv.getMap().length);
+        fromCsv = null;
+
+        heapBefore = usedHeap();
+        start = System.nanoTime();
+        MapKit fromStore = new MapKit(null, side, side, CELL_SIZE);
+        store = MappedTileStore.open(storeFile, fromStore);
+        int loaded = fromStore.setStore(store);
+        long storeTime = System.nanoTime() - start;
+        long storeHeap = usedHeap() - heapBefore;
+        print(side, "store", storeTime, storeHeap, store.getMappedSize(), loaded, fromStore.getMap().length);
+        fromStore.closeStore();
+
+        if(obstacles != fromStore.getMap().length) {
+            System.out.println("  store lost obstacles: " + obstacles + " saved");
+        }
+    }
+
+    private static void print(int side, String source, long nanos, long heap, long mapped, int tiles, int obstacles) {
+        System.out.printf("%-9d %7s %13.1f %10.1f %12.1f %13d %10d%n", side * side, source,
+            nanos / 1e6, heap / 1048576.0, mapped / 1048576.0, tiles, obstacles);
+    }
+
+    /**
+    * Scatters readings over the whole grid, from random points in random directions
+    */
+    private static void fillMap(MapKit map, Random random) {
+        float halfWidth = map.getWidth() * CELL_SIZE / 2.0f;
+        float halfHeight = map.getHeight() * CELL_SIZE / 2.0f;
+        int readings = map.getWidth() * map.getHeight() / CELLS_PER_READING;
+        for(int i = 0; i < readings; i++) {
+            float x = (random.nextFloat() * 2.0f - 1.0f) * halfWidth;
+            float y = (random.nextFloat() * 2.0f - 1.0f) * halfHeight;
+            map.addReading(x, y, random.nextFloat() * 360.0f, 0, 20 + random.nextInt(MapKit.MAX_RANGE + 50));
+        }
+    }
+
+    /**
+    * Same format as Rover.writePointsToFile
+    */
+    private static void writeCsv(File file, Point[] points) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        for(int i = 0; i < points.length; i++) {
+            out.writeBytes(points[i].getY() + "," + points[i].getX() + "\n");
+        }
+        out.close();
+    }
+
+    private static void readCsv(File file, MapKit map) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        String line;
+        while((line = in.readLine()) != null) {
+            int comma = line.indexOf(',');
+            float y = Float.parseFloat(line.substring(0, comma));
+            float x = Float.parseFloat(line.substring(comma + 1));
+            map.integrateRay(x, y, 0.0f, 0.0f, true);
+        }
+        in.close();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /*
+    #########################################################################
+    Incremental saves
+    #########################################################################
+    */
+
+    private static void measureSaves(int side, File directory) throws IOException {
+        File storeFile = new File(directory, "bench-" + side + ".tiles");
+        MapKit map = new MapKit(null, side, side, CELL_SIZE);
+        map.setStore(MappedTileStore.open(storeFile, map));
+        Random random = new Random(SEED);
+
+        long tiles = 0;
+        long saveTime = 0;
+        for(int sweep = 0; sweep < SWEEPS; sweep++) {
+            // a sweep from a random spot near the middle, as the rover would take
+            float x = (random.nextFloat() - 0.5f) * 400.0f;
+            float y = (random.nextFloat() - 0.5f) * 400.0f;
+            float heading = random.nextFloat() * 360.0f;
+            for(int i = 0; i < SWEEP_READINGS; i++) {
+                map.addReading(x, y, heading, i * 5 - 90, 20 + random.nextInt(MapKit.MAX_RANGE + 50));
+            }
+            long start = System.nanoTime();
+            tiles += map.saveChanges();
+            saveTime += System.nanoTime() - start;
+        }
+        map.closeStore();
+        storeFile.delete();
+        new File(directory, "bench-" + side + ".csv").delete();
+        System.out.printf("%-9d %12.1f %16.2f%n", side * side, (double)tiles / SWEEPS, saveTime / 1e3 / SWEEPS);
+    }
+
+    /*
+    #########################################################################
+    Missions
+    #########################################################################
+    */
+
+    /**
+    * Runs frontier missions one after the other, all keeping their map in the same store
+    */
+    private static void runMissions(int missions, File directory) throws IOException {
+        new File(directory, SimHardware.MAP_STORE_FILE).delete();
+        System.out.println(missions + " frontier missions of " + MISSION_DURATION + " s in one arena, sharing a store");
+        System.out.println("mission  known at start (m2)  explored (m2)  home");
+        // each mission starts from the map the one before left in the store
+        float known = 0.0f;
+        for(int i = 1; i <= missions; i++) {
+            SimMission mission = new SimMission(SEED, MISSION_DURATION);
+            mission.setOutputDirectory(directory);
+            mission.setFrontierExploration(true);
+            boolean home = mission.run();
+            System.out.printf("%7d %20.2f %14.2f  %s%n", i, known / 10000.0f,
+                mission.getExploredArea() / 10000.0f, home ? "yes" : "no");
+            known = mission.getExploredArea();
+        }
+        for(File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static File createTempDirectory() throws IOException {
+        File directory = File.createTempFile("mapstore", "");
+        directory.delete();
+        if(!directory.mkdir()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        return directory;
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MappedTileStore class
+*
+* MapStore kept in a memory-mapped file. Every tile has a fixed place in
+* the file, so reading or writing a tile is a copy to or from memory, and
+* opening the store reads nothing but the header. Tiles never written are
+* left as holes in the file, so a mostly unknown map takes little disk.
+*
+* Writes reach the file as soon as the operating system pages them out,
+* even if the program dies; flush forces them to disk.
+*
+* File layout: MAGIC, VERSION, width, height (ints), cell size (float),
+* tile size, mission count (ints), padding up to HEADER_SIZE, one byte per
+* tile set once the tile is written, padding to a page, then the tiles.
+*/
+public class MappedTileStore implements MapStore {
+
+    public static final int MAGIC = 0x524D4150;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int MISSIONS_OFFSET = 24;
+    // tiles start on a page boundary, so a tile never straddles two pages
+    private static final int PAGE_SIZE = 4096;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    private int tileCount;
+    private int tileBytes;
+    private int tilesOffset;
+    private int missionCount;
+
+    /**
+    * Constructor
+    *
+    * @param RandomAccessFile storeFile the open store file, already the right length
+    * @param int tiles the number of tiles
+    * @param int tileSize the side of a tile, in cells
+    */
+    private MappedTileStore(RandomAccessFile storeFile, int tiles, int tileSize) throws IOException {
+        this.file = storeFile;
+        this.channel = storeFile.getChannel();
+        this.tileCount = tiles;
+        this.tileBytes = tileSize * tileSize;
+        this.tilesOffset = (HEADER_SIZE + tiles + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+            (long)this.tilesOffset + (long)tiles * this.tileBytes);
+    }
+
+    /**
+    * Opens the store for a map, creating it if the file doesn't exist
+    * Each opening counts as one more mission
+    *
+    * @param File storeFile the store file
+    * @param MapKit map the map to keep
+    * @return MappedTileStore the store
+    */
+    public static MappedTileStore open(File storeFile, MapKit map) throws IOException {
+        int tileSize = MapKit.TILE_SIZE;
+        int tiles = ((map.getWidth() + tileSize - 1) / tileSize) * ((map.getHeight() + tileSize - 1) / tileSize);
+        long length = (HEADER_SIZE + tiles + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE + (long)tiles * tileSize * tileSize;
+        if(length > Integer.MAX_VALUE) {
+            throw new IOException("Map too large for a mapped store: " + length + " bytes");
+        }
+
+        RandomAccessFile file = new RandomAccessFile(storeFile, "rw");
+        boolean created = file.length() == 0;
+        if(created) {
+            // the tiles are left as a hole until written
+            file.setLength(length);
+        }
+        else if(file.length() != length) {
+            file.close();
+            throw new IOException(storeFile + " was made for another map size");
+        }
+
+        MappedTileStore store = new MappedTileStore(file, tiles, tileSize);
+        try {
+            store.readHeader(created, map);
+        } catch(IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private void readHeader(boolean created, MapKit map) throws IOException {
+        if(created) {
+            this.buffer.putInt(0, MAGIC);
+            this.buffer.putInt(4, VERSION);
+            this.buffer.putInt(8, map.getWidth());
+            this.buffer.putInt(12, map.getHeight());
+            this.buffer.putFloat(16, map.getCellSize());
+            this.buffer.putInt(20, MapKit.TILE_SIZE);
+        }
+        else if(this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a map store, or an unknown version");
+        }
+        else if(this.buffer.getInt(8) != map.getWidth() || this.buffer.getInt(12) != map.getHeight()
+                || this.buffer.getFloat(16) != map.getCellSize() || this.buffer.getInt(20) != MapKit.TILE_SIZE) {
+            throw new IOException("Map store made for another grid");
+        }
+        this.missionCount = this.buffer.getInt(MISSIONS_OFFSET) + 1;
+        this.buffer.putInt(MISSIONS_OFFSET, this.missionCount);
+    }
+
+    public boolean readTile(int tile, byte[] tileCells) throws IOException {
+        this.checkTile(tile);
+        if(this.buffer.get(HEADER_SIZE + tile) == 0) {
+            return false;
+        }
+        this.buffer.position(this.tilesOffset + tile * this.tileBytes);
+        this.buffer.get(tileCells, 0, this.tileBytes);
+        return true;
+    }
+
+    public void writeTile(int tile, byte[] tileCells) throws IOException {
+        this.checkTile(tile);
+        this.buffer.position(this.tilesOffset + tile * this.tileBytes);
+        this.buffer.put(tileCells, 0, this.tileBytes);
+        this.buffer.put(HEADER_SIZE + tile, (byte)1);
+    }
+
+    public void flush() throws IOException {
+        if(this.buffer != null) {
+            this.buffer.force();
+        }
+    }
+
+    public void close() throws IOException {
+        if(this.file == null) {
+            return;
+        }
+        this.flush();
+        // the mapping itself goes away with the buffer
+        this.buffer = null;
+        this.channel.close();
+        this.file.close();
+        this.file = null;
+    }
+
+    /**
+    * Returns the number of missions the store has been opened for, this one included
+    *
+    * @return int the mission count
+    */
+    public int getMissionCount() {
+        return this.missionCount;
+    }
+
+    /**
+    * Returns the number of tiles written at least once
+    *
+    * @return int the stored tile count
+    */
+    public int getStoredTileCount() {
+        int count = 0;
+        for(int tile = 0; tile < this.tileCount; tile++) {
+            if(this.buffer.get(HEADER_SIZE + tile) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+    * Returns the size of the mapped file, holes included
+    *
+    * @return long the size, in bytes
+    */
+    public long getMappedSize() {
+        return this.buffer.capacity();
+    }
+
+    private void checkTile(int tile) throws IOException {
+        if(this.file == null) {
+            throw new IOException("Map store closed");
+        }
+        if(tile < 0 || tile >= this.tileCount) {
+            throw new IOException("No tile " + tile + " in the map store");
+        }
+    }
+}
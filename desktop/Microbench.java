@@ -0,0 +1,111 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* Microbench class
+*
+* Small benchmark harness for the desktop tools: warms an operation up,
+* then times it and measures what it allocates on the calling thread.
+*
+* Results are printed as one table row per operation.
+*/
+public class Microbench {
+
+    /**
+    * An operation to measure
+    * The returned value is consumed, so that the JIT can't drop the work
+    */
+    public interface Operation {
+        int run(int iteration);
+    }
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private static volatile int sink;
+
+    private long roundTime;
+    private PrintStream out;
+
+    /**
+    * Constructor
+    * Results go to the console the harness was created with, even if
+    * System.out is redirected while an operation is measured
+    *
+    * @param long roundMillis the length of each warm-up and measured round, in ms
+    */
+    public Microbench(long roundMillis) {
+        this.roundTime = roundMillis * 1000000L;
+        this.out = System.out;
+    }
+
+    /**
+    * Prints the header of the result table
+    *
+    * @return void
+    */
+    public void printHeader() {
+        this.out.println("benchmark               param        ns/op        ops/s    bytes/op  alloc MB/s");
+    }
+
+    /**
+    * Measures an operation and prints its results
+    *
+    * @param String name the name of the operation
+    * @param String param the parameter the operation was set up with
+    * @param Operation operation the operation
+    * @return double the time taken by one operation, in ns
+    */
+    public double measure(String name, String param, Operation operation) {
+        for(int round = 0; round < WARMUP_ROUNDS; round++) {
+            this.round(operation, null);
+        }
+        long[] totals = new long[3];
+        for(int round = 0; round < MEASURED_ROUNDS; round++) {
+            this.round(operation, totals);
+        }
+        double operations = totals[0];
+        double nanosPerOp = totals[1] / operations;
+        double bytesPerOp = totals[2] / operations;
+        this.out.printf("%-20s %8s %12.1f %12.0f %11.1f %11.1f%n", name, param, nanosPerOp,
+            1e9 / nanosPerOp, bytesPerOp, totals[2] / (totals[1] / 1e9) / 1e6);
+        return nanosPerOp;
+    }
+
+    /**
+    * Runs the operation in growing batches until the round time is up
+    */
+    private void round(Operation operation, long[] totals) {
+        long thread = Thread.currentThread().getId();
+        long operations = 0;
+        long batch = 1;
+        int result = 0;
+
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long elapsed = 0;
+        while(elapsed < this.roundTime) {
+            for(long i = 0; i < batch; i++) {
+                result += operation.run((int)(operations + i));
+            }
+            operations += batch;
+            elapsed = System.nanoTime() - start;
+            if(batch < 1024) {
+                batch *= 2;
+            }
+        }
+        long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+        sink += result;
+
+        if(totals != null) {
+            totals[0] += operations;
+            totals[1] += elapsed;
+            totals[2] += allocated;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MissionBatch class
+*
+* Runs many seeded SimMissions in parallel, for every exploration strategy
+* and combination of random walk settings given, and sums them up: area
+* explored and explored per minute, obstacles mapped, bumps, time to
+* return and final distance to the landing point.
+*
+* Missions are independent, so they are shared between the threads of a
+* ForkJoinPool. Mission n always uses seed n, so two settings are compared
+* over the same arenas, and a run gives the same results on any machine.
+*
+* Usage: java MissionBatch [missions] [duration, s] [strategies] [clearances] [ranges] [threads]
+*   strategies, clearances and ranges are comma-separated lists,
+*   e.g. random,frontier 60,80,100 90,130,180
+*   the frontier strategy ignores the random walk settings
+*/
+public class MissionBatch {
+
+    private static final String[] METRICS = {
+        "explored (m2)", "m2 per minute", "obstacles", "bumps", "collisions", "return (s)", "home error (cm)"
+    };
+    private static final int EXPLORED = 0;
+    private static final int EXPLORE_RATE = 1;
+    private static final int OBSTACLES = 2;
+    private static final int BUMPS = 3;
+    private static final int COLLISIONS = 4;
+    private static final int RETURN_TIME = 5;
+    private static final int HOME_ERROR = 6;
+
+    private ForkJoinPool pool;
+    private int missions;
+    private int duration;
+
+    // one row per metric, one column per mission
+    private float[][] results;
+    private boolean[] completed;
+
+    /**
+    * Constructor
+    *
+    * @param ForkJoinPool threads the threads running the missions
+    * @param int missionCount the number of missions of each batch
+    * @param int missionDuration the time of each mission, return home included, in s
+    */
+    public MissionBatch(ForkJoinPool threads, int missionCount, int missionDuration) {
+        this.pool = threads;
+        this.missions = missionCount;
+        this.duration = missionDuration;
+        this.results = new float[METRICS.length][missionCount];
+        this.completed = new boolean[missionCount];
+    }
+
+    public static void main(String[] args) {
+        int missions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int duration = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+        String[] strategies = args.length > 2 ? args[2].split(",") : new String[] {"random"};
+        int[] clearances = args.length > 3 ? parseList(args[3]) : new int[] {RandomWalkExploration.CLEARANCE};
+        int[] ranges = args.length > 4 ? parseList(args[4]) : new int[] {RandomWalkExploration.RANGE};
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        if(missions < 1 || duration < 1 || threads < 1 || min(ranges) < 1) {
+            // a random turn is drawn up to the range, which must not be empty
+            System.err.println("Missions, duration, ranges and threads must be at least 1");
+            System.err.println("Usage: java MissionBatch [missions] [duration, s] [strategies] [clearances] [ranges] [threads]");
+            System.exit(1);
+        }
+
+        MissionBatch batch = new MissionBatch(new ForkJoinPool(threads), missions, duration);
+        System.out.println(missions + " missions of " + duration + " s per setting, on " + threads + " threads");
+        for(String strategy : strategies) {
+            if(strategy.equals("frontier")) {
+                batch.report("frontier exploration", true, 0, 0);
+                continue;
+            }
+            for(int clearance : clearances) {
+                for(int range : ranges) {
+                    batch.report("random turn above " + clearance + " cm, up to " + range + " deg",
+                        false, clearance, range);
+                }
+            }
+        }
+    }
+
+    private void report(String setting, boolean frontier, int clearance, int range) {
+        long start = System.currentTimeMillis();
+        this.run(frontier, clearance, range);
+        double wall = (System.currentTimeMillis() - start) / 1000.0;
+        System.out.println();
+        System.out.printf("%s: %d/%d home, %.1f s (%.0f missions/s)%n",
+            setting, this.getCompletedCount(), this.missions, wall, this.missions / wall);
+        this.printSummary();
+    }
+
+    /**
+    * Runs every mission of the batch with the given exploration settings
+    *
+    * @param boolean frontier true to explore frontiers, false for the random walk
+    * @param int clearance the clearance above which the random walk turns at random, in cm
+    * @param int range the largest random turn, in degrees
+    * @return void
+    */
+    public void run(boolean frontier, int clearance, int range) {
+        this.pool.invoke(new Missions(0, this.missions, frontier, clearance, range));
+    }
+
+    /**
+    * Returns the number of missions of the last batch that made it home
+    *
+    * @return int the number of completed missions
+    */
+    public int getCompletedCount() {
+        int count = 0;
+        for(int i = 0; i < this.missions; i++) {
+            if(this.completed[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+    * Prints the mean, standard deviation and percentiles of every metric
+    *
+    * @return void
+    */
+    public void printSummary() {
+        System.out.println("metric                mean      sd     min     p10  median     p90     max");
+        float[] sorted = new float[this.missions];
+        for(int metric = 0; metric < METRICS.length; metric++) {
+            System.arraycopy(this.results[metric], 0, sorted, 0, this.missions);
+            Arrays.sort(sorted);
+            double sum = 0.0;
+            double squares = 0.0;
+            for(float value : sorted) {
+                sum += value;
+                squares += (double)value * value;
+            }
+            double mean = sum / this.missions;
+            double deviation = Math.sqrt(Math.max(0.0, squares / this.missions - mean * mean));
+            System.out.printf("%-16s %8.2f %7.2f %7.2f %7.2f %7.2f %7.2f %7.2f%n", METRICS[metric], mean, deviation,
+                sorted[0], percentile(sorted, 0.1f), percentile(sorted, 0.5f), percentile(sorted, 0.9f),
+                sorted[this.missions - 1]);
+        }
+    }
+
+    private void runMission(int index, boolean frontier, int clearance, int range) {
+        SimMission mission = new SimMission(index + 1, this.duration);
+        mission.setFrontierExploration(frontier);
+        mission.setRandomTurn(clearance, range);
+        this.completed[index] = mission.run();
+        this.results[EXPLORED][index] = mission.getExploredArea() / 10000.0f;
+        this.results[EXPLORE_RATE][index] = mission.getExploredArea() / 10000.0f
+            / Math.max(1L, mission.getExploreTime()) * 60000.0f;
+        this.results[OBSTACLES][index] = mission.getMapSize();
+        this.results[BUMPS][index] = mission.getBumpCount();
+        this.results[COLLISIONS][index] = mission.getCollisionCount();
+        this.results[RETURN_TIME][index] = mission.getReturnTime() / 1000.0f;
+        this.results[HOME_ERROR][index] = mission.getHomeError();
+    }
+
+    private static float percentile(float[] sorted, float fraction) {
+        return sorted[Math.min(sorted.length - 1, (int)(fraction * sorted.length))];
+    }
+
+    private static int[] parseList(String list) {
+        String[] items = list.split(",");
+        int[] values = new int[items.length];
+        for(int i = 0; i < items.length; i++) {
+            values[i] = Integer.parseInt(items[i].trim());
+        }
+        return values;
+    }
+
+    private static int min(int[] values) {
+        int smallest = Integer.MAX_VALUE;
+        for(int i = 0; i < values.length; i++) {
+            smallest = Math.min(smallest, values[i]);
+        }
+        return smallest;
+    }
+
+    /**
+    * Splits a range of missions in two until single missions are left
+    * Each mission writes its own column of the results
+    */
+    private class Missions extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private int first;
+        private int last;
+        private boolean frontier;
+        private int clearance;
+        private int range;
+
+        Missions(int firstMission, int lastMission, boolean frontierExploration, int turnClearance, int turnRange) {
+            this.first = firstMission;
+            this.last = lastMission;
+            this.frontier = frontierExploration;
+            this.clearance = turnClearance;
+            this.range = turnRange;
+        }
+
+        protected void compute() {
+            if(this.last - this.first == 1) {
+                runMission(this.first, this.frontier, this.clearance, this.range);
+                return;
+            }
+            int middle = (this.first + this.last) >>> 1;
+            invokeAll(new Missions(this.first, middle, this.frontier, this.clearance, this.range),
+                new Missions(middle, this.last, this.frontier, this.clearance, this.range));
+        }
+    }
+}
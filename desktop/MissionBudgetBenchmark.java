@@ -0,0 +1,75 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MissionBudgetBenchmark class
+*
+* Runs the same simulated missions with each mission time, once exploring
+* for the whole time and then returning, as the rover used to, and once
+* with the MissionScheduler keeping time for the way home. Reports how
+* many missions ended on time, by how much the others overran, how the
+* time was split between exploring and returning, how the return time
+* compared with the scheduler's estimate, and the area explored.
+*
+* Missions that never make it home within the simulation's one hour time
+* limit are only counted as given up; the other columns are over the
+* missions that did.
+*
+* Usage: java MissionBudgetBenchmark [missions] [mission times, s]
+*   mission times is a comma-separated list, e.g. 90,180,300
+*/
+public class MissionBudgetBenchmark {
+
+    public static void main(String[] args) {
+        int missions = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        String[] budgets = args.length > 1 ? args[1].split(",") : new String[] {"90", "180", "300"};
+
+        System.out.println("budget s  return     on time  gave up  overrun mean s  p90 s   max s  explore  return  actual/estimate p50  p90   area m2");
+        for(int i = 0; i < budgets.length; i++) {
+            int budget = Integer.parseInt(budgets[i].trim());
+            report(budget, missions, false);
+            report(budget, missions, true);
+        }
+    }
+
+    private static void report(int budget, int missions, boolean reserve) {
+        long[] overruns = new long[missions];
+        float[] ratios = new float[missions];
+        int home = 0;
+        int onTime = 0;
+        long totalOverrun = 0;
+        long exploreTime = 0;
+        long returnTime = 0;
+        float area = 0.0f;
+        for(int seed = 1; seed <= missions; seed++) {
+            SimMission mission = new SimMission(seed, budget);
+            mission.setReturnReserve(reserve);
+            if(!mission.run()) {
+                continue;
+            }
+            MissionScheduler scheduler = mission.getScheduler();
+            long overrun = scheduler.getOverrun();
+            if(overrun == 0) {
+                onTime++;
+            }
+            overruns[home] = overrun;
+            totalOverrun += overrun;
+            exploreTime += scheduler.getExploreTime();
+            returnTime += scheduler.getReturnTime();
+            ratios[home] = (float)scheduler.getReturnTime() / Math.max(1L, scheduler.getReturnEstimate());
+            area += mission.getExploredArea();
+            home++;
+        }
+        if(home == 0) {
+            System.out.printf("%-9d %-9s %4d/%-4d %7d%n", budget, reserve ? "reserved" : "at end", 0, missions, missions);
+            return;
+        }
+        java.util.Arrays.sort(overruns, 0, home);
+        java.util.Arrays.sort(ratios, 0, home);
+        long budgetTotal = (long)budget * 1000L * home;
+        System.out.printf("%-9d %-9s %4d/%-4d %7d %15.1f %6.1f %7.1f %7.0f%% %6.0f%% %20.2f %5.2f %8.2f%n",
+            budget, reserve ? "reserved" : "at end", onTime, missions, missions - home,
+            totalOverrun / 1000.0 / home, overruns[home * 9 / 10] / 1000.0, overruns[home - 1] / 1000.0,
+            exploreTime * 100.0 / budgetTotal, returnTime * 100.0 / budgetTotal,
+            ratios[home / 2], ratios[home * 9 / 10], area / 10000.0f / home);
+    }
+}
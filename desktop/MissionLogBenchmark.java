@@ -0,0 +1,72 @@
+import java.io.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MissionLogBenchmark class
+*
+* Desktop benchmark comparing the CSV writer used by Rover.finishMission
+* with the binary MissionLog, writing the same poses to a temporary file.
+*
+* Usage: java MissionLogBenchmark [records]
+*/
+public class MissionLogBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        float[] xs = new float[records];
+        float[] ys = new float[records];
+        for(int i = 0; i < records; i++) {
+            xs[i] = (float)(Math.cos(i * 0.01) * 150.0);
+            ys[i] = (float)(Math.sin(i * 0.013) * 150.0);
+        }
+
+        File file = File.createTempFile("mission", ".bench");
+        file.deleteOnExit();
+
+        System.out.println("writer         records   bytes/rec   ns/rec      MB/s");
+        for(int round = 0; round < ROUNDS; round++) {
+            // the first rounds warm the JIT up
+            boolean report = round == ROUNDS - 1;
+            measure("csv", records, file, report, () -> writeCsv(file, xs, ys));
+            measure("mission log", records, file, report, () -> writeLog(file, xs, ys));
+        }
+    }
+
+    private interface Writer {
+        void write() throws IOException;
+    }
+
+    private static void measure(String name, int records, File file, boolean report, Writer writer) throws IOException {
+        long start = System.nanoTime();
+        writer.write();
+        long elapsed = System.nanoTime() - start;
+        if(report) {
+            long bytes = file.length();
+            System.out.printf("%-12s %9d %11.1f %8.1f %9.2f%n", name, records,
+                (double)bytes / records, (double)elapsed / records, bytes / (elapsed / 1e9) / 1e6);
+        }
+    }
+
+    /**
+    * Same code as Rover.writePointsToFile
+    */
+    private static void writeCsv(File file, float[] xs, float[] ys) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        for(int i = 0; i < xs.length; i++) {
+            dataOut.writeBytes((double)ys[i] + "," + (double)xs[i] + "\n");
+        }
+        out.close();
+    }
+
+    private static void writeLog(File file, float[] xs, float[] ys) throws IOException {
+        MissionLog log = new MissionLog(new FileOutputStream(file), new SystemClock(), 0, 512, 16);
+        for(int i = 0; i < xs.length; i++) {
+            log.pose(xs[i], ys[i], 0.0f);
+        }
+        log.close();
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.*;
+import java.util.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* MissionLogConverter class
+*
+* Desktop tool turning a binary mission log into the map-*.csv and
+* traj-*.csv files written by Rover.finishMission.
+*
+* The map is rebuilt from the obstacles added to and cleared from the
+* map, starting with those merged from a map store before the mission,
+* the trajectory from the recorded poses. A log cut short by an
+* interruption is read up to its last complete record.
+*
+* Usage: java MissionLogConverter log-<time>.dat [output directory]
+*/
+public class MissionLogConverter {
+
+    private int startTime;
+
+    // occupied cells, in the row-major order of MapKit.getMap()
+    private TreeMap<Long, float[]> obstacles;
+    private ArrayList<float[]> trajectory;
+
+    private int recordCount;
+    private boolean truncated;
+    // payloads that are not converted are read into this
+    private byte[] skipped;
+
+    /**
+    * Constructor
+    */
+    public MissionLogConverter() {
+        this.obstacles = new TreeMap<Long, float[]>();
+        this.trajectory = new ArrayList<float[]>();
+        this.skipped = new byte[12 + 4 * 255];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.err.println("Usage: java MissionLogConverter log-<time>.dat [output directory]");
+            System.exit(1);
+        }
+        File directory = new File(args.length > 1 ? args[1] : ".");
+
+        MissionLogConverter converter = new MissionLogConverter();
+        converter.read(new File(args[0]));
+        converter.writeCsv(directory);
+
+        System.out.println(converter.recordCount + " records, "
+            + converter.obstacles.size() + " obstacles, "
+            + converter.trajectory.size() + " poses"
+            + (converter.truncated ? " (log cut short)" : ""));
+    }
+
+    /**
+    * Reads a mission log
+    *
+    * @param File logFile the log to read
+    * @return void
+    */
+    public void read(File logFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+        try {
+            if(in.readInt() != MissionLog.MAGIC) {
+                throw new IOException("Not a mission log: " + logFile);
+            }
+            int version = in.readByte();
+            if(version != MissionLog.VERSION) {
+                throw new IOException("Unsupported mission log version " + version);
+            }
+            this.startTime = in.readInt();
+
+            while(true) {
+                int type = in.read();
+                if(type < 0) {
+                    break;
+                }
+                in.readInt();
+                this.readRecord(in, type);
+                this.recordCount++;
+            }
+        } catch(EOFException e) {
+            // the mission was interrupted in the middle of a record
+            this.truncated = true;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+    * Writes the map and trajectory files, named after the mission start time
+    *
+    * @param File directory where the files are written
+    * @return void
+    */
+    public void writeCsv(File directory) throws IOException {
+        this.writePoints(new File(directory, "map-" + this.startTime + ".csv"), this.obstacles.values());
+        this.writePoints(new File(directory, "traj-" + this.startTime + ".csv"), this.trajectory);
+    }
+
+    private void readRecord(DataInputStream in, int type) throws IOException {
+        switch(type) {
+            case MissionLog.POSE:
+                this.trajectory.add(new float[] {in.readFloat(), in.readFloat()});
+                in.readFloat();
+                break;
+            case MissionLog.SCAN:
+                // skipBytes would stop short at the end of a cut log without saying so
+                in.readFully(this.skipped, 0, 12);
+                in.readFully(this.skipped, 0, 4 * in.readUnsignedByte());
+                break;
+            case MissionLog.BUMP:
+                in.readFully(this.skipped, 0, 13);
+                break;
+            case MissionLog.OBSTACLE_ADDED:
+            case MissionLog.OBSTACLE_CLEARED:
+                float x = in.readFloat();
+                float y = in.readFloat();
+                if(type == MissionLog.OBSTACLE_ADDED) {
+                    this.obstacles.put(this.cellKey(x, y), new float[] {x, y});
+                }
+                else {
+                    this.obstacles.remove(this.cellKey(x, y));
+                }
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /**
+    * Sorts cells by row, then column, like the MapKit grid
+    */
+    private long cellKey(float x, float y) {
+        return ((long)Math.round(y * 16.0f) << 32) + (long)Math.round(x * 16.0f);
+    }
+
+    /**
+    * Same format as Rover.writePointsToFile: y,x per line
+    */
+    private void writePoints(File file, Collection<float[]> points) throws IOException {
+        Writer out = new BufferedWriter(new FileWriter(file));
+        try {
+            for(float[] point : points) {
+                out.write((double)point[1] + "," + (double)point[0] + "\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* ParallelParticleFilter class
+*
+* ParticleFilter moving and weighing its particles on every core.
+* The particles are split into fixed chunks, each with its own random
+* source reseeded from the filter's, so a run is repeatable whatever the
+* number of threads.
+*/
+public class ParallelParticleFilter extends ParticleFilter {
+
+    private static final int CHUNKS = 64;
+
+    private ForkJoinPool pool;
+    private Random[] chunkRandoms;
+    private float[][] chunkScratch;
+
+    /**
+    * Constructor
+    *
+    * @param MapKit knownMap the map sweeps are compared to
+    * @param int fewestParticles the smallest particle count
+    * @param int mostParticles the largest particle count
+    * @param Random randomSource the source of motion noise and resampling draws
+    * @param ForkJoinPool threads the threads sharing the work
+    */
+    public ParallelParticleFilter(MapKit knownMap, int fewestParticles, int mostParticles, Random randomSource,
+            ForkJoinPool threads) {
+        super(knownMap, fewestParticles, mostParticles, randomSource);
+        this.pool = threads;
+        this.chunkRandoms = new Random[CHUNKS];
+        this.chunkScratch = new float[CHUNKS][2];
+        for(int c = 0; c < CHUNKS; c++) {
+            this.chunkRandoms[c] = new Random();
+        }
+    }
+
+    protected void moveAll(final float firstTurn, final float travel, final float secondTurn) {
+        for(int c = 0; c < CHUNKS; c++) {
+            this.chunkRandoms[c].setSeed(this.random.nextLong());
+        }
+        this.pool.invoke(new Chunks(0, CHUNKS) {
+            protected void run(int chunk, int from, int to) {
+                moveParticles(from, to, firstTurn, travel, secondTurn, chunkRandoms[chunk]);
+            }
+        });
+    }
+
+    protected void weighAll(final ScanFrame scan) {
+        this.pool.invoke(new Chunks(0, CHUNKS) {
+            protected void run(int chunk, int from, int to) {
+                weighParticles(from, to, scan, chunkScratch[chunk]);
+            }
+        });
+    }
+
+    /**
+    * Splits a range of chunks in two until single chunks are left
+    */
+    private abstract class Chunks extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private int first;
+        private int last;
+
+        Chunks(int firstChunk, int lastChunk) {
+            this.first = firstChunk;
+            this.last = lastChunk;
+        }
+
+        protected abstract void run(int chunk, int from, int to);
+
+        protected void compute() {
+            if(this.last - this.first == 1) {
+                int from = (int)((long)count * this.first / CHUNKS);
+                int to = (int)((long)count * this.last / CHUNKS);
+                this.run(this.first, from, to);
+                return;
+            }
+            int middle = (this.first + this.last) >>> 1;
+            final Chunks outer = this;
+            Chunks left = new Chunks(this.first, middle) {
+                protected void run(int chunk, int from, int to) {
+                    outer.run(chunk, from, to);
+                }
+            };
+            Chunks right = new Chunks(middle, this.last) {
+                protected void run(int chunk, int from, int to) {
+                    outer.run(chunk, from, to);
+                }
+            };
+            invokeAll(left, right);
+        }
+    }
+}
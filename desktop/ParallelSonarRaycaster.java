@@ -0,0 +1,85 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* ParallelSonarRaycaster class
+*
+* SonarRaycaster predicting a batch of poses on every core. The poses are
+* split in halves until a piece is small enough to cast in one go; each
+* piece writes its own part of the distances, so the result is the same
+* whatever the number of threads.
+*/
+public class ParallelSonarRaycaster extends SonarRaycaster {
+
+    // poses cast in one go, about a hundred thousand rays for a forward sweep
+    private static final int GRAIN = 512;
+
+    private ForkJoinPool pool;
+
+    /**
+    * Constructor
+    *
+    * @param MapSnapshot map the map to cast rays over
+    * @param ForkJoinPool threads the threads sharing the work
+    */
+    public ParallelSonarRaycaster(MapSnapshot map, ForkJoinPool threads) {
+        super(map);
+        this.pool = threads;
+    }
+
+    public void predict(float[] xs, float[] ys, float[] headings, int poseCount,
+            int[] bearings, int bearingCount, int[] distances) {
+        float[] beamCos = new float[bearingCount * this.getRaysPerBeam()];
+        float[] beamSin = new float[beamCos.length];
+        this.prepareBeams(bearings, bearingCount, beamCos, beamSin);
+        this.pool.invoke(new Poses(0, poseCount, xs, ys, headings, bearingCount, beamCos, beamSin, distances));
+    }
+
+    /**
+    * Splits a range of poses in two until pieces of GRAIN poses are left
+    */
+    private class Poses extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+        private float[] xs;
+        private float[] ys;
+        private float[] headings;
+        private int bearingCount;
+        private float[] beamCos;
+        private float[] beamSin;
+        private int[] distances;
+
+        public Poses(int firstPose, int lastPose, float[] poseXs, float[] poseYs, float[] poseHeadings,
+                int beams, float[] cosines, float[] sines, int[] readings) {
+            this.from = firstPose;
+            this.to = lastPose;
+            this.xs = poseXs;
+            this.ys = poseYs;
+            this.headings = poseHeadings;
+            this.bearingCount = beams;
+            this.beamCos = cosines;
+            this.beamSin = sines;
+            this.distances = readings;
+        }
+
+        protected void compute() {
+            if(this.to - this.from <= GRAIN) {
+                predictPoses(this.from, this.to, this.xs, this.ys, this.headings, this.bearingCount,
+                    this.beamCos, this.beamSin, this.distances);
+                return;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(this.split(this.from, middle), this.split(middle, this.to));
+        }
+
+        private Poses split(int first, int last) {
+            return new Poses(first, last, this.xs, this.ys, this.headings, this.bearingCount,
+                this.beamCos, this.beamSin, this.distances);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import lejos.robotics.navigation.Pose;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* PathFollowingBenchmark class
+*
+* Compares RoverNavigator.followPath along arcs (pure pursuit) with the
+* former stop and turn at each waypoint:
+*  - paths: in seeded arenas surveyed into the map, the rover follows a
+*    path planned from the landing point through a few random goals. Traversal time,
+*    times the rover came to rest, collisions and distance from the goal
+*    at the end are measured for both, over the same paths.
+*  - missions: whole frontier missions, which follow planned paths to
+*    each frontier and home, with either way of following paths.
+*
+* Usage: java PathFollowingBenchmark [paths] [missions] [mission duration, s]
+*/
+public class PathFollowingBenchmark {
+
+    // same arena as SimMission
+    private static final float ARENA_HALF_SIZE = 200.0f;
+    private static final int ARENA_BOXES = 12;
+    private static final long TIME_LIMIT = 60L * 60L * 1000L;
+
+    // goals of a tour, each at least this far from the one before, in cm
+    private static final int TOUR_GOALS = 4;
+    private static final float MIN_GOAL_DISTANCE = 150.0f;
+
+    public static void main(String[] args) {
+        int paths = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int missions = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int duration = args.length > 2 ? Integer.parseInt(args[2]) : 180;
+
+        System.out.println(paths + " planned tours of " + TOUR_GOALS + " goals");
+        System.out.println("follower      reached  waypoints  time (s)  median   halts  collisions  end error (cm)");
+        comparePaths("stop and turn", paths, false);
+        comparePaths("pure pursuit", paths, true);
+
+        System.out.println();
+        System.out.println(missions + " frontier missions of " + duration + " s");
+        System.out.println("follower      home  explored (m2)  return (s)  collisions  bumps");
+        compareMissions("stop and turn", missions, duration, false);
+        compareMissions("pure pursuit", missions, duration, true);
+    }
+
+    private static void comparePaths(String name, int paths, boolean pursuit) {
+        float[] times = new float[paths];
+        int reached = 0;
+        int waypoints = 0;
+        int halts = 0;
+        int collisions = 0;
+        float endError = 0.0f;
+        int followed = 0;
+        for(int seed = 1; followed < paths; seed++) {
+            float[] result = followPath(seed, pursuit);
+            if(result == null) {
+                // no path to the goal in this arena
+                continue;
+            }
+            times[followed] = result[0];
+            reached += result[1] > 0.0f ? 1 : 0;
+            waypoints += (int)result[2];
+            halts += (int)result[3];
+            collisions += (int)result[4];
+            endError += result[5];
+            followed++;
+        }
+        float total = 0.0f;
+        for(float time : times) {
+            total += time;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-13s %3d/%-3d %10.1f %9.1f %7.1f %7.1f %11d %15.1f%n", name, reached, paths,
+            (float)waypoints / paths, total / paths, times[paths / 2], (float)halts / paths, collisions, endError / paths);
+    }
+
+    /**
+    * Follows one planned tour in the arena of the given seed
+    *
+    * @return float[] time (s), reached (1 or 0), waypoints, halts, collisions, end error (cm),
+    *                 or null if a goal couldn't be reached on the map
+    */
+    private static float[] followPath(long seed, boolean pursuit) {
+        SimWorld world = SimWorld.randomArena(seed, ARENA_HALF_SIZE, ARENA_BOXES);
+        SimHardware hardware = new SimHardware(world, seed, null);
+        hardware.getVirtualClock().setDeadline(TIME_LIMIT);
+        Rover rover = new Rover(0, hardware);
+        world.drawInto(rover.mappingUnit);
+        rover.navigationUnit.setPurePursuit(pursuit);
+
+        PathPlanner planner = new PathPlanner(rover.mappingUnit, 20.0f,
+            RoverNavigator.LEG_CLEARANCE + rover.mappingUnit.getCellSize());
+        Random random = new Random(seed);
+        // a tour of a few goals, each planned from the one before
+        float fromX = 0.0f;
+        float fromY = 0.0f;
+        int waypoints = 0;
+        for(int goal = 0; goal < TOUR_GOALS; goal++) {
+            boolean found = false;
+            float goalX = 0.0f;
+            float goalY = 0.0f;
+            for(int attempt = 0; attempt < 20 && !found; attempt++) {
+                goalX = (random.nextFloat() * 2.0f - 1.0f) * (ARENA_HALF_SIZE - 30.0f);
+                goalY = (random.nextFloat() * 2.0f - 1.0f) * (ARENA_HALF_SIZE - 30.0f);
+                if(Math.hypot(goalX - fromX, goalY - fromY) < MIN_GOAL_DISTANCE || world.clearance(goalX, goalY) < 30.0f) {
+                    continue;
+                }
+                planner.setGoal(goalX, goalY);
+                found = planner.plan(fromX, fromY);
+            }
+            if(!found) {
+                return null;
+            }
+            waypoints += planner.loadPath(rover.navigationUnit, goalX, goalY);
+            fromX = goalX;
+            fromY = goalY;
+        }
+
+        SimDriveBase drive = hardware.getSimDriveBase();
+        int haltsBefore = drive.getHaltCount();
+        long start = hardware.getVirtualClock().currentTimeMillis();
+        boolean reached;
+        try {
+            reached = rover.navigationUnit.followPath();
+        } catch(IllegalStateException e) {
+            reached = false;
+        }
+        float time = (hardware.getVirtualClock().currentTimeMillis() - start) / 1000.0f;
+        Pose truePose = drive.getTruePose();
+        float error = (float)Math.hypot(truePose.getX() - fromX, truePose.getY() - fromY);
+        return new float[] {time, reached ? 1.0f : 0.0f, waypoints, drive.getHaltCount() - haltsBefore,
+            drive.getCollisionCount(), error};
+    }
+
+    private static void compareMissions(String name, int missions, int duration, boolean pursuit) {
+        int home = 0;
+        float explored = 0.0f;
+        float returnTime = 0.0f;
+        int collisions = 0;
+        int bumps = 0;
+        for(int seed = 1; seed <= missions; seed++) {
+            SimMission mission = new SimMission(seed, duration);
+            mission.setFrontierExploration(true);
+            mission.setPurePursuit(pursuit);
+            if(mission.run()) {
+                home++;
+            }
+            explored += mission.getExploredArea() / 10000.0f;
+            returnTime += mission.getReturnTime() / 1000.0f;
+            collisions += mission.getCollisionCount();
+            bumps += mission.getBumpCount();
+        }
+        System.out.printf("%-13s %3d/%-3d %10.2f %11.1f %11d %6d%n", name, home, missions,
+            explored / missions, returnTime / missions, collisions, bumps);
+    }
+}
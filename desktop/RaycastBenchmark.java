@@ -0,0 +1,165 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* RaycastBenchmark class
+*
+* Measures the SonarRaycaster on a surveyed SimMission arena, for a few
+* cell sizes, predicting forward sweeps (19 readings of 7 rays) from
+* random poses clear of the walls:
+*  - throughput, in rays per second: intersecting SimWorld's wall segments
+*    as SimSonar does, the grid raycaster in one thread, and the parallel
+*    raycaster on every core, checked to predict the same readings
+*  - accuracy: the predicted readings against the segment readings of the
+*    same poses, without noise
+*
+* Usage: java RaycastBenchmark [poses] [cell sizes, cm] [round ms] [threads]
+*   cell sizes is a comma-separated list, e.g. 5,2,1
+*/
+public class RaycastBenchmark {
+
+    // same arena as SimMission
+    private static final float ARENA_HALF_SIZE = 200.0f;
+    private static final int ARENA_BOXES = 12;
+    // the rover's radius, poses closer to a wall are not drawn
+    private static final float CLEARANCE = 12.0f;
+
+    private static final int HALF_ARC = 90;
+    private static final int STEP = 10;
+
+    private static final long SEED = 1L;
+
+    public static void main(String[] args) {
+        int poseCount = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        String[] cellSizes = args.length > 1 ? args[1].split(",") : new String[] {"5", "2", "1"};
+        long roundMillis = args.length > 2 ? Long.parseLong(args[2]) : 200L;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        final SimWorld world = SimWorld.randomArena(SEED, ARENA_HALF_SIZE, ARENA_BOXES);
+        final float[] xs = new float[poseCount];
+        final float[] ys = new float[poseCount];
+        final float[] headings = new float[poseCount];
+        Random random = new Random(SEED);
+        for(int p = 0; p < poseCount; p++) {
+            do {
+                xs[p] = (random.nextFloat() * 2.0f - 1.0f) * ARENA_HALF_SIZE;
+                ys[p] = (random.nextFloat() * 2.0f - 1.0f) * ARENA_HALF_SIZE;
+            } while(world.clearance(xs[p], ys[p]) < CLEARANCE);
+            headings[p] = random.nextFloat() * 360.0f;
+        }
+        final int bearingCount = 2 * HALF_ARC / STEP + 1;
+        final int[] bearings = new int[bearingCount];
+        for(int b = 0; b < bearingCount; b++) {
+            bearings[b] = HALF_ARC - b * STEP;
+        }
+
+        // what SimSonar would read, without noise
+        final int[] truth = new int[poseCount * bearingCount];
+        for(int p = 0; p < poseCount; p++) {
+            for(int b = 0; b < bearingCount; b++) {
+                truth[p * bearingCount + b] = segmentReading(world, xs[p], ys[p], headings[p] + bearings[b]);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        System.out.println(poseCount + " poses, " + bearingCount + " readings of "
+            + (1 + 2 * (int)(SonarRaycaster.CONE / SonarRaycaster.RAY_STEP)) + " rays each, "
+            + world.getSegmentCount() + " wall segments, " + threads + " threads");
+        System.out.println();
+
+        Microbench bench = new Microbench(roundMillis);
+        bench.printHeader();
+        final int[] segmentDistances = new int[bearingCount];
+        double segmentNanos = bench.measure("segments, sweep", "-", new Microbench.Operation() {
+            public int run(int iteration) {
+                int p = iteration % xs.length;
+                for(int b = 0; b < bearingCount; b++) {
+                    segmentDistances[b] = segmentReading(world, xs[p], ys[p], headings[p] + bearings[b]);
+                }
+                return segmentDistances[0];
+            }
+        });
+
+        double[] gridNanos = new double[cellSizes.length];
+        double[] parallelNanos = new double[cellSizes.length];
+        int[][] predictions = new int[cellSizes.length][poseCount * bearingCount];
+        boolean[] same = new boolean[cellSizes.length];
+        for(int i = 0; i < cellSizes.length; i++) {
+            float cellSize = Float.parseFloat(cellSizes[i].trim());
+            int side = (int)Math.ceil(2.0f * ARENA_HALF_SIZE / cellSize) + 4;
+            MapKit map = new MapKit(null, side, side, cellSize);
+            world.drawInto(map);
+            MapSnapshot snapshot = map.snapshot();
+            String param = cellSizes[i].trim() + " cm";
+
+            final SonarRaycaster grid = new SonarRaycaster(snapshot);
+            final ParallelSonarRaycaster parallel = new ParallelSonarRaycaster(snapshot, pool);
+            final int[] distances = predictions[i];
+            final int[] parallelDistances = new int[distances.length];
+            gridNanos[i] = bench.measure("grid, batch", param, new Microbench.Operation() {
+                public int run(int iteration) {
+                    grid.predict(xs, ys, headings, xs.length, bearings, bearingCount, distances);
+                    return distances[iteration % distances.length];
+                }
+            });
+            parallelNanos[i] = bench.measure("grid, parallel", param, new Microbench.Operation() {
+                public int run(int iteration) {
+                    parallel.predict(xs, ys, headings, xs.length, bearings, bearingCount, parallelDistances);
+                    return parallelDistances[iteration % parallelDistances.length];
+                }
+            });
+            same[i] = Arrays.equals(distances, parallelDistances);
+        }
+
+        long rays = (long)bearingCount * (1 + 2 * (int)(SonarRaycaster.CONE / SonarRaycaster.RAY_STEP));
+        System.out.println();
+        System.out.println("raycaster         cell   Mrays/s  sweeps/s  echo agrees  error p50  p90   p99 (cm)  within 5 cm");
+        System.out.printf("%-17s %4s %9.2f %9.0f%n", "segments", "-", rays / segmentNanos * 1e3, 1e9 / segmentNanos);
+        for(int i = 0; i < cellSizes.length; i++) {
+            String cell = cellSizes[i].trim();
+            double sweeps = poseCount * 1e9;
+            System.out.printf("%-17s %4s %9.2f %9.0f %s%n", "grid", cell,
+                rays * poseCount / gridNanos[i] * 1e3, sweeps / gridNanos[i], accuracy(truth, predictions[i]));
+            System.out.printf("%-17s %4s %9.2f %9.0f %12s%n", "grid, parallel", cell,
+                rays * poseCount / parallelNanos[i] * 1e3, sweeps / parallelNanos[i], same[i] ? "same" : "DIFFERENT");
+        }
+        pool.shutdown();
+    }
+
+    /**
+    * Reads the segments as SimSonar does: the closest wall in the cone
+    */
+    private static int segmentReading(SimWorld world, float x, float y, float bearing) {
+        float closest = SonarRaycaster.NO_ECHO;
+        for(float ray = -SonarRaycaster.CONE; ray <= SonarRaycaster.CONE; ray += SonarRaycaster.RAY_STEP) {
+            closest = Math.min(closest, world.raycast(x, y, bearing + ray, SonarRaycaster.NO_ECHO));
+        }
+        return closest >= SonarRaycaster.NO_ECHO ? SonarRaycaster.NO_ECHO : Math.round(closest);
+    }
+
+    private static String accuracy(int[] truth, int[] predicted) {
+        int agree = 0;
+        int within = 0;
+        int[] errors = new int[truth.length];
+        int count = 0;
+        for(int i = 0; i < truth.length; i++) {
+            boolean echo = truth[i] != SonarRaycaster.NO_ECHO;
+            if(echo == (predicted[i] != SonarRaycaster.NO_ECHO)) {
+                agree++;
+            }
+            if(echo && predicted[i] != SonarRaycaster.NO_ECHO) {
+                errors[count] = Math.abs(predicted[i] - truth[i]);
+                if(errors[count] <= 5) {
+                    within++;
+                }
+                count++;
+            }
+        }
+        Arrays.sort(errors, 0, count);
+        return String.format("%10.1f%% %10d %4d %5d %11.1f%%", agree * 100.0 / truth.length,
+            errors[count / 2], errors[count * 9 / 10], errors[count * 99 / 100], within * 100.0 / Math.max(1, count));
+    }
+}
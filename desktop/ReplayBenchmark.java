@@ -0,0 +1,115 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* ReplayBenchmark class
+*
+* Records simulated missions with RecordingHardware, then replays each
+* recording several times with ReplayHardware and checks that the rover
+* does exactly the same thing: same cell updates in the same order, same
+* area explored, same bumps and same metrics summary, and no divergence.
+* The recorded mission itself is checked against the same mission run
+* without recording.
+*
+* Reported: recording size, records and bytes per record, time to
+* simulate the mission and best time to replay it, and replay speed in
+* records per second and as a multiple of mission time.
+*
+* Usage: java ReplayBenchmark [missions] [mission duration, s] [replays]
+*/
+public class ReplayBenchmark {
+
+    public static void main(String[] args) {
+        int missions = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int duration = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+        int replays = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        System.out.println(missions + " missions of " + duration + " s, each replayed " + replays + " times");
+        System.out.println("seed  mission (s)  records  size (kB)  B/record  simulated (ms)  replay (ms)"
+            + "  records/s (M)  x mission time  same");
+        int identical = 0;
+        long totalBytes = 0;
+        double totalSimulated = 0.0;
+        double totalReplay = 0.0;
+        for(int seed = 1; seed <= missions; seed++) {
+            // the reference, without recording
+            Outcome reference = new Outcome(new SimMission(seed, duration), null);
+
+            ByteArrayOutputStream recording = new ByteArrayOutputStream();
+            SimMission recorded = new SimMission(seed, duration);
+            recorded.setRecording(recording);
+            Outcome original = new Outcome(recorded, null);
+            byte[] data = recording.toByteArray();
+
+            boolean same = original.sameAs(reference);
+            long best = Long.MAX_VALUE;
+            for(int i = 0; i < replays; i++) {
+                SimMission replayed = new SimMission(seed, duration);
+                Outcome outcome = new Outcome(replayed, data);
+                same &= outcome.sameAs(original) && !replayed.hasDiverged();
+                best = Math.min(best, outcome.nanos);
+            }
+            if(same) {
+                identical++;
+            }
+            double missionSeconds = (recorded.getExploreTime() + recorded.getReturnTime()) / 1000.0;
+            System.out.printf("%4d %12.1f %8d %10.1f %9.2f %15.1f %12.2f %14.1f %15.0f  %s%n", seed, missionSeconds,
+                recorded.getRecordCount(), data.length / 1024.0, (double)data.length / recorded.getRecordCount(),
+                original.nanos / 1e6, best / 1e6, recorded.getRecordCount() / (best / 1e9) / 1e6,
+                missionSeconds / (best / 1e9), same ? "yes" : "NO");
+            totalBytes += data.length;
+            totalSimulated += original.nanos / 1e6;
+            totalReplay += best / 1e6;
+        }
+        System.out.printf("identical replays %d/%d, mean size %.1f kB, mean simulated %.1f ms, mean replay %.2f ms%n",
+            identical, missions, totalBytes / 1024.0 / missions, totalSimulated / missions, totalReplay / missions);
+    }
+
+    /**
+    * What a mission did, as far as the rover can tell
+    */
+    private static class Outcome {
+
+        private boolean completed;
+        private float exploredArea;
+        private int mapSize;
+        private int bumpCount;
+        private long evidence;
+        private byte[] summary;
+        private long nanos;
+
+        public Outcome(SimMission mission, byte[] replay) {
+            final long[] hash = {17L};
+            // every cell update, in order
+            mission.setEvidenceListener(new EvidenceListener() {
+                public void evidenceAdded(int cx, int cy, int delta) {
+                    hash[0] = hash[0] * 31L + ((long)cx << 40 ^ (long)cy << 20 ^ delta);
+                }
+            });
+            mission.setReplay(replay);
+            long start = System.nanoTime();
+            this.completed = mission.run();
+            this.nanos = System.nanoTime() - start;
+            this.exploredArea = mission.getExploredArea();
+            this.mapSize = mission.getMapSize();
+            this.bumpCount = mission.getBumpCount();
+            this.evidence = hash[0];
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                mission.getMetrics().writeSummary(out);
+            } catch(IOException e) {
+                System.err.println("Failed to write metrics");
+            }
+            this.summary = out.toByteArray();
+        }
+
+        public boolean sameAs(Outcome other) {
+            return this.completed == other.completed && this.exploredArea == other.exploredArea
+                && this.mapSize == other.mapSize && this.bumpCount == other.bumpCount
+                && this.evidence == other.evidence && Arrays.equals(this.summary, other.summary);
+        }
+    }
+}
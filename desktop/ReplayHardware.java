@@ -0,0 +1,468 @@
+import lejos.robotics.Touch;
+import lejos.robotics.navigation.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* ReplayHardware class
+*
+* Plays a SensorRecorder recording back to a rover: every call to the
+* clock, sensors and motors returns what it returned when the mission was
+* recorded, the drive reports the same moves, and the random source draws
+* the same values. Nothing is simulated and waiting takes no time, so the
+* mission runs again, decision for decision, as fast as the rover's own
+* code allows.
+*
+* Each call must find the record it made when the mission was recorded.
+* As soon as the rover does something else, the replay fails with an
+* IllegalStateException and hasDiverged tells so. Running out of records
+* fails the same way, as the mission ran out of time when it was recorded.
+*
+* Only recordings made on a virtual clock can be replayed. The indicators
+* are simulated, files are discarded, and the rover starts from an empty
+* map: the map kept between missions is not part of the recording.
+*/
+public class ReplayHardware implements RoverHardware {
+
+    private byte[] recording;
+    private int position;
+    private long time;
+    private int recordCount;
+    private boolean diverged;
+    private boolean closed;
+
+    private ReplayClock clock;
+    private ReplaySonar sonar;
+    private ReplayTouch leftBumper;
+    private ReplayTouch rightBumper;
+    private ReplayMast mastMotor;
+    private ReplayDrive driveBase;
+    private SimIndicators indicators;
+
+    /**
+    * Constructor
+    *
+    * @param byte[] data the whole recording, as written by a SensorRecorder
+    */
+    public ReplayHardware(byte[] data) {
+        this.recording = data;
+        this.position = 0;
+        if(data.length < 14 || this.readInt() != SensorRecorder.MAGIC) {
+            throw new IllegalArgumentException("Not a sensor recording");
+        }
+        if(data[this.position++] != SensorRecorder.VERSION) {
+            throw new IllegalArgumentException("Unsupported sensor recording version " + data[this.position - 1]);
+        }
+        if(data[this.position++] != 0) {
+            throw new IllegalArgumentException("Recordings made on a wall clock can't be replayed");
+        }
+        this.time = this.readLong();
+
+        this.clock = new ReplayClock();
+        this.sonar = new ReplaySonar();
+        this.leftBumper = new ReplayTouch(SensorRecorder.LEFT_BUMPER);
+        this.rightBumper = new ReplayTouch(SensorRecorder.RIGHT_BUMPER);
+        this.mastMotor = new ReplayMast();
+        this.driveBase = new ReplayDrive();
+        this.indicators = new SimIndicators(false);
+    }
+
+    /**
+    * Reads a whole recording file into memory
+    *
+    * @param File file the recording
+    * @return ReplayHardware the hardware replaying it
+    */
+    public static ReplayHardware open(File file) throws IOException {
+        byte[] data = new byte[(int)file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return new ReplayHardware(data);
+    }
+
+    public DriveBase getDriveBase() {
+        return this.driveBase;
+    }
+
+    public MastMotor getMastMotor() {
+        return this.mastMotor;
+    }
+
+    public Sonar getSonar() {
+        return this.sonar;
+    }
+
+    public Touch getLeftBumper() {
+        return this.leftBumper;
+    }
+
+    public Touch getRightBumper() {
+        return this.rightBumper;
+    }
+
+    public Indicators getIndicators() {
+        return this.indicators;
+    }
+
+    public Clock getClock() {
+        return this.clock;
+    }
+
+    public Random newRandom(long seed) {
+        this.expect(SensorRecorder.RANDOM_SEED);
+        long recorded = this.readLong();
+        if(recorded != seed) {
+            this.diverge("seed " + seed + " instead of " + recorded);
+        }
+        return new ReplayRandom(seed);
+    }
+
+    public OutputStream openFile(String filename) throws IOException {
+        return null;
+    }
+
+    public MapStore openMapStore(MapKit map) throws IOException {
+        return null;
+    }
+
+    public void setInterruptHandler(Rover rover) {
+
+    }
+
+    /**
+    * Ends the replay, as the recording was closed at the end of the mission
+    * The clock then stays at the time of the last record
+    *
+    * @return void
+    */
+    public void close() {
+        this.closed = true;
+    }
+
+    /**
+    * Tells if the rover stopped following the recording
+    *
+    * @return boolean true if a call didn't match its record
+    */
+    public boolean hasDiverged() {
+        return this.diverged;
+    }
+
+    /**
+    * Tells if every record has been played back
+    *
+    * @return boolean true at the end of the recording
+    */
+    public boolean isFinished() {
+        return this.position >= this.recording.length;
+    }
+
+    /**
+    * Returns the time of the last record played back
+    *
+    * @return long the recorded time, in ms
+    */
+    public long getTime() {
+        return this.time;
+    }
+
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    public int getSize() {
+        return this.recording.length;
+    }
+
+    /*
+    #########################################################################
+    Playback
+    #########################################################################
+    */
+
+    /**
+    * Moves on to the next record, which must be of the given type
+    * The moves the drive reported before it are passed on first, as they
+    * were when the mission was recorded
+    */
+    private void expect(byte type) {
+        if(this.closed) {
+            throw new IllegalStateException("Replay closed at " + this.time + " ms");
+        }
+        this.reportMoves();
+        if(this.position >= this.recording.length) {
+            throw new IllegalStateException("Recording ended after " + this.recordCount + " records, at "
+                + this.time + " ms");
+        }
+        byte found = this.recording[this.position];
+        if(found != type) {
+            this.diverge("record type " + type + " instead of " + found);
+        }
+        this.position++;
+        this.readTime();
+    }
+
+    private void reportMoves() {
+        while(this.position < this.recording.length) {
+            byte type = this.recording[this.position];
+            if(type != SensorRecorder.MOVE_STARTED && type != SensorRecorder.MOVE_STOPPED) {
+                return;
+            }
+            this.position++;
+            this.readTime();
+            // the record is used up before the listeners ask the drive anything
+            Move event = this.readMove();
+            if(type == SensorRecorder.MOVE_STARTED) {
+                this.driveBase.moveStarted(event);
+            }
+            else {
+                this.driveBase.moveStopped(event);
+            }
+        }
+    }
+
+    private void diverge(String reason) {
+        this.diverged = true;
+        throw new IllegalStateException("Replay diverged at record " + this.recordCount + ", " + this.time
+            + " ms: " + reason);
+    }
+
+    private void readTime() {
+        int zigzag = this.readVarint();
+        this.time += (zigzag >>> 1) ^ -(zigzag & 1);
+        this.recordCount++;
+    }
+
+    private int readVarint() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = this.recording[this.position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    private int readInt() {
+        int value = ((this.recording[this.position] & 0xFF) << 24) | ((this.recording[this.position + 1] & 0xFF) << 16)
+            | ((this.recording[this.position + 2] & 0xFF) << 8) | (this.recording[this.position + 3] & 0xFF);
+        this.position += 4;
+        return value;
+    }
+
+    private long readLong() {
+        long high = this.readInt();
+        return (high << 32) | (this.readInt() & 0xFFFFFFFFL);
+    }
+
+    private boolean readFlag() {
+        return this.recording[this.position++] != 0;
+    }
+
+    private Move readMove() {
+        Move.MoveType type = Move.MoveType.values()[this.recording[this.position++]];
+        boolean moving = this.readFlag();
+        float distance = Float.intBitsToFloat(this.readInt());
+        float angle = Float.intBitsToFloat(this.readInt());
+        // the speeds of a move are not recorded, nothing in the rover reads them
+        return new Move(type, distance, angle, 0.0f, 0.0f, moving);
+    }
+
+    /*
+    #########################################################################
+    Replayed hardware
+    #########################################################################
+    */
+
+    private class ReplayClock implements Clock {
+
+        public long currentTimeMillis() {
+            if(ReplayHardware.this.closed) {
+                return ReplayHardware.this.time;
+            }
+            ReplayHardware.this.expect(SensorRecorder.CLOCK_READ);
+            return ReplayHardware.this.time;
+        }
+
+        public void msDelay(long period) {
+            ReplayHardware.this.expect(SensorRecorder.CLOCK_DELAY);
+        }
+
+        public boolean isRealTime() {
+            return false;
+        }
+    }
+
+    private class ReplaySonar implements Sonar {
+
+        public void setMode(int mode) {
+            ReplayHardware.this.expect(SensorRecorder.SONAR_COMMAND);
+        }
+
+        public void ping() {
+            ReplayHardware.this.expect(SensorRecorder.SONAR_COMMAND);
+        }
+
+        public int getDistance() {
+            ReplayHardware.this.expect(SensorRecorder.SONAR_READ);
+            return ReplayHardware.this.readVarint();
+        }
+    }
+
+    private class ReplayTouch implements Touch {
+
+        private byte type;
+
+        public ReplayTouch(byte recordType) {
+            this.type = recordType;
+        }
+
+        public boolean isPressed() {
+            ReplayHardware.this.expect(this.type);
+            return ReplayHardware.this.readFlag();
+        }
+    }
+
+    private class ReplayMast implements MastMotor {
+
+        public void rotateTo(int angle) {
+            ReplayHardware.this.expect(SensorRecorder.MAST_COMMAND);
+        }
+
+        public void rotateTo(int angle, boolean immediateReturn) {
+            ReplayHardware.this.expect(SensorRecorder.MAST_COMMAND);
+        }
+
+        public int getPosition() {
+            ReplayHardware.this.expect(SensorRecorder.MAST_POSITION);
+            int zigzag = ReplayHardware.this.readVarint();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        public boolean isMoving() {
+            ReplayHardware.this.expect(SensorRecorder.MAST_MOVING);
+            return ReplayHardware.this.readFlag();
+        }
+
+        public void setSpeed(int speed) {
+            ReplayHardware.this.expect(SensorRecorder.MAST_COMMAND);
+        }
+
+        public void stop() {
+            ReplayHardware.this.expect(SensorRecorder.MAST_COMMAND);
+        }
+
+        public void flt(boolean immediateReturn) {
+            ReplayHardware.this.expect(SensorRecorder.MAST_COMMAND);
+        }
+
+        public void resetTachoCount() {
+            ReplayHardware.this.expect(SensorRecorder.MAST_COMMAND);
+        }
+    }
+
+    private class ReplayDrive implements DriveBase {
+
+        private ArrayList<MoveListener> listeners = new ArrayList<MoveListener>();
+
+        public void travel(double distance) {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public void travel(double distance, boolean immediateReturn) {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public void rotate(double angle, boolean immediateReturn) {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public void arcForward(double radius) {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public void stop() {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public boolean isMoving() {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_MOVING);
+            return ReplayHardware.this.readFlag();
+        }
+
+        public void setTravelSpeed(double speed) {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public double getTravelSpeed() {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_SPEED);
+            return Double.longBitsToDouble(ReplayHardware.this.readLong());
+        }
+
+        public void setRotateSpeed(double speed) {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_COMMAND);
+        }
+
+        public double getRotateSpeed() {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_SPEED);
+            return Double.longBitsToDouble(ReplayHardware.this.readLong());
+        }
+
+        public Move getMovement() {
+            ReplayHardware.this.expect(SensorRecorder.DRIVE_MOVEMENT);
+            return ReplayHardware.this.readMove();
+        }
+
+        public void addMoveListener(MoveListener listener) {
+            this.listeners.add(listener);
+        }
+
+        public void moveStarted(Move event) {
+            for(int i = 0; i < this.listeners.size(); i++) {
+                this.listeners.get(i).moveStarted(event, this);
+            }
+        }
+
+        public void moveStopped(Move event) {
+            for(int i = 0; i < this.listeners.size(); i++) {
+                this.listeners.get(i).moveStopped(event, this);
+            }
+        }
+    }
+
+    /**
+    * Gives back the recorded draws; any other kind of draw diverges
+    */
+    private class ReplayRandom extends Random {
+
+        private static final long serialVersionUID = 1L;
+
+        public ReplayRandom(long seed) {
+            super(seed);
+        }
+
+        public int nextInt(int bound) {
+            ReplayHardware.this.expect(SensorRecorder.RANDOM_INT);
+            int recorded = ReplayHardware.this.readVarint();
+            int value = ReplayHardware.this.readVarint();
+            if(recorded != bound) {
+                ReplayHardware.this.diverge("draw below " + bound + " instead of " + recorded);
+            }
+            return value;
+        }
+
+        protected int next(int bits) {
+            ReplayHardware.this.diverge("unrecorded random draw");
+            return 0;
+        }
+    }
+}
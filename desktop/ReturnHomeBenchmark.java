@@ -0,0 +1,42 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* ReturnHomeBenchmark class
+*
+* Compares the time finishMission takes to bring the rover home with
+* the path planner and with the former trial and error loop, over the
+* same simulated missions.
+*
+* Usage: java ReturnHomeBenchmark [missions] [mission duration, s]
+*/
+public class ReturnHomeBenchmark {
+
+    public static void main(String[] args) {
+        int missions = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int duration = args.length > 1 ? Integer.parseInt(args[1]) : 180;
+
+        System.out.println("return       home   mean s  median s   max s  collisions");
+        report("planner", missions, duration, true);
+        report("trial/error", missions, duration, false);
+    }
+
+    private static void report(String name, int missions, int duration, boolean planning) {
+        long[] times = new long[missions];
+        int home = 0;
+        int collisions = 0;
+        long total = 0;
+        for(int seed = 1; seed <= missions; seed++) {
+            SimMission mission = new SimMission(seed, duration);
+            mission.setReturnPlanning(planning);
+            if(mission.run()) {
+                home++;
+            }
+            times[seed - 1] = mission.getReturnTime();
+            total += mission.getReturnTime();
+            collisions += mission.getCollisionCount();
+        }
+        java.util.Arrays.sort(times);
+        System.out.printf("%-11s %3d/%-3d %8.1f %9.1f %7.1f %11d%n", name, home, missions,
+            total / 1000.0 / missions, times[missions / 2] / 1000.0, times[missions - 1] / 1000.0, collisions);
+    }
+}
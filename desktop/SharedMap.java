@@ -0,0 +1,246 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SharedMap class
+*
+* Occupancy grid fed by several rovers at once, each through its own
+* LoopbackMapLink (or any EvidenceListener passing on what its MapKit takes
+* in). The grid has the geometry of the rovers' MapKits.
+*
+* Each cell holds the sum of the log-odds every rover added to it, without
+* clamping, and the set of rovers that observed it, as a bit mask. Both are
+* updated lock-free, with atomic adds and compare-and-set, so rovers never
+* wait for one another. Integer sums and bit masks don't depend on the
+* order they are built in: whatever the interleaving of updates, and
+* whatever the order maps are merged in, the result is the same. Values
+* are only clamped to MapKit's limits when they are read.
+*/
+public class SharedMap {
+
+    // rovers are told apart by one bit of a cell's observer mask
+    public static final int MAX_ROVERS = 32;
+
+    private int width;
+    private int height;
+    private float cellSize;
+
+    private AtomicIntegerArray evidence;
+    private AtomicIntegerArray observers;
+    private AtomicInteger roverCount;
+
+    /**
+    * Constructor
+    *
+    * @param int gridWidth number of cells along the x axis
+    * @param int gridHeight number of cells along the y axis
+    * @param float cellSize side of a cell, in cm
+    */
+    public SharedMap(int gridWidth, int gridHeight, float cellSize) {
+        this.width = gridWidth;
+        this.height = gridHeight;
+        this.cellSize = cellSize;
+        this.evidence = new AtomicIntegerArray(gridWidth * gridHeight);
+        this.observers = new AtomicIntegerArray(gridWidth * gridHeight);
+        this.roverCount = new AtomicInteger();
+    }
+
+    /**
+    * Constructor
+    * Makes a shared map with the geometry of a rover's map
+    *
+    * @param MapKit map the map of one of the rovers
+    */
+    public SharedMap(MapKit map) {
+        this(map.getWidth(), map.getHeight(), map.getCellSize());
+    }
+
+    /**
+    * Gives a rover the number it writes under
+    *
+    * @return int the rover's number
+    */
+    public int registerRover() {
+        int rover = this.roverCount.getAndIncrement();
+        if(rover >= MAX_ROVERS) {
+            throw new IllegalStateException("No more than " + MAX_ROVERS + " rovers can share a map");
+        }
+        return rover;
+    }
+
+    /**
+    * Adds evidence from a rover to a cell
+    * Safe to call from any number of threads at once
+    *
+    * @param int rover the rover's number, from registerRover
+    * @param int cx the cell's column
+    * @param int cy the cell's row
+    * @param int delta the log-odds added, unclamped
+    * @return void
+    */
+    public void add(int rover, int cx, int cy, int delta) {
+        if(cx < 0 || cy < 0 || cx >= this.width || cy >= this.height) {
+            return;
+        }
+        int index = cy * this.width + cx;
+        this.evidence.addAndGet(index, delta);
+        int bit = 1 << rover;
+        int mask = this.observers.get(index);
+        // a rover mostly sees the same cells again, so the bit is usually set already
+        while((mask & bit) == 0 && !this.observers.compareAndSet(index, mask, mask | bit)) {
+            mask = this.observers.get(index);
+        }
+    }
+
+    /**
+    * Adds another shared map's evidence and observers to this one
+    * The merge is commutative and associative: merging maps in any order,
+    * or while rovers are still writing, gives the same cells
+    *
+    * @param SharedMap other a map of the same geometry
+    * @return void
+    */
+    public void merge(SharedMap other) {
+        if(other.width != this.width || other.height != this.height || other.cellSize != this.cellSize) {
+            throw new IllegalArgumentException("Shared maps of different grids can't be merged");
+        }
+        for(int i = 0; i < this.width * this.height; i++) {
+            int delta = other.evidence.get(i);
+            if(delta != 0) {
+                this.evidence.addAndGet(i, delta);
+            }
+            int bits = other.observers.get(i);
+            int mask = this.observers.get(i);
+            while((mask | bits) != mask && !this.observers.compareAndSet(i, mask, mask | bits)) {
+                mask = this.observers.get(i);
+            }
+        }
+    }
+
+    /**
+    * Tells if two shared maps hold exactly the same evidence and observers
+    *
+    * @param SharedMap other the map to compare with
+    * @return boolean true if every cell is the same
+    */
+    public boolean hasSameCells(SharedMap other) {
+        if(other.width != this.width || other.height != this.height) {
+            return false;
+        }
+        for(int i = 0; i < this.width * this.height; i++) {
+            if(other.evidence.get(i) != this.evidence.get(i) || other.observers.get(i) != this.observers.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+    #########################################################################
+    Accessor methods
+    #########################################################################
+    */
+
+    /**
+    * Returns a cell's log-odds, clamped as MapKit clamps them
+    *
+    * @param int cx the cell's column
+    * @param int cy the cell's row
+    * @return int the log-odds
+    */
+    public int getLogOdds(int cx, int cy) {
+        int value = this.evidence.get(cy * this.width + cx);
+        return Math.max(MapKit.LOG_ODDS_MIN, Math.min(MapKit.LOG_ODDS_MAX, value));
+    }
+
+    /**
+    * Returns the rovers that observed a cell
+    *
+    * @param int cx the cell's column
+    * @param int cy the cell's row
+    * @return int the observer mask, bit n set if rover n observed the cell
+    */
+    public int getObservers(int cx, int cy) {
+        return this.observers.get(cy * this.width + cx);
+    }
+
+    /**
+    * Tells if the cell containing a point is considered occupied
+    *
+    * @param float x the x coordinate of the point
+    * @param float y the y coordinate of the point
+    * @return boolean true if the point lies in an occupied cell
+    */
+    public boolean isOccupied(float x, float y) {
+        int cx = (int)Math.floor(x / this.cellSize) + this.width / 2;
+        int cy = (int)Math.floor(y / this.cellSize) + this.height / 2;
+        if(cx < 0 || cy < 0 || cx >= this.width || cy >= this.height) {
+            return false;
+        }
+        return this.getLogOdds(cx, cy) > MapKit.OCCUPIED_THRESHOLD;
+    }
+
+    /**
+    * Returns the area seen by any rover
+    *
+    * @return float the area of the cells observed, in square cm
+    */
+    public float getExploredArea() {
+        int count = 0;
+        for(int i = 0; i < this.width * this.height; i++) {
+            if(this.observers.get(i) != 0) {
+                count++;
+            }
+        }
+        return count * this.cellSize * this.cellSize;
+    }
+
+    /**
+    * Returns the area seen by more than one rover
+    *
+    * @return float the area of the cells observed by several rovers, in square cm
+    */
+    public float getOverlapArea() {
+        int count = 0;
+        for(int i = 0; i < this.width * this.height; i++) {
+            int mask = this.observers.get(i);
+            if((mask & (mask - 1)) != 0) {
+                count++;
+            }
+        }
+        return count * this.cellSize * this.cellSize;
+    }
+
+    /**
+    * Returns the number of occupied cells
+    *
+    * @return int the obstacle count
+    */
+    public int countObstacles() {
+        int count = 0;
+        for(int i = 0; i < this.width * this.height; i++) {
+            if(this.evidence.get(i) > MapKit.OCCUPIED_THRESHOLD) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public float getCellSize() {
+        return this.cellSize;
+    }
+
+    public int getRoverCount() {
+        return this.roverCount.get();
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SharedMapBenchmark class
+*
+* Measures how a map shared between rovers scales with their number:
+*  - updates: 1 to N threads, each a rover's MapKit taking in random sonar
+*    readings over the same grid and passing every cell update on. The
+*    shared map is the lock-free SharedMap, or a grid behind a single lock,
+*    the way a synchronized MapKit would be shared. A run without any
+*    sharing gives the cost of the rovers' own maps.
+*  - missions: 1 to N simulated rovers exploring the same arena at once,
+*    each on its own thread, all writing to one SharedMap. Each rover's
+*    evidence also goes to a private map; merging the private maps in
+*    opposite orders must give the shared map again, cell for cell.
+* Simulated rovers don't see each other: each drives alone in its copy of
+* the arena.
+*
+* Usage: java SharedMapBenchmark [max rovers] [round ms] [mission duration, s]
+*/
+public class SharedMapBenchmark {
+
+    private static final long SEED = 1L;
+
+    // how the rovers' updates are shared
+    private static final int NOT_SHARED = 0;
+    private static final int ONE_LOCK = 1;
+    private static final int LOCK_FREE = 2;
+    private static final String[] SHARING = {"not shared", "one lock", "lock-free"};
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxRovers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        long roundMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000L;
+        int duration = args.length > 2 ? Integer.parseInt(args[2]) : 120;
+
+        System.out.println("cell updates from random readings, " + MapKit.DEFAULT_SIZE + "x" + MapKit.DEFAULT_SIZE
+            + " grid, " + Runtime.getRuntime().availableProcessors() + " cores");
+        System.out.println("rovers  sharing       updates/s (M)  per rover (M)");
+        for(int rovers = 1; rovers <= maxRovers; rovers *= 2) {
+            for(int sharing = NOT_SHARED; sharing <= LOCK_FREE; sharing++) {
+                measureUpdates(rovers, sharing, roundMillis);
+            }
+        }
+
+        System.out.println();
+        System.out.println("missions of " + duration + " s in one arena");
+        System.out.println("rovers  explored (m2)  per rover (m2)  overlap (m2)  updates/s (M)  merges match");
+        for(int rovers = 1; rovers <= maxRovers; rovers *= 2) {
+            runMissions(rovers, duration);
+        }
+    }
+
+    /*
+    #########################################################################
+    Updates
+    #########################################################################
+    */
+
+    private static void measureUpdates(int rovers, final int sharing, final long roundMillis)
+            throws InterruptedException {
+        MapKit geometry = new MapKit(null);
+        final SharedMap sharedMap = new SharedMap(geometry);
+        final int[] lockedCells = new int[geometry.getWidth() * geometry.getHeight()];
+        final int width = geometry.getWidth();
+        final long[] updates = new long[rovers];
+        Thread[] threads = new Thread[rovers];
+        for(int i = 0; i < rovers; i++) {
+            final int rover = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    MapKit map = new MapKit(null);
+                    final long[] count = new long[1];
+                    if(sharing == LOCK_FREE) {
+                        final LoopbackMapLink link = new LoopbackMapLink(sharedMap);
+                        map.setEvidenceListener(new EvidenceListener() {
+                            public void evidenceAdded(int cx, int cy, int delta) {
+                                link.evidenceAdded(cx, cy, delta);
+                                count[0]++;
+                            }
+                        });
+                    }
+                    else if(sharing == ONE_LOCK) {
+                        map.setEvidenceListener(new EvidenceListener() {
+                            public void evidenceAdded(int cx, int cy, int delta) {
+                                synchronized(lockedCells) {
+                                    lockedCells[cy * width + cx] += delta;
+                                }
+                                count[0]++;
+                            }
+                        });
+                    }
+                    else {
+                        map.setEvidenceListener(new EvidenceListener() {
+                            public void evidenceAdded(int cx, int cy, int delta) {
+                                count[0]++;
+                            }
+                        });
+                    }
+                    Random random = new Random(SEED + rover);
+                    long end = System.nanoTime() + roundMillis * 1000000L;
+                    while(System.nanoTime() < end) {
+                        // a sweep from somewhere in the arena, as the rovers take them
+                        float x = (random.nextFloat() - 0.5f) * 400.0f;
+                        float y = (random.nextFloat() - 0.5f) * 400.0f;
+                        float heading = random.nextFloat() * 360.0f;
+                        for(int reading = 0; reading < 19; reading++) {
+                            map.addReading(x, y, heading, reading * 10 - 90, 20 + random.nextInt(MapKit.MAX_RANGE + 50));
+                        }
+                    }
+                    updates[rover] = count[0];
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = 0;
+        for(long count : updates) {
+            total += count;
+        }
+        System.out.printf("%6d  %-12s %14.1f %14.1f%n", rovers, SHARING[sharing], total / seconds / 1e6,
+            total / seconds / 1e6 / rovers);
+    }
+
+    /*
+    #########################################################################
+    Missions
+    #########################################################################
+    */
+
+    private static void runMissions(int rovers, final int duration) throws InterruptedException {
+        MapKit geometry = new MapKit(null);
+        final SharedMap sharedMap = new SharedMap(geometry);
+        final SharedMap[] privateMaps = new SharedMap[rovers];
+        final float[] explored = new float[rovers];
+        final long[] updates = new long[rovers];
+        Thread[] threads = new Thread[rovers];
+        for(int i = 0; i < rovers; i++) {
+            final int rover = i;
+            privateMaps[i] = new SharedMap(geometry);
+            threads[i] = new Thread() {
+                public void run() {
+                    final LoopbackMapLink link = new LoopbackMapLink(sharedMap);
+                    final SharedMap privateMap = privateMaps[rover];
+                    // every rover lands in the same arena, with its own errors and choices
+                    SimMission mission = new SimMission(SEED + 1000L * rover, duration);
+                    mission.setArenaSeed(SEED);
+                    mission.setEvidenceListener(new EvidenceListener() {
+                        public void evidenceAdded(int cx, int cy, int delta) {
+                            link.evidenceAdded(cx, cy, delta);
+                            privateMap.add(link.getRover(), cx, cy, delta);
+                        }
+                    });
+                    mission.run();
+                    explored[rover] = mission.getExploredArea();
+                    updates[rover] = link.getUpdateCount();
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // the same evidence merged in opposite orders
+        SharedMap forward = new SharedMap(geometry);
+        SharedMap backward = new SharedMap(geometry);
+        for(int i = 0; i < rovers; i++) {
+            forward.merge(privateMaps[i]);
+            backward.merge(privateMaps[rovers - 1 - i]);
+        }
+        boolean match = forward.hasSameCells(sharedMap) && backward.hasSameCells(sharedMap);
+
+        float perRover = 0.0f;
+        long total = 0;
+        for(int i = 0; i < rovers; i++) {
+            perRover += explored[i] / 10000.0f;
+            total += updates[i];
+        }
+        System.out.printf("%6d %14.2f %15.2f %13.2f %14.2f  %s%n", rovers, sharedMap.getExploredArea() / 10000.0f,
+            perRover / rovers, sharedMap.getOverlapArea() / 10000.0f, total / seconds / 1e6, match ? "yes" : "no");
+    }
+}
@@ -0,0 +1,307 @@
+import lejos.robotics.navigation.*;
+import java.util.*;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SimDriveBase class
+*
+* Simulated differential drive. Moves are worked out lazily from the
+* virtual clock whenever the drive is asked about them.
+*
+* The rover is a disc that can't go through walls. When it is blocked the
+* wheels keep turning, so odometry keeps counting like on the real rover.
+* Wheel slip is modelled by scaling the true travel and rotation.
+*/
+public class SimDriveBase implements DriveBase {
+
+    // radius of the rover's footprint, in cm
+    public static final float RADIUS = 10.0f;
+
+    // bumpers are felt this far beyond the footprint, in cm
+    private static final float BUMPER_REACH = 1.5f;
+    // each bumper covers this half angle, on its own side of the heading
+    private static final float BUMPER_ARC = 60.0f;
+    private static final float BUMPER_OVERLAP = 15.0f;
+
+    // largest step of the kinematic model, in cm or degrees
+    private static final float STEP = 1.0f;
+
+    private static final int NONE = 0;
+    private static final int TRAVEL = 1;
+    private static final int ROTATE = 2;
+    private static final int ARC = 3;
+
+    private SimWorld world;
+    private Clock clock;
+
+    // where the rover really is
+    private float x;
+    private float y;
+    private float heading;
+
+    private float travelScale;
+    private float rotateScale;
+
+    private double travelSpeed;
+    private double rotateSpeed;
+
+    private ArrayList<MoveListener> listeners;
+
+    // current move, measured by the wheels
+    private int moveType;
+    private float target;
+    private float progress;
+    // heading change along an arc, in degrees per cm
+    private float arcRate;
+    private long moveStart;
+    private boolean moving;
+
+    private boolean blocked;
+    private int collisionCount;
+    // times the rover came to rest, a new arc while moving doesn't count
+    private int haltCount;
+
+    /**
+    * Constructor
+    *
+    * @param SimWorld arena the world the rover drives in
+    * @param Clock timeSource the simulation clock
+    * @param Random random the source of odometry errors
+    * @param float slip the standard deviation of the odometry scale errors
+    */
+    public SimDriveBase(SimWorld arena, Clock timeSource, Random random, float slip) {
+        this.world = arena;
+        this.clock = timeSource;
+        this.travelScale = 1.0f + (float)random.nextGaussian() * slip;
+        this.rotateScale = 1.0f + (float)random.nextGaussian() * slip;
+        this.travelSpeed = 15.0;
+        this.rotateSpeed = 45.0;
+        this.listeners = new ArrayList<MoveListener>();
+        this.moveType = NONE;
+    }
+
+    public void travel(double distance) {
+        this.travel(distance, false);
+    }
+
+    public void travel(double distance, boolean immediateReturn) {
+        this.startMove(TRAVEL, (float)distance, immediateReturn);
+    }
+
+    public void rotate(double angle, boolean immediateReturn) {
+        this.startMove(ROTATE, (float)angle, immediateReturn);
+    }
+
+    public void arcForward(double radius) {
+        this.update();
+        boolean wasMoving = this.moving;
+        // the move in progress ends at its own rate
+        this.stop();
+        if(wasMoving) {
+            // the wheels change speed without stopping
+            this.haltCount--;
+        }
+        this.arcRate = Double.isInfinite(radius) ? 0.0f : (float)Math.toDegrees(1.0 / radius);
+        this.startMove(ARC, Float.POSITIVE_INFINITY, true);
+    }
+
+    public void stop() {
+        this.update();
+        if(this.moving) {
+            this.target = this.progress;
+            this.endMove();
+            this.haltCount++;
+        }
+    }
+
+    public boolean isMoving() {
+        this.update();
+        return this.moving;
+    }
+
+    public void setTravelSpeed(double speed) {
+        this.travelSpeed = speed;
+    }
+
+    public double getTravelSpeed() {
+        return this.travelSpeed;
+    }
+
+    public void setRotateSpeed(double speed) {
+        this.rotateSpeed = speed;
+    }
+
+    public double getRotateSpeed() {
+        return this.rotateSpeed;
+    }
+
+    public Move getMovement() {
+        this.update();
+        return this.currentMove();
+    }
+
+    public void addMoveListener(MoveListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+    * Tells if a bumper touches a wall
+    *
+    * @param int side -1 for the left bumper, 1 for the right one
+    * @return boolean true if the bumper is pressed
+    */
+    public boolean isBumperPressed(int side) {
+        this.update();
+        float bearing = this.world.contactBearing(this.x, this.y, this.heading, RADIUS + BUMPER_REACH);
+        if(Float.isNaN(bearing)) {
+            return false;
+        }
+        // positive bearings are on the left
+        float sideBearing = side < 0 ? bearing : -bearing;
+        return sideBearing > -BUMPER_OVERLAP && sideBearing < BUMPER_ARC;
+    }
+
+    /**
+    * Returns where the rover really is, as opposed to what odometry says
+    *
+    * @return Pose the true pose
+    */
+    public Pose getTruePose() {
+        this.update();
+        return new Pose(this.x, this.y, this.heading);
+    }
+
+    /**
+    * Returns the number of times the rover drove into a wall
+    *
+    * @return int the collision count
+    */
+    public int getCollisionCount() {
+        return this.collisionCount;
+    }
+
+    /**
+    * Returns the number of times the rover came to rest
+    *
+    * @return int the halt count
+    */
+    public int getHaltCount() {
+        return this.haltCount;
+    }
+
+    /*
+    #########################################################################
+    Kinematic model
+    #########################################################################
+    */
+
+    private void startMove(int type, float amount, boolean immediateReturn) {
+        this.stop();
+        this.moveType = type;
+        this.target = amount;
+        this.progress = 0.0f;
+        this.moveStart = this.clock.currentTimeMillis();
+        this.moving = true;
+        this.blocked = false;
+
+        Move move = this.currentMove();
+        for(int i = 0; i < this.listeners.size(); i++) {
+            this.listeners.get(i).moveStarted(move, this);
+        }
+
+        if(!immediateReturn) {
+            while(this.isMoving()) {
+                this.clock.msDelay(10);
+            }
+        }
+    }
+
+    private void endMove() {
+        this.moving = false;
+        Move move = this.currentMove();
+        for(int i = 0; i < this.listeners.size(); i++) {
+            this.listeners.get(i).moveStopped(move, this);
+        }
+    }
+
+    private Move currentMove() {
+        if(this.moveType == TRAVEL) {
+            return new Move(this.progress, 0.0f, this.moving);
+        }
+        if(this.moveType == ROTATE) {
+            return new Move(0.0f, this.progress, this.moving);
+        }
+        if(this.moveType == ARC) {
+            return new Move(this.progress, this.progress * this.arcRate, this.moving);
+        }
+        return new Move(0.0f, 0.0f, false);
+    }
+
+    /**
+    * Brings the rover to where it should be at the current time
+    */
+    private void update() {
+        if(!this.moving) {
+            return;
+        }
+        double speed = this.moveType == ROTATE ? this.rotateSpeed : this.travelSpeed;
+        float elapsed = (float)((this.clock.currentTimeMillis() - this.moveStart) * speed / 1000.0);
+        float goal = Math.min(elapsed, Math.abs(this.target)) * Math.signum(this.target);
+
+        while(this.progress != goal) {
+            float step = goal - this.progress;
+            if(Math.abs(step) > STEP) {
+                step = Math.signum(step) * STEP;
+                this.progress += step;
+            }
+            else {
+                this.progress = goal;
+            }
+            if(this.moveType == TRAVEL) {
+                this.advance(step * this.travelScale);
+            }
+            else if(this.moveType == ARC) {
+                // turn half the step either side of moving, to follow the circle closely
+                float turn = step * this.arcRate * this.rotateScale / 2.0f;
+                this.heading = normalize(this.heading + turn);
+                this.advance(step * this.travelScale);
+                this.heading = normalize(this.heading + turn);
+            }
+            else {
+                this.heading = normalize(this.heading + step * this.rotateScale);
+            }
+        }
+
+        if(Math.abs(this.progress) >= Math.abs(this.target)) {
+            this.endMove();
+            this.haltCount++;
+        }
+    }
+
+    private void advance(float distance) {
+        double angle = Math.toRadians(this.heading);
+        float nextX = this.x + distance * (float)Math.cos(angle);
+        float nextY = this.y + distance * (float)Math.sin(angle);
+        if(this.world.clearance(nextX, nextY) >= RADIUS) {
+            this.x = nextX;
+            this.y = nextY;
+            this.blocked = false;
+        }
+        else if(!this.blocked) {
+            // the wheels slip against the wall
+            this.blocked = true;
+            this.collisionCount++;
+        }
+    }
+
+    private static float normalize(float angle) {
+        while(angle > 180.0f) {
+            angle -= 360.0f;
+        }
+        while(angle < -180.0f) {
+            angle += 360.0f;
+        }
+        return angle;
+    }
+}
@@ -0,0 +1,124 @@
+import lejos.robotics.Touch;
+import java.io.*;
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SimHardware class
+*
+* The rover's hardware, simulated in a SimWorld on a virtual clock.
+* All the randomness comes from a single seed, so a run can be repeated.
+*/
+public class SimHardware implements RoverHardware {
+
+    // default standard deviation of the odometry scale errors
+    public static final float DEFAULT_SLIP = 0.01f;
+    // the map kept between missions, in the output directory
+    public static final String MAP_STORE_FILE = "map.tiles";
+    // standard deviation of the sonar noise, in cm
+    private static final float SONAR_NOISE = 1.0f;
+
+    private VirtualClock clock;
+    private SimDriveBase driveBase;
+    private SimMastMotor mastMotor;
+    private SimSonar sonar;
+    private SimTouch leftBumper;
+    private SimTouch rightBumper;
+    private SimIndicators indicators;
+
+    private File outputDirectory;
+
+    /**
+    * Constructor
+    *
+    * @param SimWorld world the arena the rover drives in
+    * @param long seed the seed of the simulated errors
+    * @param File directory where the mission files are written, null to discard them
+    */
+    public SimHardware(SimWorld world, long seed, File directory) {
+        this(world, seed, directory, DEFAULT_SLIP);
+    }
+
+    /**
+    * Constructor
+    *
+    * @param SimWorld world the arena the rover drives in
+    * @param long seed the seed of the simulated errors
+    * @param File directory where the mission files are written, null to discard them
+    * @param float slip the standard deviation of the odometry scale errors
+    */
+    public SimHardware(SimWorld world, long seed, File directory, float slip) {
+        Random random = new Random(seed);
+        this.clock = new VirtualClock();
+        this.driveBase = new SimDriveBase(world, this.clock, random, slip);
+        this.mastMotor = new SimMastMotor(this.clock);
+        this.sonar = new SimSonar(world, this.driveBase, this.mastMotor, this.clock, random, SONAR_NOISE);
+        this.leftBumper = new SimTouch(this.driveBase, -1);
+        this.rightBumper = new SimTouch(this.driveBase, 1);
+        this.indicators = new SimIndicators(false);
+        this.outputDirectory = directory;
+    }
+
+    public DriveBase getDriveBase() {
+        return this.driveBase;
+    }
+
+    public MastMotor getMastMotor() {
+        return this.mastMotor;
+    }
+
+    public Sonar getSonar() {
+        return this.sonar;
+    }
+
+    public Touch getLeftBumper() {
+        return this.leftBumper;
+    }
+
+    public Touch getRightBumper() {
+        return this.rightBumper;
+    }
+
+    public Indicators getIndicators() {
+        return this.indicators;
+    }
+
+    public Clock getClock() {
+        return this.clock;
+    }
+
+    public Random newRandom(long seed) {
+        return new Random(seed);
+    }
+
+    public OutputStream openFile(String filename) throws IOException {
+        if(this.outputDirectory == null) {
+            return null;
+        }
+        return new FileOutputStream(new File(this.outputDirectory, filename));
+    }
+
+    public MapStore openMapStore(MapKit map) throws IOException {
+        if(this.outputDirectory == null) {
+            return null;
+        }
+        return MappedTileStore.open(new File(this.outputDirectory, MAP_STORE_FILE), map);
+    }
+
+    public void setInterruptHandler(Rover rover) {
+
+    }
+
+    public VirtualClock getVirtualClock() {
+        return this.clock;
+    }
+
+    public SimDriveBase getSimDriveBase() {
+        return this.driveBase;
+    }
+
+    public SimSonar getSimSonar() {
+        return this.sonar;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SimIndicators class
+*
+* Simulated light, speaker, screen and button. Nobody is there to press
+* the button, so waiting for the user returns at once.
+*/
+public class SimIndicators implements Indicators {
+
+    private boolean verbose;
+    private String lastMessage;
+
+    /**
+    * Constructor
+    *
+    * @param boolean printMessages true to print the messages shown on screen
+    */
+    public SimIndicators(boolean printMessages) {
+        this.verbose = printMessages;
+    }
+
+    public void setFloodlight(int color) {
+
+    }
+
+    public void playTone(int frequency, int duration) {
+
+    }
+
+    public void waitForButton() {
+
+    }
+
+    public void clearDisplay() {
+
+    }
+
+    public void displayMessage(String message) {
+        this.lastMessage = message;
+        if(this.verbose) {
+            System.out.println(message);
+        }
+    }
+
+    public String getLastMessage() {
+        return this.lastMessage;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SimMastMotor class
+*
+* Simulated mast motor, turning at its set speed on the virtual clock
+*/
+public class SimMastMotor implements MastMotor {
+
+    private Clock clock;
+    private int speed;
+
+    private float from;
+    private int target;
+    private long moveStart;
+
+    /**
+    * Constructor
+    *
+    * @param Clock timeSource the simulation clock
+    */
+    public SimMastMotor(Clock timeSource) {
+        this.clock = timeSource;
+        this.speed = 360;
+    }
+
+    public void rotateTo(int angle) {
+        this.rotateTo(angle, false);
+    }
+
+    public void rotateTo(int angle, boolean immediateReturn) {
+        this.from = this.exactPosition();
+        this.target = angle;
+        this.moveStart = this.clock.currentTimeMillis();
+        if(!immediateReturn) {
+            while(this.isMoving()) {
+                this.clock.msDelay(5);
+            }
+        }
+    }
+
+    public int getPosition() {
+        return Math.round(this.exactPosition());
+    }
+
+    public boolean isMoving() {
+        return this.exactPosition() != this.target;
+    }
+
+    public void setSpeed(int newSpeed) {
+        // carry on from where the mast is, at the new speed
+        this.from = this.exactPosition();
+        this.moveStart = this.clock.currentTimeMillis();
+        this.speed = newSpeed;
+    }
+
+    public void stop() {
+        this.target = Math.round(this.exactPosition());
+        this.from = this.target;
+    }
+
+    public void flt(boolean immediateReturn) {
+        this.stop();
+    }
+
+    public void resetTachoCount() {
+        this.from = 0.0f;
+        this.target = 0;
+    }
+
+    private float exactPosition() {
+        float turned = (this.clock.currentTimeMillis() - this.moveStart) * this.speed / 1000.0f;
+        float remaining = this.target - this.from;
+        if(turned >= Math.abs(remaining)) {
+            return this.target;
+        }
+        return this.from + Math.signum(remaining) * turned;
+    }
+}
@@ -0,0 +1,369 @@
+import lejos.robotics.navigation.Pose;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SimMission class
+*
+* Runs Main's startMission, mainBehaviour, finishMission sequence in a
+* random arena, on a virtual clock, and reports how it went.
+*
+* Usage: java SimMission [seed] [mission duration, s] [output directory] [random|frontier]
+*/
+public class SimMission {
+
+    // arena size and number of obstacles
+    private static final float ARENA_HALF_SIZE = 200.0f;
+    private static final int ARENA_BOXES = 12;
+
+    // a mission still running after this much virtual time is given up
+    private static final long TIME_LIMIT = 60L * 60L * 1000L;
+
+    private long seed;
+    private long arenaSeed;
+    private int duration;
+    private boolean returnPlanning;
+    private boolean returnReserve;
+    private boolean frontierExploration;
+    private boolean purePursuit;
+    private boolean sonarCache;
+    private int randomTurnClearance;
+    private int randomTurnRange;
+    private File outputDirectory;
+    private EvidenceListener evidenceListener;
+    private OutputStream recording;
+    private OutputStream telemetryStream;
+    private int telemetryRing;
+    private TelemetryPublisher telemetry;
+    private byte[] replay;
+
+    private boolean completed;
+    private long exploreTime;
+    private long returnTime;
+    private long wallTime;
+    private float homeError;
+    private float odometryError;
+    private int collisionCount;
+    private int mapSize;
+    private float exploredArea;
+    private int bumpCount;
+    private MissionMetrics metrics;
+    private MissionScheduler scheduler;
+    private LineFeatureMap featureMap;
+    private CachedSonar sonar;
+    private int recordCount;
+    private boolean diverged;
+
+    /**
+    * Constructor
+    *
+    * @param long missionSeed the seed of the arena and of the simulated errors
+    * @param int missionDuration the mission time, in s, return home included
+    *                           unless setReturnReserve(false) is called
+    */
+    public SimMission(long missionSeed, int missionDuration) {
+        this.seed = missionSeed;
+        this.arenaSeed = missionSeed;
+        this.duration = missionDuration;
+        this.returnPlanning = true;
+        this.returnReserve = true;
+        this.frontierExploration = false;
+        this.purePursuit = true;
+        this.sonarCache = true;
+        this.randomTurnClearance = RandomWalkExploration.CLEARANCE;
+        this.randomTurnRange = RandomWalkExploration.RANGE;
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1L;
+        int duration = args.length > 1 ? Integer.parseInt(args[1]) : 180;
+
+        SimMission mission = new SimMission(seed, duration);
+        if(args.length > 2 && !args[2].equals("-")) {
+            mission.setOutputDirectory(new File(args[2]));
+        }
+        if(args.length > 3) {
+            mission.setFrontierExploration(args[3].equals("frontier"));
+        }
+        mission.run();
+
+        System.out.println("seed " + seed + (mission.completed ? "" : " (gave up)"));
+        System.out.printf("virtual time   %8.1f s (explore %.1f s, return %.1f s)%n",
+            (mission.exploreTime + mission.returnTime) / 1000.0, mission.exploreTime / 1000.0, mission.returnTime / 1000.0);
+        System.out.printf("budget         %8.1f s (return estimated %.1f s, overrun %.1f s)%n", duration * 1.0,
+            mission.scheduler.getReturnEstimate() / 1000.0, mission.scheduler.getOverrun() / 1000.0);
+        System.out.printf("wall time      %8.1f s (x%.0f)%n", mission.wallTime / 1000.0,
+            (mission.exploreTime + mission.returnTime) / (double)Math.max(1L, mission.wallTime));
+        System.out.printf("home error     %8.1f cm%n", mission.homeError);
+        System.out.printf("odometry error %8.1f cm%n", mission.odometryError);
+        System.out.println("collisions     " + mission.collisionCount);
+        System.out.println("mapped cells   " + mission.mapSize);
+        System.out.printf("wall segments  %8d (%.0f cm, from %d echoes)%n", mission.featureMap.getSegmentCount(),
+            mission.featureMap.getLength(), mission.featureMap.getPointCount());
+        System.out.printf("explored area  %8.2f m2%n", mission.exploredArea / 10000.0f);
+        System.out.println("bumps          " + mission.bumpCount);
+        System.out.printf("sonar reads    %8d (%.1f/s, %.0f%% of reads cached, %d mode changes)%n",
+            mission.sonar.getReadCount(), mission.sonar.getSampleRate(), mission.sonar.getHitRatio() * 100.0f,
+            mission.sonar.getModeChangeCount());
+        System.out.println();
+        try {
+            mission.scheduler.writeSummary(System.out);
+            mission.metrics.writeSummary(System.out);
+        } catch(IOException e) {
+            System.err.println("Failed to write metrics");
+        }
+    }
+
+    /**
+    * Runs the mission
+    *
+    * @return boolean true if the rover made it home within the time limit
+    */
+    public boolean run() {
+        SimHardware hardware = null;
+        ReplayHardware replayHardware = null;
+        RecordingHardware recordingHardware = null;
+        RoverHardware roverHardware;
+        if(this.replay != null) {
+            // the recording stands for the arena, the simulated errors and the output files
+            replayHardware = new ReplayHardware(this.replay);
+            roverHardware = replayHardware;
+        }
+        else {
+            SimWorld world = SimWorld.randomArena(this.arenaSeed, ARENA_HALF_SIZE, ARENA_BOXES);
+            hardware = new SimHardware(world, this.seed, this.outputDirectory);
+            hardware.getVirtualClock().setDeadline(TIME_LIMIT);
+            roverHardware = hardware;
+            if(this.recording != null) {
+                recordingHardware = new RecordingHardware(hardware, this.recording);
+                roverHardware = recordingHardware;
+            }
+        }
+
+        long wallStart = System.currentTimeMillis();
+        Rover rover = new Rover(this.duration, roverHardware);
+        rover.setReturnPlanning(this.returnPlanning);
+        rover.setReturnReserve(this.returnReserve);
+        rover.navigationUnit.setPurePursuit(this.purePursuit);
+        this.sonar = rover.sensorUnit.getSonar();
+        this.sonar.setRefreshInterval(this.sonarCache ? CachedSonar.REFRESH_INTERVAL : 0);
+        rover.setRandomSeed(this.seed);
+        rover.mappingUnit.setEvidenceListener(this.evidenceListener);
+        if(this.telemetryStream != null) {
+            this.telemetry = new TelemetryPublisher(this.telemetryStream, rover.getClock(), this.telemetryRing);
+            rover.setTelemetry(this.telemetry);
+        }
+        if(this.frontierExploration) {
+            rover.setExplorationStrategy(new FrontierExploration(rover.mappingUnit));
+        }
+        else {
+            rover.setExplorationStrategy(new RandomWalkExploration(this.randomTurnClearance, this.randomTurnRange));
+        }
+
+        long returnStart = 0;
+        try {
+            rover.startMission();
+            rover.mainBehaviour();
+            returnStart = this.missionTime(hardware, replayHardware);
+            rover.finishMission();
+            this.completed = true;
+        } catch(IllegalStateException e) {
+            // stuck until the time limit, or at the end of the recording
+            this.completed = false;
+            if(returnStart == 0) {
+                returnStart = this.missionTime(hardware, replayHardware);
+            }
+            rover.mappingUnit.closeStore();
+            if(this.telemetry != null) {
+                this.telemetry.close();
+            }
+        }
+        this.wallTime = System.currentTimeMillis() - wallStart;
+        if(recordingHardware != null) {
+            // what the harness reads from the rover below is not part of the mission
+            recordingHardware.close();
+            this.recordCount = recordingHardware.getRecorder().getRecordCount();
+        }
+        if(replayHardware != null) {
+            replayHardware.close();
+        }
+        this.exploreTime = returnStart;
+        this.returnTime = this.missionTime(hardware, replayHardware) - returnStart;
+
+        if(replayHardware != null) {
+            // only the rover's side of the mission is replayed
+            this.homeError = Float.NaN;
+            this.odometryError = Float.NaN;
+            this.collisionCount = 0;
+            this.recordCount = replayHardware.getRecordCount();
+            this.diverged = replayHardware.hasDiverged();
+        }
+        else {
+            Pose truePose = hardware.getSimDriveBase().getTruePose();
+            this.homeError = (float)Math.hypot(truePose.getX(), truePose.getY());
+            this.odometryError = (float)Math.hypot(truePose.getX() - rover.getX(), truePose.getY() - rover.getY());
+            this.collisionCount = hardware.getSimDriveBase().getCollisionCount();
+        }
+        this.mapSize = rover.mappingUnit.getMap().length;
+        this.exploredArea = rover.mappingUnit.getExploredArea();
+        this.bumpCount = rover.getBumpCount();
+        this.metrics = rover.getMetrics();
+        this.scheduler = rover.getScheduler();
+        this.featureMap = rover.featureMap;
+        return this.completed;
+    }
+
+    /**
+    * Reads the mission time without it being recorded, or replayed
+    */
+    private long missionTime(SimHardware hardware, ReplayHardware replayHardware) {
+        if(replayHardware != null) {
+            return replayHardware.getTime();
+        }
+        return hardware.getVirtualClock().currentTimeMillis();
+    }
+
+    public void setReturnPlanning(boolean enabled) {
+        this.returnPlanning = enabled;
+    }
+
+    public void setReturnReserve(boolean enabled) {
+        this.returnReserve = enabled;
+    }
+
+    public void setFrontierExploration(boolean enabled) {
+        this.frontierExploration = enabled;
+    }
+
+    public void setPurePursuit(boolean enabled) {
+        this.purePursuit = enabled;
+    }
+
+    public void setSonarCache(boolean enabled) {
+        this.sonarCache = enabled;
+    }
+
+    public void setRandomTurn(int clearance, int range) {
+        this.randomTurnClearance = clearance;
+        this.randomTurnRange = range;
+    }
+
+    public void setOutputDirectory(File directory) {
+        this.outputDirectory = directory;
+    }
+
+    public void setArenaSeed(long seed) {
+        // the rover's errors and choices still follow the mission's seed
+        this.arenaSeed = seed;
+    }
+
+    public void setEvidenceListener(EvidenceListener listener) {
+        this.evidenceListener = listener;
+    }
+
+    /**
+    * Records what the rover reads from its hardware, for setReplay
+    * The stream is closed at the end of the mission
+    *
+    * @param OutputStream stream where the recording is written, null not to record
+    * @return void
+    */
+    public void setRecording(OutputStream stream) {
+        this.recording = stream;
+    }
+
+    /**
+    * Streams the mission live through a TelemetryPublisher
+    * The stream is closed at the end of the mission
+    *
+    * @param OutputStream stream where the frames are written, null not to stream
+    * @param int ringSize the largest number of bytes waiting to be written
+    * @return void
+    */
+    public void setTelemetry(OutputStream stream, int ringSize) {
+        this.telemetryStream = stream;
+        this.telemetryRing = ringSize;
+    }
+
+    /**
+    * Runs the rover on a recorded mission instead of the simulation
+    * The mission must have the settings it was recorded with, and no output directory
+    *
+    * @param byte[] data the recording, null to simulate
+    * @return void
+    */
+    public void setReplay(byte[] data) {
+        this.replay = data;
+    }
+
+    public boolean isCompleted() {
+        return this.completed;
+    }
+
+    public long getExploreTime() {
+        return this.exploreTime;
+    }
+
+    public long getReturnTime() {
+        return this.returnTime;
+    }
+
+    public long getWallTime() {
+        return this.wallTime;
+    }
+
+    public float getHomeError() {
+        return this.homeError;
+    }
+
+    public float getOdometryError() {
+        return this.odometryError;
+    }
+
+    public int getCollisionCount() {
+        return this.collisionCount;
+    }
+
+    public int getMapSize() {
+        return this.mapSize;
+    }
+
+    public float getExploredArea() {
+        return this.exploredArea;
+    }
+
+    public MissionMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public MissionScheduler getScheduler() {
+        return this.scheduler;
+    }
+
+    public LineFeatureMap getFeatureMap() {
+        return this.featureMap;
+    }
+
+    public TelemetryPublisher getTelemetry() {
+        return this.telemetry;
+    }
+
+    public CachedSonar getSonar() {
+        return this.sonar;
+    }
+
+    public int getBumpCount() {
+        return this.bumpCount;
+    }
+
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    public boolean hasDiverged() {
+        return this.diverged;
+    }
+}
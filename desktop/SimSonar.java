@@ -0,0 +1,101 @@
+import lejos.robotics.navigation.Pose;
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SimSonar class
+*
+* Simulated ultrasonic sensor on the mast. The beam is a cone of rays,
+* and the echo comes from the closest wall inside it.
+*/
+public class SimSonar implements Sonar {
+
+    // half angle of the beam, and angle between two of its rays
+    private static final float CONE = 15.0f;
+    private static final float RAY_STEP = 5.0f;
+
+    // nothing detected
+    private static final int NO_ECHO = 255;
+
+    // time taken by an I2C read, and by a write (mode change or ping), in ms
+    private static final int READ_TIME = 2;
+    private static final int WRITE_TIME = 2;
+
+    private SimWorld world;
+    private SimDriveBase drive;
+    private SimMastMotor mast;
+    private Clock clock;
+    private Random random;
+    private float noise;
+
+    private int mode;
+    private int lastPing;
+    private int readCount;
+    private int writeCount;
+
+    /**
+    * Constructor
+    *
+    * @param SimWorld arena the world the rover drives in
+    * @param SimDriveBase driveBase the drive carrying the sensor
+    * @param SimMastMotor mastMotor the motor turning the sensor
+    * @param Clock timeSource the simulation clock
+    * @param Random randomSource the source of measurement noise
+    * @param float noiseLevel the standard deviation of the noise, in cm
+    */
+    public SimSonar(SimWorld arena, SimDriveBase driveBase, SimMastMotor mastMotor, Clock timeSource,
+            Random randomSource, float noiseLevel) {
+        this.world = arena;
+        this.drive = driveBase;
+        this.mast = mastMotor;
+        this.clock = timeSource;
+        this.random = randomSource;
+        this.noise = noiseLevel;
+        this.mode = MODE_CONTINUOUS;
+        this.lastPing = NO_ECHO;
+    }
+
+    public void setMode(int newMode) {
+        this.clock.msDelay(WRITE_TIME);
+        this.writeCount++;
+        this.mode = newMode;
+    }
+
+    public void ping() {
+        this.clock.msDelay(WRITE_TIME);
+        this.writeCount++;
+        this.lastPing = this.measure();
+    }
+
+    public int getDistance() {
+        // reading the sensor takes time, so polling loops move the clock on
+        this.clock.msDelay(READ_TIME);
+        this.readCount++;
+        return this.mode == MODE_PING ? this.lastPing : this.measure();
+    }
+
+    public int getReadCount() {
+        return this.readCount;
+    }
+
+    public int getWriteCount() {
+        return this.writeCount;
+    }
+
+    private int measure() {
+        Pose pose = this.drive.getTruePose();
+        // a positive tacho position turns the mast to the right
+        float bearing = pose.getHeading() - this.mast.getPosition();
+
+        float closest = NO_ECHO;
+        for(float ray = -CONE; ray <= CONE; ray += RAY_STEP) {
+            closest = Math.min(closest, this.world.raycast(pose.getX(), pose.getY(), bearing + ray, NO_ECHO));
+        }
+        if(closest >= NO_ECHO) {
+            return NO_ECHO;
+        }
+        int distance = Math.round(closest + (float)this.random.nextGaussian() * this.noise);
+        return Math.max(0, Math.min(NO_ECHO - 1, distance));
+    }
+}
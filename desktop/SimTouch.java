@@ -0,0 +1,29 @@
+import lejos.robotics.Touch;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SimTouch class
+*
+* Simulated bumper
+*/
+public class SimTouch implements Touch {
+
+    private SimDriveBase drive;
+    private int side;
+
+    /**
+    * Constructor
+    *
+    * @param SimDriveBase driveBase the drive carrying the bumper
+    * @param int bumperSide -1 for the left bumper, 1 for the right one
+    */
+    public SimTouch(SimDriveBase driveBase, int bumperSide) {
+        this.drive = driveBase;
+        this.side = bumperSide;
+    }
+
+    public boolean isPressed() {
+        return this.drive.isBumperPressed(this.side);
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.Random;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SimWorld class
+*
+* Simulated arena: walls and obstacles stored as line segments, in cm,
+* in the rover's coordinate system (the rover starts at 0,0 facing +x).
+*/
+public class SimWorld {
+
+    // x0, y0, x1, y1 for each segment
+    private float[] segments;
+    private int segmentCount;
+
+    /**
+    * Constructor
+    * Creates an empty world
+    */
+    public SimWorld() {
+        this.segments = new float[64];
+        this.segmentCount = 0;
+    }
+
+    /**
+    * Creates a square arena with random boxes in it
+    * The area around the landing point is kept free
+    *
+    * @param long seed the seed of the random layout
+    * @param float halfSize half the side of the arena, in cm
+    * @param int boxes the number of obstacles
+    * @return SimWorld the arena
+    */
+    public static SimWorld randomArena(long seed, float halfSize, int boxes) {
+        SimWorld world = new SimWorld();
+        world.addBox(-halfSize, -halfSize, halfSize, halfSize);
+
+        Random random = new Random(seed);
+        int placed = 0;
+        while(placed < boxes) {
+            float width = 10.0f + random.nextFloat() * 30.0f;
+            float height = 10.0f + random.nextFloat() * 30.0f;
+            float x = -halfSize + random.nextFloat() * (2.0f * halfSize - width);
+            float y = -halfSize + random.nextFloat() * (2.0f * halfSize - height);
+            // keep 40cm free around the landing point
+            float nearX = Math.max(x, Math.min(0.0f, x + width));
+            float nearY = Math.max(y, Math.min(0.0f, y + height));
+            if(nearX * nearX + nearY * nearY < 40.0f * 40.0f) {
+                continue;
+            }
+            world.addBox(x, y, x + width, y + height);
+            placed++;
+        }
+        return world;
+    }
+
+    /**
+    * Adds a wall
+    *
+    * @param float x0 the x coordinate of the first end
+    * @param float y0 the y coordinate of the first end
+    * @param float x1 the x coordinate of the second end
+    * @param float y1 the y coordinate of the second end
+    * @return void
+    */
+    public void addSegment(float x0, float y0, float x1, float y1) {
+        if(4 * this.segmentCount + 4 > this.segments.length) {
+            float[] grown = new float[this.segments.length * 2];
+            System.arraycopy(this.segments, 0, grown, 0, this.segments.length);
+            this.segments = grown;
+        }
+        int i = 4 * this.segmentCount;
+        this.segments[i] = x0;
+        this.segments[i + 1] = y0;
+        this.segments[i + 2] = x1;
+        this.segments[i + 3] = y1;
+        this.segmentCount++;
+    }
+
+    /**
+    * Adds the four sides of a rectangle
+    *
+    * @return void
+    */
+    public void addBox(float minX, float minY, float maxX, float maxY) {
+        this.addSegment(minX, minY, maxX, minY);
+        this.addSegment(maxX, minY, maxX, maxY);
+        this.addSegment(maxX, maxY, minX, maxY);
+        this.addSegment(minX, maxY, minX, minY);
+    }
+
+    /**
+    * Returns the distance to the first wall along a ray
+    *
+    * @param float x the x coordinate of the origin
+    * @param float y the y coordinate of the origin
+    * @param float bearing the absolute direction of the ray, in degrees
+    * @param float maxRange the longest distance looked at
+    * @return float the distance to the wall, maxRange if there is none
+    */
+    public float raycast(float x, float y, float bearing, float maxRange) {
+        double angle = Math.toRadians(bearing);
+        float dx = (float)Math.cos(angle);
+        float dy = (float)Math.sin(angle);
+        float best = maxRange;
+
+        for(int i = 0; i < 4 * this.segmentCount; i += 4) {
+            float ex = this.segments[i + 2] - this.segments[i];
+            float ey = this.segments[i + 3] - this.segments[i + 1];
+            float denominator = dx * ey - dy * ex;
+            if(denominator == 0.0f) {
+                // parallel
+                continue;
+            }
+            float ox = this.segments[i] - x;
+            float oy = this.segments[i + 1] - y;
+            float t = (ox * ey - oy * ex) / denominator;
+            float u = (ox * dy - oy * dx) / denominator;
+            if(t >= 0.0f && t < best && u >= 0.0f && u <= 1.0f) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /**
+    * Marks every wall as occupied on a map, as a perfect survey would
+    *
+    * @param MapKit map the map to draw on
+    * @return void
+    */
+    public void drawInto(MapKit map) {
+        float step = map.getCellSize() / 2.0f;
+        for(int i = 0; i < 4 * this.segmentCount; i += 4) {
+            float dx = this.segments[i + 2] - this.segments[i];
+            float dy = this.segments[i + 3] - this.segments[i + 1];
+            float length = (float)Math.sqrt(dx * dx + dy * dy);
+            for(float d = 0.0f; d <= length; d += step) {
+                float x = this.segments[i] + dx * d / length;
+                float y = this.segments[i + 1] + dy * d / length;
+                map.integrateRay(x, y, 0.0f, 0.0f, true);
+            }
+        }
+    }
+
+    /**
+    * Returns the distance from a point to the closest wall
+    *
+    * @param float x the x coordinate of the point
+    * @param float y the y coordinate of the point
+    * @return float the distance
+    */
+    public float clearance(float x, float y) {
+        return this.nearest(x, y, null);
+    }
+
+    /**
+    * Returns the bearing of the closest wall, if it is close enough
+    *
+    * @param float x the x coordinate of the point
+    * @param float y the y coordinate of the point
+    * @param float heading the heading the bearing is measured from
+    * @param float range the farthest wall considered
+    * @return float the relative bearing, in degrees, NaN if no wall is in range
+    */
+    public float contactBearing(float x, float y, float heading, float range) {
+        float[] point = new float[2];
+        if(this.nearest(x, y, point) > range) {
+            return Float.NaN;
+        }
+        float bearing = (float)Math.toDegrees(Math.atan2(point[1] - y, point[0] - x)) - heading;
+        while(bearing > 180.0f) {
+            bearing -= 360.0f;
+        }
+        while(bearing < -180.0f) {
+            bearing += 360.0f;
+        }
+        return bearing;
+    }
+
+    public int getSegmentCount() {
+        return this.segmentCount;
+    }
+
+    private float nearest(float x, float y, float[] point) {
+        float best = Float.MAX_VALUE;
+        for(int i = 0; i < 4 * this.segmentCount; i += 4) {
+            float x0 = this.segments[i];
+            float y0 = this.segments[i + 1];
+            float ex = this.segments[i + 2] - x0;
+            float ey = this.segments[i + 3] - y0;
+            float length = ex * ex + ey * ey;
+            float t = length == 0.0f ? 0.0f : ((x - x0) * ex + (y - y0) * ey) / length;
+            t = Math.max(0.0f, Math.min(1.0f, t));
+            float px = x0 + t * ex;
+            float py = y0 + t * ey;
+            float distance = (float)Math.sqrt((px - x) * (px - x) + (py - y) * (py - y));
+            if(distance < best) {
+                best = distance;
+                if(point != null) {
+                    point[0] = px;
+                    point[1] = py;
+                }
+            }
+        }
+        return best;
+    }
+}
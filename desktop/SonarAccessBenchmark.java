@@ -0,0 +1,124 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* SonarAccessBenchmark class
+*
+* Measures what the sonar access layer (CachedSonar) saves on the I2C bus:
+*  - polling: the obstacle monitor's loop, on the simulated sonar where
+*    every read and every write (mode change, ping) takes 2 ms, as the
+*    sensor used to be read (mode written before each read), with the
+*    mode tracked, and with the mode tracked and reads cached. Polls per
+*    second, bus transactions per poll and the age of the readings
+*    returned are reported.
+*  - missions: simulated missions with and without the read cache.
+*
+* Usage: java SonarAccessBenchmark [poll time, s] [missions] [mission duration, s]
+*/
+public class SonarAccessBenchmark {
+
+    private static final long SEED = 1L;
+    private static final float ARENA_HALF_SIZE = 200.0f;
+    private static final int ARENA_BOXES = 12;
+
+    // how the sensor is read
+    private static final int MODE_EVERY_READ = 0;
+    private static final int MODE_TRACKED = 1;
+    private static final int CACHED = 2;
+
+    public static void main(String[] args) {
+        int pollTime = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int missions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int duration = args.length > 2 ? Integer.parseInt(args[2]) : 180;
+
+        System.out.println("obstacle polling for " + pollTime + " s, every " + RoverNavigator.MONITOR_PERIOD + " ms");
+        System.out.println("sonar access          polls/s  I2C/poll  poll (ms)  sensor reads/s  hit ratio  max age (ms)");
+        measurePolling("mode on every read", MODE_EVERY_READ, pollTime);
+        measurePolling("mode tracked", MODE_TRACKED, pollTime);
+        measurePolling("mode tracked, cached", CACHED, pollTime);
+
+        System.out.println();
+        System.out.println(missions + " missions of " + duration + " s");
+        System.out.println("sonar access  checks/s moving  poll (ms)  sensor reads  hit ratio  mode changes  home  with collisions  explored (m2)");
+        compareMissions("uncached", missions, duration, false);
+        compareMissions("cached", missions, duration, true);
+    }
+
+    /**
+    * Runs the obstacle monitor's loop against the sonar alone, the rover standing still
+    */
+    private static void measurePolling(String name, int access, int seconds) {
+        SimHardware hardware = new SimHardware(SimWorld.randomArena(SEED, ARENA_HALF_SIZE, ARENA_BOXES), SEED, null);
+        VirtualClock clock = hardware.getVirtualClock();
+        SimSonar sensor = hardware.getSimSonar();
+        Rover rover = new Rover(0, hardware);
+        CachedSonar sonar = rover.sensorUnit.getSonar();
+        sonar.setRefreshInterval(access == CACHED ? CachedSonar.REFRESH_INTERVAL : 0);
+
+        long start = clock.currentTimeMillis();
+        long end = start + seconds * 1000L;
+        int firstReads = sensor.getReadCount();
+        int firstWrites = sensor.getWriteCount();
+        sonar.resetStatistics();
+        int polls = 0;
+        long pollTime = 0;
+        long lastRead = start;
+        long maxAge = 0;
+        while(clock.currentTimeMillis() < end) {
+            long pollStart = clock.currentTimeMillis();
+            int reads = sensor.getReadCount();
+            if(access == MODE_EVERY_READ) {
+                sensor.setMode(Sonar.MODE_CONTINUOUS);
+                sensor.getDistance();
+            }
+            else {
+                sonar.setMode(Sonar.MODE_CONTINUOUS);
+                sonar.getDistance();
+            }
+            long now = clock.currentTimeMillis();
+            if(sensor.getReadCount() != reads) {
+                lastRead = pollStart;
+            }
+            maxAge = Math.max(maxAge, now - lastRead);
+            pollTime += now - pollStart;
+            polls++;
+            clock.msDelay(RoverNavigator.MONITOR_PERIOD);
+        }
+        float elapsed = (clock.currentTimeMillis() - start) / 1000.0f;
+        int transactions = sensor.getReadCount() - firstReads + sensor.getWriteCount() - firstWrites;
+        System.out.printf("%-20s %8.1f %9.2f %10.2f %15.1f %10.2f %13d%n", name, polls / elapsed,
+            (float)transactions / polls, (float)pollTime / polls, (sensor.getReadCount() - firstReads) / elapsed,
+            access == MODE_EVERY_READ ? 0.0f : sonar.getHitRatio(), maxAge);
+    }
+
+    private static void compareMissions(String name, int missions, int duration, boolean cache) {
+        float checkRate = 0.0f;
+        float pollTime = 0.0f;
+        long reads = 0;
+        float hitRatio = 0.0f;
+        long modeChanges = 0;
+        int home = 0;
+        int collided = 0;
+        float explored = 0.0f;
+        for(int seed = 1; seed <= missions; seed++) {
+            SimMission mission = new SimMission(seed, duration);
+            mission.setSonarCache(cache);
+            if(mission.run()) {
+                home++;
+            }
+            MissionMetrics metrics = mission.getMetrics();
+            long moving = Math.max(1L, metrics.getTotal(MissionMetrics.ROTATE) + metrics.getTotal(MissionMetrics.TRAVEL));
+            checkRate += metrics.getCounter(MissionMetrics.SONAR_CHECKS) * 1000.0f / moving;
+            pollTime += (float)metrics.getTotal(MissionMetrics.OBSTACLE_POLL)
+                / Math.max(1, metrics.getCount(MissionMetrics.OBSTACLE_POLL));
+            reads += mission.getSonar().getReadCount();
+            hitRatio += mission.getSonar().getHitRatio();
+            modeChanges += mission.getSonar().getModeChangeCount();
+            // a rover stuck against a wall collides over and over, so missions are counted
+            collided += mission.getCollisionCount() > 0 ? 1 : 0;
+            explored += mission.getExploredArea() / 10000.0f;
+        }
+        System.out.printf("%-12s %16.1f %10.2f %13d %10.2f %13d %5d %16d %13.2f%n", name, checkRate / missions,
+            pollTime / missions, reads / missions, hitRatio / missions, modeChanges / missions, home, collided,
+            explored / missions);
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* TelemetryBenchmark class
+*
+* Streams simulated missions over a loopback TCP connection to a
+* TelemetryClient, and reports:
+*  - per client: bytes sent, bytes per second of mission time, frames
+*    dropped by the rover and missed by the client, whether the map the
+*    client rebuilt matches the rover's, and whether the mission went
+*    exactly as without telemetry
+*  - the time the control loop spends on a tick: a pose, or a sweep and
+*    the cells it changed, handed to a ring that drains, and to a ring
+*    that is full because the client stopped reading
+*
+* Clients read as fast as they can, or are held to a given rate, in bytes
+* per second of wall time. The simulation runs much faster than real
+* time, so a slow client falls far behind and most frames are dropped.
+*
+* Usage: java TelemetryBenchmark [missions] [mission time, s] [slow client rate, B/s] [ring size] [round ms]
+*/
+public class TelemetryBenchmark {
+
+    // kept small, so that a slow client fills it and the ring quickly
+    private static final int SOCKET_BUFFER = 2048;
+
+    public static void main(String[] args) throws Exception {
+        int missions = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int duration = args.length > 1 ? Integer.parseInt(args[1]) : 180;
+        long slowRate = args.length > 2 ? Long.parseLong(args[2]) : 2000L;
+        int ringSize = args.length > 3 ? Integer.parseInt(args[3]) : 4096;
+        long roundMillis = args.length > 4 ? Long.parseLong(args[4]) : 200L;
+
+        System.out.println(missions + " missions of " + duration + " s, ring " + ringSize + " bytes");
+        System.out.println("client      wall ms  sent B  B/s (mission)  frames  dropped  missed  map matches  same mission");
+        long[] baseline = report("none", missions, duration, -1L, ringSize, null);
+        report("fast", missions, duration, 0L, ringSize, baseline);
+        report(slowRate + " B/s", missions, duration, slowRate, ringSize, baseline);
+
+        System.out.println();
+        measureTicks(ringSize, roundMillis);
+    }
+
+    /**
+    * Runs the missions with one kind of client
+    *
+    * @param long rate the client's rate, 0 for as fast as it can, -1 for no telemetry
+    * @param long[] baseline the outcome of each mission without telemetry, null to record it
+    * @return long[] the outcome of each mission
+    */
+    private static long[] report(String name, int missions, int duration, long rate, int ringSize,
+            long[] baseline) throws Exception {
+        long[] outcomes = new long[missions];
+        long wallTime = 0;
+        long sent = 0;
+        long missionTime = 0;
+        int frames = 0;
+        int dropped = 0;
+        int missed = 0;
+        int matching = 0;
+        int same = 0;
+        for(int seed = 1; seed <= missions; seed++) {
+            SimMission mission = new SimMission(seed, duration);
+            ServerSocket server = null;
+            Socket socket = null;
+            TelemetryClient client = null;
+            Thread reader = null;
+            if(rate >= 0) {
+                server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                server.setReceiveBufferSize(SOCKET_BUFFER);
+                socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+                socket.setSendBufferSize(SOCKET_BUFFER);
+                socket.setTcpNoDelay(true);
+                client = new TelemetryClient(server.accept().getInputStream(), rate);
+                reader = new Thread(client);
+                reader.start();
+                mission.setTelemetry(socket.getOutputStream(), ringSize);
+            }
+
+            mission.run();
+            wallTime += mission.getWallTime();
+            missionTime += mission.getExploreTime() + mission.getReturnTime();
+            outcomes[seed - 1] = outcome(mission);
+            if(baseline != null && outcomes[seed - 1] == baseline[seed - 1]) {
+                same++;
+            }
+
+            if(client != null) {
+                // the publisher gives up on a slow client when closing, and closes the socket
+                reader.join();
+                server.close();
+                TelemetryPublisher telemetry = mission.getTelemetry();
+                sent += telemetry.getSentByteCount();
+                frames += telemetry.getFrameCount();
+                dropped += telemetry.getDroppedFrameCount();
+                missed += client.getMissedFrames();
+                if(client.getOccupiedCount() == mission.getMapSize()) {
+                    matching++;
+                }
+            }
+        }
+        if(rate >= 0) {
+            System.out.printf("%-10s %8d %7d %14.0f %7d %8d %7d %8d/%-4d %9d/%d%n", name, wallTime / missions,
+                sent / missions, sent * 1000.0 / missionTime, frames / missions, dropped / missions,
+                missed / missions, matching, missions, same, missions);
+        }
+        else {
+            System.out.printf("%-10s %8d %7s %14s %7s %8s %7s %13s %11s%n", name, wallTime / missions,
+                "-", "-", "-", "-", "-", "-", "-");
+        }
+        return outcomes;
+    }
+
+    /**
+    * Sums up what the rover did in a mission, so that two runs can be compared
+    * The true pose is left out: SimDriveBase moves the rover in steps each
+    * time its pose is read, so that reading it more often rounds differently
+    */
+    private static long outcome(SimMission mission) {
+        long hash = mission.getExploreTime();
+        hash = hash * 31 + mission.getReturnTime();
+        hash = hash * 31 + mission.getMapSize();
+        hash = hash * 31 + mission.getBumpCount();
+        hash = hash * 31 + Float.floatToIntBits(mission.getFeatureMap().getLength());
+        return hash;
+    }
+
+    /**
+    * Times the ticks of the control loop
+    */
+    private static void measureTicks(int ringSize, long roundMillis) throws IOException {
+        Microbench bench = new Microbench(roundMillis);
+        bench.printHeader();
+        final ScanFrame scan = new ScanFrame();
+        scan.reset(12.5f, -40.0f, 30.0f);
+        for(int bearing = 90; bearing >= -90; bearing -= 10) {
+            scan.add(bearing, 40 + bearing / 3);
+        }
+
+        final TelemetryPublisher draining = new TelemetryPublisher(new NullOutputStream(), new SystemClock(), ringSize);
+        draining.hello(0, 100, 100, 5.0f);
+        measure(bench, "ring draining", draining, scan);
+
+        // nobody reads the other end of the pipe: the writer blocks, the ring fills up
+        PipedInputStream stalled = new PipedInputStream(SOCKET_BUFFER);
+        final TelemetryPublisher full = new TelemetryPublisher(new PipedOutputStream(stalled), new SystemClock(), ringSize);
+        full.hello(0, 100, 100, 5.0f);
+        measure(bench, "ring full", full, scan);
+        System.out.println("ring full: " + full.getFrameCount() + " frames queued, "
+            + full.getDroppedFrameCount() + " dropped");
+        draining.close();
+        full.close();
+    }
+
+    private static void measure(Microbench bench, String param, final TelemetryPublisher publisher,
+            final ScanFrame scan) {
+        bench.measure("pose tick", param, new Microbench.Operation() {
+            public int run(int iteration) {
+                publisher.pose(iteration & 255, 10.0f, 45.0f);
+                publisher.endTick();
+                return publisher.getRecordCount();
+            }
+        });
+        bench.measure("sweep tick", param, new Microbench.Operation() {
+            public int run(int iteration) {
+                publisher.scan(scan);
+                // a sweep changes a few cells
+                for(int i = 0; i < 8; i++) {
+                    publisher.cell((i & 1) == 0, 50 + i, iteration & 63);
+                }
+                publisher.endTick();
+                return publisher.getRecordCount();
+            }
+        });
+    }
+
+    /**
+    * Discards what is written, as a client that keeps up would
+    */
+    private static class NullOutputStream extends OutputStream {
+
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,306 @@
+import java.io.*;
+import java.net.Socket;
+
+/**
+* Abertay University - SET
+* Mars Rover Project
+* TelemetryClient class
+*
+* Reads the frames a TelemetryPublisher streams, as a ground station
+* would: keeps the rover's latest pose and the occupied cells of its map,
+* counts records, and notices the frames the rover dropped from the gaps
+* in their sequence numbers.
+*
+* A client may be made slow on purpose, reading no more bytes per second
+* than a given rate, to see what a poor link does to the rover.
+*
+* Usage: java TelemetryClient host port
+*/
+public class TelemetryClient implements Runnable {
+
+    private DataInputStream in;
+    private long bytesPerSecond;
+    private PrintStream events;
+
+    private int width;
+    private int height;
+    private float cellSize;
+    private boolean[] occupied;
+    private int occupiedCount;
+    private float x;
+    private float y;
+    private float heading;
+
+    private int frameCount;
+    private long byteCount;
+    private int missedFrames;
+    private int lastSequence;
+    private int[] recordCounts;
+    private int lastEvent;
+    private long lastTime;
+    private IOException error;
+
+    /**
+    * Constructor
+    *
+    * @param InputStream stream the frames
+    * @param long rate the most bytes read per second, 0 to read as fast as they come
+    */
+    public TelemetryClient(InputStream stream, long rate) {
+        this.in = new DataInputStream(new BufferedInputStream(stream));
+        this.bytesPerSecond = rate;
+        this.recordCounts = new int[TelemetryPublisher.MESSAGE + 1];
+        this.lastSequence = -1;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("Usage: java TelemetryClient host port");
+            System.exit(1);
+        }
+        Socket socket = new Socket(args[0], Integer.parseInt(args[1]));
+        TelemetryClient client = new TelemetryClient(socket.getInputStream(), 0L);
+        client.setEventStream(System.out);
+        client.run();
+        socket.close();
+        client.writeSummary(System.out);
+    }
+
+    /**
+    * Prints events, bumps and messages as they arrive
+    *
+    * @param PrintStream stream where they are printed, null to stay quiet
+    * @return void
+    */
+    public void setEventStream(PrintStream stream) {
+        this.events = stream;
+    }
+
+    /**
+    * Reads frames until the stream ends
+    *
+    * @return void
+    */
+    public void run() {
+        long start = System.currentTimeMillis();
+        try {
+            while(true) {
+                int length;
+                try {
+                    length = this.in.readUnsignedShort();
+                } catch(EOFException e) {
+                    break;
+                }
+                this.readFrame(length);
+                this.frameCount++;
+                this.byteCount += 2 + length;
+                if(this.bytesPerSecond > 0) {
+                    // as slow as the link would be
+                    long due = start + this.byteCount * 1000L / this.bytesPerSecond;
+                    long wait = due - System.currentTimeMillis();
+                    if(wait > 0) {
+                        Thread.sleep(wait);
+                    }
+                }
+            }
+        } catch(IOException e) {
+            this.error = e;
+        } catch(InterruptedException e) {
+            // stop reading
+        }
+    }
+
+    /**
+    * Writes what was received
+    *
+    * @param PrintStream out where the summary is written
+    * @return void
+    */
+    public void writeSummary(PrintStream out) {
+        out.println(this.frameCount + " frames, " + this.byteCount + " bytes, " + this.missedFrames + " missed, "
+            + this.getRecordCount() + " records (" + this.recordCounts[TelemetryPublisher.POSE] + " poses, "
+            + this.recordCounts[TelemetryPublisher.SCAN] + " sweeps, "
+            + (this.recordCounts[TelemetryPublisher.CELL_OCCUPIED] + this.recordCounts[TelemetryPublisher.CELL_CLEARED])
+            + " cell changes), " + this.occupiedCount + " occupied cells"
+            + (this.error != null ? ", " + this.error.getMessage() : ""));
+    }
+
+    /*
+    #########################################################################
+    Accessor methods
+    #########################################################################
+    */
+
+    public int getFrameCount() {
+        return this.frameCount;
+    }
+
+    public long getByteCount() {
+        return this.byteCount;
+    }
+
+    /**
+    * Returns the number of frames the rover dropped, from the gaps in the sequence
+    *
+    * @return int the missed count
+    */
+    public int getMissedFrames() {
+        return this.missedFrames;
+    }
+
+    public int getRecordCount(int type) {
+        return this.recordCounts[type];
+    }
+
+    public int getRecordCount() {
+        int total = 0;
+        for(int i = 0; i < this.recordCounts.length; i++) {
+            total += this.recordCounts[i];
+        }
+        return total;
+    }
+
+    /**
+    * Returns the number of cells occupied in the map rebuilt from the stream
+    *
+    * @return int the occupied count
+    */
+    public int getOccupiedCount() {
+        return this.occupiedCount;
+    }
+
+    public float getCellSize() {
+        return this.cellSize;
+    }
+
+    public float getX() {
+        return this.x;
+    }
+
+    public float getY() {
+        return this.y;
+    }
+
+    public float getHeading() {
+        return this.heading;
+    }
+
+    /**
+    * Returns the last mission event received
+    *
+    * @return int the event code, 0 if none
+    */
+    public int getLastEvent() {
+        return this.lastEvent;
+    }
+
+    /**
+    * Returns the time stamp of the last frame
+    *
+    * @return long the time since the HELLO frame, in ms
+    */
+    public long getLastTime() {
+        return this.lastTime;
+    }
+
+    public IOException getError() {
+        return this.error;
+    }
+
+    /*
+    #########################################################################
+    Decoding
+    #########################################################################
+    */
+
+    private void readFrame(int length) throws IOException {
+        int sequence = this.in.readUnsignedShort();
+        if(this.lastSequence >= 0) {
+            this.missedFrames += (sequence - this.lastSequence - 1) & 0xFFFF;
+        }
+        this.lastSequence = sequence;
+        this.lastTime = this.in.readInt() & 0xFFFFFFFFL;
+
+        int left = length - (TelemetryPublisher.HEADER_SIZE - 2);
+        while(left > 0) {
+            int type = this.in.readUnsignedByte();
+            left -= 1 + this.readRecord(type);
+            if(type < this.recordCounts.length) {
+                this.recordCounts[type]++;
+            }
+        }
+        if(left < 0) {
+            throw new IOException("Corrupt telemetry frame " + sequence);
+        }
+    }
+
+    /**
+    * Reads a record's payload
+    *
+    * @return int the size of the payload, in bytes
+    */
+    private int readRecord(int type) throws IOException {
+        switch(type) {
+            case TelemetryPublisher.HELLO:
+                int version = this.in.readUnsignedByte();
+                if(version != TelemetryPublisher.VERSION) {
+                    throw new IOException("Unsupported telemetry version " + version);
+                }
+                this.in.readInt();
+                this.width = this.in.readUnsignedShort();
+                this.height = this.in.readUnsignedShort();
+                this.cellSize = this.in.readFloat();
+                this.occupied = new boolean[this.width * this.height];
+                this.occupiedCount = 0;
+                return 13;
+            case TelemetryPublisher.POSE:
+                this.readPose();
+                return 6;
+            case TelemetryPublisher.SCAN:
+                this.readPose();
+                int count = this.in.readUnsignedByte();
+                this.in.skipBytes(2 * count);
+                return 7 + 2 * count;
+            case TelemetryPublisher.CELL_OCCUPIED:
+            case TelemetryPublisher.CELL_CLEARED:
+                int cx = this.in.readUnsignedShort();
+                int cy = this.in.readUnsignedShort();
+                if(this.occupied != null && cx < this.width && cy < this.height) {
+                    boolean now = type == TelemetryPublisher.CELL_OCCUPIED;
+                    if(this.occupied[cy * this.width + cx] != now) {
+                        this.occupiedCount += now ? 1 : -1;
+                        this.occupied[cy * this.width + cx] = now;
+                    }
+                }
+                return 4;
+            case TelemetryPublisher.BUMP:
+                int side = this.in.readByte();
+                this.print("bump " + side);
+                return 1;
+            case TelemetryPublisher.EVENT:
+                this.lastEvent = this.in.readUnsignedByte();
+                this.print("event " + this.lastEvent);
+                return 1;
+            case TelemetryPublisher.MESSAGE:
+                int length = this.in.readUnsignedByte();
+                byte[] text = new byte[length];
+                this.in.readFully(text);
+                this.print("message \"" + new String(text, "ISO-8859-1") + "\"");
+                return 1 + length;
+            default:
+                throw new IOException("Unknown telemetry record " + type);
+        }
+    }
+
+    private void readPose() throws IOException {
+        this.x = this.in.readShort() / 10.0f;
+        this.y = this.in.readShort() / 10.0f;
+        this.heading = this.in.readShort() / 10.0f;
+    }
+
+    private void print(String line) {
+        if(this.events != null) {
+            this.events.printf("%8.1f s  x %7.1f  y %7.1f  %s%n", this.lastTime / 1000.0, this.x, this.y, line);
+        }
+    }
+}
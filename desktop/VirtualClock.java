@@ -0,0 +1,55 @@
+/**
+* Abertay University - SET
+* Mars Rover Project
+* VirtualClock class
+*
+* Simulated time. It only moves when someone waits, so a mission runs
+* as fast as the computer can go.
+*/
+public class VirtualClock implements Clock {
+
+    private long now;
+    private long deadline;
+
+    /**
+    * Constructor
+    * Starts the clock at 0, with no time limit
+    */
+    public VirtualClock() {
+        this.now = 0;
+        this.deadline = Long.MAX_VALUE;
+    }
+
+    public long currentTimeMillis() {
+        return this.now;
+    }
+
+    /**
+    * Jumps forward by the given time
+    * Fails once the deadline is passed, so a rover stuck in a loop
+    * doesn't hang the simulation
+    *
+    * @param long period the time to wait, in ms
+    * @return void
+    */
+    public void msDelay(long period) {
+        this.now += period;
+        if(this.now > this.deadline) {
+            throw new IllegalStateException("Virtual time limit reached at " + this.now + " ms");
+        }
+    }
+
+    public boolean isRealTime() {
+        return false;
+    }
+
+    /**
+    * Sets the time after which msDelay fails
+    *
+    * @param long time the deadline, in ms
+    * @return void
+    */
+    public void setDeadline(long time) {
+        this.deadline = time;
+    }
+}